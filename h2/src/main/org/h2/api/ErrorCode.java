@@ -2208,7 +2208,23 @@ public class ErrorCode {
      */
     public static final int COLUMN_ALIAS_IS_NOT_SPECIFIED_1 = 90156;
 
-    // next is 90157
+    /**
+     * The error with code <code>90157</code> is thrown when a statement reads
+     * through a bounded snapshot that is older than the snapshot retention
+     * time, so the old data it needs may have been overwritten. The statement
+     * should be retried, possibly after increasing the retention time. It is
+     * also thrown when a history query reads a version that is no longer
+     * retained.
+     *
+     * <pre>
+     * SET BOUNDED_SNAPSHOT TRUE;
+     * SELECT ... FROM ...; -- runs longer than SNAPSHOT_RETENTION_TIME
+     * SELECT * FROM TEST FOR SYSTEM_TIME AS OF TIMESTAMP '2000-01-01 00:00:00';
+     * </pre>
+     */
+    public static final int SNAPSHOT_TOO_OLD = 90157;
+
+    // next is 90158
 
     private ErrorCode() {
         // utility class
@@ -295,6 +295,8 @@
 import org.h2.mode.FunctionsPostgreSQL;
 import org.h2.mode.OnDuplicateKeyValues;
 import org.h2.mode.Regclass;
+import org.h2.mvstore.db.MVHistoryTable;
+import org.h2.mvstore.db.MVTable;
 import org.h2.result.SortOrder;
 import org.h2.schema.Domain;
 import org.h2.schema.Schema;
@@ -1269,6 +1271,7 @@ private TransactionCommand parseCommit() {
         command = new TransactionCommand(session,
                 CommandInterface.COMMIT);
         readIf("WORK");
+        command.setNoWait(readIf("NOWAIT"));
         return command;
     }
 
@@ -2083,6 +2086,15 @@ private TableFilter readTableFilter() {
                 }
             } else {
                 table = readTableOrView(tableName);
+                int index = lastParseIndex;
+                if (readIf(FOR)) {
+                    if (readIf("SYSTEM_TIME")) {
+                        table = readHistoryTable(table);
+                    } else {
+                        // FOR UPDATE
+                        reread(index);
+                    }
+                }
             }
         }
         ArrayList<String> derivedColumnNames = null;
@@ -2101,6 +2113,21 @@ private TableFilter readTableFilter() {
         return buildTableFilter(table, alias, derivedColumnNames, indexHints);
     }
 
+    private Table readHistoryTable(Table table) {
+        read(AS);
+        read("OF");
+        boolean version = readIf("VERSION");
+        Expression asOf = readExpression();
+        if (!(table instanceof MVTable)) {
+            throw DbException.getUnsupportedException("FOR SYSTEM_TIME AS OF " + table.getSQL(HasSQL.TRACE_SQL_FLAGS));
+        }
+        if (!rightsChecked) {
+            // the history table is a virtual table, which needs no rights
+            session.getUser().checkRight(table, Right.SELECT);
+        }
+        return new MVHistoryTable((MVTable) table, asOf, version);
+    }
+
     private TableFilter readQueryTableFilter() {
         Query query = parseSelectUnion();
         read(CLOSE_PAREN);
@@ -8591,26 +8618,38 @@ private Prepared parseSet() {
     }
 
     private Prepared parseSetTransactionMode() {
-        IsolationLevel isolationLevel;
-        read("ISOLATION");
-        read("LEVEL");
-        if (readIf("READ")) {
-            if (readIf("UNCOMMITTED")) {
-                isolationLevel = IsolationLevel.READ_UNCOMMITTED;
+        IsolationLevel isolationLevel = null;
+        Boolean readOnly = null;
+        do {
+            if (readIf("READ")) {
+                if (readIf("ONLY")) {
+                    readOnly = true;
+                } else {
+                    read("WRITE");
+                    readOnly = false;
+                }
+                continue;
+            }
+            read("ISOLATION");
+            read("LEVEL");
+            if (readIf("READ")) {
+                if (readIf("UNCOMMITTED")) {
+                    isolationLevel = IsolationLevel.READ_UNCOMMITTED;
+                } else {
+                    read("COMMITTED");
+                    isolationLevel = IsolationLevel.READ_COMMITTED;
+                }
+            } else if (readIf("REPEATABLE")) {
+                read("READ");
+                isolationLevel = IsolationLevel.REPEATABLE_READ;
+            } else if (readIf("SNAPSHOT")) {
+                isolationLevel = IsolationLevel.SNAPSHOT;
             } else {
-                read("COMMITTED");
-                isolationLevel = IsolationLevel.READ_COMMITTED;
-            }
-        } else if (readIf("REPEATABLE")) {
-            read("READ");
-            isolationLevel = IsolationLevel.REPEATABLE_READ;
-        } else if (readIf("SNAPSHOT")) {
-            isolationLevel = IsolationLevel.SNAPSHOT;
-        } else {
-            read("SERIALIZABLE");
-            isolationLevel = IsolationLevel.SERIALIZABLE;
-        }
-        return new SetSessionCharacteristics(session, isolationLevel);
+                read("SERIALIZABLE");
+                isolationLevel = IsolationLevel.SERIALIZABLE;
+            }
+        } while (readIf(COMMA));
+        return new SetSessionCharacteristics(session, isolationLevel, readOnly);
     }
 
     private Expression readExpressionOrIdentifier() {
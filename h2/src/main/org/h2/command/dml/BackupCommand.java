@@ -60,7 +60,8 @@ private void backupTo(String fileName) {
         try {
             Store store = db.getStore();
             if (store != null) {
-                store.flush();
+                // changes in the redo log are not in the copied file
+                store.checkpoint();
             }
             String name = db.getName();
             name = FileUtils.getName(name);
@@ -72,6 +72,8 @@ public boolean isTransactional() {
         case SetTypes.CATALOG:
         case SetTypes.RETENTION_TIME:
         case SetTypes.LAZY_QUERY_EXECUTION:
+        case SetTypes.BOUNDED_SNAPSHOT:
+        case SetTypes.QUERY_PARALLELISM:
         case SetTypes.NON_KEYWORDS:
         case SetTypes.TIME_ZONE:
         case SetTypes.VARIABLE_BINARY:
@@ -430,6 +432,15 @@ public int update() {
             database.setOptimizeReuseResults(getIntValue() != 0);
             break;
         }
+        case SetTypes.OPTIMIZE_HASH_JOIN: {
+            session.getUser().checkAdmin();
+            int value = getIntValue();
+            if (value < 0 || value > 1) {
+                throw DbException.getInvalidValueException("OPTIMIZE_HASH_JOIN", value);
+            }
+            database.setOptimizeHashJoin(value == 1);
+            break;
+        }
         case SetTypes.QUERY_TIMEOUT: {
             int value = getIntValue();
             if (value < 0) {
@@ -582,6 +593,17 @@ public int update() {
             session.setLazyQueryExecution(value == 1);
             break;
         }
+        case SetTypes.BOUNDED_SNAPSHOT:
+            session.setBoundedSnapshot(expression.optimize(session).getBooleanValue(session));
+            break;
+        case SetTypes.QUERY_PARALLELISM: {
+            int value = getIntValue();
+            if (value < 1) {
+                throw DbException.getInvalidValueException("QUERY_PARALLELISM", value);
+            }
+            session.setQueryParallelism(value);
+            break;
+        }
         case SetTypes.BUILTIN_ALIAS_OVERRIDE: {
             session.getUser().checkAdmin();
             int value = getIntValue();
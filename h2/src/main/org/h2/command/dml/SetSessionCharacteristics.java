@@ -18,9 +18,21 @@ public class SetSessionCharacteristics extends Prepared {
 
     private final IsolationLevel isolationLevel;
 
-    public SetSessionCharacteristics(Session session, IsolationLevel isolationLevel) {
+    private final Boolean readOnly;
+
+    /**
+     * Creates new instance of this command.
+     *
+     * @param session the session
+     * @param isolationLevel the isolation level, or {@code null} to keep the
+     *            current one
+     * @param readOnly whether transactions are read-only, or {@code null} to
+     *            keep the current setting
+     */
+    public SetSessionCharacteristics(Session session, IsolationLevel isolationLevel, Boolean readOnly) {
         super(session);
         this.isolationLevel = isolationLevel;
+        this.readOnly = readOnly;
     }
 
     @Override
@@ -30,7 +42,12 @@ public boolean isTransactional() {
 
     @Override
     public int update() {
-        session.setIsolationLevel(isolationLevel);
+        if (isolationLevel != null) {
+            session.setIsolationLevel(isolationLevel);
+        }
+        if (readOnly != null) {
+            session.setTransactionReadOnly(readOnly);
+        }
         return 0;
     }
 
@@ -267,7 +267,22 @@ public class SetTypes {
      */
     public static final int DEFAULT_NULL_ORDERING = VARIABLE_BINARY + 1;
 
-    private static final int COUNT = DEFAULT_NULL_ORDERING + 1;
+    /**
+     * The type of a SET BOUNDED_SNAPSHOT statement.
+     */
+    public static final int BOUNDED_SNAPSHOT = DEFAULT_NULL_ORDERING + 1;
+
+    /**
+     * The type of a SET OPTIMIZE_HASH_JOIN statement.
+     */
+    public static final int OPTIMIZE_HASH_JOIN = BOUNDED_SNAPSHOT + 1;
+
+    /**
+     * The type of a SET QUERY_PARALLELISM statement.
+     */
+    public static final int QUERY_PARALLELISM = OPTIMIZE_HASH_JOIN + 1;
+
+    private static final int COUNT = QUERY_PARALLELISM + 1;
 
     private static final ArrayList<String> TYPES;
 
@@ -328,6 +343,9 @@ private SetTypes() {
         list.add("TIME ZONE");
         list.add("VARIABLE_BINARY");
         list.add("DEFAULT_NULL_ORDERING");
+        list.add("BOUNDED_SNAPSHOT");
+        list.add("OPTIMIZE_HASH_JOIN");
+        list.add("QUERY_PARALLELISM");
         TYPES = list;
     }
 
@@ -20,6 +20,7 @@ public class TransactionCommand extends Prepared {
     private final int type;
     private String savepointName;
     private String transactionName;
+    private boolean noWait;
 
     public TransactionCommand(Session session, int type) {
         super(session);
@@ -30,6 +31,15 @@ public void setSavepointName(String name) {
         this.savepointName = name;
     }
 
+    /**
+     * Do not wait until the committed changes are durable.
+     *
+     * @param noWait whether to return before the changes are durable
+     */
+    public void setNoWait(boolean noWait) {
+        this.noWait = noWait;
+    }
+
     @Override
     public int update() {
         switch (type) {
@@ -43,7 +53,11 @@ public int update() {
             session.begin();
             break;
         case CommandInterface.COMMIT:
-            session.commit(false);
+            if (noWait) {
+                session.commitNoWait();
+            } else {
+                session.commit(false);
+            }
             break;
         case CommandInterface.ROLLBACK:
             session.rollback();
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2004-2020 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.command.query;
+
+import static org.h2.util.HasSQL.DEFAULT_SQL_FLAGS;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.h2.api.ErrorCode;
+import org.h2.command.Prepared;
+import org.h2.engine.Session;
+import org.h2.expression.Expression;
+import org.h2.expression.Parameter;
+import org.h2.expression.analysis.DataAnalysisOperation;
+import org.h2.index.Cursor;
+import org.h2.message.DbException;
+import org.h2.mvstore.db.MVPrimaryIndex;
+import org.h2.table.TableFilter;
+
+/**
+ * Gathers the groups of an aggregate or grouped query over a single table in
+ * parallel threads.
+ *
+ * <p>
+ * The rows of the primary index are split into ranges of row keys. Each range
+ * is gathered by a separate copy of the query, prepared from its plan, into
+ * its own group data. Partial group data of the copies are merged into the
+ * group data of the original query afterwards.
+ * </p>
+ * <p>
+ * Everything that needs the session, its transaction, or writes is done in
+ * the thread of the session before the workers are started or after they are
+ * finished: the copies and their in-memory group data are created, the
+ * transactional map is opened, and the cursors over the ranges are opened
+ * with the snapshot of the statement. The workers only read the rows from
+ * their own cursors and evaluate the expressions of their own copies, they
+ * check only the cancellation time of the session.
+ * </p>
+ */
+final class ParallelAggregation {
+
+    /**
+     * The minimum number of rows for each worker.
+     */
+    private static final int MIN_ROWS_PER_WORKER = 10_000;
+
+    private ParallelAggregation() {
+    }
+
+    /**
+     * Gathers the groups of the specified query into its group data with
+     * parallel workers, if possible. The group data of the query should be
+     * reset.
+     *
+     * @param select
+     *            the query with a scan of a primary index as its only table
+     *            filter
+     * @param columnCount
+     *            the number of columns
+     * @param parallelism
+     *            the maximum number of threads
+     * @return {@code true} if the groups were gathered and {@code done()} of
+     *         the group data was invoked, {@code false} if the query should
+     *         be executed in the usual way
+     */
+    static boolean gather(Select select, int columnCount, int parallelism) {
+        Session session = select.getSession();
+        MVPrimaryIndex index = (MVPrimaryIndex) select.getTopTableFilter().getIndex();
+        int workers = (int) Math.min(parallelism, index.getRowCountApproximation(session) / MIN_ROWS_PER_WORKER);
+        if (workers <= 1) {
+            return false;
+        }
+        ArrayList<Expression> expressions = select.getParallelizableExpressions();
+        if (expressions == null) {
+            return false;
+        }
+        for (Expression e : expressions) {
+            if (e instanceof DataAnalysisOperation && !((DataAnalysisOperation) e).isGroupDataStateSupported()) {
+                return false;
+            }
+        }
+        long[] keys = index.getSplitKeys(session, workers);
+        if (keys.length == 0) {
+            return false;
+        }
+        Select[] copies = new Select[keys.length + 1];
+        HashMap<Expression, Expression> expressionMap = new HashMap<>();
+        String sql = select.getPlanSQL(DEFAULT_SQL_FLAGS);
+        for (int i = 0; i < copies.length; i++) {
+            Select copy = prepareCopy(select, sql, index, expressions, expressionMap);
+            if (copy == null) {
+                return false;
+            }
+            copies[i] = copy;
+        }
+        // initialize the time of the command for the workers
+        session.currentTimestamp();
+        Cursor[] cursors = new Cursor[copies.length];
+        for (int i = 0; i < copies.length; i++) {
+            copies[i].initGroupRows();
+            cursors[i] = index.findRange(session, i == 0 ? Long.MIN_VALUE : keys[i - 1],
+                    i < keys.length ? keys[i] - 1 : Long.MAX_VALUE);
+        }
+        try {
+            Throwable failure = execute(session, copies, cursors, columnCount);
+            if (failure != null) {
+                throw DbException.convert(failure);
+            }
+            assert isMapped(copies, expressionMap);
+            SelectGroups groupData = select.groupData;
+            for (Select copy : copies) {
+                groupData.merge(copy.groupData, expressionMap);
+            }
+            groupData.done();
+            return true;
+        } finally {
+            for (Select copy : copies) {
+                if (copy.groupData != null) {
+                    copy.groupData.reset();
+                }
+            }
+        }
+    }
+
+    private static Select prepareCopy(Select select, String sql, MVPrimaryIndex index,
+            ArrayList<Expression> expressions, HashMap<Expression, Expression> expressionMap) {
+        Session session = select.getSession();
+        Prepared prepared;
+        try {
+            prepared = session.prepare(sql, true, true);
+        } catch (DbException e) {
+            return null;
+        }
+        if (!(prepared instanceof Select)) {
+            return null;
+        }
+        Select copy = (Select) prepared;
+        TableFilter filter = copy.getTopTableFilter();
+        if (copy.getExpressions().size() != select.getExpressions().size() || filter.getIndex() != index
+                || !filter.getIndexConditions().isEmpty()) {
+            return null;
+        }
+        ArrayList<Expression> list = copy.getParallelizableExpressions();
+        if (list == null || list.size() != expressions.size()) {
+            return null;
+        }
+        for (int i = 0, l = list.size(); i < l; i++) {
+            Expression e = list.get(i), original = expressions.get(i);
+            if (e.getClass() != original.getClass()
+                    || !e.getSQL(DEFAULT_SQL_FLAGS).equals(original.getSQL(DEFAULT_SQL_FLAGS))) {
+                return null;
+            }
+            if (e instanceof Parameter) {
+                ((Parameter) e).setValue(original.getValue(session));
+            }
+            expressionMap.put(e, original);
+        }
+        return copy;
+    }
+
+    /**
+     * Checks whether all expressions with group data of the copies are mapped
+     * to the expressions of the original query. Only columns and aggregates
+     * without a window have group data, and all of them are collected by
+     * {@link Select#getParallelizableExpressions()}.
+     */
+    private static boolean isMapped(Select[] copies, HashMap<Expression, Expression> expressionMap) {
+        for (Select copy : copies) {
+            if (!expressionMap.keySet().containsAll(copy.groupData.exprToIndexInGroupByData.keySet())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gathers the rows of the cursors with the specified copies, the first
+     * cursor is read in the current thread.
+     *
+     * @return the first failure, or null
+     */
+    private static Throwable execute(Session session, Select[] copies, Cursor[] cursors, int columnCount) {
+        AtomicBoolean stopped = new AtomicBoolean();
+        Runnable check = () -> {
+            long cancel = session.getCancel();
+            if (stopped.get() || cancel != 0L && System.nanoTime() - cancel >= 0L) {
+                throw DbException.get(ErrorCode.STATEMENT_WAS_CANCELED);
+            }
+        };
+        Throwable failure = null;
+        Future<?>[] futures = new Future<?>[copies.length - 1];
+        ExecutorService executor = session.getDatabase().getQueryWorkers();
+        for (int i = 1; i < copies.length; i++) {
+            Select copy = copies[i];
+            Cursor cursor = cursors[i];
+            try {
+                futures[i - 1] = executor.submit(() -> {
+                    try {
+                        copy.gatherGroupRows(cursor, columnCount, check);
+                    } catch (Throwable e) {
+                        stopped.set(true);
+                        throw e;
+                    }
+                });
+            } catch (RuntimeException e) {
+                failure = e;
+                break;
+            }
+        }
+        if (failure == null) {
+            try {
+                copies[0].gatherGroupRows(cursors[0], columnCount, check);
+            } catch (Throwable e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            stopped.set(true);
+        }
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            if (future == null) {
+                break;
+            }
+            for (;;) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    // the workers read the copies, wait for them anyway
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return failure;
+    }
+
+}
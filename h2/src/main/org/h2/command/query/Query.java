@@ -860,6 +860,25 @@ OffsetFetch getOffsetFetch(int maxRows) {
         return new OffsetFetch(offset, fetch, fetchPercent);
     }
 
+    /**
+     * Keep only the rows required for OFFSET and FETCH in a sorted result
+     * while the rows are added.
+     *
+     * @param result
+     *            sorted local result
+     * @param offset
+     *            OFFSET value
+     * @param fetch
+     *            FETCH value
+     * @param fetchPercent
+     *            whether FETCH value is a PERCENT value
+     */
+    void initTopRows(LocalResult result, long offset, int fetch, boolean fetchPercent) {
+        if (fetch > 0 && !fetchPercent && offset + fetch <= Integer.MAX_VALUE) {
+            result.setTopRows((int) (offset + fetch), withTies);
+        }
+    }
+
     /**
      * Applies limits, if any, to a result and makes it ready for value
      * retrieval.
@@ -40,6 +40,7 @@
 import org.h2.index.ViewIndex;
 import org.h2.message.DbException;
 import org.h2.mode.DefaultNullOrdering;
+import org.h2.mvstore.db.MVPrimaryIndex;
 import org.h2.result.LazyResult;
 import org.h2.result.LocalResult;
 import org.h2.result.ResultInterface;
@@ -485,7 +486,9 @@ private void queryGroupWindow(int columnCount, LocalResult result, long offset,
     private void queryGroup(int columnCount, LocalResult result, long offset, boolean quickOffset) {
         initGroupData(columnCount);
         try {
-            gatherGroup(columnCount, DataAnalysisOperation.STAGE_GROUP);
+            if (!gatherGroupParallel(columnCount)) {
+                gatherGroup(columnCount, DataAnalysisOperation.STAGE_GROUP);
+            }
             processGroupResult(columnCount, result, offset, quickOffset, true);
         } finally {
             groupData.reset();
@@ -494,7 +497,7 @@ private void queryGroup(int columnCount, LocalResult result, long offset, boolea
 
     private void initGroupData(int columnCount) {
         if (groupData == null) {
-            setGroupData(SelectGroups.getInstance(session, expressions, isGroupQuery, groupIndex));
+            setGroupData(SelectGroups.getInstance(session, expressions, isGroupQuery, groupIndex, !isWindowQuery));
         } else {
             updateAgg(columnCount, DataAnalysisOperation.STAGE_RESET);
         }
@@ -525,6 +528,82 @@ private void gatherGroup(int columnCount, int stage) {
         groupData.done();
     }
 
+    /**
+     * Gathers the groups with parallel workers, if the session allows it and
+     * the query is a full scan of a single table.
+     *
+     * @param columnCount the number of columns
+     * @return whether the groups were gathered
+     */
+    private boolean gatherGroupParallel(int columnCount) {
+        int parallelism = session.getQueryParallelism();
+        if (parallelism <= 1 || isForUpdate || filters.size() != 1 || topTableFilter.getJoin() != null
+                || topTableFilter.getNestedJoin() != null || !topTableFilter.getIndexConditions().isEmpty()
+                || !(topTableFilter.getIndex() instanceof MVPrimaryIndex)
+                || !isEverything(ExpressionVisitor.INDEPENDENT_VISITOR)) {
+            return false;
+        }
+        return ParallelAggregation.gather(this, columnCount, parallelism);
+    }
+
+    /**
+     * Returns the aggregates, columns, and parameters of this query in the
+     * order of traversal, if all its expressions can be evaluated by copies of
+     * this query in parallel threads.
+     *
+     * @return the list of expressions, or null
+     */
+    ArrayList<Expression> getParallelizableExpressions() {
+        ArrayList<Expression> list = new ArrayList<>();
+        ExpressionVisitor visitor = ExpressionVisitor.getParallelizableVisitor(list);
+        for (Expression e : expressions) {
+            if (!e.isEverything(visitor)) {
+                return null;
+            }
+        }
+        if (condition != null && !condition.isEverything(visitor)) {
+            return null;
+        }
+        return list;
+    }
+
+    /**
+     * Initializes the group data of this query for
+     * {@link #gatherGroupRows(Cursor, int, Runnable)}, this query should be a
+     * copy of a query that passed {@link #gatherGroupParallel(int)} checks.
+     * The group data is always kept in memory, because a temporary result
+     * can't be created in other threads.
+     */
+    void initGroupRows() {
+        setGroupData(SelectGroups.getInstance(session, expressions, isGroupQuery, groupIndex, false));
+        groupData.reset();
+    }
+
+    /**
+     * Gathers the groups of the rows of the specified cursor into the group
+     * data of this query, {@link #initGroupRows()} should be invoked before.
+     * This method may be invoked in a thread other than the thread of the
+     * session. It only reads the rows from the cursor, which should be opened
+     * in advance, and evaluates the expressions of this query, it doesn't
+     * check the session for cancellation or report the progress.
+     *
+     * @param cursor the cursor opened in the thread of the session
+     * @param columnCount the number of columns
+     * @param check invoked periodically, throws an exception to stop
+     */
+    void gatherGroupRows(Cursor cursor, int columnCount, Runnable check) {
+        for (int rowNumber = 0; cursor.next();) {
+            if ((++rowNumber & 4095) == 0) {
+                check.run();
+            }
+            topTableFilter.set(cursor.get());
+            if (isConditionMet()) {
+                groupData.nextSource();
+                updateAgg(columnCount, DataAnalysisOperation.STAGE_GROUP);
+            }
+        }
+        groupData.done();
+    }
 
     /**
      * Update any aggregate expressions with the query stage.
@@ -779,6 +858,7 @@ protected ResultInterface queryWithoutCache(int maxRows, ResultTarget target) {
             result.setSortOrder(sort);
             if (!sortUsingIndex) {
                 quickOffset = false;
+                initTopRows(result, offset, fetch, fetchPercent);
             }
         }
         if (distinct) {
@@ -1692,6 +1772,9 @@ public boolean isEverything(ExpressionVisitor visitor) {
             }
             break;
         }
+        case ExpressionVisitor.PARALLELIZABLE:
+            // nested queries are executed by the session
+            return false;
         default:
         }
         ExpressionVisitor v2 = visitor.incrementQueryLevel(1);
@@ -1859,7 +1942,7 @@ private final class LazyResultGroupSorted extends LazyResultSelect {
             super(expressions, columnCount);
             if (groupData == null) {
                 setGroupData(SelectGroups.getInstance(getSession(), Select.this.expressions, isGroupQuery,
-                        groupIndex));
+                        groupIndex, false));
             } else {
                 updateAgg(columnCount, DataAnalysisOperation.STAGE_RESET);
                 groupData.resetLazy();
@@ -13,11 +13,21 @@
 import java.util.Map.Entry;
 import java.util.TreeMap;
 
+import org.h2.api.ErrorCode;
+import org.h2.engine.Database;
 import org.h2.engine.Session;
 import org.h2.expression.Expression;
+import org.h2.expression.ValueExpression;
 import org.h2.expression.analysis.DataAnalysisOperation;
 import org.h2.expression.analysis.PartitionData;
+import org.h2.message.DbException;
+import org.h2.mvstore.db.MVTempResult;
+import org.h2.mvstore.db.ValueDataType;
+import org.h2.result.ResultExternal;
+import org.h2.result.SortOrder;
+import org.h2.value.DataType;
 import org.h2.value.Value;
+import org.h2.value.ValueNull;
 import org.h2.value.ValueRow;
 
 /**
@@ -48,10 +58,16 @@ private static final class Grouped extends SelectGroups {
 
         private final int[] groupIndex;
 
+        /**
+         * Whether the partial group data may be written to a temporary result
+         * when there are too many groups.
+         */
+        private final boolean canSpill;
+
         /**
          * Map of group-by key to group-by expression data e.g. AggregateData
          */
-        private TreeMap<ValueRow, Object[]> groupByData;
+        private Map<ValueRow, Object[]> groupByData;
 
         /**
          * Key into groupByData that produces currentGroupByExprData. Not used
@@ -64,17 +80,72 @@ private static final class Grouped extends SelectGroups {
          */
         private Iterator<Entry<ValueRow, Object[]>> cursor;
 
-        Grouped(Session session, ArrayList<Expression> expressions, int[] groupIndex) {
+        /**
+         * The maximum number of groups in memory.
+         */
+        private int maxMemoryGroups;
+
+        /**
+         * Partial group data written out when there were too many groups,
+         * sorted by group key, or null.
+         */
+        private ResultExternal spilled;
+
+        /**
+         * The expressions whose group data are written to the spilled result.
+         */
+        private Expression[] spilledExpressions;
+
+        /**
+         * The comparator of group keys in the spilled result.
+         */
+        private ValueDataType spilledKeyType;
+
+        /**
+         * The next row of the spilled result in {@link #next()} method.
+         */
+        private Value[] nextSpilledRow;
+
+        /**
+         * The next group in memory in {@link #next()} method.
+         */
+        private Entry<ValueRow, Object[]> nextMemoryGroup;
+
+        Grouped(Session session, ArrayList<Expression> expressions, int[] groupIndex, boolean canSpill) {
             super(session, expressions);
             this.groupIndex = groupIndex;
+            this.canSpill = canSpill && groupIndex != null;
         }
 
         @Override
         public void reset() {
             super.reset();
-            groupByData = new TreeMap<>(session.getDatabase().getCompareMode());
+            groupByData = createMap();
             currentGroupsKey = null;
             cursor = null;
+            Database db = session.getDatabase();
+            maxMemoryGroups = canSpill && db.isPersistent() && !db.isReadOnly() ? db.getMaxMemoryRows()
+                    : Integer.MAX_VALUE;
+            if (spilled != null) {
+                spilled.close();
+                spilled = null;
+            }
+            spilledExpressions = null;
+            spilledKeyType = null;
+            nextSpilledRow = null;
+            nextMemoryGroup = null;
+        }
+
+        private Map<ValueRow, Object[]> createMap() {
+            if (groupIndex != null) {
+                for (int idx : groupIndex) {
+                    if (!DataType.hasTotalOrdering(expressions.get(idx).getType().getValueType())) {
+                        return new TreeMap<>(session.getDatabase().getCompareMode());
+                    }
+                }
+                return new HashMap<>();
+            }
+            return new TreeMap<>(session.getDatabase().getCompareMode());
         }
 
         @Override
@@ -93,6 +164,9 @@ public void nextSource() {
             }
             Object[] values = groupByData.get(currentGroupsKey);
             if (values == null) {
+                if (groupByData.size() >= maxMemoryGroups) {
+                    spill();
+                }
                 values = createRow();
                 groupByData.put(currentGroupsKey, values);
             }
@@ -100,6 +174,126 @@ public void nextSource() {
             currentGroupRowId++;
         }
 
+        /**
+         * Writes the partial data of all groups in memory to the spilled result
+         * and removes them from memory. If the data of some expression can not
+         * be written out, the groups remain in memory and no more attempts are
+         * made.
+         */
+        private void spill() {
+            int keyCount = groupIndex.length;
+            if (spilledExpressions == null) {
+                spilledExpressions = new Expression[exprToIndexInGroupByData.size()];
+                for (Entry<Expression, Integer> entry : exprToIndexInGroupByData.entrySet()) {
+                    spilledExpressions[entry.getValue()] = entry.getKey();
+                }
+            } else if (exprToIndexInGroupByData.size() > spilledExpressions.length) {
+                maxMemoryGroups = Integer.MAX_VALUE;
+                return;
+            }
+            int stateCount = spilledExpressions.length;
+            ArrayList<Value[]> rows = new ArrayList<>(groupByData.size());
+            for (Entry<ValueRow, Object[]> entry : groupByData.entrySet()) {
+                Value[] row = Arrays.copyOf(entry.getKey().getList(), keyCount + stateCount);
+                Object[] data = entry.getValue();
+                for (int i = 0; i < stateCount; i++) {
+                    Value state = getGroupDataState(spilledExpressions[i], i < data.length ? data[i] : null);
+                    if (state == null) {
+                        maxMemoryGroups = Integer.MAX_VALUE;
+                        return;
+                    }
+                    row[keyCount + i] = state;
+                }
+                rows.add(row);
+            }
+            if (spilled == null) {
+                Database db = session.getDatabase();
+                Expression[] columns = new Expression[keyCount + stateCount];
+                int[] indexes = new int[keyCount];
+                for (int i = 0; i < keyCount; i++) {
+                    columns[i] = expressions.get(groupIndex[i]);
+                    indexes[i] = i;
+                }
+                Arrays.fill(columns, keyCount, columns.length, ValueExpression.NULL);
+                spilled = MVTempResult.of(db, columns, false, null, columns.length, columns.length,
+                        new SortOrder(session, indexes));
+                spilledKeyType = new ValueDataType(db, SortOrder.addNullOrdering(db, new int[keyCount]));
+            }
+            spilled.addRows(rows);
+            groupByData = createMap();
+        }
+
+        private static Value getGroupDataState(Expression expr, Object data) {
+            if (data == null) {
+                return ValueNull.INSTANCE;
+            } else if (expr instanceof DataAnalysisOperation) {
+                return ((DataAnalysisOperation) expr).getGroupDataState(data);
+            } else if (data instanceof Value) {
+                int valueType = expr.getType().getValueType();
+                if (valueType == Value.ENUM || DataType.isLargeObject(valueType)) {
+                    return null;
+                }
+                // wrapped to distinguish a NULL value from missing data
+                return ValueRow.get(new Value[] { (Value) data });
+            }
+            return null;
+        }
+
+        private Object[] mergeSpilledRow(Object[] data, Value[] row) {
+            if (data.length < spilledExpressions.length) {
+                data = Arrays.copyOf(data, spilledExpressions.length);
+            }
+            for (int i = 0, keyCount = groupIndex.length, l = spilledExpressions.length; i < l; i++) {
+                Value state = row[keyCount + i];
+                if (state != ValueNull.INSTANCE) {
+                    Expression expr = spilledExpressions[i];
+                    if (expr instanceof DataAnalysisOperation) {
+                        data[i] = ((DataAnalysisOperation) expr).mergeGroupDataState(session, data[i], state);
+                    } else if (data[i] == null) {
+                        data[i] = ((ValueRow) state).getList()[0];
+                    }
+                }
+            }
+            return data;
+        }
+
+        @Override
+        void merge(SelectGroups source, HashMap<Expression, Expression> expressionMap) {
+            int size = addMergeTargets(expressionMap);
+            for (ValueRow key; (key = source.next()) != null;) {
+                Object[] values = groupByData.get(key);
+                if (values == null) {
+                    if (groupByData.size() >= maxMemoryGroups) {
+                        spill();
+                    }
+                    values = createRow();
+                } else if (values.length < size) {
+                    values = Arrays.copyOf(values, size);
+                }
+                groupByData.put(key, values);
+                Object[] data = source.currentGroupByExprData;
+                for (Entry<Expression, Integer> entry : source.exprToIndexInGroupByData.entrySet()) {
+                    int index = entry.getValue();
+                    Object d;
+                    if (index >= data.length || (d = data[index]) == null) {
+                        continue;
+                    }
+                    Expression target = expressionMap.get(entry.getKey());
+                    int i = exprToIndexInGroupByData.get(target);
+                    if (target instanceof DataAnalysisOperation) {
+                        values[i] = ((DataAnalysisOperation) target).mergeGroupDataState(session, values[i],
+                                ((DataAnalysisOperation) entry.getKey()).getGroupDataState(d));
+                    } else if (values[i] == null) {
+                        values[i] = d;
+                    } else if (!session.areEqual((Value) values[i], (Value) d)) {
+                        throw DbException.get(ErrorCode.MUST_GROUP_BY_COLUMN_1, target.getTraceSQL());
+                    }
+                }
+            }
+            currentGroupsKey = null;
+            currentGroupByExprData = null;
+        }
+
         @Override
         void updateCurrentGroupExprData() {
             // this can be null in lazy mode
@@ -116,11 +310,23 @@ public void done() {
             if (groupIndex == null && groupByData.size() == 0) {
                 groupByData.put(ValueRow.EMPTY, createRow());
             }
+            if (spilled != null) {
+                // merge the groups in memory with the spilled ones in key order
+                TreeMap<ValueRow, Object[]> sorted = new TreeMap<>(spilledKeyType::compare);
+                sorted.putAll(groupByData);
+                groupByData = sorted;
+                spilled.reset();
+                nextSpilledRow = spilled.next();
+                nextMemoryGroup = null;
+            }
             cursor = groupByData.entrySet().iterator();
         }
 
         @Override
         public ValueRow next() {
+            if (spilled != null) {
+                return nextMerged();
+            }
             if (cursor.hasNext()) {
                 Map.Entry<ValueRow, Object[]> entry = cursor.next();
                 currentGroupByExprData = entry.getValue();
@@ -130,8 +336,41 @@ public ValueRow next() {
             return null;
         }
 
+        private ValueRow nextMerged() {
+            if (nextMemoryGroup == null && cursor.hasNext()) {
+                nextMemoryGroup = cursor.next();
+            }
+            ValueRow key;
+            Object[] data;
+            ValueRow spilledKey = nextSpilledRow != null ? getSpilledKey(nextSpilledRow) : null;
+            if (nextMemoryGroup != null
+                    && (spilledKey == null || spilledKeyType.compare(nextMemoryGroup.getKey(), spilledKey) <= 0)) {
+                key = nextMemoryGroup.getKey();
+                data = nextMemoryGroup.getValue();
+                nextMemoryGroup = null;
+            } else if (spilledKey != null) {
+                key = spilledKey;
+                data = createRow();
+            } else {
+                return null;
+            }
+            while (spilledKey != null && spilledKeyType.compare(key, spilledKey) == 0) {
+                data = mergeSpilledRow(data, nextSpilledRow);
+                nextSpilledRow = spilled.next();
+                spilledKey = nextSpilledRow != null ? getSpilledKey(nextSpilledRow) : null;
+            }
+            currentGroupByExprData = data;
+            currentGroupRowId++;
+            return key;
+        }
+
+        private ValueRow getSpilledKey(Value[] row) {
+            return ValueRow.get(Arrays.copyOf(row, groupIndex.length));
+        }
+
         @Override
         public void remove() {
+            assert spilled == null;
             cursor.remove();
             currentGroupByExprData = null;
             currentGroupRowId--;
@@ -213,7 +452,7 @@ public ValueRow next() {
      * Maps an expression object to an index, to use in accessing the Object[]
      * pointed to by groupByData.
      */
-    private final HashMap<Expression, Integer> exprToIndexInGroupByData = new HashMap<>();
+    final HashMap<Expression, Integer> exprToIndexInGroupByData = new HashMap<>();
 
     /**
      * Maps an window expression object to its data.
@@ -241,11 +480,16 @@ public ValueRow next() {
      *            is this query is a group query
      * @param groupIndex
      *            the indexes of group expressions, or null
+     * @param canSpill
+     *            whether the data of groups may be written to a temporary
+     *            result when there are too many groups, {@link #remove()}
+     *            is not supported in this case
      * @return new instance of the grouped data.
      */
     public static SelectGroups getInstance(Session session, ArrayList<Expression> expressions, boolean isGroupQuery,
-            int[] groupIndex) {
-        return isGroupQuery ? new Grouped(session, expressions, groupIndex) : new Plain(session, expressions);
+            int[] groupIndex, boolean canSpill) {
+        return isGroupQuery ? new Grouped(session, expressions, groupIndex, canSpill)
+                : new Plain(session, expressions);
     }
 
     SelectGroups(Session session, ArrayList<Expression> expressions) {
@@ -392,6 +636,41 @@ public void done() {
         currentGroupRowId = 0;
     }
 
+    /**
+     * Merges the groups of the specified group data, which was gathered by a
+     * copy of the same query, into this group data. Should be invoked after
+     * {@link #reset()} and before {@link #done()} of this group data, and
+     * after {@link #done()} of the source group data. Only group data of
+     * grouped queries can be merged.
+     *
+     * @param source
+     *            the source group data
+     * @param expressionMap
+     *            maps each expression of the source query with group data to
+     *            the same expression of this query
+     */
+    void merge(SelectGroups source, HashMap<Expression, Expression> expressionMap) {
+        throw DbException.throwInternalError();
+    }
+
+    /**
+     * Adds the target expressions of the specified map to the expressions with
+     * group data.
+     *
+     * @param expressionMap
+     *            the map of expressions passed to
+     *            {@link #merge(SelectGroups, HashMap)}
+     * @return the number of expressions with group data
+     */
+    final int addMergeTargets(HashMap<Expression, Expression> expressionMap) {
+        for (Expression target : expressionMap.values()) {
+            if (!exprToIndexInGroupByData.containsKey(target)) {
+                exprToIndexInGroupByData.put(target, exprToIndexInGroupByData.size());
+            }
+        }
+        return exprToIndexInGroupByData.size();
+    }
+
     /**
      * Returns the key of the next group.
      *
@@ -146,6 +146,7 @@ protected ResultInterface queryWithoutCache(int maxRows, ResultTarget target) {
         LocalResult result = createLocalResult(columnCount);
         if (sort != null) {
             result.setSortOrder(sort);
+            initTopRows(result, offset, fetch, fetchPercent);
         }
         if (distinct) {
             left.setDistinctIfPossible();
@@ -293,6 +293,10 @@ public boolean allowGlobalConditions() {
 
     @Override
     public boolean isEverything(ExpressionVisitor visitor) {
+        if (visitor.getType() == ExpressionVisitor.PARALLELIZABLE) {
+            // nested queries are executed by the session
+            return false;
+        }
         ExpressionVisitor v2 = visitor.incrementQueryLevel(1);
         for (Expression e : expressionArray) {
             if (!e.isEverything(v2)) {
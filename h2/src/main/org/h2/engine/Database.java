@@ -21,6 +21,10 @@
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import org.h2.api.DatabaseEventListener;
@@ -170,6 +174,7 @@ public class Database implements DataHandler, CastDataProvider {
     private Index metaIdIndex;
     private FileLock lock;
     private WriterThread writer;
+    private ThreadPoolExecutor queryWorkers;
     private volatile boolean starting;
     private TraceSystem traceSystem;
     private Trace trace;
@@ -200,6 +205,7 @@ public class Database implements DataHandler, CastDataProvider {
     private boolean deleteFilesOnDisconnect;
     private String lobCompressionAlgorithm;
     private boolean optimizeReuseResults = true;
+    private boolean optimizeHashJoin = true;
     private final String cacheType;
     private final String accessModeData;
     private boolean referentialIntegrity = true;
@@ -1503,6 +1509,37 @@ private void stopWriter() {
         }
     }
 
+    /**
+     * Get the executor for the worker threads of parallel queries. Threads
+     * are created on demand and stopped after a minute of inactivity. All
+     * sessions share at most one thread per available processor. When all of
+     * them are busy, a submitted task is executed by the submitting thread.
+     *
+     * @return the executor
+     */
+    public synchronized ExecutorService getQueryWorkers() {
+        if (queryWorkers == null) {
+            String threadName = "H2 Query Worker " + getShortName();
+            queryWorkers = new ThreadPoolExecutor(0, Runtime.getRuntime().availableProcessors(), 60L,
+                    TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+                        Thread thread = new Thread(r, threadName);
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    // unlike CallerRunsPolicy, also run the task after a
+                    // shutdown, the caller waits for its future
+                    (r, executor) -> r.run());
+        }
+        return queryWorkers;
+    }
+
+    private void stopQueryWorkers() {
+        if (queryWorkers != null) {
+            queryWorkers.shutdown();
+            queryWorkers = null;
+        }
+    }
+
     /**
      * Close all open files and unlock the database.
      *
@@ -1511,6 +1548,7 @@ private void stopWriter() {
     private synchronized void closeOpenFilesAndUnlock(boolean flush) {
         try {
             stopWriter();
+            stopQueryWorkers();
             if (pageStore != null) {
                 if (flush) {
                     try {
@@ -2423,6 +2461,14 @@ public void setOptimizeReuseResults(boolean b) {
         optimizeReuseResults = b;
     }
 
+    public boolean getOptimizeHashJoin() {
+        return optimizeHashJoin;
+    }
+
+    public void setOptimizeHashJoin(boolean b) {
+        optimizeHashJoin = b;
+    }
+
     @Override
     public Object getLobSyncObject() {
         return lobSyncObject;
@@ -2700,7 +2746,7 @@ public void checkpoint() {
                 }
             }
             if (store != null) {
-                store.flush();
+                store.checkpoint();
             }
         }
         getTempFileDeleter().deleteUnused();
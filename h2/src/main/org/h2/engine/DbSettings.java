@@ -65,6 +65,16 @@ public class DbSettings extends SettingsBase {
      */
     public final int autoCompactFillRate = get("AUTO_COMPACT_FILL_RATE", 90);
 
+    /**
+     * Database setting <code>AUTO_COMPACT_RATE_LIMIT</code>
+     * (default: 0, which means no limit).<br />
+     * The maximum number of kilobytes per second written by background
+     * compaction. Compaction also slows down while it makes other operations
+     * slower.<br />
+     * This setting only affects MVStore engine.
+     */
+    public final int autoCompactRateLimit = get("AUTO_COMPACT_RATE_LIMIT", 0);
+
     /**
      * Database setting <code>DATABASE_TO_LOWER</code> (default: false).<br />
      * When set to true unquoted identifiers and short name of database are
@@ -136,6 +146,37 @@ public class DbSettings extends SettingsBase {
     public final int estimatedFunctionTableRows = get(
             "ESTIMATED_FUNCTION_TABLE_ROWS", 1000);
 
+    /**
+     * Database setting <code>GROUP_COMMIT_DELAY</code> (default: 0, which
+     * means group commit is disabled).<br />
+     * If set, each commit is made durable before it returns, and commits of
+     * concurrent sessions within this number of milliseconds are written as
+     * a single chunk and synced to disk once.<br />
+     * This setting only affects MVStore engine.
+     */
+    public final int groupCommitDelay = get("GROUP_COMMIT_DELAY", 0);
+
+    /**
+     * Database setting <code>GROUP_COMMIT_MAX_SIZE</code> (default: 0, which
+     * means no limit).<br />
+     * The maximum number of commits written and synced together when
+     * <code>GROUP_COMMIT_DELAY</code> is set. A full group is written without
+     * waiting for the rest of the delay.<br />
+     * This setting only affects MVStore engine.
+     */
+    public final int groupCommitMaxSize = get("GROUP_COMMIT_MAX_SIZE", 0);
+
+    /**
+     * Database setting <code>HISTORY_RETENTION_TIME</code> (default: 0,
+     * which means no history is kept).<br />
+     * How long, in milliseconds, old versions of the data are kept after they
+     * were replaced, so that they can be queried with
+     * <code>FOR SYSTEM_TIME AS OF</code>. The history is kept while the
+     * database is open only.<br />
+     * This setting only affects MVStore engine.
+     */
+    public final int historyRetentionTime = get("HISTORY_RETENTION_TIME", 0);
+
     /**
      * Database setting <code>LOB_TIMEOUT</code> (default: 300000,
      * which means 5 minutes).<br />
@@ -145,6 +186,17 @@ public class DbSettings extends SettingsBase {
      */
     public final int lobTimeout = get("LOB_TIMEOUT", 300_000);
 
+    /**
+     * Database setting <code>LOCK_ESCALATION_THRESHOLD</code> (default: 0,
+     * which means row locks are not escalated).<br />
+     * After locking this many rows of a table in a transaction, a session
+     * tries to lock the whole table exclusively, if no other session uses
+     * the table. Further rows are then updated without row locks. Reads of
+     * other sessions are not blocked by such a lock.<br />
+     * This setting only affects MVStore engine.
+     */
+    public final int lockEscalationThreshold = get("LOCK_ESCALATION_THRESHOLD", 0);
+
     /**
      * Database setting <code>MAX_COMPACT_COUNT</code>
      * (default: Integer.MAX_VALUE).<br />
@@ -168,6 +220,15 @@ public class DbSettings extends SettingsBase {
      */
     public final int maxQueryTimeout = get("MAX_QUERY_TIMEOUT", 0);
 
+    /**
+     * Database setting <code>OFF_HEAP_CACHE_SIZE</code> (default: 0, which
+     * means no off-heap cache is used).<br />
+     * The size in MB of the second tier of the page cache, which keeps
+     * serialized pages outside of the Java heap.<br />
+     * This setting only affects MVStore engine.
+     */
+    public final int offHeapCacheSize = get("OFF_HEAP_CACHE_SIZE", 0);
+
     /**
      * Database setting <code>OPTIMIZE_DISTINCT</code> (default: true).<br />
      * Improve the performance of simple DISTINCT queries if an index is
@@ -261,6 +322,24 @@ public class DbSettings extends SettingsBase {
      */
     public final int queryCacheSize = get("QUERY_CACHE_SIZE", 8);
 
+    /**
+     * Database setting <code>READ_AHEAD_PAGES</code> (default: 0, which means
+     * no read-ahead).<br />
+     * The number of leaf pages that are read into the cache in the background
+     * ahead of table and index scans.<br />
+     * This setting only affects MVStore engine.
+     */
+    public final int readAheadPages = get("READ_AHEAD_PAGES", 0);
+
+    /**
+     * Database setting <code>REDO_LOG_SIZE</code> (default: 0, which means no
+     * redo log).<br />
+     * The size of the redo log in MB. Commits append the changed rows to the
+     * redo log, and the changed pages are stored only when it is full.<br />
+     * This setting only affects MVStore engine.
+     */
+    public final int redoLogSize = get("REDO_LOG_SIZE", 0);
+
     /**
      * Database setting <code>RECOMPILE_ALWAYS</code> (default: false).<br />
      * Always recompile prepared statements.
@@ -285,6 +364,17 @@ public class DbSettings extends SettingsBase {
     public final boolean shareLinkedConnections = get(
             "SHARE_LINKED_CONNECTIONS", true);
 
+    /**
+     * Database setting <code>SNAPSHOT_RETENTION_TIME</code>
+     * (default: 60000).<br />
+     * How long, in milliseconds, a bounded snapshot (see
+     * <code>SET BOUNDED_SNAPSHOT</code>) keeps the old data it reads. A
+     * statement that reads through an older bounded snapshot fails instead of
+     * preventing the space of the old data from being reused.<br />
+     * This setting only affects MVStore engine.
+     */
+    public final int snapshotRetentionTime = get("SNAPSHOT_RETENTION_TIME", 60_000);
+
     /**
      * Database setting <code>DEFAULT_TABLE_ENGINE</code>
      * (default: null).<br />
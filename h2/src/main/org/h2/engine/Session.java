@@ -18,6 +18,7 @@
 import java.util.Random;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.h2.api.ErrorCode;
@@ -191,6 +192,8 @@ private static final class RowNumberAndValue {
     private HashMap<Object, ViewIndex> subQueryIndexCache;
     private boolean forceJoinOrder;
     private boolean lazyQueryExecution;
+    private boolean boundedSnapshot;
+    private int queryParallelism = 1;
 
     private BitSet nonKeywords;
 
@@ -228,6 +231,11 @@ private static final class RowNumberAndValue {
      */
     private IsolationLevel isolationLevel = IsolationLevel.READ_COMMITTED;
 
+    /**
+     * Whether new transactions are read-only. Used only with MVStore engine.
+     */
+    private boolean transactionReadOnly;
+
     /**
      * The snapshot data modification id. If isolation level doesn't allow
      * non-repeatable reads the session uses a snapshot versions of data. After
@@ -270,6 +278,22 @@ public boolean isLazyQueryExecution() {
         return lazyQueryExecution;
     }
 
+    public void setBoundedSnapshot(boolean boundedSnapshot) {
+        this.boundedSnapshot = boundedSnapshot;
+    }
+
+    public boolean isBoundedSnapshot() {
+        return boundedSnapshot;
+    }
+
+    public void setQueryParallelism(int queryParallelism) {
+        this.queryParallelism = queryParallelism;
+    }
+
+    public int getQueryParallelism() {
+        return queryParallelism;
+    }
+
     public void setForceJoinOrder(boolean forceJoinOrder) {
         this.forceJoinOrder = forceJoinOrder;
     }
@@ -679,16 +703,50 @@ public void setPowerOffCount(int count) {
      * @param ddl if the statement was a data definition statement
      */
     public void commit(boolean ddl) {
+        commit(ddl, true, false);
+    }
+
+    /**
+     * Commit the current transaction without storing its changes and without
+     * waiting until they are durable. The changes are visible to other
+     * sessions when this method returns. This only makes a difference with
+     * MVStore engine.
+     */
+    public void commitNoWait() {
+        commit(false, false, false);
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> commitAsync() {
+        CompletableFuture<Long> future = commit(false, false, true);
+        if (future == null) {
+            Store store = database.getStore();
+            if (store == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            future = store.getMvStore().commitAsync();
+        }
+        return future.thenApply(version -> null);
+    }
+
+    private CompletableFuture<Long> commit(boolean ddl, boolean durable, boolean withFuture) {
         checkCommitRollback();
 
         currentTransactionName = null;
         transactionStart = null;
         boolean forRepeatableRead = false;
+        CompletableFuture<Long> future = null;
         if (transaction != null) {
             forRepeatableRead = !transaction.allowNonRepeatableRead();
             try {
                 markUsedTablesAsUpdated();
-                transaction.commit();
+                if (durable) {
+                    transaction.commit();
+                } else if (withFuture) {
+                    future = transaction.commitAsync();
+                } else {
+                    transaction.commitNoWait();
+                }
             } finally {
                 transaction = null;
             }
@@ -712,6 +770,7 @@ public void commit(boolean ddl) {
         }
         analyzeTables();
         endTransaction(forRepeatableRead);
+        return future;
     }
 
     private void markUsedTablesAsUpdated() {
@@ -1801,7 +1860,9 @@ public Transaction getTransaction() {
                     database.shutdownImmediately();
                     throw DbException.get(ErrorCode.DATABASE_IS_CLOSED, backgroundException);
                 }
-                transaction = store.getTransactionStore().begin(this, this.lockTimeout, id, isolationLevel);
+                TransactionStore transactionStore = store.getTransactionStore();
+                transaction = transactionReadOnly ? transactionStore.beginReadOnly(id, isolationLevel)
+                        : transactionStore.begin(this, this.lockTimeout, id, isolationLevel);
             }
             startStatement = -1;
         }
@@ -1858,6 +1919,7 @@ public void startStatementWithinTransaction(Command command) {
                     break;
                 }
             }
+            transaction.setBoundedSnapshot(boundedSnapshot);
             transaction.markStatementStart(maps);
         }
         startStatement = -1;
@@ -2107,6 +2169,33 @@ public void setIsolationLevel(IsolationLevel isolationLevel) {
         }
     }
 
+    /**
+     * Returns whether new transactions of this session are read-only.
+     *
+     * @return whether new transactions are read-only
+     */
+    @Override
+    public boolean isTransactionReadOnly() {
+        return transactionReadOnly;
+    }
+
+    /**
+     * Sets whether new transactions of this session are read-only. If the
+     * setting is changed, the current transaction is committed. Read-only
+     * transactions can't change data, but they don't take a transaction slot
+     * and don't track changes. This setting has effect only with MVStore
+     * engine.
+     *
+     * @param transactionReadOnly whether new transactions are read-only
+     */
+    @Override
+    public void setTransactionReadOnly(boolean transactionReadOnly) {
+        if (transactionReadOnly != this.transactionReadOnly) {
+            commit(false);
+            this.transactionReadOnly = transactionReadOnly;
+        }
+    }
+
     /**
      * Gets bit set of non-keywords.
      *
@@ -7,6 +7,7 @@
 
 import java.io.Closeable;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 import org.h2.command.CommandInterface;
 import org.h2.jdbc.meta.DatabaseMeta;
 import org.h2.message.Trace;
@@ -184,6 +185,15 @@ public DynamicSettings(Mode mode, TimeZoneProvider timeZone) {
      */
     void setAutoCommit(boolean autoCommit);
 
+    /**
+     * Commit the current transaction without waiting until its changes are
+     * durable. The changes are visible to other sessions when this method
+     * returns.
+     *
+     * @return a future, completed when the changes are persisted and synced
+     */
+    CompletableFuture<Void> commitAsync();
+
     /**
      * Add a temporary LOB, which is closed when the session commits.
      *
@@ -242,6 +252,21 @@ public DynamicSettings(Mode mode, TimeZoneProvider timeZone) {
      */
     void setIsolationLevel(IsolationLevel isolationLevel);
 
+    /**
+     * Returns whether new transactions are read-only.
+     *
+     * @return whether new transactions are read-only
+     */
+    boolean isTransactionReadOnly();
+
+    /**
+     * Sets whether new transactions are read-only. If the setting is changed,
+     * the current transaction is committed.
+     *
+     * @param transactionReadOnly whether new transactions are read-only
+     */
+    void setTransactionReadOnly(boolean transactionReadOnly);
+
     /**
      * Returns static settings. These settings cannot be changed during
      * lifecycle of session.
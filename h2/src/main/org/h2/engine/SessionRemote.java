@@ -9,6 +9,7 @@
 import java.net.Socket;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 import org.h2.api.DatabaseEventListener;
 import org.h2.api.ErrorCode;
 import org.h2.api.JavaObjectSerializer;
@@ -243,6 +244,12 @@ public void setAutoCommit(boolean autoCommit) {
         this.autoCommit = autoCommit;
     }
 
+    @Override
+    public CompletableFuture<Void> commitAsync() {
+        // the server can't report when the changes are durable
+        throw DbException.getUnsupportedException("remote");
+    }
+
     public void setAutoCommitFromServer(boolean autoCommit) {
         if (cluster) {
             if (autoCommit) {
@@ -860,6 +867,29 @@ public void setIsolationLevel(IsolationLevel isolationLevel) {
         }
     }
 
+    @Override
+    public boolean isTransactionReadOnly() {
+        if (getClientVersion() >= Constants.TCP_PROTOCOL_VERSION_21) {
+            try (CommandInterface command = prepareCommand(
+                    "SELECT TRANSACTION_READ_ONLY FROM INFORMATION_SCHEMA.SESSIONS WHERE ID = SESSION_ID()", 1);
+                    ResultInterface result = command.executeQuery(1, false)) {
+                result.next();
+                return result.currentRow()[0].getBoolean();
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void setTransactionReadOnly(boolean transactionReadOnly) {
+        if (getClientVersion() >= Constants.TCP_PROTOCOL_VERSION_21) {
+            try (CommandInterface command = prepareCommand("SET SESSION CHARACTERISTICS AS TRANSACTION "
+                    + (transactionReadOnly ? "READ ONLY" : "READ WRITE"), 0)) {
+                command.executeUpdate(null);
+            }
+        }
+    }
+
     @Override
     public StaticSettings getStaticSettings() {
         StaticSettings settings = staticSettings;
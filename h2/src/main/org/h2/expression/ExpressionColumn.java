@@ -376,6 +376,9 @@ public boolean isEverything(ExpressionVisitor visitor) {
             }
             visitor.addColumn2(column);
             return true;
+        case ExpressionVisitor.PARALLELIZABLE:
+            visitor.addExpression(this);
+            return true;
         default:
             throw DbException.throwInternalError("type=" + visitor.getType());
         }
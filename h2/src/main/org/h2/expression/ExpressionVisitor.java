@@ -5,6 +5,7 @@
  */
 package org.h2.expression;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import org.h2.command.query.AllColumnsForPlan;
 import org.h2.engine.DbObject;
@@ -137,6 +138,25 @@ public class ExpressionVisitor {
      */
     public static final int GET_COLUMNS2 = 10;
 
+    /**
+     * Can the expression be evaluated by copies of the query in parallel
+     * threads? Aggregates, columns, and parameters are collected in the order
+     * of traversal (addExpression).
+     * <p>
+     * The worker threads share the session, which is not thread-safe. The
+     * thread of the session waits for them, so the session doesn't change in
+     * the meantime, and the time of the command is initialized before they are
+     * started. An expression may only be evaluated in a worker if it reads
+     * nothing but the settings of the session and of the database, and
+     * constant values. Expressions which change the state of the session,
+     * including session variables, temporary LOBs or results, caches, and the
+     * random generator of the session, or which use its transaction, its
+     * connection, or other sessions, must return false. This check doesn't
+     * rely on DETERMINISTIC.
+     * </p>
+     */
+    public static final int PARALLELIZABLE = 11;
+
     /**
      * The visitor singleton for the type QUERY_COMPARABLE.
      */
@@ -151,13 +171,14 @@ public class ExpressionVisitor {
     private final long[] maxDataModificationId;
     private final ColumnResolver resolver;
     private final HashSet<Column> columns2;
+    private final ArrayList<Expression> expressions;
 
     private ExpressionVisitor(int type,
             int queryLevel,
             HashSet<DbObject> dependencies,
             AllColumnsForPlan columns1, Table table, ColumnResolver resolver,
             long[] maxDataModificationId,
-            HashSet<Column> columns2) {
+            HashSet<Column> columns2, ArrayList<Expression> expressions) {
         this.type = type;
         this.queryLevel = queryLevel;
         this.dependencies = dependencies;
@@ -166,6 +187,7 @@ private ExpressionVisitor(int type,
         this.resolver = resolver;
         this.maxDataModificationId = maxDataModificationId;
         this.columns2 = columns2;
+        this.expressions = expressions;
     }
 
     private ExpressionVisitor(int type) {
@@ -177,6 +199,7 @@ private ExpressionVisitor(int type) {
         this.table = null;
         this.resolver = null;
         this.maxDataModificationId = null;
+        this.expressions = null;
     }
 
     private ExpressionVisitor(int type, int queryLevel) {
@@ -188,6 +211,7 @@ private ExpressionVisitor(int type, int queryLevel) {
         this.table = null;
         this.resolver = null;
         this.maxDataModificationId = null;
+        this.expressions = null;
     }
 
     /**
@@ -199,7 +223,7 @@ private ExpressionVisitor(int type, int queryLevel) {
     public static ExpressionVisitor getDependenciesVisitor(
             HashSet<DbObject> dependencies) {
         return new ExpressionVisitor(GET_DEPENDENCIES, 0, dependencies, null,
-                null, null, null, null);
+                null, null, null, null, null);
     }
 
     /**
@@ -210,7 +234,7 @@ public static ExpressionVisitor getDependenciesVisitor(
      */
     public static ExpressionVisitor getOptimizableVisitor(Table table) {
         return new ExpressionVisitor(OPTIMIZABLE_AGGREGATE, 0, null,
-                null, table, null, null, null);
+                null, table, null, null, null, null);
     }
 
     /**
@@ -222,7 +246,7 @@ public static ExpressionVisitor getOptimizableVisitor(Table table) {
      */
     public static ExpressionVisitor getNotFromResolverVisitor(ColumnResolver resolver) {
         return new ExpressionVisitor(NOT_FROM_RESOLVER, 0, null, null, null,
-                resolver, null, null);
+                resolver, null, null, null);
     }
 
     /**
@@ -232,7 +256,7 @@ public static ExpressionVisitor getNotFromResolverVisitor(ColumnResolver resolve
      * @return the new visitor
      */
     public static ExpressionVisitor getColumnsVisitor(AllColumnsForPlan columns) {
-        return new ExpressionVisitor(GET_COLUMNS1, 0, null, columns, null, null, null, null);
+        return new ExpressionVisitor(GET_COLUMNS1, 0, null, columns, null, null, null, null, null);
     }
 
     /**
@@ -243,12 +267,24 @@ public static ExpressionVisitor getColumnsVisitor(AllColumnsForPlan columns) {
      * @return the new visitor
      */
     public static ExpressionVisitor getColumnsVisitor(HashSet<Column> columns, Table table) {
-        return new ExpressionVisitor(GET_COLUMNS2, 0, null, null, table, null, null, columns);
+        return new ExpressionVisitor(GET_COLUMNS2, 0, null, null, table, null, null, columns, null);
     }
 
     public static ExpressionVisitor getMaxModificationIdVisitor() {
         return new ExpressionVisitor(SET_MAX_DATA_MODIFICATION_ID, 0, null,
-                null, null, null, new long[1], null);
+                null, null, null, new long[1], null, null);
+    }
+
+    /**
+     * Create a new visitor to check whether the expressions can be evaluated
+     * by copies of the query in parallel threads, and to collect their
+     * aggregates, columns, and parameters.
+     *
+     * @param expressions the list to add the collected expressions to
+     * @return the new visitor
+     */
+    public static ExpressionVisitor getParallelizableVisitor(ArrayList<Expression> expressions) {
+        return new ExpressionVisitor(PARALLELIZABLE, 0, null, null, null, null, null, null, expressions);
     }
 
     /**
@@ -283,6 +319,16 @@ void addColumn2(Column column) {
         }
     }
 
+    /**
+     * Add an aggregate, a column, or a parameter to the list of expressions.
+     * This is used for PARALLELIZABLE visitors.
+     *
+     * @param expression the expression
+     */
+    public void addExpression(Expression expression) {
+        expressions.add(expression);
+    }
+
     /**
      * Get the dependency set.
      * This is used for GET_DEPENDENCIES visitors.
@@ -110,6 +110,9 @@ public boolean isEverything(ExpressionVisitor visitor) {
             return true;
         case ExpressionVisitor.INDEPENDENT:
             return value != null;
+        case ExpressionVisitor.PARALLELIZABLE:
+            visitor.addExpression(this);
+            return true;
         default:
             throw DbException.throwInternalError("type="+visitor.getType());
         }
@@ -63,6 +63,8 @@ public boolean isEverything(ExpressionVisitor visitor) {
         case ExpressionVisitor.GET_COLUMNS2:
             return true;
         case ExpressionVisitor.DETERMINISTIC:
+        case ExpressionVisitor.PARALLELIZABLE:
+            // session variables may be changed by SET()
             return false;
         default:
             throw DbException.throwInternalError("type="+visitor.getType());
@@ -344,6 +344,26 @@ protected Object createAggregateData() {
         return AggregateData.create(aggregateType, distinct, type.getValueType(), orderByList != null);
     }
 
+    @Override
+    public Value getGroupDataState(Object data) {
+        int valueType = type.getValueType();
+        // enums are read back as integers, lobs may be temporary
+        if (over != null || !(data instanceof AggregateData) || valueType == Value.ENUM
+                || DataType.isLargeObject(valueType)) {
+            return null;
+        }
+        return ((AggregateData) data).getState();
+    }
+
+    @Override
+    public Object mergeGroupDataState(Session session, Object data, Value state) {
+        if (data == null) {
+            data = createAggregateData();
+        }
+        ((AggregateData) data).mergeState(session, state);
+        return data;
+    }
+
     @Override
     public Value getValue(Session session) {
         return select.isQuickAggregateQuery() ? getValueQuick(session) : super.getValue(session);
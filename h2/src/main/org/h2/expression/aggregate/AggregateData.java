@@ -93,4 +93,25 @@ static AggregateData create(AggregateType aggregateType, boolean distinct, int d
      * @return the value
      */
     abstract Value getValue(Session session);
+
+    /**
+     * Get the state of this aggregate, to merge it later into another
+     * aggregate of the same type.
+     *
+     * @return the state, or {@code null} if this aggregate does not support it
+     */
+    Value getState() {
+        return null;
+    }
+
+    /**
+     * Merge the state of another aggregate of the same type into this
+     * aggregate.
+     *
+     * @param session the session
+     * @param state the state returned by {@link #getState()}
+     */
+    void mergeState(Session session, Value state) {
+        throw DbException.throwInternalError();
+    }
 }
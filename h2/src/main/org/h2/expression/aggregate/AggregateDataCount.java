@@ -35,4 +35,14 @@ Value getValue(Session session) {
         return ValueBigint.get(count);
     }
 
+    @Override
+    Value getState() {
+        return ValueBigint.get(count);
+    }
+
+    @Override
+    void mergeState(Session session, Value state) {
+        count += state.getLong();
+    }
+
 }
@@ -13,6 +13,7 @@
 import org.h2.value.ValueBoolean;
 import org.h2.value.ValueDouble;
 import org.h2.value.ValueNull;
+import org.h2.value.ValueRow;
 
 /**
  * Data stored while calculating an aggregate.
@@ -180,6 +181,45 @@ Value getValue(Session session) {
         return v == null ? ValueNull.INSTANCE : v.convertTo(dataType);
     }
 
+    @Override
+    Value getState() {
+        return ValueRow.get(new Value[] { ValueBigint.get(count), value == null ? ValueNull.INSTANCE : value,
+                ValueDouble.get(mean), ValueDouble.get(m2) });
+    }
+
+    @Override
+    void mergeState(Session session, Value state) {
+        Value[] values = ((ValueRow) state).getList();
+        long otherCount = values[0].getLong();
+        if (otherCount == 0) {
+            return;
+        }
+        switch (aggregateType) {
+        case STDDEV_POP:
+        case STDDEV_SAMP:
+        case VAR_POP:
+        case VAR_SAMP: {
+            // Chan's method to combine the results of Welford's method
+            double otherMean = values[2].getDouble(), otherM2 = values[3].getDouble();
+            if (count == 0) {
+                mean = otherMean;
+                m2 = otherM2;
+            } else {
+                long n = count + otherCount;
+                double delta = otherMean - mean;
+                mean += delta * otherCount / n;
+                m2 += otherM2 + delta * delta * count * otherCount / n;
+            }
+            count += otherCount;
+            break;
+        }
+        default:
+            // the other result is added like a single value
+            add(session, values[1]);
+            count += otherCount - 1;
+        }
+    }
+
     private static Value divide(Value a, long by) {
         if (by == 0) {
             return ValueNull.INSTANCE;
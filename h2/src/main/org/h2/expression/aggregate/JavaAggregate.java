@@ -71,6 +71,9 @@ public boolean isEverything(ExpressionVisitor visitor) {
         case ExpressionVisitor.GET_DEPENDENCIES:
             visitor.addDependency(userAggregate);
             break;
+        case ExpressionVisitor.PARALLELIZABLE:
+            // user code may use the connection of the session
+            return false;
         default:
         }
         for (Expression e : args) {
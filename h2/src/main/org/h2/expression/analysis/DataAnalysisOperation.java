@@ -358,9 +358,53 @@ protected Object getGroupData(SelectGroups groupData, boolean ifExists) {
      */
     protected abstract Object createAggregateData();
 
+    /**
+     * Returns the state of the group data object as a value, so the group data
+     * can be written to a temporary result and merged later with
+     * {@link #mergeGroupDataState(Session, Object, Value)}.
+     *
+     * @param data
+     *            the group data object
+     * @return the state, or {@code null} if the group data of this operation
+     *         can not be written out
+     */
+    public Value getGroupDataState(Object data) {
+        return null;
+    }
+
+    /**
+     * Merges the state of a partial group data object into the specified group
+     * data object.
+     *
+     * @param session
+     *            the session
+     * @param data
+     *            the group data object, or {@code null}
+     * @param state
+     *            the state returned by {@link #getGroupDataState(Object)}
+     * @return the group data object with merged state
+     */
+    public Object mergeGroupDataState(Session session, Object data, Value state) {
+        throw DbException.throwInternalError();
+    }
+
+    /**
+     * Returns whether the group data objects of this operation have states
+     * that can be merged with
+     * {@link #mergeGroupDataState(Session, Object, Value)}.
+     *
+     * @return whether the states of group data objects are supported
+     */
+    public boolean isGroupDataStateSupported() {
+        return over == null && getGroupDataState(createAggregateData()) != null;
+    }
+
     @Override
     public boolean isEverything(ExpressionVisitor visitor) {
         if (over == null) {
+            if (visitor.getType() == ExpressionVisitor.PARALLELIZABLE) {
+                visitor.addExpression(this);
+            }
             return true;
         }
         switch (visitor.getType()) {
@@ -368,6 +412,7 @@ public boolean isEverything(ExpressionVisitor visitor) {
         case ExpressionVisitor.OPTIMIZABLE_AGGREGATE:
         case ExpressionVisitor.DETERMINISTIC:
         case ExpressionVisitor.INDEPENDENT:
+        case ExpressionVisitor.PARALLELIZABLE:
             return false;
         case ExpressionVisitor.EVALUATABLE:
         case ExpressionVisitor.READONLY:
@@ -94,6 +94,7 @@ public boolean isEverything(ExpressionVisitor visitor) {
         case ExpressionVisitor.INDEPENDENT:
         case ExpressionVisitor.DETERMINISTIC:
         case ExpressionVisitor.QUERY_COMPARABLE:
+        case ExpressionVisitor.PARALLELIZABLE:
             return false;
         case ExpressionVisitor.READONLY:
             if (!current) {
@@ -1926,6 +1926,8 @@ public boolean isEverything(ExpressionVisitor visitor) {
         case ExpressionVisitor.QUERY_COMPARABLE:
         case ExpressionVisitor.READONLY:
             return info.deterministic;
+        case ExpressionVisitor.PARALLELIZABLE:
+            return isParallelizable(info.type);
         case ExpressionVisitor.EVALUATABLE:
         case ExpressionVisitor.GET_DEPENDENCIES:
         case ExpressionVisitor.INDEPENDENT:
@@ -1940,6 +1942,42 @@ public boolean isEverything(ExpressionVisitor visitor) {
         }
     }
 
+    /**
+     * Check whether the function of the specified type may be evaluated in a
+     * thread other than the thread of the session.
+     *
+     * @param type the function type
+     * @return false if the function changes or uses the state of the session
+     */
+    private static boolean isParallelizable(int type) {
+        switch (type) {
+        case RAND:
+            // changes the random generator of the session
+        case SET:
+            // changes a session variable
+        case FILE_READ:
+            // creates a temporary LOB of the session
+        case TRANSACTION_ID:
+            // uses the transaction of the session
+        case DISK_SPACE_USED:
+        case ESTIMATED_ENVELOPE:
+            // read tables with the session
+        case CSVREAD:
+        case CSVWRITE:
+        case LINK_SCHEMA:
+            // use the connection of the session
+        case FILE_WRITE:
+        case CANCEL_SESSION:
+        case ABORT_SESSION:
+        case TABLE:
+        case TABLE_DISTINCT:
+        case UNNEST:
+            return false;
+        default:
+            return true;
+        }
+    }
+
     @Override
     public boolean isDeterministic() {
         return info.deterministic;
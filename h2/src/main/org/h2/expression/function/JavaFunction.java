@@ -121,6 +121,9 @@ public boolean isEverything(ExpressionVisitor visitor) {
         case ExpressionVisitor.GET_DEPENDENCIES:
             visitor.addDependency(functionAlias);
             break;
+        case ExpressionVisitor.PARALLELIZABLE:
+            // user code may use the connection of the session
+            return false;
         default:
         }
         for (Expression e : args) {
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2004-2020 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.h2.command.query.AllColumnsForPlan;
+import org.h2.engine.Database;
+import org.h2.engine.Session;
+import org.h2.expression.ExpressionVisitor;
+import org.h2.expression.condition.Comparison;
+import org.h2.message.DbException;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.result.SortOrder;
+import org.h2.table.Column;
+import org.h2.table.IndexColumn;
+import org.h2.table.Table;
+import org.h2.table.TableFilter;
+import org.h2.table.TableType;
+import org.h2.value.DataType;
+import org.h2.value.Value;
+import org.h2.value.ValueNull;
+import org.h2.value.ValueRow;
+
+/**
+ * A temporary index of a joined table on the columns of equality join
+ * conditions. The rows of the table are read once and kept in a hash table,
+ * or in a tree map if a data type has no total ordering, so that each row of
+ * the outer tables needs one lookup instead of a scan of the table. The map
+ * is built on first use, and built again only if the table was changed or if
+ * the transaction of the session is another one.
+ */
+public class HashJoinIndex extends BaseIndex {
+
+    private final boolean totalOrdering;
+
+    /**
+     * The estimated number of rows of the outer query for a correlated
+     * subquery, or 0.
+     */
+    private final double correlatedRows;
+
+    private Map<Value, ArrayList<Row>> rows;
+
+    private ArrayList<Row> allRows;
+
+    private boolean tooLarge;
+
+    private long buildModificationId;
+
+    private Object buildTransaction;
+
+    private HashJoinIndex(Table table, IndexColumn[] columns, double correlatedRows) {
+        super(table, 0, null, columns, IndexType.createNonUnique(false, true, false));
+        this.correlatedRows = correlatedRows;
+        boolean totalOrdering = true;
+        for (IndexColumn c : columns) {
+            totalOrdering &= DataType.hasTotalOrdering(c.column.getType().getValueType());
+        }
+        this.totalOrdering = totalOrdering;
+    }
+
+    /**
+     * Create a hash join index for a table filter, if possible.
+     *
+     * @param session the session
+     * @param filter the table filter
+     * @param first whether this is the first table filter of the query
+     * @param masks the IndexCondition search masks, one for each column in
+     *            the table
+     * @return the index, or null if a hash join can not be used
+     */
+    public static HashJoinIndex create(Session session, TableFilter filter, boolean first, int[] masks) {
+        Table table = filter.getTable();
+        Database database = session.getDatabase();
+        if (masks == null || table.getTableType() != TableType.TABLE || !table.isDeterministic()
+                || table.getRowCountApproximation(session) > database.getMaxMemoryRows()) {
+            return null;
+        }
+        ArrayList<IndexColumn> list = new ArrayList<>();
+        HashSet<Table> outerTables = new HashSet<>();
+        for (IndexCondition condition : filter.getIndexConditions()) {
+            Column column = condition.getColumn();
+            if (condition.getCompareType() != Comparison.EQUAL || column.getColumnId() < 0
+                    || !condition.isEvaluatable()
+                    || (masks[column.getColumnId()] & IndexCondition.EQUALITY) != IndexCondition.EQUALITY
+                    || !DataType.isIndexable(column.getType())) {
+                continue;
+            }
+            int type = column.getType().getValueType(),
+                    expressionType = condition.getExpression().getType().getValueType();
+            if (type != expressionType && (!isInteger(type) || !isInteger(expressionType))) {
+                // the values are compared as another data type
+                continue;
+            }
+            if (first) {
+                // only conditions with columns of an outer query are
+                // evaluated more than once
+                HashSet<Column> columns = new HashSet<>();
+                condition.getExpression().isEverything(ExpressionVisitor.getColumnsVisitor(columns, null));
+                if (columns.isEmpty()) {
+                    continue;
+                }
+                for (Column c : columns) {
+                    outerTables.add(c.getTable());
+                }
+            }
+            boolean found = false;
+            for (IndexColumn c : list) {
+                if (c.column == column) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                list.add(new IndexColumn(column));
+            }
+        }
+        if (list.isEmpty()) {
+            return null;
+        }
+        double correlatedRows = 0d;
+        if (first) {
+            // the outer query is not planned yet
+            correlatedRows = 1d;
+            for (Table t : outerTables) {
+                if (t.canGetRowCount(session)) {
+                    correlatedRows *= Math.max(t.getRowCountApproximation(session), 1);
+                }
+            }
+        }
+        return new HashJoinIndex(table, list.toArray(new IndexColumn[0]), correlatedRows);
+    }
+
+    @Override
+    public Cursor find(Session session, SearchRow first, SearchRow last) {
+        build(session);
+        if (tooLarge) {
+            return table.getScanIndex(session).find(session, null, null);
+        }
+        Value[] values = getSearchValues(session, first, last);
+        if (values == null) {
+            return new MetaCursor(allRows);
+        }
+        int length = values.length;
+        boolean complete = true;
+        for (Value v : values) {
+            if (v == null) {
+                complete = false;
+                break;
+            }
+        }
+        if (complete) {
+            ArrayList<Row> list = rows.get(length == 1 ? values[0] : ValueRow.get(values));
+            return new MetaCursor(list != null ? list : new ArrayList<>(0));
+        }
+        // an IN condition only sets the value of one column
+        ArrayList<Row> list = new ArrayList<>();
+        loop: for (Row row : allRows) {
+            for (int i = 0; i < length; i++) {
+                Value v = values[i];
+                if (v != null && !session.areEqual(v, row.getValue(columnIds[i]))) {
+                    continue loop;
+                }
+            }
+            list.add(row);
+        }
+        return new MetaCursor(list);
+    }
+
+    private void build(Session session) {
+        long modificationId = table.getMaxDataModificationId();
+        Object transaction = session.getTransaction();
+        if (allRows != null || tooLarge) {
+            if (modificationId == buildModificationId && transaction == buildTransaction) {
+                return;
+            }
+        }
+        rows = null;
+        allRows = null;
+        tooLarge = false;
+        int maxRows = database.getMaxMemoryRows();
+        Map<Value, ArrayList<Row>> map = totalOrdering ? new HashMap<>()
+                : new TreeMap<>(database.getCompareMode());
+        ArrayList<Row> all = new ArrayList<>();
+        Cursor cursor = table.getScanIndex(session).find(session, null, null);
+        while (cursor.next()) {
+            if (all.size() >= maxRows) {
+                tooLarge = true;
+                break;
+            }
+            Row row = cursor.get();
+            all.add(row);
+            map.computeIfAbsent(getKey(row), k -> new ArrayList<>(1)).add(row);
+        }
+        if (!tooLarge) {
+            rows = map;
+            allRows = all;
+        }
+        buildModificationId = modificationId;
+        buildTransaction = transaction;
+    }
+
+    private Value getKey(SearchRow row) {
+        int length = columnIds.length;
+        if (length == 1) {
+            return row.getValue(columnIds[0]);
+        }
+        Value[] values = new Value[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = row.getValue(columnIds[i]);
+        }
+        return ValueRow.get(values);
+    }
+
+    /**
+     * Get the values of the columns to look up. A value is null if the search
+     * rows do not contain the same value of the column.
+     *
+     * @return the values, or null if no column has a value
+     */
+    private Value[] getSearchValues(Session session, SearchRow first, SearchRow last) {
+        if (first == null || last == null) {
+            return null;
+        }
+        int length = columnIds.length;
+        Value[] values = new Value[length];
+        boolean found = false;
+        for (int i = 0; i < length; i++) {
+            int id = columnIds[i];
+            Value v = first.getValue(id);
+            if (v == null || !v.equals(last.getValue(id))) {
+                continue;
+            }
+            int type = columns[i].getType().getValueType();
+            if (v.getValueType() != type && v != ValueNull.INSTANCE) {
+                if (!isInteger(type) || !isInteger(v.getValueType())) {
+                    // other conversions may not preserve equality
+                    continue;
+                }
+                try {
+                    v = columns[i].convert(session, v);
+                } catch (DbException e) {
+                    // out of range
+                    continue;
+                }
+            }
+            values[i] = v;
+            found = true;
+        }
+        return found ? values : null;
+    }
+
+    private static boolean isInteger(int type) {
+        return type >= Value.TINYINT && type <= Value.BIGINT;
+    }
+
+    @Override
+    public double getCost(Session session, int[] masks, TableFilter[] filters, int filter, SortOrder sortOrder,
+            AllColumnsForPlan allColumnsSet) {
+        return getCost(session, masks, filters, filter, allColumnsSet, 1d);
+    }
+
+    /**
+     * Estimate the cost of the hash join. A lookup costs as much as a lookup
+     * in a secondary index on the same columns, so a usable index is always
+     * preferred, and the cost of reading the rows into the hash table is
+     * shared by the rows of the outer tables.
+     *
+     * @param session the session
+     * @param masks the IndexCondition search masks, one for each column in
+     *            the table
+     * @param filters all joined table filters
+     * @param filter the current table filter index
+     * @param allColumnsSet the set of all columns
+     * @param outerRows the estimated number of rows of the preceding table
+     *            filters
+     * @return the estimated cost
+     */
+    public double getCost(Session session, int[] masks, TableFilter[] filters, int filter,
+            AllColumnsForPlan allColumnsSet, double outerRows) {
+        if (correlatedRows > 0d) {
+            outerRows = correlatedRows;
+        }
+        long rowCount = table.getRowCountApproximation(session);
+        double buildCost = table.getScanIndex(session).getCost(session, null, filters, filter, null, allColumnsSet);
+        return 10 * getCostRangeIndex(masks, rowCount, filters, filter, null, false, null)
+                + buildCost / Math.max(outerRows, 1d);
+    }
+
+    @Override
+    public void close(Session session) {
+        rows = null;
+        allRows = null;
+    }
+
+    @Override
+    public void add(Session session, Row row) {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    @Override
+    public void remove(Session session, Row row) {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    @Override
+    public void truncate(Session session) {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    @Override
+    public void remove(Session session) {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    @Override
+    public void checkRename() {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    @Override
+    public boolean needRebuild() {
+        return false;
+    }
+
+    @Override
+    public String getCreateSQL() {
+        return null;
+    }
+
+    @Override
+    public long getRowCount(Session session) {
+        return table.getRowCount(session);
+    }
+
+    @Override
+    public long getRowCountApproximation(Session session) {
+        return table.getRowCountApproximation(session);
+    }
+
+    @Override
+    public long getDiskSpaceUsed() {
+        return 0;
+    }
+
+    @Override
+    public String getPlanSQL() {
+        return table.getSQL(new StringBuilder(), TRACE_SQL_FLAGS).append(".hashJoin").toString();
+    }
+
+}
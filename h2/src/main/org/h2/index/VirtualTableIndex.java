@@ -17,7 +17,11 @@
 public abstract class VirtualTableIndex extends BaseIndex {
 
     protected VirtualTableIndex(VirtualTable table, String name, IndexColumn[] columns) {
-        super(table, 0, name, columns, IndexType.createNonUnique(true));
+        this(table, name, columns, IndexType.createNonUnique(true));
+    }
+
+    protected VirtualTableIndex(VirtualTable table, String name, IndexColumn[] columns, IndexType indexType) {
+        super(table, 0, name, columns, indexType);
     }
 
     @Override
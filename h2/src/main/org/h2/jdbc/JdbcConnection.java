@@ -29,6 +29,7 @@
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 
@@ -464,6 +465,32 @@ && getAutoCommit()) {
         }
     }
 
+    /**
+     * Commits the current transaction without waiting until the changes are
+     * written and synced to disk. The changes are visible to other connections
+     * when this method returns. This call has only an effect if auto commit
+     * is switched off.
+     * <p>
+     * This method is not supported for remote connections.
+     * </p>
+     *
+     * @return a future, completed when the changes are durable
+     * @throws SQLException if the connection is closed or remote
+     */
+    public synchronized CompletableFuture<Void> commitAsync() throws SQLException {
+        try {
+            debugCodeCall("commitAsync");
+            checkClosed();
+            if (SysProperties.FORCE_AUTOCOMMIT_OFF_ON_COMMIT
+                    && getAutoCommit()) {
+                throw DbException.get(ErrorCode.METHOD_DISABLED_ON_AUTOCOMMIT_TRUE, "commitAsync()");
+            }
+            return session.commitAsync();
+        } catch (Exception e) {
+            throw logAndConvert(e);
+        }
+    }
+
     /**
      * Rolls back the current transaction. This call has only an effect if auto
      * commit is switched off.
@@ -519,10 +546,13 @@ public String nativeSQL(String sql) throws SQLException {
     }
 
     /**
-     * According to the JDBC specs, this setting is only a hint to the database
-     * to enable optimizations - it does not cause writes to be prohibited.
+     * Sets whether new transactions are read-only. Read-only transactions are
+     * cheaper with MVStore engine, but they can't change data. Calling this
+     * method with a new value will commit an open transaction. The setting has
+     * no effect with PageStore engine, and it is only a hint for remote
+     * connections to older servers.
      *
-     * @param readOnly ignored
+     * @param readOnly whether new transactions are read-only
      * @throws SQLException if the connection is closed
      */
     @Override
@@ -532,15 +562,17 @@ public void setReadOnly(boolean readOnly) throws SQLException {
                 debugCode("setReadOnly(" + readOnly + ");");
             }
             checkClosed();
+            session.setTransactionReadOnly(readOnly);
         } catch (Exception e) {
             throw logAndConvert(e);
         }
     }
 
     /**
-     * Returns true if the database is read-only.
+     * Returns true if the database is read-only or if new transactions of this
+     * session are read-only.
      *
-     * @return if the database is read-only
+     * @return if the database or the connection is read-only
      * @throws SQLException if the connection is closed
      */
     @Override
@@ -548,6 +580,9 @@ public boolean isReadOnly() throws SQLException {
         try {
             debugCodeCall("isReadOnly");
             checkClosed();
+            if (session.isTransactionReadOnly()) {
+                return true;
+            }
             getReadOnly = prepareCommand("CALL READONLY()", getReadOnly);
             ResultInterface result = getReadOnly.executeQuery(0, false);
             result.next();
@@ -19,7 +19,10 @@
 import org.h2.engine.Constants;
 import org.h2.engine.Database;
 import org.h2.engine.Session;
+import org.h2.mvstore.db.MVTable;
+import org.h2.mvstore.db.TableLockStatistics;
 import org.h2.pagestore.PageStore;
+import org.h2.schema.Schema;
 import org.h2.table.Table;
 import org.h2.util.NetworkConnectionInfo;
 
@@ -280,4 +283,40 @@ public String listSessions() {
         return buff.toString();
     }
 
+    @Override
+    public String listLockStatistics() {
+        StringBuilder buff = new StringBuilder();
+        for (Schema schema : database.getAllSchemas()) {
+            for (Table table : schema.getAllTablesAndViews()) {
+                if (!(table instanceof MVTable)) {
+                    continue;
+                }
+                TableLockStatistics statistics = ((MVTable) table).getLockStatistics();
+                if (!statistics.isUsed()) {
+                    continue;
+                }
+                buff.append(schema.getName()).append('.').append(table.getName()).append('\n');
+                buff.append("shared locks: ").append(statistics.getSharedLocks())
+                        .append(" exclusive locks: ").append(statistics.getExclusiveLocks())
+                        .append(" row locks: ").append(statistics.getRowLocks()).append('\n');
+                buff.append("escalations: ").append(statistics.getEscalations())
+                        .append(" escalated row locks: ").append(statistics.getEscalatedRowLocks()).append('\n');
+                buff.append("waits: ").append(statistics.getWaits())
+                        .append(" wait time ms: ").append(statistics.getWaitTimeNanos() / 1_000_000L)
+                        .append(" max wait time ms: ").append(statistics.getMaxWaitTimeNanos() / 1_000_000L)
+                        .append(" timeouts: ").append(statistics.getTimeouts())
+                        .append(" deadlocks: ").append(statistics.getDeadlocks()).append('\n');
+                buff.append("wait time histogram:");
+                long[] histogram = statistics.getWaitTimeHistogram();
+                long[] limits = TableLockStatistics.WAIT_TIME_BUCKET_LIMITS;
+                for (int i = 0; i < histogram.length; i++) {
+                    buff.append(i < limits.length ? " <" + limits[i] : " >=" + limits[limits.length - 1])
+                            .append("ms: ").append(histogram[i]);
+                }
+                buff.append("\n\n");
+            }
+        }
+        return buff.toString();
+    }
+
 }
@@ -167,4 +167,13 @@ public interface DatabaseInfoMBean {
      */
     String listSessions();
 
+    /**
+     * List the lock counters of the tables that were locked, including waits
+     * for table locks and escalations of row locks.
+     * @h2.resource
+     *
+     * @return the lock statistics
+     */
+    String listLockStatistics();
+
 }
@@ -391,9 +391,10 @@ ByteBuffer readBufferForPage(FileStore fileStore, int offset, long pos) {
         while (true) {
             long originalBlock = block;
             try {
-                long filePos = originalBlock * MVStore.BLOCK_SIZE;
-                long maxPos = filePos + len * MVStore.BLOCK_SIZE;
-                filePos += offset;
+                long chunkPos = originalBlock * MVStore.BLOCK_SIZE;
+                int chunkLength = len * MVStore.BLOCK_SIZE;
+                long maxPos = chunkPos + chunkLength;
+                long filePos = chunkPos + offset;
                 if (filePos < 0) {
                     throw DataUtils.newMVStoreException(
                             DataUtils.ERROR_FILE_CORRUPT,
@@ -403,7 +404,8 @@ ByteBuffer readBufferForPage(FileStore fileStore, int offset, long pos) {
                 int length = DataUtils.getPageMaxLength(pos);
                 if (length == DataUtils.PAGE_LARGE) {
                     // read the first bytes to figure out actual length
-                    length = fileStore.readFully(filePos, 128).getInt();
+                    length = fileStore.readFully(chunkPos, chunkLength, filePos,
+                            (int) Math.min(maxPos - filePos, 128)).getInt();
                     // pageNo is deliberately not included into length to preserve compatibility
                     // TODO: remove this adjustment when page on disk format is re-organized
                     length += 4;
@@ -414,7 +416,7 @@ ByteBuffer readBufferForPage(FileStore fileStore, int offset, long pos) {
                             "Illegal page length {0} reading at {1}; max pos {2} ", length, filePos, maxPos);
                 }
 
-                ByteBuffer buff = fileStore.readFully(filePos, length);
+                ByteBuffer buff = fileStore.readFully(chunkPos, chunkLength, filePos, length);
 
                 if (originalBlock == block) {
                     return buff;
@@ -427,6 +429,39 @@ ByteBuffer readBufferForPage(FileStore fileStore, int offset, long pos) {
         }
     }
 
+    /**
+     * Read a region of this chunk, which may contain multiple pages. The
+     * region is truncated at the end of the chunk.
+     *
+     * @param fileStore to use
+     * @param offset the offset within the chunk
+     * @param length the number of bytes to read
+     * @return ByteBuffer containing the data
+     */
+    ByteBuffer readBuffer(FileStore fileStore, int offset, int length) {
+        assert isSaved() : this;
+        while (true) {
+            long originalBlock = block;
+            try {
+                long chunkPos = originalBlock * MVStore.BLOCK_SIZE;
+                int chunkLength = len * MVStore.BLOCK_SIZE;
+                length = Math.min(chunkLength - offset, length);
+                if (offset < 0 || length < 0) {
+                    throw DataUtils.newMVStoreException(DataUtils.ERROR_FILE_CORRUPT,
+                            "Illegal region {0}..{1} in chunk {2}", offset, length, toString());
+                }
+                ByteBuffer buff = fileStore.readFully(chunkPos, chunkLength, chunkPos + offset, length);
+                if (originalBlock == block) {
+                    return buff;
+                }
+            } catch (MVStoreException ex) {
+                if (originalBlock == block) {
+                    throw ex;
+                }
+            }
+        }
+    }
+
     long[] readToC(FileStore fileStore) {
         assert isSaved() : this;
         assert tocPos > 0;
@@ -23,6 +23,10 @@
     private K last;
     private V lastValue;
     private Page<K,V> lastPage;
+    private final int readAhead;
+    private int leafCount;
+    private Page<K,V> readAheadParent;
+    private int readAheadIndex;
 
 
     public Cursor(RootReference<K,V> rootReference, K from, K to) {
@@ -40,6 +44,7 @@ public Cursor(RootReference<K,V> rootReference, K from, K to, boolean reverse) {
         this.cursorPos = traverseDown(lastPage, from, reverse);
         this.to = to;
         this.reverse = reverse;
+        this.readAhead = lastPage.map.store.getReadAheadPages();
     }
 
     @Override
@@ -61,7 +66,11 @@ public boolean hasNext() {
                 } else {
                     // traverse down to the leaf taking the leftmost path
                     while (!page.isLeaf()) {
+                        Page<K,V> parent = page;
                         page = page.getChildPage(index);
+                        if (readAhead > 0 && page.isLeaf()) {
+                            readAhead(parent, index);
+                        }
                         index = reverse ? upperBound(page) - 1 : 0;
                         if (keeper == null) {
                             cursorPos = new CursorPos<>(page, index, cursorPos);
@@ -172,6 +181,55 @@ static <K,V> CursorPos<K,V> traverseDown(Page<K,V> page, K key, boolean reverse)
         return cursorPos;
     }
 
+    /**
+     * Read the next leaf pages of the parent ahead, when the cursor moved to
+     * the given child. The first leaf is not read ahead, so that short range
+     * lookups do not cause extra reads.
+     *
+     * @param parent the parent page
+     * @param index the index of the child page
+     */
+    private void readAhead(Page<K,V> parent, int index) {
+        if (++leafCount < 2) {
+            return;
+        }
+        if (parent != readAheadParent) {
+            readAheadParent = parent;
+            readAheadIndex = reverse ? index : index + 1;
+        }
+        MVMap<K,V> map = parent.map;
+        if (reverse) {
+            // read ahead when less than half of the pages read ahead are left
+            if (index - readAheadIndex > readAhead / 2) {
+                return;
+            }
+            int from = Math.max(0, index - readAhead);
+            int end = Math.min(index, readAheadIndex);
+            // child i only contains keys below key i
+            while (to != null && from < end && map.getKeyType().compare(parent.getKey(from), to) < 0) {
+                from++;
+            }
+            if (from < end) {
+                map.store.readAhead(parent, from, end);
+            }
+            readAheadIndex = Math.min(readAheadIndex, from);
+        } else {
+            if (readAheadIndex - index > readAhead / 2) {
+                return;
+            }
+            int from = Math.max(index + 1, readAheadIndex);
+            int end = Math.min(upperBound(parent), index + 1 + readAhead);
+            // child i only contains keys of at least key i - 1
+            while (to != null && end > from && map.getKeyType().compare(parent.getKey(end - 2), to) > 0) {
+                end--;
+            }
+            if (from < end) {
+                map.store.readAhead(parent, from, end);
+            }
+            readAheadIndex = Math.max(readAheadIndex, end);
+        }
+    }
+
     private static <K,V> int upperBound(Page<K,V> page) {
         return page.isLeaf() ? page.getKeyCount() : page.map.getChildPageCount(page);
     }
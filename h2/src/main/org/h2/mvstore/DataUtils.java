@@ -113,6 +113,25 @@ public final class DataUtils {
      */
     public static final int ERROR_UNKNOWN_DATA_TYPE = 106;
 
+    /**
+     * The transaction is read-only and can not change any data.
+     */
+    public static final int ERROR_TRANSACTION_READ_ONLY = 107;
+
+    /**
+     * An optimistic transaction tried to change an entry that was changed by
+     * a concurrent transaction. The transaction should be rolled back and
+     * retried.
+     */
+    public static final int ERROR_TRANSACTION_CONFLICT = 108;
+
+    /**
+     * The snapshot of a transaction was older than the snapshot retention
+     * time, and the data it refers to may have been overwritten. The
+     * statement should be retried.
+     */
+    public static final int ERROR_SNAPSHOT_TOO_OLD = 109;
+
     /**
      * The type for leaf page.
      */
@@ -138,6 +157,14 @@ public final class DataUtils {
      */
     public static final int PAGE_HAS_PAGE_NO = 8;
 
+    /**
+     * The bit mask for compressed pages, which were compressed by a
+     * registered compressor. The algorithm id of the compressor is stored
+     * before the compressed data. Files with such pages have format 2 and
+     * list the used algorithm ids in the store header.
+     */
+    public static final int PAGE_COMPRESSED_CUSTOM = 2 + 16;
+
     /**
      * The maximum length of a variable size int.
      */
@@ -10,11 +10,15 @@
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.h2.mvstore.cache.FilePathCache;
 import org.h2.store.fs.FilePath;
 import org.h2.store.fs.encrypt.FileEncrypt;
 import org.h2.store.fs.encrypt.FilePathEncrypt;
+import org.h2.util.MemoryUnmapper;
 
 /**
  * The default storage mechanism of the MVStore. This implementation persists
@@ -43,6 +47,11 @@ public class FileStore {
      */
     protected final AtomicLong writeBytes = new AtomicLong();
 
+    /**
+     * The number of reads served from memory mapped chunks.
+     */
+    protected final AtomicLong mappedReadCount = new AtomicLong();
+
     /**
      * The free spaces between the chunks. The first block to use is block 2
      * (the first two blocks are the store header).
@@ -80,6 +89,23 @@ public class FileStore {
      */
     private FileLock fileLock;
 
+    /**
+     * Read-only memory mappings of saved chunks, keyed by the chunk start
+     * position, or null if chunks are read with regular file I/O.
+     */
+    private volatile ConcurrentHashMap<Long, ByteBuffer> mappedChunks;
+
+    /**
+     * Mappings of freed chunks, which are not unmapped yet.
+     */
+    private final ConcurrentLinkedQueue<ByteBuffer> retiredMappings = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Readers of memory mapped chunks hold the read lock while they use
+     * slices of the mappings, mappings are only unmapped under the write lock.
+     */
+    private final ReentrantReadWriteLock mappingLock = new ReentrantReadWriteLock();
+
     @Override
     public String toString() {
         return fileName;
@@ -100,6 +126,137 @@ public ByteBuffer readFully(long pos, int len) {
         return dst;
     }
 
+    /**
+     * Read from a region of the file that belongs to a saved chunk. If memory
+     * mapped reads are enabled and the current thread is between
+     * {@link #beginMappedRead()} and {@link #endMappedRead()}, the returned
+     * buffer is a read-only view of the mapped chunk, which may only be used
+     * until {@link #endMappedRead()}. Otherwise the data is read like with
+     * {@link #readFully(long, int)}.
+     *
+     * @param chunkPos the start position of the chunk
+     * @param chunkLength the length of the chunk
+     * @param pos the read position
+     * @param len the number of bytes to read
+     * @return the byte buffer
+     */
+    public ByteBuffer readFully(long chunkPos, int chunkLength, long pos, int len) {
+        ConcurrentHashMap<Long, ByteBuffer> mapped = mappedChunks;
+        if (mapped != null && pos >= chunkPos && pos + len <= chunkPos + chunkLength
+                && mappingLock.getReadHoldCount() > 0) {
+            ByteBuffer mapping = mapped.get(chunkPos);
+            if (mapping == null || mapping.capacity() != chunkLength) {
+                mapping = map(chunkPos, chunkLength);
+                if (mapping != null) {
+                    ByteBuffer old = mapped.put(chunkPos, mapping);
+                    if (old != null) {
+                        retiredMappings.add(old);
+                    }
+                }
+            }
+            if (mapping != null) {
+                ByteBuffer buff = mapping.duplicate();
+                int offset = (int) (pos - chunkPos);
+                buff.limit(offset + len).position(offset);
+                mappedReadCount.incrementAndGet();
+                return buff.slice();
+            }
+        }
+        return readFully(pos, len);
+    }
+
+    private ByteBuffer map(long pos, int len) {
+        try {
+            ByteBuffer mapping = file.map(FileChannel.MapMode.READ_ONLY, pos, len);
+            readCount.incrementAndGet();
+            return mapping;
+        } catch (UnsupportedOperationException e) {
+            // encrypted or wrapped file: fall back to regular reads
+            mappedChunks = null;
+            return null;
+        } catch (IOException e) {
+            throw DataUtils.newMVStoreException(
+                    DataUtils.ERROR_READING_FAILED,
+                    "Could not map file {0} at {1} length {2}", fileName, pos, len, e);
+        }
+    }
+
+    /**
+     * Read saved chunks through read-only memory mappings of the file instead
+     * of copying them into heap buffers. Has no effect for file systems that
+     * do not support memory mapping, such as encrypted files.
+     * <p>
+     * Mappings are unmapped only when no reader is between
+     * {@link #beginMappedRead()} and {@link #endMappedRead()}: mappings of
+     * freed chunks when the file is truncated, or when it is possible
+     * without waiting, and all mappings before truncation and on close.
+     */
+    public void enableMemoryMappedReads() {
+        if (mappedChunks == null) {
+            mappedChunks = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * Whether saved chunks are read through memory mappings.
+     *
+     * @return true if memory mapped reads are enabled
+     */
+    public boolean isMemoryMappedReads() {
+        return mappedChunks != null;
+    }
+
+    /**
+     * Start a read of pages from memory mapped chunks in the current thread.
+     * Mappings are not unmapped until {@link #endMappedRead()}.
+     *
+     * @return whether {@link #endMappedRead()} needs to be invoked
+     */
+    boolean beginMappedRead() {
+        if (mappedChunks == null) {
+            return false;
+        }
+        mappingLock.readLock().lock();
+        return true;
+    }
+
+    /**
+     * End a read started with {@link #beginMappedRead()}. Buffers returned by
+     * {@link #readFully(long, int, long, int)} may not be used afterwards.
+     */
+    void endMappedRead() {
+        mappingLock.readLock().unlock();
+    }
+
+    private void unmapRetired() {
+        if (!retiredMappings.isEmpty() && mappingLock.writeLock().tryLock()) {
+            try {
+                for (ByteBuffer mapping; (mapping = retiredMappings.poll()) != null;) {
+                    MemoryUnmapper.unmap(mapping);
+                }
+            } finally {
+                mappingLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Unmap all mappings, they are mapped again on demand. The caller should
+     * hold the write lock.
+     */
+    private void unmapAll() {
+        ConcurrentHashMap<Long, ByteBuffer> mapped = mappedChunks;
+        if (mapped != null) {
+            for (ByteBuffer mapping : mapped.values()) {
+                MemoryUnmapper.unmap(mapping);
+            }
+            mapped.clear();
+        }
+        for (ByteBuffer mapping; (mapping = retiredMappings.poll()) != null;) {
+            MemoryUnmapper.unmap(mapping);
+        }
+    }
+
     /**
      * Write to the file.
      *
@@ -177,6 +334,12 @@ public void open(String fileName, boolean readOnly, char[] encryptionKey) {
      * Close this store.
      */
     public void close() {
+        mappingLock.writeLock().lock();
+        try {
+            unmapAll();
+        } finally {
+            mappingLock.writeLock().unlock();
+        }
         try {
             if(file != null && file.isOpen()) {
                 if (fileLock != null) {
@@ -224,22 +387,38 @@ public long size() {
      * @param size the new file size
      */
     public void truncate(long size) {
-        int attemptCount = 0;
-        while (true) {
-            try {
-                writeCount.incrementAndGet();
-                file.truncate(size);
-                fileSize = Math.min(fileSize, size);
-                return;
-            } catch (IOException e) {
-                if (++attemptCount == 10) {
-                    throw DataUtils.newMVStoreException(
-                            DataUtils.ERROR_WRITING_FAILED,
-                            "Could not truncate file {0} to size {1}",
-                            fileName, size, e);
+        // some platforms can not truncate a file with mapped regions,
+        // chunks below the new size are mapped again when they are read
+        boolean unmap = mappedChunks != null || !retiredMappings.isEmpty();
+        if (unmap) {
+            assert mappingLock.getReadHoldCount() == 0;
+            mappingLock.writeLock().lock();
+        }
+        try {
+            if (unmap) {
+                unmapAll();
+            }
+            int attemptCount = 0;
+            while (true) {
+                try {
+                    writeCount.incrementAndGet();
+                    file.truncate(size);
+                    fileSize = Math.min(fileSize, size);
+                    return;
+                } catch (IOException e) {
+                    if (++attemptCount == 10) {
+                        throw DataUtils.newMVStoreException(
+                                DataUtils.ERROR_WRITING_FAILED,
+                                "Could not truncate file {0} to size {1}",
+                                fileName, size, e);
+                    }
+                    System.gc();
+                    Thread.yield();
                 }
-                System.gc();
-                Thread.yield();
+            }
+        } finally {
+            if (unmap) {
+                mappingLock.writeLock().unlock();
             }
         }
     }
@@ -306,6 +485,16 @@ public long getReadBytes() {
         return readBytes.get();
     }
 
+    /**
+     * Get the number of reads served from memory mapped chunks since this
+     * store was opened. Such reads are not included in the read count.
+     *
+     * @return the number of memory mapped reads
+     */
+    public long getMappedReadCount() {
+        return mappedReadCount.get();
+    }
+
     public boolean isReadOnly() {
         return readOnly;
     }
@@ -367,6 +556,14 @@ boolean isFragmented() {
      */
     public void free(long pos, int length) {
         freeSpace.free(pos, length);
+        ConcurrentHashMap<Long, ByteBuffer> mapped = mappedChunks;
+        if (mapped != null) {
+            ByteBuffer mapping = mapped.remove(pos);
+            if (mapping != null) {
+                retiredMappings.add(mapping);
+                unmapRetired();
+            }
+        }
     }
 
     public int getFillRate() {
@@ -413,6 +610,12 @@ long getAfterLastBlock() {
      */
     public void clear() {
         freeSpace.clear();
+        ConcurrentHashMap<Long, ByteBuffer> mapped = mappedChunks;
+        if (mapped != null) {
+            retiredMappings.addAll(mapped.values());
+            mapped.clear();
+            unmapRetired();
+        }
     }
 
     /**
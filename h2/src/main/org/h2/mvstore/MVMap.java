@@ -8,15 +8,20 @@
 import java.util.AbstractList;
 import java.util.AbstractMap;
 import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 import static org.h2.engine.Constants.MEMORY_POINTER;
+import org.h2.compress.Compressor;
 import org.h2.mvstore.type.DataType;
 import org.h2.mvstore.type.ObjectDataType;
 import org.h2.util.MemoryEstimator;
@@ -61,15 +66,55 @@
     private volatile  boolean closed;
     private boolean readOnly;
     private boolean isVolatile;
+
+    /**
+     * Whether the changes are kept in memory only, until this flag is cleared.
+     */
+    private volatile boolean storeDeferred;
+
+    /**
+     * Whether the map was empty when its root was last stored. Only used by
+     * the store for maps with deferred changes.
+     */
+    private boolean storedEmpty;
+
+    /**
+     * The compression algorithm for pages written from now on, or -1 to use
+     * the compression level of the store.
+     */
+    private volatile int compressionAlgorithm = -1;
     private final AtomicLong avgKeySize;
     private final AtomicLong avgValSize;
 
+    /**
+     * Operations at the end of the map that lost the race to update the root,
+     * and wait to be applied together by the thread holding the root lock.
+     */
+    private final ConcurrentLinkedQueue<LaneOperation<K,V>> appendLane = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The keys changed since they were last written to the redo log, or null
+     * if the store has no redo log.
+     */
+    private final ConcurrentSkipListSet<K> redoKeys;
+
+    /**
+     * Whether the map was cleared since it was last written to the redo log.
+     * Only changed while the root is locked.
+     */
+    private boolean redoCleared;
+
     /**
      * This designates the "last stored" version for a store which was
      * just open for the first time.
      */
     static final long INITIAL_VERSION = -1;
 
+    /**
+     * The maximum number of operations applied at once from the append lane.
+     */
+    private static final int MAX_APPEND_LANE_BATCH = 1024;
+
 
     protected MVMap(Map<String, Object> config, DataType<K> keyType, DataType<V> valueType) {
         this((MVStore) config.get("store"), keyType, valueType,
@@ -79,6 +124,12 @@ protected MVMap(Map<String, Object> config, DataType<K> keyType, DataType<V> val
                 ((MVStore) config.get("store")).getKeysPerPage(),
                 config.containsKey("singleWriter") && (Boolean) config.get("singleWriter")
         );
+        int algorithm = DataUtils.readHexInt(config, "compression", -1);
+        if (algorithm > Compressor.NO) {
+            // fail early if the compressor is not registered
+            store.getCompressor(algorithm);
+        }
+        compressionAlgorithm = algorithm;
         setInitialRoot(createEmptyLeaf(), store.getCurrentVersion());
     }
 
@@ -109,7 +160,7 @@ private MVMap(MVStore store, DataType<K> keyType, DataType<V> valueType, int id,
         this.singleWriter = singleWriter;
         this.avgKeySize = keyType.isMemoryEstimationAllowed() ? new AtomicLong() : null;
         this.avgValSize = valueType.isMemoryEstimationAllowed() ? new AtomicLong() : null;
-
+        this.redoKeys = store.isRedoLogEnabled() ? new ConcurrentSkipListSet<>(keyType) : null;
     }
 
     /**
@@ -464,7 +515,10 @@ RootReference<K,V> clearIt() {
             if (!locked) {
                 if (attempt++ == 0) {
                     beforeWrite();
-                } else if (attempt > 3 || rootReference.isLocked()) {
+                }
+                // with a redo log, the map is cleared under the lock,
+                // so that the clear is logged before the later changes
+                if (attempt > 3 || redoKeys != null || attempt > 1 && rootReference.isLocked()) {
                     rootReference = lockRoot(rootReference, attempt);
                     locked = true;
                 }
@@ -477,6 +531,8 @@ RootReference<K,V> clearIt() {
                     if (rootReference == null) {
                         continue;
                     }
+                } else if (redoKeys != null) {
+                    redoCleared = true;
                 }
                 store.registerUnsavedMemory(rootPage.removeAllRecursive(version));
                 rootPage = emptyRootPage;
@@ -489,6 +545,76 @@ RootReference<K,V> clearIt() {
         }
     }
 
+    private void markRedo(K key) {
+        if (redoKeys != null && !isVolatile && !storeDeferred) {
+            redoKeys.add(key);
+        }
+    }
+
+    /**
+     * Request that the changes of this map are stored in a chunk with the next
+     * commit, because they are not written to the redo log entry by entry.
+     */
+    protected final void requestCheckpoint() {
+        if (redoKeys != null && !isVolatile && !storeDeferred) {
+            store.requestCheckpoint();
+        }
+    }
+
+    /**
+     * Write the entries changed since the last call to the redo log. The
+     * changed keys are collected while the root is locked, and their values
+     * are read from this root, so that changes made concurrently are written
+     * with the next call.
+     *
+     * @param redoLog the redo log
+     */
+    final void writeRedoLog(RedoLog redoLog) {
+        if (redoKeys == null || isVolatile || closed) {
+            return;
+        }
+        if (storeDeferred && !isEmpty()) {
+            // the entries belong to changes of other maps that are written now
+            setStoreDeferred(false);
+        }
+        if (redoKeys.isEmpty() && !redoCleared) {
+            return;
+        }
+        RootReference<K,V> rootReference = lockRoot(getRoot(), 1);
+        boolean cleared;
+        ArrayList<K> keys = new ArrayList<>();
+        try {
+            if (singleWriter && rootReference.getAppendCounter() > 0) {
+                rootReference = flushAppendBuffer(rootReference, true);
+            }
+            cleared = redoCleared;
+            redoCleared = false;
+            for (K key; (key = redoKeys.pollFirst()) != null;) {
+                keys.add(key);
+            }
+        } finally {
+            unlockRoot();
+        }
+        if (cleared) {
+            redoLog.addClear(id);
+        }
+        Page<K,V> rootPage = rootReference.root;
+        for (K key : keys) {
+            redoLog.add(id, keyType, key, valueType, Page.get(rootPage, key));
+        }
+    }
+
+    /**
+     * Forget the changes that were not written to the redo log, because they
+     * are stored in a chunk, or were rolled back.
+     */
+    final void discardRedoLog() {
+        if (redoKeys != null) {
+            redoKeys.clear();
+            redoCleared = false;
+        }
+    }
+
     /**
      * Close the map. Accessing the data is still possible (to allow concurrent
      * reads), but it is marked as closed.
@@ -928,6 +1054,87 @@ public final boolean isVolatile() {
         return isVolatile;
     }
 
+    /**
+     * Set whether the changes of this map are kept in memory only. Unlike for
+     * a volatile map, all entries are stored with the next commit, or written
+     * to the redo log, once the flag is cleared. The flag may be changed while
+     * the map is in use.
+     *
+     * @param storeDeferred the new value
+     */
+    public final void setStoreDeferred(boolean storeDeferred) {
+        boolean wasDeferred = this.storeDeferred;
+        this.storeDeferred = storeDeferred;
+        if (wasDeferred && !storeDeferred && redoKeys != null) {
+            // the entries were not tracked for the redo log
+            for (K key : keySet()) {
+                redoKeys.add(key);
+            }
+        }
+    }
+
+    /**
+     * Whether the changes of this map are kept in memory only, and not
+     * stored with a commit.
+     *
+     * @return whether storing the changes is deferred
+     */
+    public final boolean isStoreDeferred() {
+        return storeDeferred;
+    }
+
+    /**
+     * Whether the map was empty when its root was last stored.
+     *
+     * @return true if it was empty, false if it was not or if this is unknown
+     */
+    final boolean isStoredEmpty() {
+        return storedEmpty;
+    }
+
+    /**
+     * Remember whether the map is empty in the stored root.
+     *
+     * @param storedEmpty whether the stored root is empty
+     */
+    final void setStoredEmpty(boolean storedEmpty) {
+        this.storedEmpty = storedEmpty;
+    }
+
+    /**
+     * Set the compression algorithm for pages of this map, overriding the
+     * compression level of the store. This setting only affects pages written
+     * from now on; stored pages keep their encoding until they are rewritten,
+     * for example by compaction. The setting is persisted in the metadata of
+     * the map, so a registered compressor needs to be registered again to
+     * open the map after the store is reopened.
+     *
+     * @param algorithm the algorithm id, {@link Compressor#NO},
+     *            {@link Compressor#LZF}, {@link Compressor#DEFLATE}, or the id
+     *            of a compressor registered with
+     *            {@link MVStore.Builder#compressor(Compressor)}
+     */
+    public final void setCompressionAlgorithm(int algorithm) {
+        if (algorithm != Compressor.NO) {
+            // fail early if the compressor is not registered
+            store.getCompressor(algorithm);
+        }
+        if (compressionAlgorithm != algorithm) {
+            compressionAlgorithm = algorithm;
+            store.updateMapMetadata(this);
+        }
+    }
+
+    /**
+     * Get the compression algorithm for pages of this map written from now on.
+     *
+     * @return the algorithm id
+     */
+    public final int getCompressionAlgorithm() {
+        int algorithm = compressionAlgorithm;
+        return algorithm >= 0 ? algorithm : store.getDefaultCompressionAlgorithm();
+    }
+
     /**
      * This method is called before writing to the map. The default
      * implementation checks whether writing is allowed, and tries
@@ -988,7 +1195,13 @@ public boolean isEmpty() {
         return sizeAsLong() == 0;
     }
 
-    final long getCreateVersion() {
+    /**
+     * Get the version in which the map was created. Older versions of the map
+     * can not be opened.
+     *
+     * @return the version
+     */
+    public final long getCreateVersion() {
         return createVersion;
     }
 
@@ -1102,6 +1315,10 @@ protected String asString(String name) {
         if (type != null) {
             DataUtils.appendMap(buff, "type", type);
         }
+        int algorithm = compressionAlgorithm;
+        if (algorithm >= 0) {
+            DataUtils.appendMap(buff, "compression", algorithm);
+        }
         return buff.toString();
     }
 
@@ -1370,6 +1587,7 @@ public void append(K key, V value) {
                 keysBuffer[appendCounter] = key;
                 valuesBuffer[appendCounter] = value;
                 ++appendCounter;
+                markRedo(key);
             } finally {
                 unlockRoot(appendCounter);
             }
@@ -1412,6 +1630,57 @@ public void trimLast() {
         }
     }
 
+    /**
+     * Load sorted entries into this empty map. Leaf and internal pages are
+     * built bottom-up from the input, and installed as the new root, which is
+     * much faster than adding the entries one by one. If many pages are
+     * built, the partially loaded tree is installed from time to time so that
+     * the store can save it and release the memory.
+     * <p>
+     * This method is NOT thread safe, and the map must not be updated
+     * concurrently. If it fails, the map contains an unspecified part of the
+     * entries, and should be cleared.
+     *
+     * @param entries the entries, in ascending key order, without duplicate
+     *        keys
+     * @throws IllegalArgumentException if the map is not empty, a value is
+     *         null, or the keys are not in ascending order
+     */
+    public final void bulkLoad(Iterator<? extends Map.Entry<K, V>> entries) {
+        RootReference<K,V> rootReference = flushAndGetRoot();
+        DataUtils.checkArgument(rootReference.getTotalCount() == 0,
+                "The map {0} is not empty", id);
+        MVStore.TxCounter txCounter = store.registerVersionUsage();
+        try {
+            new BulkLoader<>(this, rootReference.root).load(entries);
+        } finally {
+            store.deregisterVersionUsage(txCounter);
+            requestCheckpoint();
+        }
+    }
+
+    /**
+     * Replace the root page, as part of a bulk load.
+     *
+     * @param newRootPage the new root page
+     * @param oldPages the pages that are no longer used
+     */
+    private void replaceRootForBulkLoad(Page<K,V> newRootPage, List<Page<K,V>> oldPages) {
+        beforeWrite();
+        RootReference<K,V> rootReference = lockRoot(getRoot(), 1);
+        try {
+            int unsavedMemory = 0;
+            for (Page<K,V> p : oldPages) {
+                unsavedMemory += p.removePage(rootReference.version);
+            }
+            if (isPersistent()) {
+                store.registerUnsavedMemory(unsavedMemory);
+            }
+        } finally {
+            unlockRoot(newRootPage);
+        }
+    }
+
     @Override
     public final String toString() {
         return asString(null);
@@ -1590,6 +1859,16 @@ public enum Decision { ABORT, REMOVE, PUT, REPEAT }
      * for insert/update/delete key is found.
      * Revised value for insert/update is also provided based on original input value
      * and value currently existing in the map.
+     * <p>
+     * In a map with multiple writers, the methods of a decision maker may be
+     * invoked by another thread, which applies the appends of all waiting
+     * threads (see the append lane). The thread that invoked operate() is
+     * blocked until then, and the changes are visible to it afterwards. So
+     * the decision maker may change the state of its owner (for example, the
+     * transaction decision makers write the undo log of their transaction),
+     * but must not depend on the current thread, such as thread locals or
+     * locks held by the caller. If such update fails after the decision was
+     * made, reset() is invoked by the thread that applied it.
      *
      * @param <V> value type of the map
      */
@@ -1723,6 +2002,10 @@ public void reset() {}
      * @return previous value, if mapping for that key existed, or null otherwise
      */
     public V operate(K key, V value, DecisionMaker<? super V> decisionMaker) {
+        return operate(key, value, decisionMaker, !singleWriter);
+    }
+
+    private V operate(K key, V value, DecisionMaker<? super V> decisionMaker, boolean useAppendLane) {
         IntValueHolder unsavedMemoryHolder = new IntValueHolder();
         int attempt = 0;
         while(true) {
@@ -1749,6 +2032,11 @@ public V operate(K key, V value, DecisionMaker<? super V> decisionMaker) {
                 }
                 Page<K,V> p = pos.page;
                 int index = pos.index;
+                if (!locked && attempt > 1 && useAppendLane && isAppendPosition(pos)) {
+                    // another thread won the race for the right edge,
+                    // let one thread apply the appends of all threads
+                    return operateInAppendLane(key, value, decisionMaker);
+                }
                 tip = pos;
                 pos = pos.parent;
                 result = index < 0 ? null : p.getValue(index);
@@ -1805,38 +2093,9 @@ public V operate(K key, V value, DecisionMaker<? super V> decisionMaker) {
                     }
                     case PUT: {
                         value = decisionMaker.selectValue(result, value);
-                        p = p.copy();
-                        if (index < 0) {
-                            p.insertLeaf(-index - 1, key, value);
-                            int keyCount;
-                            while ((keyCount = p.getKeyCount()) > store.getKeysPerPage()
-                                    || p.getMemory() > store.getMaxPageSize()
-                                    && keyCount > (p.isLeaf() ? 1 : 2)) {
-                                long totalCount = p.getTotalCount();
-                                int at = keyCount >> 1;
-                                K k = p.getKey(at);
-                                Page<K,V> split = p.split(at);
-                                unsavedMemoryHolder.value += p.getMemory() + split.getMemory();
-                                if (pos == null) {
-                                    K[] keys = p.createKeyStorage(1);
-                                    keys[0] = k;
-                                    Page.PageReference<K,V>[] children = Page.createRefStorage(2);
-                                    children[0] = new Page.PageReference<>(p);
-                                    children[1] = new Page.PageReference<>(split);
-                                    p = Page.createNode(this, keys, children, totalCount, 0);
-                                    break;
-                                }
-                                Page<K,V> c = p;
-                                p = pos.page;
-                                index = pos.index;
-                                pos = pos.parent;
-                                p = p.copy();
-                                p.setChild(index, split);
-                                p.insertNode(index, k, c);
-                            }
-                        } else {
-                            p.setValue(index, value);
-                        }
+                        pos = put(pos, p, index, key, value, false, unsavedMemoryHolder);
+                        p = pos.page;
+                        pos = pos.parent;
                         break;
                     }
                 }
@@ -1849,6 +2108,7 @@ public V operate(K key, V value, DecisionMaker<? super V> decisionMaker) {
                     }
                 }
                 store.registerUnsavedMemory(unsavedMemoryHolder.value + tip.processRemovalInfo(version));
+                markRedo(key);
                 return result;
             } finally {
                 if(locked) {
@@ -1858,6 +2118,193 @@ public V operate(K key, V value, DecisionMaker<? super V> decisionMaker) {
         }
     }
 
+    /**
+     * Put a value into the leaf page of the given path, and split the pages
+     * that become too large.
+     *
+     * @param pos the path to the parent of the leaf page
+     * @param p the leaf page
+     * @param index the index of the key in the leaf page, negative if the key
+     *        was not found
+     * @param key the key
+     * @param value the value
+     * @param append whether the key is appended at the end of the map, in
+     *        which case full pages are split at the end instead of the middle
+     * @param unsavedMemoryHolder the holder of the unsaved memory
+     * @return the changed page, with the path to its parent
+     */
+    private CursorPos<K,V> put(CursorPos<K,V> pos, Page<K,V> p, int index, K key, V value,
+            boolean append, IntValueHolder unsavedMemoryHolder) {
+        p = p.copy();
+        if (index < 0) {
+            p.insertLeaf(-index - 1, key, value);
+            int keyCount;
+            while ((keyCount = p.getKeyCount()) > store.getKeysPerPage()
+                    || p.getMemory() > store.getMaxPageSize()
+                    && keyCount > (p.isLeaf() ? 1 : 2)) {
+                long totalCount = p.getTotalCount();
+                int at = append ? keyCount - (p.isLeaf() ? 1 : 2) : keyCount >> 1;
+                K k = p.getKey(at);
+                Page<K,V> split = p.split(at);
+                unsavedMemoryHolder.value += p.getMemory() + split.getMemory();
+                if (pos == null) {
+                    K[] keys = p.createKeyStorage(1);
+                    keys[0] = k;
+                    Page.PageReference<K,V>[] children = Page.createRefStorage(2);
+                    children[0] = new Page.PageReference<>(p);
+                    children[1] = new Page.PageReference<>(split);
+                    p = Page.createNode(this, keys, children, totalCount, 0);
+                    break;
+                }
+                Page<K,V> c = p;
+                p = pos.page;
+                index = pos.index;
+                pos = pos.parent;
+                p = p.copy();
+                p.setChild(index, split);
+                p.insertNode(index, k, c);
+            }
+        } else {
+            p.setValue(index, value);
+        }
+        return new CursorPos<>(p, 0, pos);
+    }
+
+    /**
+     * Check whether the path points behind the last key of the map.
+     *
+     * @param pos the path to the leaf
+     * @return true if a new key would be appended
+     */
+    private static <K,V> boolean isAppendPosition(CursorPos<K,V> pos) {
+        if (pos.index >= 0 || -pos.index - 1 != pos.page.getKeyCount()) {
+            return false;
+        }
+        for (CursorPos<K,V> head = pos.parent; head != null; head = head.parent) {
+            if (head.index != head.page.getKeyCount()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add the operation to the append lane, and wait until it was applied.
+     * The thread that gets the root lock applies all operations in the lane,
+     * in key order, and installs the new root once. This avoids that threads
+     * that append concurrently copy the right edge of the tree over and over
+     * again, each time losing the race to update the root.
+     *
+     * @param key the key
+     * @param value the value
+     * @param decisionMaker the decision maker
+     * @return the previous value
+     */
+    private V operateInAppendLane(K key, V value, DecisionMaker<? super V> decisionMaker) {
+        LaneOperation<K,V> op = new LaneOperation<>(key, value, decisionMaker);
+        appendLane.add(op);
+        for (int attempt = 1; !op.done; attempt++) {
+            RootReference<K,V> rootReference = getRoot();
+            if (!rootReference.isLocked()) {
+                RootReference<K,V> lockedRootReference = rootReference.tryLock(attempt);
+                if (lockedRootReference != null) {
+                    applyAppendLane(lockedRootReference);
+                    continue;
+                }
+            }
+            if (attempt > 8) {
+                LockSupport.parkNanos(this, 50_000);
+            } else {
+                Thread.yield();
+            }
+        }
+        if (op.exception != null) {
+            throw op.exception;
+        }
+        if (op.fallback) {
+            return operate(key, value, decisionMaker, false);
+        }
+        return op.result;
+    }
+
+    private void applyAppendLane(RootReference<K,V> rootReference) {
+        Page<K,V> rootPage = rootReference.root;
+        long version = rootReference.version;
+        ArrayList<LaneOperation<K,V>> ops = new ArrayList<>();
+        LaneOperation<K,V> current = null;
+        try {
+            LaneOperation<K,V> op;
+            while (ops.size() < MAX_APPEND_LANE_BATCH && (op = appendLane.poll()) != null) {
+                ops.add(op);
+            }
+            ops.sort((a, b) -> compare(a.key, b.key));
+            IntValueHolder unsavedMemoryHolder = new IntValueHolder();
+            for (LaneOperation<K,V> o : ops) {
+                current = o;
+                try {
+                    rootPage = applyLaneOperation(rootPage, version, o, unsavedMemoryHolder);
+                } catch (RuntimeException e) {
+                    // the decision could have been made already, for example
+                    // an undo log record could have been created
+                    o.decisionMaker.reset();
+                    o.exception = e;
+                }
+                o.applied = true;
+            }
+        } finally {
+            unlockRoot(rootPage);
+            for (LaneOperation<K,V> o : ops) {
+                if (!o.applied) {
+                    // the batch was interrupted by an error
+                    if (o == current) {
+                        o.decisionMaker.reset();
+                    }
+                    o.fallback = true;
+                }
+                o.done = true;
+                LockSupport.unpark(o.thread);
+            }
+        }
+    }
+
+    private Page<K,V> applyLaneOperation(Page<K,V> rootPage, long version, LaneOperation<K,V> op,
+            IntValueHolder unsavedMemoryHolder) {
+        K key = op.key;
+        CursorPos<K,V> tip = CursorPos.traverseDown(rootPage, key);
+        int index = tip.index;
+        V result = index < 0 ? null : tip.page.getValue(index);
+        @SuppressWarnings("unchecked")
+        DecisionMaker<V> decisionMaker = (DecisionMaker<V>) op.decisionMaker;
+        switch (decisionMaker.decide(result, op.value, tip)) {
+            case ABORT:
+                op.result = result;
+                return rootPage;
+            case REMOVE:
+                if (index < 0) {
+                    op.result = null;
+                    return rootPage;
+                }
+                break;
+            case PUT: {
+                V value = decisionMaker.selectValue(result, op.value);
+                unsavedMemoryHolder.value = 0;
+                CursorPos<K,V> pos = put(tip.parent, tip.page, index, key, value, isAppendPosition(tip),
+                        unsavedMemoryHolder);
+                rootPage = replacePage(pos.parent, pos.page, unsavedMemoryHolder);
+                store.registerUnsavedMemory(unsavedMemoryHolder.value + tip.processRemovalInfo(version));
+                markRedo(key);
+                op.result = result;
+                return rootPage;
+            }
+            default:
+                break;
+        }
+        // removing existing entries, and repeating, is left to the caller
+        decisionMaker.reset();
+        op.fallback = true;
+        return rootPage;
+    }
+
     private RootReference<K,V> lockRoot(RootReference<K,V> rootReference, int attempt) {
         while(true) {
             RootReference<K,V> lockedRootReference = tryLock(rootReference, attempt++);
@@ -2087,6 +2534,295 @@ public String toString() {
         }
     }
 
+    /**
+     * Builds the pages of a map bottom-up from entries in ascending key order.
+     * Internal nodes are only created when they are full, so that each page
+     * is created once, except for the right edge of the tree, which is
+     * created whenever the partially loaded tree is installed as the root.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     */
+    private static final class BulkLoader<K,V> {
+
+        private final MVMap<K,V> map;
+        private final int keysPerPage;
+        private final long maxPageSize;
+        private final K[] keys;
+        private final V[] values;
+        private int count;
+        private int memory;
+        private K lastKey;
+
+        /**
+         * The levels of internal nodes that are not yet full, starting with
+         * the parents of the leaves.
+         */
+        private final ArrayList<Level<K,V>> levels = new ArrayList<>();
+
+        /**
+         * The pages of the right edge of the current root, which are replaced
+         * when a new root is installed.
+         */
+        private List<Page<K,V>> edgePages;
+
+        BulkLoader(MVMap<K,V> map, Page<K,V> root) {
+            this.map = map;
+            keysPerPage = map.store.getKeysPerPage();
+            maxPageSize = map.store.getMaxPageSize();
+            keys = map.getKeyType().createStorage(keysPerPage);
+            values = map.getValueType().createStorage(keysPerPage);
+            edgePages = new ArrayList<>();
+            edgePages.add(root);
+        }
+
+        /**
+         * Load the entries, and install the resulting tree as the root.
+         *
+         * @param entries the entries
+         */
+        void load(Iterator<? extends Map.Entry<K,V>> entries) {
+            while (entries.hasNext()) {
+                Map.Entry<K,V> entry = entries.next();
+                K key = entry.getKey();
+                V value = entry.getValue();
+                DataUtils.checkArgument(value != null, "The value may not be null");
+                if (lastKey != null && map.compare(lastKey, key) >= 0) {
+                    throw DataUtils.newIllegalArgumentException(
+                            "The keys are not in ascending order: {0} >= {1}", lastKey, key);
+                }
+                lastKey = key;
+                keys[count] = key;
+                values[count] = value;
+                if (map.isPersistent()) {
+                    memory += map.evaluateMemoryForKey(key) + map.evaluateMemoryForValue(value);
+                }
+                if (++count == keysPerPage || memory >= maxPageSize) {
+                    K firstKey = keys[0];
+                    addPage(0, createLeaf(), firstKey);
+                    if (map.store.isSaveNeeded()) {
+                        // install what we have, so that it can be saved
+                        installRoot(false);
+                        map.store.commit();
+                    }
+                }
+            }
+            installRoot(true);
+        }
+
+        private Page<K,V> createLeaf() {
+            Page<K,V> leaf = Page.createLeaf(map, Arrays.copyOf(keys, count), Arrays.copyOf(values, count), 0);
+            Arrays.fill(keys, 0, count, null);
+            Arrays.fill(values, 0, count, null);
+            count = 0;
+            memory = 0;
+            registerUnsavedMemory(leaf);
+            return leaf;
+        }
+
+        private void addPage(int levelIndex, Page<K,V> page, K firstKey) {
+            if (levelIndex == levels.size()) {
+                levels.add(new Level<>(map, keysPerPage));
+            }
+            Level<K,V> level = levels.get(levelIndex);
+            level.add(map, page, firstKey);
+            if (level.count > keysPerPage || level.count > 1 && level.memory >= maxPageSize) {
+                Page<K,V> node = level.createNode(map, null, null);
+                K nodeKey = level.firstKey;
+                level.clear();
+                registerUnsavedMemory(node);
+                addPage(levelIndex + 1, node, nodeKey);
+            }
+        }
+
+        /**
+         * Install the current tree as the root. The nodes that are not yet
+         * full form the right edge of the tree.
+         *
+         * @param complete whether all entries were added, in which case the
+         *        remaining entries form the last leaf
+         */
+        private void installRoot(boolean complete) {
+            List<Page<K,V>> newEdgePages = new ArrayList<>();
+            Page<K,V> page = null;
+            K pageKey = null;
+            if (complete && count > 0) {
+                pageKey = keys[0];
+                page = createLeaf();
+            }
+            for (Level<K,V> level : levels) {
+                if (level.count == 0) {
+                    continue;
+                } else if (level.count == 1 && page == null) {
+                    Page.PageReference<K,V> ref = level.children[0];
+                    page = ref.getPage();
+                    if (page == null) {
+                        page = map.readPage(ref.getPos());
+                    }
+                    pageKey = level.firstKey;
+                    continue;
+                }
+                page = level.createNode(map, page, pageKey);
+                pageKey = level.firstKey;
+                registerUnsavedMemory(page);
+                newEdgePages.add(page);
+            }
+            if (page == null) {
+                page = map.createEmptyLeaf();
+            }
+            map.replaceRootForBulkLoad(page, edgePages);
+            edgePages = newEdgePages;
+        }
+
+        private void registerUnsavedMemory(Page<K,V> page) {
+            if (map.isPersistent()) {
+                map.store.registerUnsavedMemory(page.getMemory());
+            }
+        }
+    }
+
+    /**
+     * An internal node of a bulk load that is not yet full.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     */
+    private static final class Level<K,V> {
+
+        /**
+         * The first key of the first child.
+         */
+        K firstKey;
+
+        /**
+         * The keys, where the key at index i is the first key of child i + 1.
+         */
+        final K[] keys;
+
+        /**
+         * The children.
+         */
+        final Page.PageReference<K,V>[] children;
+
+        /**
+         * The number of children.
+         */
+        int count;
+
+        /**
+         * The total number of entries in the children.
+         */
+        long totalCount;
+
+        /**
+         * The estimated memory of the keys.
+         */
+        int memory;
+
+        Level(MVMap<K,V> map, int keysPerPage) {
+            keys = map.getKeyType().createStorage(keysPerPage);
+            children = Page.createRefStorage(keysPerPage + 1);
+        }
+
+        /**
+         * Add a child page.
+         *
+         * @param map the map
+         * @param page the page
+         * @param key the first key of the page
+         */
+        void add(MVMap<K,V> map, Page<K,V> page, K key) {
+            if (count == 0) {
+                firstKey = key;
+            } else {
+                keys[count - 1] = key;
+                if (map.isPersistent()) {
+                    memory += map.evaluateMemoryForKey(key);
+                }
+            }
+            children[count++] = new Page.PageReference<>(page);
+            totalCount += page.getTotalCount();
+        }
+
+        /**
+         * Create an internal node with the children of this level.
+         *
+         * @param map the map
+         * @param last an additional last child, or null
+         * @param lastKey the first key of the additional child
+         * @return the node
+         */
+        Page<K,V> createNode(MVMap<K,V> map, Page<K,V> last, K lastKey) {
+            int n = count;
+            K[] nodeKeys = map.getKeyType().createStorage(last == null ? n - 1 : n);
+            System.arraycopy(keys, 0, nodeKeys, 0, n - 1);
+            Page.PageReference<K,V>[] nodeChildren = Page.createRefStorage(last == null ? n : n + 1);
+            System.arraycopy(children, 0, nodeChildren, 0, n);
+            long nodeTotalCount = totalCount;
+            if (last != null) {
+                nodeKeys[n - 1] = lastKey;
+                nodeChildren[n] = new Page.PageReference<>(last);
+                nodeTotalCount += last.getTotalCount();
+            }
+            return Page.createNode(map, nodeKeys, nodeChildren, nodeTotalCount, 0);
+        }
+
+        void clear() {
+            Arrays.fill(keys, 0, count - 1, null);
+            Arrays.fill(children, 0, count, null);
+            firstKey = null;
+            count = 0;
+            totalCount = 0;
+            memory = 0;
+        }
+    }
+
+    /**
+     * An operation that waits in the append lane.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     */
+    private static final class LaneOperation<K,V> {
+
+        final K key;
+        final V value;
+        final DecisionMaker<? super V> decisionMaker;
+        final Thread thread = Thread.currentThread();
+
+        /**
+         * The previous value.
+         */
+        V result;
+
+        /**
+         * Whether the operation has to be applied by the waiting thread.
+         */
+        boolean fallback;
+
+        /**
+         * The exception thrown by the operation, if any.
+         */
+        RuntimeException exception;
+
+        /**
+         * Whether the operation was applied or failed, otherwise it has to be
+         * applied by the waiting thread.
+         */
+        boolean applied;
+
+        /**
+         * Whether the operation was processed.
+         */
+        volatile boolean done;
+
+        LaneOperation(K key, V value, DecisionMaker<? super V> decisionMaker) {
+            this.key = key;
+            this.value = value;
+            this.decisionMaker = decisionMaker;
+        }
+    }
+
     private static final class IntValueHolder {
         int value;
 
@@ -26,6 +26,7 @@
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -44,8 +45,11 @@
 import org.h2.compress.CompressDeflate;
 import org.h2.compress.CompressLZF;
 import org.h2.compress.Compressor;
+import org.h2.engine.Constants;
 import org.h2.mvstore.cache.CacheLongKeyLIRS;
+import org.h2.mvstore.cache.CacheLongKeyOffHeap;
 import org.h2.mvstore.type.StringDataType;
+import org.h2.store.fs.FileUtils;
 import org.h2.util.MathUtils;
 import org.h2.util.Utils;
 
@@ -151,6 +155,7 @@ public class MVStore implements AutoCloseable {
     private static final String HDR_VERSION = "version";
     private static final String HDR_CLEAN = "clean";
     private static final String HDR_FLETCHER = "fletcher";
+    private static final String HDR_COMPRESSORS = "compressors";
 
     /**
      * The key for the entry within "layout" map, which contains id of "meta" map.
@@ -165,8 +170,20 @@ public class MVStore implements AutoCloseable {
      */
     static final int BLOCK_SIZE = 4 * 1024;
 
-    private static final int FORMAT_WRITE = 1;
-    private static final int FORMAT_READ = 1;
+    private static final int FORMAT_WRITE = 2;
+    private static final int FORMAT_READ = 2;
+
+    /**
+     * The format of new files, which can be read by older versions as long
+     * as they contain no pages of registered compressors.
+     */
+    private static final int FORMAT_BASIC = 1;
+
+    /**
+     * The format of files with pages of registered compressors, see
+     * {@link DataUtils#PAGE_COMPRESSED_CUSTOM}.
+     */
+    private static final int FORMAT_CUSTOM_COMPRESSION = 2;
 
     /**
      * Store is open.
@@ -192,6 +209,45 @@ public class MVStore implements AutoCloseable {
 
     private static final int PIPE_LENGTH = 1;
 
+    /**
+     * The lowest percentage of the compaction rate limit, to which background
+     * compaction backs off when foreground operations slow down.
+     */
+    private static final int MIN_AUTO_COMPACT_RATE_PERCENT = 10;
+
+    /**
+     * The minimum number of pages serialized by one parallel serialization
+     * task, smaller chunks are serialized by the storing thread only.
+     */
+    private static final int MIN_PAGES_PER_SERIALIZATION_TASK = 32;
+
+    /**
+     * The number of threads that read pages ahead of cursors.
+     */
+    private static final int READ_AHEAD_THREADS = 2;
+
+    /**
+     * The maximum number of pending read-ahead requests. Further requests are
+     * dropped, as the pages are read by the cursor by then anyway.
+     */
+    private static final int MAX_READ_AHEAD_QUEUE = 16;
+
+    /**
+     * The maximum gap between two pages of a chunk that are read together,
+     * in bytes.
+     */
+    private static final int MAX_READ_AHEAD_GAP = 4 * 4096;
+
+    /**
+     * The maximum length of a combined read, in bytes.
+     */
+    private static final int MAX_READ_AHEAD_LENGTH = 1024 * 1024;
+
+    /**
+     * The default snapshot retention time, in milliseconds.
+     */
+    private static final int DEFAULT_SNAPSHOT_RETENTION_TIME = 60_000;
+
 
     /**
      * Lock which governs access to major store operations: store(), close(), ...
@@ -217,6 +273,17 @@ public class MVStore implements AutoCloseable {
      */
     private ThreadPoolExecutor bufferSaveExecutor;
 
+    /**
+     * The number of threads used to serialize the pages of a large chunk, or
+     * 0 if pages are serialized by the storing thread only.
+     */
+    private final int serializationThreads;
+
+    /**
+     * Executor for parallel serialization of page keys and values, or null
+     */
+    private final ThreadPoolExecutor serializationWorkers;
+
     private volatile boolean reuseSpace = true;
 
     private volatile int state;
@@ -243,6 +310,26 @@ public class MVStore implements AutoCloseable {
      */
     private final CacheLongKeyLIRS<long[]> chunksToC;
 
+    /**
+     * The second tier of the page cache, with serialized pages in off-heap
+     * memory, or null. Keyed by page position, stamped with the chunk version,
+     * because chunk ids are reused.
+     */
+    private final CacheLongKeyOffHeap offHeapCache;
+
+    /**
+     * The number of leaf pages that cursors read ahead during scans, or 0 if
+     * read-ahead is disabled.
+     */
+    private final int readAheadPages;
+
+    /**
+     * Executor for reading pages ahead of cursors, or null
+     */
+    private final ThreadPoolExecutor readAheadWorkers;
+
+    private final AtomicLong readAheadPageCount = new AtomicLong();
+
     /**
      * The newest chunk. If nothing was stored yet, this field is not set.
      */
@@ -294,12 +381,36 @@ public class MVStore implements AutoCloseable {
 
     private Compressor compressorHigh;
 
+    /**
+     * Registered compressors by algorithm id, in addition to the built-in
+     * LZF and Deflate compressors.
+     */
+    private final HashMap<Integer, Compressor> compressors = new HashMap<>();
+
+    /**
+     * Ids of registered compression algorithms, which were used by pages of
+     * the file. They are listed in the store header.
+     */
+    private final Set<Integer> usedCompressors = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Whether an algorithm was added to {@link #usedCompressors} after the
+     * store header was written.
+     */
+    private volatile boolean usedCompressorsChanged;
+
     private final boolean recoveryMode;
 
     public final UncaughtExceptionHandler backgroundExceptionHandler;
 
     private volatile long currentVersion;
 
+    /**
+     * The version that all maps write to, or an older version while a new
+     * version is being started.
+     */
+    private volatile long writeVersion;
+
     /**
      * Oldest store version in use. All version beyond this can be safely dropped
      */
@@ -316,6 +427,23 @@ public class MVStore implements AutoCloseable {
      */
     private volatile TxCounter currentTxCounter = new TxCounter(currentVersion);
 
+    /**
+     * Usages of old versions that are only retained up to the snapshot
+     * retention time.
+     */
+    private final Set<BoundedVersionUsage> boundedVersionUsages = ConcurrentHashMap.newKeySet();
+
+    /**
+     * How long, in milliseconds, a bounded version usage may prevent older
+     * chunks from being dropped.
+     */
+    private volatile int snapshotRetentionTime = DEFAULT_SNAPSHOT_RETENTION_TIME;
+
+    /**
+     * How long, in milliseconds, old versions are retained for history reads.
+     */
+    private volatile int historyRetentionTime;
+
     /**
      * The estimated memory used by unsaved pages. This number is not accurate,
      * also because it may be changed concurrently, and because temporary pages
@@ -355,6 +483,90 @@ public class MVStore implements AutoCloseable {
     private final int autoCompactFillRate;
     private long autoCompactLastFileOpCount;
 
+    /**
+     * The maximum number of bytes per second written by background
+     * compaction, 0 for no limit.
+     */
+    private final int autoCompactRateLimit;
+
+    /**
+     * The number of bytes background compaction may write now. It is
+     * replenished at the current rate, up to one second worth of writes, and
+     * may become negative if a compaction step wrote more than planned.
+     */
+    private long autoCompactBudget;
+    private long autoCompactBudgetTime;
+
+    /**
+     * The percentage of the rate limit currently used, reduced when
+     * foreground operations slow down while compaction runs.
+     */
+    private volatile int autoCompactRatePercent = 100;
+
+    /**
+     * The average foreground wait (store lock and page reads), in
+     * nanoseconds, measured while background compaction did not write.
+     */
+    private long autoCompactBaselineWait;
+    private long autoCompactLastWaitNanos;
+    private long autoCompactLastWaitCount;
+    private long autoCompactPeriodWritten;
+    private final AtomicLong foregroundWaitNanos = new AtomicLong();
+    private final AtomicLong foregroundWaitCount = new AtomicLong();
+
+    private volatile long autoCompactWrittenBytes;
+    private volatile long autoCompactDeferredCount;
+
+    /**
+     * The time window in milliseconds, within which durable commits requested
+     * by concurrent threads are combined into a single store operation and a
+     * single file sync, 0 if group commit is disabled.
+     */
+    private final int groupCommitDelay;
+
+    /**
+     * The maximum number of commits combined into one group, 0 for no limit.
+     */
+    private final int groupCommitMaxSize;
+
+    /**
+     * Monitor for group commit coordination, guards all groupCommit* fields below.
+     */
+    private final Object groupCommitSync = new Object();
+
+    /**
+     * The group, which is currently collecting commits.
+     */
+    private CommitGroup groupCommitOpenGroup = new CommitGroup(1);
+
+    /**
+     * Sequential number of the last group, which was stored and synced. Groups
+     * are stored one by one in order of their numbers.
+     */
+    private long groupCommitDoneGroup;
+
+    /**
+     * The redo log, if commits append the changed entries to a log instead of
+     * storing a chunk, or null.
+     */
+    private final RedoLog redoLog;
+
+    private long groupCommitCount;
+    private long groupCommitRequestCount;
+
+    /**
+     * Futures returned by commitAsync(), which are completed after the next
+     * store and file sync by the background thread or by groupCommit().
+     * Guarded by the monitor of the list.
+     */
+    private final ArrayList<CompletableFuture<Long>> durableFutures = new ArrayList<>();
+
+    /**
+     * Called while holding the store lock, before the changes are written to
+     * a chunk or to the redo log.
+     */
+    private volatile Runnable beforeStoreListener;
+
     private volatile MVStoreException panicException;
 
     private long lastTimeAbsolute;
@@ -374,6 +586,13 @@ public class MVStore implements AutoCloseable {
     MVStore(Map<String, Object> config) {
         recoveryMode = config.containsKey("recoveryMode");
         compressionLevel = DataUtils.getConfigParam(config, "compress", 0);
+        @SuppressWarnings("unchecked")
+        List<Compressor> registeredCompressors = (List<Compressor>) config.get("compressors");
+        if (registeredCompressors != null) {
+            for (Compressor compressor : registeredCompressors) {
+                compressors.put(compressor.getAlgorithm(), compressor);
+            }
+        }
         String fileName = (String) config.get("fileName");
         FileStore fileStore = (FileStore) config.get("fileStore");
         fileStoreIsProvided = fileStore != null;
@@ -405,6 +624,12 @@ public class MVStore implements AutoCloseable {
             cache = null;
         }
         chunksToC = cc2 == null ? null : new CacheLongKeyLIRS<>(cc2);
+        int offHeapMb = this.fileStore == null ? 0 : DataUtils.getConfigParam(config, "offHeapCacheSize", 0);
+        offHeapCache = offHeapMb > 0 ? new CacheLongKeyOffHeap(offHeapMb * 1024L * 1024L) : null;
+        // pages read ahead are kept in the caches only
+        readAheadPages = this.fileStore == null || cache == null && offHeapCache == null ? 0 :
+                DataUtils.getConfigParam(config, "readAheadPages", 0);
+        readAheadWorkers = readAheadPages > 0 ? createThreadPoolExecutor(READ_AHEAD_THREADS, "H2-read-ahead") : null;
 
         pgSplitSize = DataUtils.getConfigParam(config, "pageSplitSize", pgSplitSize);
         // Make sure pages will fit into cache
@@ -423,7 +648,14 @@ public class MVStore implements AutoCloseable {
             kb = DataUtils.getConfigParam(config, "autoCommitBufferSize", kb);
             autoCommitMemory = kb * 1024;
             autoCompactFillRate = DataUtils.getConfigParam(config, "autoCompactFillRate", 90);
+            autoCompactRateLimit = DataUtils.getConfigParam(config, "autoCompactRateLimit", 0) * 1024;
+            groupCommitDelay = DataUtils.getConfigParam(config, "groupCommitDelay", 0);
+            groupCommitMaxSize = DataUtils.getConfigParam(config, "groupCommitMaxSize", 0);
+            serializationThreads = DataUtils.getConfigParam(config, "serializationThreads", 0);
+            serializationWorkers = serializationThreads > 1
+                    ? createThreadPoolExecutor(serializationThreads - 1, "H2-serialization-worker") : null;
             char[] encryptionKey = (char[]) config.get("encryptionKey");
+            boolean created = false;
             // there is no need to lock store here, since it is not opened (or even created) yet,
             // just to make some assertions happy, when they ensure single-threaded access
             storeLock.lock();
@@ -434,11 +666,15 @@ public class MVStore implements AutoCloseable {
                         boolean readOnly = config.containsKey("readOnly");
                         this.fileStore.open(fileName, readOnly, encryptionKey);
                     }
+                    if (config.containsKey("memoryMappedReads")) {
+                        this.fileStore.enableMemoryMappedReads();
+                    }
                     if (this.fileStore.size() == 0) {
+                        created = true;
                         creationTime = getTimeAbsolute();
                         storeHeader.put(HDR_H, 2);
                         storeHeader.put(HDR_BLOCK_SIZE, BLOCK_SIZE);
-                        storeHeader.put(HDR_FORMAT, FORMAT_WRITE);
+                        storeHeader.put(HDR_FORMAT, FORMAT_BASIC);
                         storeHeader.put(HDR_CREATED, creationTime);
                         setLastChunk(null);
                         writeStoreHeader();
@@ -458,7 +694,21 @@ public class MVStore implements AutoCloseable {
             }
             lastCommitTime = getTimeSinceCreation();
 
+            // an existing redo log is always replayed, even if no new one
+            // is requested, in which case each commit is a checkpoint
+            String redoLogName = fileStoreIsProvided ? null : fileName + Constants.SUFFIX_MV_REDO_LOG;
+            int redoLogSize = DataUtils.getConfigParam(config, "redoLogSize", 0);
+            if (redoLogName != null && created) {
+                FileUtils.delete(redoLogName);
+            }
+            redoLog = redoLogName == null || encryptionKey != null || this.fileStore.isReadOnly()
+                    || redoLogSize <= 0 && !FileUtils.exists(redoLogName) ? null
+                    : new RedoLog(redoLogName, redoLogSize * 1024L * 1024L, lastChunkVersion());
+
             meta = openMetaMap();
+            if (redoLog != null) {
+                redoLog.replay(meta);
+            }
             scrubLayoutMap();
             scrubMetaMap();
 
@@ -469,6 +719,12 @@ public class MVStore implements AutoCloseable {
         } else {
             autoCommitMemory = 0;
             autoCompactFillRate = 0;
+            autoCompactRateLimit = 0;
+            groupCommitDelay = 0;
+            groupCommitMaxSize = 0;
+            serializationThreads = 0;
+            serializationWorkers = null;
+            redoLog = null;
             meta = openMetaMap();
         }
         onVersionChange(currentVersion);
@@ -681,6 +937,9 @@ public <M extends MVMap<K, V>, K, V> M openMap(int id, MVMap.MapBuilder<M, K, V>
                 long lastStoredVersion = currentVersion - 1;
                 map.setRootPos(root, lastStoredVersion);
                 maps.put(id, map);
+                if (redoLog != null) {
+                    redoLog.replay(map);
+                }
             }
             return map;
         } finally {
@@ -793,13 +1052,18 @@ public boolean hasMap(String name) {
     }
 
     /**
-     * Check whether a given map exists and has data.
+     * Check whether a given map exists and has data. A map that has entries in
+     * the redo log, which are replayed when the map is opened, may have data.
      *
      * @param name the map name
      * @return true if it exists and has data.
      */
     public boolean hasData(String name) {
-        return hasMap(name) && getRootPos(getMapId(name)) != 0;
+        if (!hasMap(name)) {
+            return false;
+        }
+        int id = getMapId(name);
+        return getRootPos(id) != 0 || redoLog != null && redoLog.hasPending(id);
     }
 
     private void markMetaChanged() {
@@ -874,6 +1138,20 @@ private void readStoreHeader() {
                     "than the supported format {1}",
                     format, FORMAT_READ);
         }
+        Object compressorIds = storeHeader.get(HDR_COMPRESSORS);
+        if (compressorIds != null) {
+            for (String id : compressorIds.toString().split(",")) {
+                int algorithm = Integer.parseInt(id, 16);
+                if (!compressors.containsKey(algorithm)) {
+                    throw DataUtils.newMVStoreException(
+                            DataUtils.ERROR_UNSUPPORTED_FORMAT,
+                            "The file contains pages of compression algorithm {0}, " +
+                            "but no compressor is registered for it",
+                            algorithm);
+                }
+                usedCompressors.add(algorithm);
+            }
+        }
 
         assumeCleanShutdown = assumeCleanShutdown && newest != null && !recoveryMode;
         if (assumeCleanShutdown) {
@@ -1285,6 +1563,7 @@ private void closeStore(boolean normalShutdown, int allowedCompactionTime) {
                                     }
                                 }
                                 setRetentionTime(0);
+                                ArrayList<CompletableFuture<Long>> futures = takeDurableFutures();
                                 commit();
                                 if (allowedCompactionTime > 0) {
                                     compactFile(allowedCompactionTime);
@@ -1302,6 +1581,7 @@ private void closeStore(boolean normalShutdown, int allowedCompactionTime) {
                                 } finally {
                                     saveChunkLock.unlock();
                                 }
+                                completeDurableFutures(futures, null);
                             }
 
                             state = STATE_CLOSING;
@@ -1315,12 +1595,19 @@ private void closeStore(boolean normalShutdown, int allowedCompactionTime) {
                             chunks.clear();
                             maps.clear();
                         } finally {
+                            shutdownExecutor(serializationWorkers);
+                            shutdownExecutor(readAheadWorkers);
+                            if (redoLog != null) {
+                                redoLog.close(normalShutdown);
+                            }
                             if (fileStore != null && !fileStoreIsProvided) {
                                 fileStore.close();
                             }
                         }
                     } finally {
                         state = STATE_CLOSED;
+                        completeDurableFutures(takeDurableFutures(), DataUtils.newMVStoreException(
+                                DataUtils.ERROR_CLOSED, "This store is closed"));
                     }
                 }
             } finally {
@@ -1379,6 +1666,7 @@ private void setWriteVersion(long version) {
         }
         meta.setWriteVersion(version);
         layout.setWriteVersion(version);
+        writeVersion = version;
         onVersionChange(version);
     }
 
@@ -1436,7 +1724,11 @@ private long commit(Predicate<MVStore> check) {
         // because meta map is modified within storeNow() and that
         // causes beforeWrite() call with possibility of going back here
         if(!storeLock.isHeldByCurrentThread() || currentStoreVersion < 0) {
+            long start = autoCompactRateLimit > 0 ? System.nanoTime() : 0L;
             storeLock.lock();
+            if (start != 0L) {
+                recordForegroundWait(start);
+            }
             try {
                 if (check.test(this)) {
                     store(true);
@@ -1448,6 +1740,234 @@ private long commit(Predicate<MVStore> check) {
         return currentVersion;
     }
 
+    /**
+     * Commit the changes, and store them in a chunk even if commits are
+     * appended to the redo log, which is truncated afterwards. After that, the
+     * redo log only contains the entries of maps that were not opened so far,
+     * so the file contains all committed changes of the opened maps. Without
+     * a redo log, this is the same as commit().
+     *
+     * @return the new version
+     */
+    public long checkpoint() {
+        return commit(x -> {
+            requestCheckpoint();
+            return true;
+        });
+    }
+
+    /**
+     * Commit the changes and force them to the storage. This method returns
+     * only after all changes, made by the current thread before the call,
+     * are persisted and synced.
+     * <p>
+     * If group commit is enabled, concurrent callers are combined into groups:
+     * the first caller waits for the group commit delay (or until the group
+     * reaches its maximum size), then stores all the changes as a single chunk
+     * and syncs the file once on behalf of the whole group, and finally
+     * releases all other members of the group together.
+     * Otherwise, this is the same as commit() followed by sync().
+     * Pending futures of commitAsync() are completed as well.
+     *
+     * @return the new version
+     */
+    public long groupCommit() {
+        return groupCommit(null);
+    }
+
+    /**
+     * Commit the changes and force them to the storage as groupCommit() does.
+     * The first caller of a group stops waiting for other callers as soon as
+     * the specified number of pending commits drops to 0, so a commit without
+     * concurrent committers isn't delayed.
+     *
+     * @param pending the number of commits, which are going to call this
+     *            method, including the current one, it is decremented when
+     *            the current caller joins a group; or null to wait for the
+     *            full group commit delay
+     * @return the new version
+     */
+    public long groupCommit(AtomicInteger pending) {
+        if (groupCommitDelay <= 0 || fileStore == null) {
+            if (pending != null) {
+                pending.decrementAndGet();
+            }
+            storeDurable(takeDurableFutures());
+            return currentVersion;
+        }
+        boolean interrupted = false;
+        try {
+            CommitGroup group;
+            synchronized (groupCommitSync) {
+                if (pending != null && pending.decrementAndGet() == 0) {
+                    // the first caller of the open group doesn't need to wait
+                    groupCommitSync.notifyAll();
+                }
+                while (groupCommitMaxSize > 0 && groupCommitOpenGroup.size >= groupCommitMaxSize) {
+                    // the open group is full, wait until it is closed
+                    try {
+                        groupCommitSync.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                group = groupCommitOpenGroup;
+                ++groupCommitRequestCount;
+                if (group.size++ > 0) {
+                    // some other thread is collecting this group already, it will do the store
+                    if (groupCommitMaxSize > 0 && group.size >= groupCommitMaxSize) {
+                        groupCommitSync.notifyAll();
+                    }
+                    while (!group.done) {
+                        // the changes are not known to be durable yet
+                        try {
+                            groupCommitSync.wait();
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                    if (group.failure != null) {
+                        throw DataUtils.newMVStoreException(DataUtils.ERROR_WRITING_FAILED,
+                                "Group commit failed: {0}", group.failure.toString(), group.failure);
+                    }
+                    return currentVersion;
+                }
+                long stopAt = System.nanoTime() + groupCommitDelay * 1_000_000L;
+                // store the groups one by one, so they are done in order,
+                // this group collects commits in the meantime
+                while (groupCommitDoneGroup < group.number - 1) {
+                    try {
+                        groupCommitSync.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                long remaining;
+                while ((groupCommitMaxSize <= 0 || group.size < groupCommitMaxSize)
+                        && (pending == null || pending.get() > 0)
+                        && (remaining = stopAt - System.nanoTime()) > 0) {
+                    try {
+                        groupCommitSync.wait(remaining / 1_000_000L, (int) (remaining % 1_000_000L));
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        break;
+                    }
+                }
+                // close this group, anyone who comes late will start the next one
+                groupCommitOpenGroup = new CommitGroup(group.number + 1);
+                if (groupCommitMaxSize > 0) {
+                    groupCommitSync.notifyAll();
+                }
+            }
+            Throwable failure = null;
+            try {
+                storeDurable(takeDurableFutures());
+            } catch (Throwable e) {
+                failure = e;
+                throw e;
+            } finally {
+                synchronized (groupCommitSync) {
+                    group.failure = failure;
+                    group.done = true;
+                    groupCommitDoneGroup = group.number;
+                    ++groupCommitCount;
+                    groupCommitSync.notifyAll();
+                }
+            }
+            return currentVersion;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Commit the changes asynchronously. This method returns immediately, the
+     * changes made by the current thread before the call are stored and
+     * synced by the background thread together with the changes of other
+     * callers. Without a background thread, for example if the auto-commit
+     * delay is 0, they are stored and synced before this method returns.
+     *
+     * @return a future, completed with the new version after the changes are
+     *         persisted and synced
+     */
+    public CompletableFuture<Long> commitAsync() {
+        checkOpen();
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        synchronized (durableFutures) {
+            durableFutures.add(future);
+        }
+        if (!isOpenOrStopping()) {
+            completeDurableFutures(takeDurableFutures(), DataUtils.newMVStoreException(
+                    DataUtils.ERROR_CLOSED, "This store is closed"));
+        } else if (backgroundWriterThread.get() == null) {
+            // nobody else would complete the future
+            storeDurableFutures();
+        }
+        return future;
+    }
+
+    private ArrayList<CompletableFuture<Long>> takeDurableFutures() {
+        synchronized (durableFutures) {
+            if (durableFutures.isEmpty()) {
+                return null;
+            }
+            ArrayList<CompletableFuture<Long>> futures = new ArrayList<>(durableFutures);
+            durableFutures.clear();
+            return futures;
+        }
+    }
+
+    private void completeDurableFutures(ArrayList<CompletableFuture<Long>> futures, Throwable failure) {
+        if (futures != null) {
+            long version = currentVersion;
+            for (CompletableFuture<Long> future : futures) {
+                if (failure == null) {
+                    future.complete(version);
+                } else {
+                    future.completeExceptionally(failure);
+                }
+            }
+        }
+    }
+
+    /**
+     * Store and sync the changes for the pending futures of commitAsync(), and
+     * complete them.
+     */
+    private void storeDurableFutures() {
+        ArrayList<CompletableFuture<Long>> futures = takeDurableFutures();
+        if (futures != null) {
+            storeDurable(futures);
+        }
+    }
+
+    /**
+     * Store and sync the changes, and complete the specified futures of
+     * commitAsync().
+     *
+     * @param futures the futures, or null
+     */
+    private void storeDurable(ArrayList<CompletableFuture<Long>> futures) {
+        Throwable failure = null;
+        try {
+            commit();
+            syncIfOpen();
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            completeDurableFutures(futures, failure);
+        }
+    }
+
+    private void syncIfOpen() {
+        if (isOpenOrStopping()) {
+            sync();
+        }
+    }
+
     private void store(boolean syncWrite) {
         assert storeLock.isHeldByCurrentThread();
         assert !saveChunkLock.isHeldByCurrentThread();
@@ -1466,7 +1986,15 @@ private void store(boolean syncWrite) {
                             throw DataUtils.newMVStoreException(
                                     DataUtils.ERROR_WRITING_FAILED, "This store is read-only");
                         }
-                        storeNow(syncWrite, 0, () -> reuseSpace ? 0 : getAfterLastBlock());
+                        notifyBeforeStore();
+                        if (redoLog == null) {
+                            storeNow(syncWrite, 0, () -> reuseSpace ? 0 : getAfterLastBlock());
+                        } else if (isOpen() && !redoLog.isCheckpointNeeded() && !needStore()) {
+                            writeRedoLog();
+                        } else {
+                            // the chunk has to be synced before the log is truncated
+                            storeNow(true, 0, () -> reuseSpace ? 0 : getAfterLastBlock());
+                        }
                     }
                 } finally {
                     // in any case reset the current store version,
@@ -1477,6 +2005,25 @@ private void store(boolean syncWrite) {
         }
     }
 
+    /**
+     * Set the listener that is called before the changes are written to a
+     * chunk or to the redo log. It is called while holding the store lock, and
+     * can clear the deferred flag of maps, so that their entries are written
+     * together with the other changes.
+     *
+     * @param listener the listener, or null
+     */
+    public void setBeforeStoreListener(Runnable listener) {
+        beforeStoreListener = listener;
+    }
+
+    private void notifyBeforeStore() {
+        Runnable listener = beforeStoreListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
     private void storeNow(boolean syncWrite, long reservedLow, Supplier<Long> reservedHighSupplier) {
         try {
             lastCommitTime = getTimeSinceCreation();
@@ -1484,12 +2031,24 @@ private void storeNow(boolean syncWrite, long reservedLow, Supplier<Long> reserv
             // it is ok, since that path suppose to be single-threaded under storeLock
             //noinspection NonAtomicOperationOnVolatileField
             long version = ++currentVersion;
+            if (redoLog != null) {
+                // changes made from now on are written to the new log,
+                // even if they are also stored in this chunk
+                discardRedoLog();
+                redoLog.prepareCheckpoint(version);
+            }
             ArrayList<Page<?,?>> changed = collectChangedMapRoots(version);
+            writeVersion = version;
 
             submitOrRun(serializationExecutor,
                     () -> serializeAndStore(syncWrite, reservedLow, reservedHighSupplier,
                                             changed, lastCommitTime, version),
                     syncWrite);
+            if (redoLog != null) {
+                assert syncWrite;
+                fileStore.sync();
+                redoLog.completeCheckpoint(version);
+            }
 
             // some pages might have been changed in the meantime (in the newest
             // version)
@@ -1503,6 +2062,73 @@ private void storeNow(boolean syncWrite, long reservedLow, Supplier<Long> reserv
         }
     }
 
+    /**
+     * Append the entries changed since the last commit to the redo log, instead
+     * of storing a chunk. The meta map is written last, so that it contains
+     * all maps that were written.
+     */
+    private void writeRedoLog() {
+        try {
+            lastCommitTime = getTimeSinceCreation();
+            redoLog.beginBlock();
+            for (MVMap<?, ?> map : maps.values()) {
+                map.writeRedoLog(redoLog);
+            }
+            meta.writeRedoLog(redoLog);
+            redoLog.endBlock();
+        } catch (MVStoreException e) {
+            panic(e);
+        } catch (Throwable e) {
+            panic(DataUtils.newMVStoreException(DataUtils.ERROR_INTERNAL, "{0}", e.toString(),
+                    e));
+        }
+    }
+
+    private void discardRedoLog() {
+        for (MVMap<?, ?> map : maps.values()) {
+            map.discardRedoLog();
+        }
+        meta.discardRedoLog();
+    }
+
+    /**
+     * Whether commits append the changed entries to a redo log.
+     *
+     * @return true if there is a redo log
+     */
+    boolean isRedoLogEnabled() {
+        return redoLog != null;
+    }
+
+    /**
+     * Request that the next commit stores a chunk, because some changes were
+     * not tracked for the redo log.
+     */
+    void requestCheckpoint() {
+        if (redoLog != null) {
+            redoLog.requestCheckpoint();
+        }
+    }
+
+    /**
+     * Get the size of the redo log.
+     *
+     * @return the size in bytes, or 0 if there is no redo log
+     */
+    public long getRedoLogSize() {
+        return redoLog == null ? 0 : redoLog.getSize();
+    }
+
+    /**
+     * Get the number of bytes written to the redo log since the store was
+     * opened.
+     *
+     * @return the number of bytes
+     */
+    public long getRedoLogWrittenBytes() {
+        return redoLog == null ? 0 : redoLog.getWrittenBytes();
+    }
+
     private static void submitOrRun(ThreadPoolExecutor executor, Runnable action,
                                     boolean syncRun) throws ExecutionException {
         if (executor != null) {
@@ -1531,10 +2157,10 @@ private ArrayList<Page<?,?>> collectChangedMapRoots(long version) {
             if (rootReference == null) {
                 iter.remove();
             } else if (map.getCreateVersion() < version && // if map was created after storing started, skip it
-                    !map.isVolatile() &&
-                    map.hasChangesSince(lastStoredVersion)) {
+                    !map.isVolatile() && needStore(map, rootReference.root, lastStoredVersion)) {
                 assert rootReference.version <= version : rootReference.version + " > " + version;
                 Page<?,?> rootPage = rootReference.root;
+                map.setStoredEmpty(rootPage.getTotalCount() == 0);
                 if (!rootPage.isSaved() ||
                         // after deletion previously saved leaf
                         // may pop up as a root, but we still need
@@ -1560,8 +2186,26 @@ private ArrayList<Page<?,?>> collectChangedMapRoots(long version) {
         return changed;
     }
 
-    private void serializeAndStore(boolean syncRun, long reservedLow, Supplier<Long> reservedHighSupplier,
-                                    ArrayList<Page<?,?>> changed, long time, long version) {
+    /**
+     * Check whether the root of a map needs to be stored. A map with deferred
+     * changes is only skipped if it is empty, and was empty when it was last
+     * stored. Otherwise its entries may belong to changes of other maps that
+     * are stored now, so it is stored, and no longer deferred.
+     */
+    private static boolean needStore(MVMap<?,?> map, Page<?,?> rootPage, long lastStoredVersion) {
+        boolean changed = map.hasChangesSince(lastStoredVersion);
+        if (!map.isStoreDeferred()) {
+            return changed;
+        }
+        boolean empty = rootPage.getTotalCount() == 0;
+        if (!empty) {
+            map.setStoreDeferred(false);
+        }
+        return changed ? !empty || !map.isStoredEmpty() : empty != map.isStoredEmpty();
+    }
+
+    private void serializeAndStore(boolean syncRun, long reservedLow, Supplier<Long> reservedHighSupplier,
+                                    ArrayList<Page<?,?>> changed, long time, long version) {
         serializationLock.lock();
         try {
             Chunk c = createChunk(time, version);
@@ -1631,6 +2275,10 @@ private void serializeToBuffer(WriteBuffer buff, ArrayList<Page<?, ?>> changed,
         int headerLength = buff.position() + 44;
         buff.position(headerLength);
 
+        if (serializationWorkers != null) {
+            serializeInParallel(changed);
+        }
+
         long version = c.version;
         List<Long> toc = new ArrayList<>();
         for (Page<?,?> p : changed) {
@@ -1714,9 +2362,82 @@ private void serializeToBuffer(WriteBuffer buff, ArrayList<Page<?, ?>> changed,
         }
     }
 
+    /**
+     * Serialize the keys and values of all unsaved pages of the changed maps
+     * on the serialization worker threads and the current thread. The pages
+     * are then written into the chunk in the usual order, where only their
+     * positions are assigned and the serialized data is copied.
+     *
+     * @param changed the changed map roots
+     */
+    private void serializeInParallel(ArrayList<Page<?,?>> changed) {
+        ArrayList<Page<?,?>> pages = new ArrayList<>();
+        for (Page<?,?> p : changed) {
+            if (p.getTotalCount() > 0) {
+                p.collectUnsavedRecursive(pages);
+            }
+        }
+        int taskCount = Math.min(serializationThreads, pages.size() / MIN_PAGES_PER_SERIALIZATION_TASK);
+        if (taskCount < 2) {
+            return;
+        }
+        ArrayList<Future<?>> futures = new ArrayList<>(taskCount - 1);
+        try {
+            for (int i = 1; i < taskCount; i++) {
+                int first = i;
+                futures.add(serializationWorkers.submit(() -> serializePages(pages, first, taskCount)));
+            }
+        } catch (RejectedExecutionException ignore) {
+            // the store is closing, the remaining pages are serialized when written
+        }
+        serializePages(pages, 0, taskCount);
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                throw DataUtils.newMVStoreException(DataUtils.ERROR_INTERNAL, "{0}", e.toString(), e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof MVStoreException) {
+                    throw (MVStoreException) cause;
+                }
+                throw DataUtils.newMVStoreException(DataUtils.ERROR_INTERNAL, "{0}", cause.toString(), cause);
+            }
+        }
+    }
+
+    private void serializePages(ArrayList<Page<?,?>> pages, int first, int step) {
+        WriteBuffer buff = getWriteBuffer();
+        // the shared fast compressor keeps state between calls
+        Compressor compressorFast = new CompressLZF();
+        try {
+            for (int i = first, size = pages.size(); i < size; i += step) {
+                pages.get(i).serializeBody(buff, compressorFast);
+            }
+        } finally {
+            releaseWriteBuffer(buff);
+        }
+    }
+
     private void storeBuffer(Chunk c, WriteBuffer buff, ArrayList<Page<?,?>> changed) {
         saveChunkLock.lock();
         try {
+            if (usedCompressorsChanged) {
+                // older versions refuse the file before they could see a page
+                // of a registered compressor
+                usedCompressorsChanged = false;
+                storeHeader.put(HDR_FORMAT, FORMAT_CUSTOM_COMPRESSION);
+                storeHeader.put(HDR_FORMAT_READ, FORMAT_CUSTOM_COMPRESSION);
+                StringBuilder ids = new StringBuilder();
+                for (int algorithm : usedCompressors) {
+                    if (ids.length() > 0) {
+                        ids.append(',');
+                    }
+                    ids.append(Integer.toHexString(algorithm));
+                }
+                storeHeader.put(HDR_COMPRESSORS, ids.toString());
+                writeStoreHeader();
+            }
             buff.position(0);
             long filePos = c.block * BLOCK_SIZE;
             write(filePos, buff.getBuffer());
@@ -2147,6 +2868,7 @@ private void store(long reservedLow, long reservedHigh) {
         try {
             serializationLock.unlock();
             try {
+                notifyBeforeStore();
                 storeNow(true, reservedLow, () -> reservedHigh);
             } finally {
                 serializationLock.lock();
@@ -2279,7 +3001,7 @@ public boolean compact(int targetFillRate, int write) {
                 try {
                     if (storeLock.tryLock(10, TimeUnit.MILLISECONDS)) {
                         try {
-                            return rewriteChunks(write, 100);
+                            return rewriteChunks(write, 100) > 0;
                         } finally {
                             storeLock.unlock();
                         }
@@ -2292,7 +3014,15 @@ public boolean compact(int targetFillRate, int write) {
         return false;
     }
 
-    private boolean rewriteChunks(int writeLimit, int targetFillRate) {
+    /**
+     * Rewrite the live pages of old chunks with a low fill rate.
+     *
+     * @param writeLimit the maximum number of bytes to rewrite
+     * @param targetFillRate the fill rate below which chunks are rewritten
+     * @return the live length of the rewritten chunks, in bytes, or 0 if
+     *         nothing was rewritten
+     */
+    private long rewriteChunks(int writeLimit, int targetFillRate) {
         serializationLock.lock();
         try {
             TxCounter txCounter = registerVersionUsage();
@@ -2300,13 +3030,19 @@ private boolean rewriteChunks(int writeLimit, int targetFillRate) {
                 acceptChunkOccupancyChanges(getTimeSinceCreation(), currentVersion);
                 Iterable<Chunk> old = findOldChunks(writeLimit, targetFillRate);
                 if (old != null) {
+                    long liveLength = 0;
+                    for (Chunk c : old) {
+                        liveLength += c.maxLenLive;
+                    }
                     HashSet<Integer> idSet = createIdSet(old);
-                    return !idSet.isEmpty() && compactRewrite(idSet) > 0;
+                    if (!idSet.isEmpty() && compactRewrite(idSet) > 0) {
+                        return Math.max(liveLength, 1);
+                    }
                 }
             } finally {
                 deregisterVersionUsage(txCounter);
             }
-            return false;
+            return 0;
         } finally {
             serializationLock.unlock();
         }
@@ -2526,8 +3262,19 @@ <K,V> Page<K,V> readPage(MVMap<K,V> map, long pos) {
             if (p == null) {
                 Chunk chunk = getChunk(pos);
                 int pageOffset = DataUtils.getPageOffset(pos);
+                boolean mappedRead = fileStore.beginMappedRead();
                 try {
-                    ByteBuffer buff = chunk.readBufferForPage(fileStore, pageOffset, pos);
+                    ByteBuffer buff = offHeapCache == null ? null : offHeapCache.get(pos, chunk.version);
+                    if (buff == null) {
+                        long start = autoCompactRateLimit > 0 ? System.nanoTime() : 0L;
+                        buff = chunk.readBufferForPage(fileStore, pageOffset, pos);
+                        if (start != 0L) {
+                            recordForegroundWait(start);
+                        }
+                        if (offHeapCache != null) {
+                            offHeapCache.put(pos, chunk.version, buff);
+                        }
+                    }
                     p = Page.read(buff, pos, map);
                     if (p.pageNo < 0) {
                         p.pageNo = calculatePageNo(pos);
@@ -2538,6 +3285,10 @@ <K,V> Page<K,V> readPage(MVMap<K,V> map, long pos) {
                     throw DataUtils.newMVStoreException(DataUtils.ERROR_FILE_CORRUPT,
                             "Unable to read the page at position {0}, chunk {1}, offset {2}",
                             pos, chunk.id, pageOffset, e);
+                } finally {
+                    if (mappedRead) {
+                        fileStore.endMappedRead();
+                    }
                 }
                 cachePage(p);
             }
@@ -2550,6 +3301,102 @@ <K,V> Page<K,V> readPage(MVMap<K,V> map, long pos) {
         }
     }
 
+    /**
+     * Read child pages of the given page in the background, so that they are
+     * in the cache when a cursor gets there. Pages that are already cached
+     * are skipped, and nearby pages of the same chunk are read at once.
+     *
+     * @param parent the parent page
+     * @param from the index of the first child page
+     * @param to the index after the last child page
+     */
+    <K,V> void readAhead(Page<K,V> parent, int from, int to) {
+        ThreadPoolExecutor executor = readAheadWorkers;
+        if (executor == null || executor.getQueue().size() >= MAX_READ_AHEAD_QUEUE) {
+            return;
+        }
+        long[] positions = new long[to - from];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            long pos = parent.getChildPagePos(i);
+            if (DataUtils.isPageSaved(pos) && DataUtils.getPageMaxLength(pos) != DataUtils.PAGE_LARGE
+                    && !isPageCached(pos)) {
+                positions[count++] = pos;
+            }
+        }
+        if (count > 0) {
+            MVMap<K,V> map = parent.map;
+            long[] pages = Arrays.copyOf(positions, count);
+            try {
+                executor.execute(() -> readPagesAhead(map, pages));
+            } catch (RejectedExecutionException ignore) {
+                // closing
+            }
+        }
+    }
+
+    private boolean isPageCached(long pos) {
+        return cache != null && cache.containsKey(pos);
+    }
+
+    private <K,V> void readPagesAhead(MVMap<K,V> map, long[] positions) {
+        Arrays.sort(positions);
+        for (int i = 0, j; i < positions.length; i = j) {
+            if (!isOpen()) {
+                return;
+            }
+            long pos = positions[i];
+            int chunkId = DataUtils.getPageChunkId(pos);
+            int start = DataUtils.getPageOffset(pos);
+            int end = start + DataUtils.getPageMaxLength(pos);
+            for (j = i + 1; j < positions.length; j++) {
+                long next = positions[j];
+                int offset = DataUtils.getPageOffset(next);
+                int nextEnd = offset + DataUtils.getPageMaxLength(next);
+                if (DataUtils.getPageChunkId(next) != chunkId || offset - end > MAX_READ_AHEAD_GAP
+                        || nextEnd - start > MAX_READ_AHEAD_LENGTH) {
+                    break;
+                }
+                end = Math.max(end, nextEnd);
+            }
+            boolean mappedRead = fileStore.beginMappedRead();
+            try {
+                Chunk chunk = chunks.get(chunkId);
+                if (chunk == null || !chunk.isSaved()) {
+                    continue;
+                }
+                ByteBuffer buff = chunk.readBuffer(fileStore, start, end - start);
+                for (int k = i; k < j; k++) {
+                    long p = positions[k];
+                    ByteBuffer b = buff.duplicate();
+                    int offset = DataUtils.getPageOffset(p) - start;
+                    b.position(offset);
+                    b.limit(Math.min(b.limit(), offset + DataUtils.getPageMaxLength(p)));
+                    b = b.slice();
+                    Page<K,V> page = Page.read(b.duplicate(), p, map);
+                    if (page.pageNo < 0) {
+                        page.pageNo = calculatePageNo(p);
+                    }
+                    // the chunk may have been freed while it was read
+                    if (chunks.get(chunkId) != chunk) {
+                        break;
+                    }
+                    if (offHeapCache != null) {
+                        offHeapCache.put(p, chunk.version, b);
+                    }
+                    cachePage(page);
+                    readAheadPageCount.incrementAndGet();
+                }
+            } catch (Exception ignore) {
+                // the page is read again when it is needed
+            } finally {
+                if (mappedRead) {
+                    fileStore.endMappedRead();
+                }
+            }
+        }
+    }
+
     private long[] getToC(Chunk chunk) {
         if (chunk.tocPos == 0) {
             // legacy chunk without table of content
@@ -2623,8 +3470,58 @@ Compressor getCompressorHigh() {
         return compressorHigh;
     }
 
-    int getCompressionLevel() {
-        return compressionLevel;
+    /**
+     * Get the compressor for the given algorithm.
+     *
+     * @param algorithm the algorithm id
+     * @return the compressor
+     * @throws MVStoreException if no such compressor is registered
+     */
+    Compressor getCompressor(int algorithm) {
+        switch (algorithm) {
+        case Compressor.LZF:
+            return getCompressorFast();
+        case Compressor.DEFLATE:
+            return getCompressorHigh();
+        default:
+            Compressor compressor = compressors.get(algorithm);
+            if (compressor == null) {
+                throw DataUtils.newMVStoreException(
+                        DataUtils.ERROR_UNSUPPORTED_FORMAT,
+                        "Unknown compression algorithm {0}", algorithm);
+            }
+            return compressor;
+        }
+    }
+
+    /**
+     * Record that a page of a registered compressor is written. The format of
+     * the file is changed and the algorithm is listed in the store header
+     * before the chunk with the page is written.
+     *
+     * @param algorithm the algorithm id
+     */
+    void markCompressorUsed(int algorithm) {
+        if (usedCompressors.add(algorithm)) {
+            usedCompressorsChanged = true;
+        }
+    }
+
+    /**
+     * Get the compression algorithm for maps without own setting, as set by
+     * the compression level.
+     *
+     * @return the algorithm id
+     */
+    int getDefaultCompressionAlgorithm() {
+        switch (compressionLevel) {
+        case 0:
+            return Compressor.NO;
+        case 1:
+            return Compressor.LZF;
+        default:
+            return Compressor.DEFLATE;
+        }
     }
 
     public int getPageSplitSize() {
@@ -2689,6 +3586,86 @@ public void setRetentionTime(int ms) {
         this.retentionTime = ms;
     }
 
+    public int getSnapshotRetentionTime() {
+        return snapshotRetentionTime;
+    }
+
+    /**
+     * How long, in milliseconds, a bounded version usage keeps the data of
+     * its version. A bounded usage that is older than this no longer prevents
+     * chunks from being dropped; it is marked as expired instead, and reads
+     * through it should fail. Usages registered with
+     * {@link #registerVersionUsage()} are not affected.
+     * <p>
+     * This setting is not persisted.
+     *
+     * @param ms the retention time in milliseconds
+     */
+    public void setSnapshotRetentionTime(int ms) {
+        DataUtils.checkArgument(ms >= 0, "Snapshot retention time {0} may not be negative", ms);
+        this.snapshotRetentionTime = ms;
+    }
+
+    public int getHistoryRetentionTime() {
+        return historyRetentionTime;
+    }
+
+    /**
+     * How long, in milliseconds, old versions are retained after they were
+     * replaced by a newer version, so that they can be read with
+     * {@link MVMap#openVersion(long)}, and found with
+     * {@link #getVersionForTime(long)}. This includes versions that are not in
+     * use. The history is kept in memory only, and is lost when the store is
+     * closed.
+     * <p>
+     * This setting is not persisted.
+     *
+     * @param ms the retention time in milliseconds (0 to drop unused versions
+     *            as early as possible)
+     */
+    public void setHistoryRetentionTime(int ms) {
+        DataUtils.checkArgument(ms >= 0, "History retention time {0} may not be negative", ms);
+        this.historyRetentionTime = ms;
+    }
+
+    /**
+     * Get the newest version that was complete at the given time, if this
+     * version is retained. See {@link #setHistoryRetentionTime(int)}. For the
+     * current or a future time, this is the current version.
+     *
+     * @param time the time, in milliseconds since 1970
+     * @return the version, or -1 if the version is no longer retained
+     */
+    public long getVersionForTime(long time) {
+        storeLock.lock();
+        try {
+            if (time >= getTimeAbsolute()) {
+                return currentVersion;
+            }
+            for (Iterator<TxCounter> it = versions.descendingIterator(); it.hasNext();) {
+                TxCounter txCounter = it.next();
+                if (txCounter.endTime <= time) {
+                    long version = txCounter.version;
+                    return version >= getOldestVersionToKeep() ? version : -1;
+                }
+            }
+            return -1;
+        } finally {
+            storeLock.unlock();
+        }
+    }
+
+    /**
+     * Check whether the given version can be read with
+     * {@link MVMap#openVersion(long)}.
+     *
+     * @param version the version
+     * @return true if the version is the current or a retained old version
+     */
+    public boolean isVersionRetained(long version) {
+        return version <= currentVersion && version >= getOldestVersionToKeep();
+    }
+
     /**
      * How many versions to retain for in-memory stores. If not set, 5 old
      * versions are retained.
@@ -2924,6 +3901,7 @@ public void rollbackTo(long version) {
                 for (MVMap<?, ?> m : maps.values()) {
                     m.close();
                 }
+                resetRedoLog();
                 return;
             }
             DataUtils.checkArgument(
@@ -2934,6 +3912,9 @@ public void rollbackTo(long version) {
             while ((txCounter = versions.peekLast()) != null && txCounter.version >= version) {
                 versions.removeLast();
             }
+            if (txCounter != null) {
+                txCounter.nextEndTime = Long.MAX_VALUE;
+            }
             currentTxCounter = new TxCounter(version);
 
             layout.rollbackTo(version);
@@ -2997,6 +3978,7 @@ public void rollbackTo(long version) {
             removedPages.clear();
             clearCaches();
             currentVersion = version;
+            writeVersion = version;
             onVersionChange(currentVersion);
             for (MVMap<?, ?> m : new ArrayList<>(maps.values())) {
                 int id = m.getId();
@@ -3009,12 +3991,20 @@ public void rollbackTo(long version) {
                     }
                 }
             }
+            resetRedoLog();
             assert !hasUnsavedChanges();
         } finally {
             unlockAndCheckPanicCondition();
         }
     }
 
+    private void resetRedoLog() {
+        if (redoLog != null) {
+            discardRedoLog();
+            redoLog.reset(lastChunkVersion());
+        }
+    }
+
     private void clearCaches() {
         if (cache != null) {
             cache.clear();
@@ -3022,6 +4012,9 @@ private void clearCaches() {
         if (chunksToC != null) {
             chunksToC.clear();
         }
+        if (offHeapCache != null) {
+            offHeapCache.clear();
+        }
     }
 
     private long getRootPos(int mapId) {
@@ -3039,6 +4032,28 @@ public long getCurrentVersion() {
         return currentVersion;
     }
 
+    /**
+     * Get the version that changes are written to. Changes made before this
+     * call belong to this version or to an older one, and changes made after
+     * this call belong to this version or to a newer one. While a new version
+     * is being started, this method waits until all maps use it.
+     *
+     * @return the version
+     */
+    public long getWriteVersion() {
+        long version = currentVersion;
+        if (writeVersion < version) {
+            storeLock.lock();
+            try {
+                version = currentVersion;
+                writeVersion = version;
+            } finally {
+                storeLock.unlock();
+            }
+        }
+        return version;
+    }
+
     /**
      * Get the file store.
      *
@@ -3094,6 +4109,19 @@ public void renameMap(MVMap<?, ?> map, String newName) {
         }
     }
 
+    /**
+     * Store the changed metadata of a map, such as its compression algorithm.
+     *
+     * @param map the map
+     */
+    void updateMapMetadata(MVMap<?, ?> map) {
+        if (map != meta && map != layout) {
+            int id = map.getId();
+            meta.put(MVMap.getMapKey(id), map.asString(getMapName(id)));
+            markMetaChanged();
+        }
+    }
+
     /**
      * Remove a map from the current version of the store.
      *
@@ -3119,6 +4147,9 @@ public void removeMap(MVMap<?,?> map) {
             if (meta.remove(DataUtils.META_NAME + name) != null) {
                 markMetaChanged();
             }
+            // the root of the map is removed from the layout only when it is
+            // stored, which would not happen after replaying the log
+            requestCheckpoint();
         } finally {
             storeLock.unlock();
         }
@@ -3146,6 +4177,10 @@ public void removeMap(String name) {
         if(id > 0) {
             MVMap<?, ?> map = getMap(id);
             if (map == null) {
+                if (redoLog != null) {
+                    // the generic map can not read the logged entries
+                    redoLog.discard(id);
+                }
                 map = openMap(name, MVStoreTool.getGenericMapBuilder());
             }
             removeMap(map);
@@ -3182,6 +4217,7 @@ void writeInBackground() {
             // could also commit when there are many unsaved pages,
             // but according to a test it doesn't really help
 
+            storeDurableFutures();
             long time = getTimeSinceCreation();
             if (time > lastCommitTime + autoCommitDelay) {
                 tryCommit();
@@ -3189,16 +4225,20 @@ void writeInBackground() {
                     compact(-getTargetFillRate(), autoCommitMemory);
                 }
             }
+            adjustAutoCompactRate();
             int fillRate = getFillRate();
             if (fileStore.isFragmented() && fillRate < autoCompactFillRate) {
-                if (storeLock.tryLock(10, TimeUnit.MILLISECONDS)) {
+                int moveSize = autoCommitMemory;
+                if (isIdle()) {
+                    moveSize *= 4;
+                }
+                moveSize = getAutoCompactWriteLimit(moveSize, getSmallestMovableChunkSize());
+                if (moveSize > 0 && storeLock.tryLock(10, TimeUnit.MILLISECONDS)) {
+                    long writeBytes = fileStore.getWriteBytes();
                     try {
-                        int moveSize = autoCommitMemory;
-                        if (isIdle()) {
-                            moveSize *= 4;
-                        }
                         compactMoveChunks(101, moveSize);
                     } finally {
+                        chargeAutoCompact(fileStore.getWriteBytes() - writeBytes);
                         unlockAndCheckPanicCondition();
                     }
                 }
@@ -3206,16 +4246,22 @@ void writeInBackground() {
                 int chunksFillRate = getRewritableChunksFillRate();
                 chunksFillRate = isIdle() ? 100 - (100 - chunksFillRate) / 2 : chunksFillRate;
                 if (chunksFillRate < getTargetFillRate()) {
-                    if (storeLock.tryLock(10, TimeUnit.MILLISECONDS)) {
+                    int writeLimit = autoCommitMemory * fillRate / Math.max(chunksFillRate, 1);
+                    if (!isIdle()) {
+                        writeLimit /= 4;
+                    }
+                    writeLimit = getAutoCompactWriteLimit(writeLimit,
+                            getSmallestRewritableChunkSize(chunksFillRate));
+                    if (writeLimit > 0 && storeLock.tryLock(10, TimeUnit.MILLISECONDS)) {
+                        long rewritten = 0;
                         try {
-                            int writeLimit = autoCommitMemory * fillRate / Math.max(chunksFillRate, 1);
-                            if (!isIdle()) {
-                                writeLimit /= 4;
-                            }
-                            if (rewriteChunks(writeLimit, chunksFillRate)) {
+                            rewritten = rewriteChunks(writeLimit, chunksFillRate);
+                            if (rewritten > 0) {
                                 dropUnusedChunks();
                             }
                         } finally {
+                            // rewritten pages are written by the next commit
+                            chargeAutoCompact(rewritten);
                             storeLock.unlock();
                         }
                     }
@@ -3255,7 +4301,8 @@ private void doMaintenance(int targetFillRate) {
                     try {
                         int writeLimit = autoCommitMemory * targetFillRate / Math.max(projectedFillRate, 1);
                         if (projectedFillRate < fillRate) {
-                            if ((!rewriteChunks(writeLimit, targetFillRate) || dropUnusedChunks() == 0) && cnt > 0) {
+                            if ((rewriteChunks(writeLimit, targetFillRate) == 0 || dropUnusedChunks() == 0)
+                                    && cnt > 0) {
                                 break;
                             }
                         }
@@ -3272,6 +4319,113 @@ private void doMaintenance(int targetFillRate) {
         }
     }
 
+    /**
+     * Get the number of bytes background compaction may write in the next
+     * step, limited by the compaction rate. The budget is refilled at the
+     * current rate, up to one second worth of writes. A step may write the
+     * available budget, or one chunk if that is larger (otherwise chunks
+     * larger than the budget could never be compacted); the debt is then
+     * paid off by waiting.
+     *
+     * @param writeLimit the number of bytes the step would like to write
+     * @param chunkSize the size of the smallest chunk the step can compact
+     * @return the write limit, or 0 if compaction has to wait
+     */
+    private int getAutoCompactWriteLimit(int writeLimit, long chunkSize) {
+        if (autoCompactRateLimit <= 0) {
+            return writeLimit;
+        }
+        long now = getTimeSinceCreation();
+        long rate = (long) autoCompactRateLimit * autoCompactRatePercent / 100;
+        autoCompactBudget = Math.min(rate,
+                autoCompactBudget + rate * Math.max(0, now - autoCompactBudgetTime) / 1000);
+        autoCompactBudgetTime = now;
+        if (autoCompactBudget < BLOCK_SIZE) {
+            autoCompactDeferredCount++;
+            return 0;
+        }
+        return (int) Math.min(writeLimit, Math.max(autoCompactBudget, chunkSize));
+    }
+
+    /**
+     * Get the size of the smallest chunk that could be moved towards the start
+     * of the file.
+     *
+     * @return the size in bytes, or 0 if there is no such chunk
+     */
+    private long getSmallestMovableChunkSize() {
+        long start = fileStore.getFirstFree() / BLOCK_SIZE;
+        long size = Long.MAX_VALUE;
+        for (Chunk chunk : chunks.values()) {
+            if (chunk.isSaved() && chunk.block > start) {
+                size = Math.min(size, (long) chunk.len * BLOCK_SIZE);
+            }
+        }
+        return size == Long.MAX_VALUE ? 0 : size;
+    }
+
+    /**
+     * Get the live size of the smallest chunk that could be rewritten.
+     *
+     * @param targetFillRate the maximum fill rate of the chunk
+     * @return the size in bytes, or 0 if there is no such chunk
+     */
+    private long getSmallestRewritableChunkSize(int targetFillRate) {
+        long time = getTimeSinceCreation();
+        long size = Long.MAX_VALUE;
+        for (Chunk chunk : chunks.values()) {
+            if (isRewritable(chunk, time) && chunk.getFillRate() <= targetFillRate) {
+                size = Math.min(size, chunk.maxLenLive);
+            }
+        }
+        return size == Long.MAX_VALUE ? 0 : size;
+    }
+
+    private void chargeAutoCompact(long written) {
+        autoCompactBudget -= written;
+        autoCompactPeriodWritten += written;
+        autoCompactWrittenBytes += written;
+    }
+
+    /**
+     * Adapt the compaction rate to the foreground latency, which is the
+     * average time other threads waited for the store lock or for page reads
+     * since the last call. If it doubled compared to periods without
+     * compaction, the rate is halved; otherwise it recovers slowly.
+     */
+    private void adjustAutoCompactRate() {
+        if (autoCompactRateLimit <= 0) {
+            return;
+        }
+        long nanos = foregroundWaitNanos.get();
+        long count = foregroundWaitCount.get();
+        long periodCount = count - autoCompactLastWaitCount;
+        long periodNanos = nanos - autoCompactLastWaitNanos;
+        autoCompactLastWaitNanos = nanos;
+        autoCompactLastWaitCount = count;
+        boolean compacted = autoCompactPeriodWritten > 0;
+        autoCompactPeriodWritten = 0;
+        int percent = autoCompactRatePercent;
+        if (periodCount > 0) {
+            long wait = periodNanos / periodCount;
+            if (!compacted) {
+                long baseline = autoCompactBaselineWait;
+                autoCompactBaselineWait = baseline == 0 ? wait : baseline + (wait - baseline) / 8;
+            } else if (autoCompactBaselineWait > 0 && wait > 2 * autoCompactBaselineWait) {
+                autoCompactRatePercent = Math.max(MIN_AUTO_COMPACT_RATE_PERCENT, percent / 2);
+                return;
+            }
+        }
+        autoCompactRatePercent = Math.min(100, percent + 5);
+    }
+
+    private void recordForegroundWait(long start) {
+        if (!isBackgroundThread()) {
+            foregroundWaitNanos.addAndGet(System.nanoTime() - start);
+            foregroundWaitCount.incrementAndGet();
+        }
+    }
+
     private int getTargetFillRate() {
         int targetRate = autoCompactFillRate;
         // use a lower fill rate if there were any file operations since the last time
@@ -3385,6 +4539,10 @@ public void setAutoCommitDelay(int millis) {
             return;
         }
         stopBackgroundThread(true);
+        if (isOpen()) {
+            // the stopped background thread would complete them
+            storeDurableFutures();
+        }
         // start the background thread if needed
         if (millis > 0 && isOpen()) {
             int sleep = Math.max(1, millis / 10);
@@ -3400,7 +4558,11 @@ public void setAutoCommitDelay(int millis) {
     }
 
     private static ThreadPoolExecutor createSingleThreadExecutor(String threadName) {
-        return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+        return createThreadPoolExecutor(1, threadName);
+    }
+
+    private static ThreadPoolExecutor createThreadPoolExecutor(int threadCount, String threadName) {
+        return new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
                                         new LinkedBlockingQueue<>(),
                                         r -> {
                                             Thread thread = new Thread(r, threadName);
@@ -3508,6 +4670,47 @@ public int getTocCacheHitRatio() {
         return getCacheHitRatio(chunksToC);
     }
 
+    /**
+     * Get the hit ratio of the off-heap page cache, in percent. Only page
+     * cache misses are looked up in the off-heap cache.
+     *
+     * @return the hit ratio, or 0 if there is no off-heap cache
+     */
+    public int getOffHeapCacheHitRatio() {
+        if (offHeapCache == null) {
+            return 0;
+        }
+        long hits = offHeapCache.getHits();
+        return (int) (100 * hits / (hits + offHeapCache.getMisses() + 1));
+    }
+
+    /**
+     * Get the off-heap page cache.
+     *
+     * @return the cache, or null if not used
+     */
+    public CacheLongKeyOffHeap getOffHeapCache() {
+        return offHeapCache;
+    }
+
+    /**
+     * Get the number of leaf pages that cursors read ahead during scans.
+     *
+     * @return the number of pages, or 0 if read-ahead is disabled
+     */
+    public int getReadAheadPages() {
+        return readAheadPages;
+    }
+
+    /**
+     * Get the number of pages that were read ahead of cursors.
+     *
+     * @return the number of pages
+     */
+    public long getReadAheadPageCount() {
+        return readAheadPageCount.get();
+    }
+
     private static int getCacheHitRatio(CacheLongKeyLIRS<?> cache) {
         if (cache == null) {
             return 0;
@@ -3516,6 +4719,67 @@ private static int getCacheHitRatio(CacheLongKeyLIRS<?> cache) {
         return (int) (100 * hits / (hits + cache.getMisses() + 1));
     }
 
+    /**
+     * Whether durable commits are combined into groups.
+     *
+     * @return true if group commit is enabled
+     */
+    public boolean isGroupCommitEnabled() {
+        return groupCommitDelay > 0 && fileStore != null;
+    }
+
+    /**
+     * Get the number of store operations, performed by groupCommit().
+     *
+     * @return the number of committed groups
+     */
+    public long getGroupCommitCount() {
+        synchronized (groupCommitSync) {
+            return groupCommitCount;
+        }
+    }
+
+    /**
+     * Get the average number of groupCommit() calls served by one store
+     * operation and file sync.
+     *
+     * @return the average group size, or 0 if there were no group commits yet
+     */
+    public double getGroupCommitAverageSize() {
+        synchronized (groupCommitSync) {
+            return groupCommitCount == 0 ? 0 : (double) groupCommitRequestCount / groupCommitCount;
+        }
+    }
+
+    /**
+     * Get the number of bytes written by background compaction.
+     *
+     * @return the number of bytes
+     */
+    public long getAutoCompactWrittenBytes() {
+        return autoCompactWrittenBytes;
+    }
+
+    /**
+     * Get the number of times background compaction was postponed, because
+     * the compaction rate limit was reached.
+     *
+     * @return the number of postponed compaction steps
+     */
+    public long getAutoCompactDeferredCount() {
+        return autoCompactDeferredCount;
+    }
+
+    /**
+     * Get the current compaction rate limit, which may be lower than the
+     * configured one while foreground operations are slowed down.
+     *
+     * @return the rate in bytes per second, or 0 if not limited
+     */
+    public long getAutoCompactRate() {
+        return (long) autoCompactRateLimit * autoCompactRatePercent / 100;
+    }
+
     public int getLeafRatio() {
         return (int)(leafCount * 100 / Math.max(1, leafCount + nonLeafCount));
     }
@@ -3587,9 +4851,55 @@ public void deregisterVersionUsage(TxCounter txCounter) {
         }
     }
 
+    /**
+     * Register a bounded usage of the current version. Unlike
+     * {@link #registerVersionUsage()}, it prevents older chunks from being
+     * dropped only for the snapshot retention time. After that, the usage is
+     * marked as expired, and the data of its version may be overwritten.
+     *
+     * @return the usage, to be passed to deregisterBoundedVersionUsage()
+     */
+    public BoundedVersionUsage registerBoundedVersionUsage() {
+        // Pin the version until the usage is visible to dropUnusedVersions()
+        TxCounter txCounter = registerVersionUsage();
+        try {
+            BoundedVersionUsage usage = new BoundedVersionUsage(txCounter.version, getTimeSinceCreation());
+            boundedVersionUsages.add(usage);
+            return usage;
+        } finally {
+            deregisterVersionUsage(txCounter);
+        }
+    }
+
+    /**
+     * De-register a bounded usage of a version.
+     *
+     * @param usage the usage obtained from registerBoundedVersionUsage(),
+     *            or null
+     */
+    public void deregisterBoundedVersionUsage(BoundedVersionUsage usage) {
+        if (usage != null && boundedVersionUsages.remove(usage)) {
+            if (storeLock.isHeldByCurrentThread()) {
+                dropUnusedVersions();
+            } else if (storeLock.tryLock()) {
+                try {
+                    dropUnusedVersions();
+                } finally {
+                    storeLock.unlock();
+                }
+            }
+        }
+    }
+
     private void onVersionChange(long version) {
         TxCounter txCounter = currentTxCounter;
         assert txCounter.get() >= 0;
+        long now = getTimeAbsolute();
+        TxCounter last = versions.peekLast();
+        if (last != null) {
+            last.nextEndTime = now;
+        }
+        txCounter.endTime = now;
         versions.add(txCounter);
         currentTxCounter = new TxCounter(version);
         txCounter.decrementAndGet();
@@ -3597,12 +4907,31 @@ private void onVersionChange(long version) {
     }
 
     private void dropUnusedVersions() {
+        int historyRetentionTime = this.historyRetentionTime;
+        long historyLimit = historyRetentionTime == 0 ? Long.MAX_VALUE
+                : getTimeAbsolute() - historyRetentionTime;
         TxCounter txCounter;
+        // a version is needed for history reads until the next version ends
         while ((txCounter = versions.peek()) != null
-                && txCounter.get() < 0) {
+                && txCounter.get() < 0 && txCounter.nextEndTime <= historyLimit) {
             versions.poll();
         }
-        setOldestVersionToKeep((txCounter != null ? txCounter : currentTxCounter).version);
+        long oldestVersion = (txCounter != null ? txCounter : currentTxCounter).version;
+        if (!boundedVersionUsages.isEmpty()) {
+            long expiryTime = getTimeSinceCreation() - snapshotRetentionTime;
+            for (BoundedVersionUsage usage : boundedVersionUsages) {
+                if (usage.version < oldestVersion) {
+                    if (usage.time < expiryTime) {
+                        // must be visible before the chunks may be dropped
+                        usage.expired = true;
+                        boundedVersionUsages.remove(usage);
+                    } else {
+                        oldestVersion = usage.version;
+                    }
+                }
+            }
+        }
+        setOldestVersionToKeep(oldestVersion);
     }
 
     private int dropUnusedChunks() {
@@ -3664,6 +4993,48 @@ private boolean validateFileLength(String msg) {
         return true;
     }
 
+    /**
+     * A usage of a store version that keeps its data only for a limited time,
+     * see {@link MVStore#registerBoundedVersionUsage()}.
+     */
+    public static final class BoundedVersionUsage {
+
+        /**
+         * The version of the store this usage is related to
+         */
+        public final long version;
+
+        /**
+         * The time of the registration, since the store was created
+         */
+        final long time;
+
+        /**
+         * Whether the data of the version may have been overwritten
+         */
+        volatile boolean expired;
+
+        BoundedVersionUsage(long version, long time) {
+            this.version = version;
+            this.time = time;
+        }
+
+        /**
+         * Whether the usage has expired. Data read through an expired usage
+         * may come from overwritten chunks and must not be used.
+         *
+         * @return true if expired
+         */
+        public boolean isExpired() {
+            return expired;
+        }
+
+        @Override
+        public String toString() {
+            return "v=" + version + " / t=" + time + (expired ? " expired" : "");
+        }
+    }
+
     /**
      * Class TxCounter is a simple data structure to hold version of the store
      * along with the counter of open transactions,
@@ -3684,6 +5055,18 @@ public static final class TxCounter {
         private static final AtomicIntegerFieldUpdater<TxCounter> counterUpdater =
                                         AtomicIntegerFieldUpdater.newUpdater(TxCounter.class, "counter");
 
+        /**
+         * The time when this version was replaced by the next one, in
+         * milliseconds since 1970; only changed while holding the store lock
+         */
+        long endTime = Long.MAX_VALUE;
+
+        /**
+         * The time when the next version was replaced, in milliseconds since
+         * 1970; only changed while holding the store lock
+         */
+        long nextEndTime = Long.MAX_VALUE;
+
 
         TxCounter(long version) {
             this.version = version;
@@ -3751,6 +5134,37 @@ public void run() {
         }
     }
 
+    /**
+     * A group of durable commits, which are stored and synced together. The
+     * fields are guarded by the group commit monitor.
+     */
+    private static final class CommitGroup {
+
+        /**
+         * The sequential number of the group.
+         */
+        final long number;
+
+        /**
+         * The number of commits in the group.
+         */
+        int size;
+
+        /**
+         * Whether the group was stored.
+         */
+        boolean done;
+
+        /**
+         * The failure of the store of the group, or null.
+         */
+        Throwable failure;
+
+        CommitGroup(long number) {
+            this.number = number;
+        }
+    }
+
     private static class RemovedPageInfo implements Comparable<RemovedPageInfo> {
         final long version;
         final long removedPageInfo;
@@ -3887,6 +5301,50 @@ public Builder autoCompactFillRate(int percent) {
             return set("autoCompactFillRate", percent);
         }
 
+        /**
+         * Set the maximum rate at which background compaction writes, in KB
+         * per second. Compaction steps are postponed when this budget is used
+         * up, and the rate is reduced while operations of other threads are
+         * slower than usual, so that compaction does not cause latency spikes.
+         * <p>
+         * The default value is 0, which means the rate is not limited.
+         *
+         * @param kb the rate limit in kilobytes per second
+         * @return this
+         */
+        public Builder autoCompactRateLimit(int kb) {
+            return set("autoCompactRateLimit", kb);
+        }
+
+        /**
+         * Enable group commit. Durable commits (see MVStore.groupCommit()),
+         * requested by concurrent threads within the given time window, are
+         * stored as a single chunk and made durable by a single file sync.
+         * <p>
+         * The default value is 0, which disables group commit.
+         * This setting has no effect for in-memory stores.
+         *
+         * @param millis the time window in milliseconds
+         * @return this
+         */
+        public Builder groupCommitDelay(int millis) {
+            return set("groupCommitDelay", millis);
+        }
+
+        /**
+         * Set the maximum number of commits in one group. A group is stored
+         * as soon as it reaches this size, even if the group commit delay
+         * has not elapsed yet.
+         * <p>
+         * The default value is 0, which means no limit.
+         *
+         * @param count the maximum group size
+         * @return this
+         */
+        public Builder groupCommitMaxSize(int count) {
+            return set("groupCommitMaxSize", count);
+        }
+
         /**
          * Use the following file name. If the file does not exist, it is
          * automatically created. The parent directory already must exist.
@@ -3929,6 +5387,37 @@ public Builder readOnly() {
             return set("readOnly", 1);
         }
 
+        /**
+         * Set the number of threads used to serialize the changed pages of a
+         * large chunk. Serialization and compression of keys and values of
+         * different pages then runs in parallel, while the chunk layout stays
+         * the same. The key and value data types must support concurrent
+         * writes, which the built-in data types do.
+         * <p>
+         * The default is 0, meaning the pages are serialized by the storing
+         * thread only.
+         *
+         * @param threadCount the number of threads, including the storing
+         *            thread
+         * @return this
+         */
+        public Builder serializationThreads(int threadCount) {
+            return set("serializationThreads", threadCount);
+        }
+
+        /**
+         * Read saved chunks through read-only memory mappings of the file,
+         * instead of copying each page into a newly allocated heap buffer.
+         * This reduces the garbage and copying on read-heavy workloads. It
+         * has no effect if the file system does not support memory mapping,
+         * for example if the file is encrypted.
+         *
+         * @return this
+         */
+        public Builder memoryMappedReads() {
+            return set("memoryMappedReads", 1);
+        }
+
         public Builder keysPerPage(int keyCount) {
             return set("keysPerPage", keyCount);
         }
@@ -3952,6 +5441,60 @@ public Builder cacheSize(int mb) {
             return set("cacheSize", mb);
         }
 
+        /**
+         * Set the size of the off-heap page cache in MB. The default is 0,
+         * meaning there is no off-heap cache.
+         * <p>
+         * Pages read from the file are also kept there in serialized form, in
+         * memory outside of the Java heap. A page that was evicted from the
+         * read cache is then deserialized from this memory, instead of being
+         * read from the file. This allows to cache a lot of data without
+         * increasing garbage collection pauses.
+         *
+         * @param mb the cache size in megabytes
+         * @return this
+         */
+        public Builder offHeapCacheSize(int mb) {
+            return set("offHeapCacheSize", mb);
+        }
+
+        /**
+         * Set the number of leaf pages that cursors read ahead. The default
+         * is 0, meaning there is no read-ahead.
+         * <p>
+         * Once a cursor moved past its first leaf page, the next pages of the
+         * parent page are read into the cache by background threads. Pages
+         * that are close to each other in the file are read at once. This
+         * speeds up scans of data that is not cached yet. Read-ahead is only
+         * used if there is a page cache.
+         *
+         * @param pages the number of pages
+         * @return this
+         */
+        public Builder readAhead(int pages) {
+            return set("readAheadPages", pages);
+        }
+
+        /**
+         * Set the size of the redo log in MB. The default is 0, meaning there
+         * is no redo log, and each commit stores a chunk.
+         * <p>
+         * With a redo log, a commit appends the changed entries to the log
+         * file and syncs it, which writes much less than storing a chunk with
+         * all changed pages. The pages are stored in a chunk only when the
+         * log exceeds this size, when the unsaved memory exceeds the auto
+         * commit buffer size, and when the store is closed; afterwards the log
+         * is truncated. When the store is opened, the log is replayed. The
+         * redo log is not used for read-only and encrypted stores, and for
+         * stores with a provided file store.
+         *
+         * @param mb the size in MB
+         * @return this
+         */
+        public Builder redoLogSize(int mb) {
+            return set("redoLogSize", mb);
+        }
+
         /**
          * Set the read cache concurrency. The default is 16, meaning 16
          * segments are used.
@@ -3993,6 +5536,36 @@ public Builder compressHigh() {
             return set("compress", 2);
         }
 
+        /**
+         * Register a page compressor. Maps may then use it with
+         * {@link MVMap#setCompressionAlgorithm(int)}. The algorithm id
+         * returned by the compressor is stored in each page, so the same
+         * compressor needs to be registered whenever the store is opened;
+         * the ids of used algorithms are listed in the store header, and a
+         * store with pages of an algorithm that is not registered can not be
+         * opened. Files with such pages can not be opened by older versions.
+         * Compressors are used concurrently and need to be thread-safe.
+         *
+         * @param compressor the compressor, with an algorithm id other than
+         *            the ids of the built-in algorithms
+         * @return this
+         */
+        public Builder compressor(Compressor compressor) {
+            int algorithm = compressor.getAlgorithm();
+            if (algorithm <= Compressor.DEFLATE) {
+                throw DataUtils.newIllegalArgumentException(
+                        "Compression algorithm id {0} is reserved", algorithm);
+            }
+            @SuppressWarnings("unchecked")
+            ArrayList<Compressor> list = (ArrayList<Compressor>) config.get("compressors");
+            if (list == null) {
+                list = new ArrayList<>();
+                config.put("compressors", list);
+            }
+            list.add(compressor);
+            return this;
+        }
+
         /**
          * Set the amount of memory a page should contain at most, in bytes,
          * before it is split. The default is 16 KB for persistent stores and 4
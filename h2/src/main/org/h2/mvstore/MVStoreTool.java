@@ -232,7 +232,9 @@ public static void dump(String fileName, Writer writer, boolean details) {
                         }
                     }
                     String[] keys = new String[entries];
-                    if (mapId == 0 && details) {
+                    // pages compressed by registered compressors can not be expanded here
+                    if (mapId == 0 && details && (type & DataUtils.PAGE_COMPRESSED_CUSTOM)
+                            != DataUtils.PAGE_COMPRESSED_CUSTOM) {
                         ByteBuffer data;
                         if (compressed) {
                             boolean fast = (type & DataUtils.PAGE_COMPRESSED_HIGH) != DataUtils.PAGE_COMPRESSED_HIGH;
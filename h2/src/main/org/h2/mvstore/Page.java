@@ -76,6 +76,13 @@
      */
     private int diskSpaceUsed;
 
+    /**
+     * The keys and values of this page, serialized ahead of the store by
+     * {@link #serializeBody(WriteBuffer, Compressor)}, or null. The first byte
+     * holds the compression type bits.
+     */
+    private byte[] serializedBody;
+
     /**
      * The keys.
      */
@@ -611,7 +618,10 @@ private void read(ByteBuffer buff) {
         boolean compressed = (type & DataUtils.PAGE_COMPRESSED) != 0;
         if (compressed) {
             Compressor compressor;
-            if ((type & DataUtils.PAGE_COMPRESSED_HIGH) ==
+            if ((type & DataUtils.PAGE_COMPRESSED_CUSTOM) ==
+                    DataUtils.PAGE_COMPRESSED_CUSTOM) {
+                compressor = map.getStore().getCompressor(DataUtils.readVarInt(buff));
+            } else if ((type & DataUtils.PAGE_COMPRESSED_HIGH) ==
                     DataUtils.PAGE_COMPRESSED_HIGH) {
                 compressor = map.getStore().getCompressorHigh();
             } else {
@@ -692,36 +702,21 @@ protected final int write(Chunk chunk, WriteBuffer buff, List<Long> toc) {
         buff.put((byte) (type | DataUtils.PAGE_HAS_PAGE_NO));
         int childrenPos = buff.position();
         writeChildren(buff, true);
-        int compressStart = buff.position();
-        map.getKeyType().write(buff, keys, len);
-        writeValues(buff);
         MVStore store = map.getStore();
-        int expLen = buff.position() - compressStart;
-        if (expLen > 16) {
-            int compressionLevel = store.getCompressionLevel();
-            if (compressionLevel > 0) {
-                Compressor compressor;
-                int compressType;
-                if (compressionLevel == 1) {
-                    compressor = store.getCompressorFast();
-                    compressType = DataUtils.PAGE_COMPRESSED;
-                } else {
-                    compressor = store.getCompressorHigh();
-                    compressType = DataUtils.PAGE_COMPRESSED_HIGH;
-                }
-                byte[] exp = new byte[expLen];
-                buff.position(compressStart).get(exp);
-                byte[] comp = new byte[expLen * 2];
-                int compLen = compressor.compress(exp, expLen, comp, 0);
-                int plus = DataUtils.getVarIntLen(compLen - expLen);
-                if (compLen + plus < expLen) {
-                    buff.position(typePos)
-                        .put((byte) (type | DataUtils.PAGE_HAS_PAGE_NO | compressType));
-                    buff.position(compressStart)
-                        .putVarInt(expLen - compLen)
-                        .put(comp, 0, compLen);
-                }
-            }
+        int compressType;
+        byte[] body = serializedBody;
+        if (body != null) {
+            serializedBody = null;
+            compressType = body[0];
+            buff.put(body, 1, body.length - 1);
+        } else {
+            compressType = writeBody(buff, store.getCompressorFast());
+        }
+        if (compressType != 0) {
+            int bodyEnd = buff.position();
+            buff.position(typePos)
+                .put((byte) (type | DataUtils.PAGE_HAS_PAGE_NO | compressType));
+            buff.position(bodyEnd);
         }
         int pageLength = buff.position() - start;
         if (pageNo >= 0) {
@@ -760,6 +755,89 @@ protected final int write(Chunk chunk, WriteBuffer buff, List<Long> toc) {
         return childrenPos;
     }
 
+    /**
+     * Write the keys and values of this page, compressed with the algorithm
+     * of the map if it makes the data smaller.
+     *
+     * @param buff the target buffer
+     * @param compressorFast the compressor to use for fast compression
+     * @return the compression type bits, or 0 if the data is not compressed
+     */
+    private int writeBody(WriteBuffer buff, Compressor compressorFast) {
+        int compressStart = buff.position();
+        map.getKeyType().write(buff, keys, getKeyCount());
+        writeValues(buff);
+        int expLen = buff.position() - compressStart;
+        if (expLen > 16) {
+            int algorithm = map.getCompressionAlgorithm();
+            if (algorithm != Compressor.NO) {
+                Compressor compressor;
+                int compressType;
+                if (algorithm == Compressor.LZF) {
+                    compressor = compressorFast;
+                    compressType = DataUtils.PAGE_COMPRESSED;
+                } else if (algorithm == Compressor.DEFLATE) {
+                    compressor = map.getStore().getCompressorHigh();
+                    compressType = DataUtils.PAGE_COMPRESSED_HIGH;
+                } else {
+                    compressor = map.getStore().getCompressor(algorithm);
+                    compressType = DataUtils.PAGE_COMPRESSED_CUSTOM;
+                }
+                byte[] exp = new byte[expLen];
+                buff.position(compressStart).get(exp);
+                byte[] comp = new byte[expLen * 2];
+                int compLen = compressor.compress(exp, expLen, comp, 0);
+                int plus = DataUtils.getVarIntLen(compLen - expLen);
+                if (compressType == DataUtils.PAGE_COMPRESSED_CUSTOM) {
+                    plus += DataUtils.getVarIntLen(algorithm);
+                }
+                if (compLen + plus < expLen) {
+                    buff.position(compressStart);
+                    if (compressType == DataUtils.PAGE_COMPRESSED_CUSTOM) {
+                        map.getStore().markCompressorUsed(algorithm);
+                        buff.putVarInt(algorithm);
+                    }
+                    buff.putVarInt(expLen - compLen)
+                        .put(comp, 0, compLen);
+                    return compressType;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Serialize the keys and values of this page ahead of
+     * {@link #writeUnsavedRecursive(Chunk, WriteBuffer, List)}, which then
+     * only copies them into the chunk. This is the CPU intensive part of
+     * writing a page, and does not depend on the page position, so it may run
+     * on any thread.
+     *
+     * @param buff the scratch buffer to use
+     * @param compressorFast the compressor to use for fast compression, which
+     *            must not be used concurrently by other threads
+     */
+    final void serializeBody(WriteBuffer buff, Compressor compressorFast) {
+        buff.clear();
+        buff.put((byte) 0);
+        int compressType = writeBody(buff, compressorFast);
+        ByteBuffer bb = buff.getBuffer();
+        byte[] body = new byte[bb.position()];
+        bb.flip();
+        bb.get(body);
+        body[0] = (byte) compressType;
+        serializedBody = body;
+    }
+
+    /**
+     * Add this page and all its unsaved descendants, which would be written
+     * by {@link #writeUnsavedRecursive(Chunk, WriteBuffer, List)}, to the
+     * list.
+     *
+     * @param target the list to add the pages to
+     */
+    abstract void collectUnsavedRecursive(List<Page<?,?>> target);
+
     /**
      * Write values that the buffer contains to the buff.
      *
@@ -1295,6 +1373,24 @@ void writeUnsavedRecursive(Chunk chunk, WriteBuffer buff, List<Long> toc) {
             }
         }
 
+        @Override
+        void collectUnsavedRecursive(List<Page<?,?>> target) {
+            if (!isSaved()) {
+                target.add(this);
+                collectUnsavedChildren(target);
+            }
+        }
+
+        void collectUnsavedChildren(List<Page<?,?>> target) {
+            int len = getRawChildPageCount();
+            for (int i = 0; i < len; i++) {
+                Page<K,V> p = children[i].getPage();
+                if (p != null) {
+                    p.collectUnsavedRecursive(target);
+                }
+            }
+        }
+
         void writeChildrenRecursive(Chunk chunk, WriteBuffer buff, List<Long> toc) {
             int len = getRawChildPageCount();
             for (int i = 0; i < len; i++) {
@@ -1367,6 +1463,15 @@ void writeUnsavedRecursive(Chunk chunk, WriteBuffer buff, List<Long> toc) {
             }
         }
 
+        @Override
+        void collectUnsavedRecursive(List<Page<?,?>> target) {
+            if (complete) {
+                super.collectUnsavedRecursive(target);
+            } else if (!isSaved()) {
+                collectUnsavedChildren(target);
+            }
+        }
+
         @Override
         public boolean isComplete() {
             return complete;
@@ -1573,6 +1678,13 @@ void writeUnsavedRecursive(Chunk chunk, WriteBuffer buff, List<Long> toc) {
             }
         }
 
+        @Override
+        void collectUnsavedRecursive(List<Page<?,?>> target) {
+            if (!isSaved()) {
+                target.add(this);
+            }
+        }
+
         @Override
         void releaseSavedPages() {}
 
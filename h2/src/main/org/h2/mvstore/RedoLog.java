@@ -0,0 +1,432 @@
+/*
+ * Copyright 2004-2020 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import org.h2.mvstore.type.DataType;
+import org.h2.store.fs.FileUtils;
+
+/**
+ * An append-only log of the entries changed by each commit. It allows to
+ * make a commit durable without storing a chunk: a chunk contains all changed
+ * pages up to the root, and is padded to the block size, while the log only
+ * contains the changed entries. The pages are stored in a chunk (a
+ * checkpoint) only from time to time, after which the log is truncated.
+ * <p>
+ * File format: a header of 16 bytes (magic, format, and the version of the
+ * last chunk the log applies to), followed by one block for each commit. A
+ * block consists of the length and the checksum of its data, followed by the
+ * records: the map id (variable size int), the record type (PUT, REMOVE, or
+ * CLEAR), the length and the data of the key (if not CLEAR), and the length
+ * and the data of the value (if PUT).
+ * <p>
+ * When the store is opened, the blocks that were completely written are
+ * read, and the records of each map are replayed when the map is opened.
+ * Records of maps that are not opened are kept for the next log.
+ */
+final class RedoLog {
+
+    /**
+     * The length of the file header.
+     */
+    static final int HEADER_LENGTH = 16;
+
+    private static final int MAGIC = 0x48325244;
+    private static final int FORMAT = 1;
+    private static final int BLOCK_HEADER_LENGTH = 8;
+
+    private static final byte PUT = 0;
+    private static final byte REMOVE = 1;
+    private static final byte CLEAR = 2;
+
+    private final String fileName;
+    private final String tempFileName;
+    private final long maxSize;
+    private final WriteBuffer buff = new WriteBuffer();
+
+    /**
+     * The records of the maps that were not opened yet, in log order.
+     */
+    private final HashMap<Integer, ArrayList<byte[]>> pending = new HashMap<>();
+
+    private FileChannel file;
+    private long size;
+    private long writtenBytes;
+    private volatile boolean checkpointRequested;
+
+    /**
+     * Open the log, and read the records that apply to the given version.
+     *
+     * @param fileName the file name
+     * @param maxSize the size in bytes after which a checkpoint is needed
+     * @param version the version of the last chunk
+     */
+    RedoLog(String fileName, long maxSize, long version) {
+        this.fileName = fileName;
+        this.tempFileName = fileName + ".tempFile";
+        this.maxSize = maxSize;
+        if (FileUtils.exists(tempFileName)) {
+            // a checkpoint was interrupted after the chunk was stored
+            FileChannel temp = open(tempFileName);
+            boolean valid = readHeader(temp, version);
+            closeSilently(temp);
+            if (valid) {
+                FileUtils.moveAtomicReplace(tempFileName, fileName);
+            } else {
+                FileUtils.delete(tempFileName);
+            }
+        }
+        file = open(fileName);
+        if (readHeader(file, version)) {
+            size = readBlocks();
+            try {
+                file.truncate(size);
+            } catch (IOException e) {
+                throw DataUtils.newMVStoreException(DataUtils.ERROR_WRITING_FAILED,
+                        "Could not truncate redo log {0}", fileName, e);
+            }
+        } else {
+            // the log is new, or it was written before the last chunk
+            reset(version);
+        }
+    }
+
+    private static FileChannel open(String fileName) {
+        try {
+            return FileUtils.open(fileName, "rw");
+        } catch (IOException e) {
+            throw DataUtils.newMVStoreException(DataUtils.ERROR_READING_FAILED,
+                    "Could not open redo log {0}", fileName, e);
+        }
+    }
+
+    private static void closeSilently(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignore) {/**/}
+    }
+
+    private static boolean readHeader(FileChannel channel, long version) {
+        try {
+            if (channel.size() < HEADER_LENGTH) {
+                return false;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        DataUtils.readFully(channel, 0, header);
+        return header.getInt() == MAGIC && header.getInt() == FORMAT && header.getLong() == version;
+    }
+
+    private long readBlocks() {
+        long length;
+        try {
+            length = file.size();
+        } catch (IOException e) {
+            throw DataUtils.newMVStoreException(DataUtils.ERROR_READING_FAILED,
+                    "Could not read redo log {0}", fileName, e);
+        }
+        long pos = HEADER_LENGTH;
+        ByteBuffer blockHeader = ByteBuffer.allocate(BLOCK_HEADER_LENGTH);
+        while (pos + BLOCK_HEADER_LENGTH <= length) {
+            blockHeader.clear();
+            DataUtils.readFully(file, pos, blockHeader);
+            int len = blockHeader.getInt();
+            int checksum = blockHeader.getInt();
+            if (len <= 0 || pos + BLOCK_HEADER_LENGTH + len > length) {
+                break;
+            }
+            ByteBuffer data = ByteBuffer.allocate(len);
+            DataUtils.readFully(file, pos + BLOCK_HEADER_LENGTH, data);
+            if (DataUtils.getFletcher32(data.array(), 0, len) != checksum) {
+                break;
+            }
+            while (data.hasRemaining()) {
+                int mapId = DataUtils.readVarInt(data);
+                int start = data.position();
+                byte type = data.get();
+                if (type != CLEAR) {
+                    data.position(data.getInt() + data.position());
+                    if (type == PUT) {
+                        data.position(data.getInt() + data.position());
+                    }
+                }
+                byte[] record = new byte[data.position() - start];
+                System.arraycopy(data.array(), start, record, 0, record.length);
+                ArrayList<byte[]> list = pending.computeIfAbsent(mapId, k -> new ArrayList<>());
+                if (type == CLEAR) {
+                    list.clear();
+                }
+                list.add(record);
+            }
+            pos += BLOCK_HEADER_LENGTH + len;
+        }
+        return pos;
+    }
+
+    /**
+     * Apply the records of the given map that were read from the log.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param map the map
+     */
+    <K,V> void replay(MVMap<K,V> map) {
+        ArrayList<byte[]> list = pending.remove(map.getId());
+        if (list == null) {
+            return;
+        }
+        DataType<K> keyType = map.getKeyType();
+        DataType<V> valueType = map.getValueType();
+        for (byte[] record : list) {
+            ByteBuffer data = ByteBuffer.wrap(record);
+            byte type = data.get();
+            if (type == CLEAR) {
+                map.clear();
+                continue;
+            }
+            K key = keyType.read(slice(data));
+            if (type == PUT) {
+                map.put(key, valueType.read(slice(data)));
+            } else {
+                map.remove(key);
+            }
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer data) {
+        int len = data.getInt();
+        ByteBuffer slice = data.slice();
+        slice.limit(len);
+        data.position(data.position() + len);
+        return slice;
+    }
+
+    /**
+     * Check whether there are records of the given map that were not replayed.
+     *
+     * @param mapId the map id
+     * @return true if there are records
+     */
+    boolean hasPending(int mapId) {
+        return pending.containsKey(mapId);
+    }
+
+    /**
+     * Discard the records of the given map that were read from the log,
+     * because the map is removed.
+     *
+     * @param mapId the map id
+     */
+    void discard(int mapId) {
+        pending.remove(mapId);
+    }
+
+    /**
+     * Start a new block.
+     */
+    void beginBlock() {
+        buff.clear();
+        buff.position(BLOCK_HEADER_LENGTH);
+    }
+
+    /**
+     * Add the current value of an entry to the current block.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param mapId the map id
+     * @param keyType the key type
+     * @param key the key
+     * @param valueType the value type
+     * @param value the value, or null if the entry was removed
+     */
+    <K,V> void add(int mapId, DataType<K> keyType, K key, DataType<V> valueType, V value) {
+        buff.putVarInt(mapId).put(value == null ? REMOVE : PUT);
+        int start = buff.position();
+        buff.putInt(0);
+        keyType.write(buff, key);
+        buff.putInt(start, buff.position() - start - 4);
+        if (value != null) {
+            start = buff.position();
+            buff.putInt(0);
+            valueType.write(buff, value);
+            buff.putInt(start, buff.position() - start - 4);
+        }
+    }
+
+    /**
+     * Add the removal of all entries of a map to the current block.
+     *
+     * @param mapId the map id
+     */
+    void addClear(int mapId) {
+        buff.putVarInt(mapId).put(CLEAR);
+    }
+
+    /**
+     * Append the current block to the log, and sync the file.
+     */
+    void endBlock() {
+        if (buff.position() == BLOCK_HEADER_LENGTH) {
+            return;
+        }
+        ByteBuffer data = finishBlock(0);
+        DataUtils.writeFully(file, size, data);
+        sync(file, fileName);
+        size += data.limit();
+        writtenBytes += data.limit();
+    }
+
+    private ByteBuffer finishBlock(int blockStart) {
+        ByteBuffer data = buff.getBuffer();
+        int len = data.position() - blockStart - BLOCK_HEADER_LENGTH;
+        data.putInt(blockStart, len);
+        data.putInt(blockStart + 4, DataUtils.getFletcher32(data.array(), blockStart + BLOCK_HEADER_LENGTH, len));
+        data.flip();
+        return data;
+    }
+
+    /**
+     * Whether a checkpoint is needed, because the log is too large, or because
+     * it was requested.
+     *
+     * @return true if a checkpoint is needed
+     */
+    boolean isCheckpointNeeded() {
+        return checkpointRequested || size > maxSize;
+    }
+
+    /**
+     * Request a checkpoint with the next commit, because some changes can not
+     * be written to the log.
+     */
+    void requestCheckpoint() {
+        checkpointRequested = true;
+    }
+
+    /**
+     * Prepare a checkpoint, before the chunk of the given version is stored.
+     * If there are records of maps that were not opened so far, the new log
+     * with these records is written to a temporary file, so that they survive
+     * a crash before the checkpoint is complete.
+     *
+     * @param version the version of the chunk to be stored
+     */
+    void prepareCheckpoint(long version) {
+        checkpointRequested = false;
+        if (pending.isEmpty()) {
+            return;
+        }
+        buff.clear();
+        buff.putInt(MAGIC).putInt(FORMAT).putLong(version);
+        buff.position(HEADER_LENGTH + BLOCK_HEADER_LENGTH);
+        for (Map.Entry<Integer, ArrayList<byte[]>> entry : pending.entrySet()) {
+            for (byte[] record : entry.getValue()) {
+                buff.putVarInt(entry.getKey()).put(record);
+            }
+        }
+        ByteBuffer data = finishBlock(HEADER_LENGTH);
+        FileChannel temp = open(tempFileName);
+        try {
+            temp.truncate(0);
+            DataUtils.writeFully(temp, 0, data);
+            sync(temp, tempFileName);
+        } catch (IOException e) {
+            throw DataUtils.newMVStoreException(DataUtils.ERROR_WRITING_FAILED,
+                    "Could not write redo log {0}", tempFileName, e);
+        } finally {
+            closeSilently(temp);
+        }
+        writtenBytes += data.limit();
+    }
+
+    /**
+     * Complete a checkpoint, after the chunk of the given version was stored
+     * and synced.
+     *
+     * @param version the version of the chunk
+     */
+    void completeCheckpoint(long version) {
+        if (pending.isEmpty()) {
+            reset(version);
+            return;
+        }
+        closeSilently(file);
+        FileUtils.moveAtomicReplace(tempFileName, fileName);
+        file = open(fileName);
+        size = FileUtils.size(fileName);
+    }
+
+    /**
+     * Discard the log, including the records of maps that were not opened so
+     * far, and start a new log for the given version.
+     *
+     * @param version the version of the last chunk
+     */
+    void reset(long version) {
+        pending.clear();
+        checkpointRequested = false;
+        buff.clear();
+        buff.putInt(MAGIC).putInt(FORMAT).putLong(version);
+        ByteBuffer data = buff.getBuffer();
+        data.flip();
+        try {
+            file.truncate(0);
+        } catch (IOException e) {
+            throw DataUtils.newMVStoreException(DataUtils.ERROR_WRITING_FAILED,
+                    "Could not truncate redo log {0}", fileName, e);
+        }
+        DataUtils.writeFully(file, 0, data);
+        sync(file, fileName);
+        size = data.limit();
+    }
+
+    /**
+     * Get the size of the log.
+     *
+     * @return the size in bytes
+     */
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * Get the number of bytes written to the log.
+     *
+     * @return the number of bytes
+     */
+    long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    /**
+     * Close the log. If the log is empty, the file is deleted.
+     *
+     * @param delete whether the file may be deleted if it is empty
+     */
+    void close(boolean delete) {
+        closeSilently(file);
+        if (delete && pending.isEmpty() && size == HEADER_LENGTH) {
+            FileUtils.delete(fileName);
+        }
+    }
+
+    private static void sync(FileChannel channel, String fileName) {
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw DataUtils.newMVStoreException(DataUtils.ERROR_WRITING_FAILED,
+                    "Could not sync redo log {0}", fileName, e);
+        }
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2004-2020 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.h2.mvstore.DataUtils;
+import org.h2.util.MemoryUnmapper;
+
+/**
+ * A cache for serialized data that uses keys of type long, and keeps the data
+ * outside of the Java heap, so that it does not add to garbage collection
+ * pauses. It is meant as a second tier behind an object cache.
+ * <p>
+ * This implementation is multi-threading safe and supports concurrent access.
+ * Each entry has a stamp, which is stored together with the data; a lookup
+ * with a different stamp is a miss, and removes the outdated entry.
+ * <p>
+ * Internally, the cache is split into a number of segments. Each segment is a
+ * direct byte buffer, which is used as a ring: new entries are appended, and
+ * the oldest entries are evicted when the space is needed. An entry that is
+ * read while it is about to be evicted is appended again, so frequently used
+ * entries stay in the cache (similar to the clock replacement algorithm).
+ * Data is copied out of the buffer while the segment is locked, so the
+ * returned buffers are never overwritten.
+ */
+public class CacheLongKeyOffHeap {
+
+    /**
+     * The maximum size of a segment, in bytes.
+     */
+    private static final int MAX_SEGMENT_SIZE = 1 << 30;
+
+    private final long maxMemory;
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    /**
+     * Create a new cache with the given memory size.
+     *
+     * @param maxMemory the maximum memory to use, in bytes
+     */
+    public CacheLongKeyOffHeap(long maxMemory) {
+        DataUtils.checkArgument(maxMemory > 0, "Max memory must be larger than 0, is {0}", maxMemory);
+        int segmentCount = 16;
+        while (maxMemory / segmentCount > MAX_SEGMENT_SIZE) {
+            segmentCount <<= 1;
+        }
+        this.maxMemory = maxMemory;
+        segmentMask = segmentCount - 1;
+        segments = new Segment[segmentCount];
+        int segmentSize = (int) Math.max(1, maxMemory / segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    /**
+     * Get the data for the given key, if the stamp matches.
+     *
+     * @param key the key
+     * @param stamp the expected stamp
+     * @return a heap buffer with a copy of the data, or null if not found
+     */
+    public ByteBuffer get(long key, long stamp) {
+        return getSegment(key).get(key, stamp);
+    }
+
+    /**
+     * Add the data for the given key, replacing the old entry if any. The
+     * data is copied from the position to the limit of the buffer, which is
+     * not modified. Entries that are larger than 1/8 of a segment are not
+     * cached.
+     *
+     * @param key the key
+     * @param stamp the stamp
+     * @param data the data
+     */
+    public void put(long key, long stamp, ByteBuffer data) {
+        getSegment(key).put(key, stamp, data);
+    }
+
+    /**
+     * Remove an entry.
+     *
+     * @param key the key
+     */
+    public void remove(long key) {
+        getSegment(key).remove(key);
+    }
+
+    /**
+     * Remove all entries, and release the memory.
+     */
+    public void clear() {
+        for (Segment s : segments) {
+            s.clear();
+        }
+    }
+
+    private Segment getSegment(long key) {
+        return segments[CacheLongKeyLIRS.getHash(key) & segmentMask];
+    }
+
+    /**
+     * Get the number of cache hits.
+     *
+     * @return the cache hits
+     */
+    public long getHits() {
+        long x = 0;
+        for (Segment s : segments) {
+            x += s.hits.get();
+        }
+        return x;
+    }
+
+    /**
+     * Get the number of cache misses.
+     *
+     * @return the cache misses
+     */
+    public long getMisses() {
+        long x = 0;
+        for (Segment s : segments) {
+            x += s.misses.get();
+        }
+        return x;
+    }
+
+    /**
+     * Get the memory used by the cached data.
+     *
+     * @return the used memory, in bytes
+     */
+    public long getUsedMemory() {
+        long x = 0;
+        for (Segment s : segments) {
+            x += s.usedMemory;
+        }
+        return x;
+    }
+
+    /**
+     * Get the maximum memory to use.
+     *
+     * @return the maximum memory, in bytes
+     */
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * Get the number of entries.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        int x = 0;
+        for (Segment s : segments) {
+            x += s.size();
+        }
+        return x;
+    }
+
+    /**
+     * A cache segment.
+     */
+    private static final class Segment {
+
+        /**
+         * The number of cache hits.
+         */
+        final AtomicLong hits = new AtomicLong();
+
+        /**
+         * The number of cache misses.
+         */
+        final AtomicLong misses = new AtomicLong();
+
+        /**
+         * The number of bytes used by live entries, read without the lock.
+         */
+        volatile long usedMemory;
+
+        private final int capacity;
+
+        /**
+         * The entries by key.
+         */
+        private final HashMap<Long, Entry> map = new HashMap<>();
+
+        /**
+         * All entries in the order they were appended, including removed
+         * entries, which still occupy space until they are evicted.
+         */
+        private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+
+        /**
+         * The buffer, allocated on first use.
+         */
+        private ByteBuffer buffer;
+
+        /**
+         * The total number of bytes appended so far, including padding; the
+         * position of the next entry is head modulo capacity.
+         */
+        private long head;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized ByteBuffer get(long key, long stamp) {
+            Entry e = map.get(key);
+            if (e == null || e.stamp != stamp) {
+                if (e != null) {
+                    removeEntry(e);
+                }
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            byte[] data = new byte[e.length];
+            ByteBuffer b = buffer.duplicate();
+            b.position((int) (e.offset % capacity));
+            b.get(data);
+            if (head - e.offset > capacity - (capacity >>> 2)) {
+                // about to be evicted: give it a second chance
+                append(key, stamp, ByteBuffer.wrap(data));
+            }
+            return ByteBuffer.wrap(data);
+        }
+
+        synchronized void put(long key, long stamp, ByteBuffer data) {
+            if (data.remaining() > capacity >>> 3) {
+                remove(key);
+                return;
+            }
+            append(key, stamp, data.duplicate());
+        }
+
+        private void append(long key, long stamp, ByteBuffer data) {
+            int len = data.remaining();
+            long start = head;
+            int pos = (int) (start % capacity);
+            if (pos + len > capacity) {
+                // entries are not split, continue at the beginning
+                start += capacity - pos;
+                pos = 0;
+            }
+            Entry oldest;
+            while ((oldest = queue.peekFirst()) != null && start + len - oldest.offset > capacity) {
+                queue.pollFirst();
+                if (oldest.live) {
+                    removeEntry(oldest);
+                }
+            }
+            if (buffer == null) {
+                buffer = ByteBuffer.allocateDirect(capacity);
+            }
+            ByteBuffer b = buffer.duplicate();
+            b.position(pos);
+            b.put(data);
+            Entry e = new Entry(key, stamp, start, len);
+            queue.addLast(e);
+            Entry old = map.put(key, e);
+            if (old != null) {
+                old.live = false;
+                usedMemory -= old.length;
+            }
+            usedMemory += len;
+            head = start + len;
+        }
+
+        synchronized void remove(long key) {
+            Entry e = map.get(key);
+            if (e != null) {
+                removeEntry(e);
+            }
+        }
+
+        private void removeEntry(Entry e) {
+            map.remove(e.key);
+            e.live = false;
+            usedMemory -= e.length;
+        }
+
+        synchronized void clear() {
+            map.clear();
+            queue.clear();
+            usedMemory = 0;
+            head = 0;
+            if (buffer != null) {
+                MemoryUnmapper.unmap(buffer);
+                buffer = null;
+            }
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+
+    }
+
+    /**
+     * A cache entry.
+     */
+    private static final class Entry {
+
+        /**
+         * The key.
+         */
+        final long key;
+
+        /**
+         * The stamp.
+         */
+        final long stamp;
+
+        /**
+         * The position in the segment, as the number of bytes appended
+         * before this entry.
+         */
+        final long offset;
+
+        /**
+         * The length of the data.
+         */
+        final int length;
+
+        /**
+         * Whether the entry is still in the map.
+         */
+        boolean live = true;
+
+        Entry(long key, long stamp, long offset, int length) {
+            this.key = key;
+            this.stamp = stamp;
+            this.offset = offset;
+            this.length = length;
+        }
+
+    }
+
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2004-2020 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.db;
+
+import java.util.BitSet;
+
+import org.h2.api.ErrorCode;
+import org.h2.command.query.AllColumnsForPlan;
+import org.h2.engine.Session;
+import org.h2.index.Cursor;
+import org.h2.index.Index;
+import org.h2.index.VirtualTableIndex;
+import org.h2.message.DbException;
+import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStoreException;
+import org.h2.mvstore.tx.TransactionStore;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.result.SortOrder;
+import org.h2.table.Column;
+import org.h2.table.IndexColumn;
+import org.h2.table.TableFilter;
+import org.h2.value.Value;
+import org.h2.value.VersionedValue;
+
+/**
+ * An index of a history table. It reads an old version of the map of the
+ * primary index, or of a secondary index, of the table.
+ */
+public class MVHistoryIndex extends VirtualTableIndex {
+
+    private final MVHistoryTable table;
+
+    private final MVPrimaryIndex primaryIndex;
+
+    /**
+     * The index of the table, the primary index for the scan index.
+     */
+    private final Index index;
+
+    public MVHistoryIndex(MVHistoryTable table, MVPrimaryIndex primaryIndex, Index index) {
+        super(table, index.getName(), getColumns(table, primaryIndex, index), index.getIndexType());
+        this.table = table;
+        this.primaryIndex = primaryIndex;
+        this.index = index;
+    }
+
+    private static IndexColumn[] getColumns(MVHistoryTable table, MVPrimaryIndex primaryIndex, Index index) {
+        if (index == primaryIndex) {
+            return IndexColumn.wrap(table.getColumns());
+        }
+        IndexColumn[] indexColumns = index.getIndexColumns();
+        int length = indexColumns.length;
+        IndexColumn[] columns = new IndexColumn[length];
+        for (int i = 0; i < length; i++) {
+            IndexColumn c = new IndexColumn(table.getColumn(indexColumns[i].column.getColumnId()));
+            c.sortType = indexColumns[i].sortType;
+            columns[i] = c;
+        }
+        return columns;
+    }
+
+    @Override
+    public Cursor find(Session session, SearchRow first, SearchRow last) {
+        long version = table.getVersion(session);
+        TransactionStore transactionStore = primaryIndex.getTable().getTransactionStore();
+        try {
+            MVMap<Long, VersionedValue<SearchRow>> primaryMap;
+            MVMap<SearchRow, VersionedValue<Value>> map = null;
+            BitSet committingTransactions = transactionStore.getCommittingTransactions(version), previous;
+            do {
+                // commits may start or end while the version is current
+                previous = committingTransactions;
+                primaryMap = openVersion(primaryIndex.getMVMap(), version);
+                if (index instanceof MVSecondaryIndex) {
+                    map = openVersion(((MVSecondaryIndex) index).getMVMap(), version);
+                }
+                committingTransactions = transactionStore.getCommittingTransactions(version);
+            } while (!committingTransactions.equals(previous));
+            if (map != null) {
+                MVSecondaryIndex secondaryIndex = (MVSecondaryIndex) index;
+                return new SecondaryCursor(map.cursor(secondaryIndex.convertToKey(first, Boolean.FALSE),
+                        secondaryIndex.convertToKey(last, Boolean.TRUE), false), primaryMap,
+                        committingTransactions);
+            }
+            return new PrimaryCursor(primaryMap.cursor(primaryIndex.extractPKFromRow(first, Long.MIN_VALUE),
+                    primaryIndex.extractPKFromRow(last, Long.MAX_VALUE), false), committingTransactions);
+        } catch (MVStoreException e) {
+            throw primaryIndex.getTable().convertException(e);
+        }
+    }
+
+    @Override
+    public Row getRow(Session session, long key) {
+        long version = table.getVersion(session);
+        TransactionStore transactionStore = primaryIndex.getTable().getTransactionStore();
+        Row row;
+        try {
+            MVMap<Long, VersionedValue<SearchRow>> primaryMap;
+            BitSet committingTransactions = transactionStore.getCommittingTransactions(version), previous;
+            do {
+                previous = committingTransactions;
+                primaryMap = openVersion(primaryIndex.getMVMap(), version);
+                committingTransactions = transactionStore.getCommittingTransactions(version);
+            } while (!committingTransactions.equals(previous));
+            row = getVisibleRow(primaryMap.get(key), key, committingTransactions);
+        } catch (MVStoreException e) {
+            throw primaryIndex.getTable().convertException(e);
+        }
+        if (row == null) {
+            throw DbException.get(ErrorCode.ROW_NOT_FOUND_IN_PRIMARY_INDEX, getTraceSQL(), String.valueOf(key));
+        }
+        return row;
+    }
+
+    /**
+     * Open the given version of the map of an index. The map of an index is
+     * replaced when the table is re-created, truncated, or altered in a way
+     * that copies its data, and the history before that is not available.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param map the map
+     * @param version the version
+     * @return the map of the version
+     */
+    private static <K, V> MVMap<K, V> openVersion(MVMap<K, V> map, long version) {
+        long createVersion = map.getCreateVersion();
+        if (version < createVersion) {
+            throw DataUtils.newMVStoreException(DataUtils.ERROR_SNAPSHOT_TOO_OLD,
+                    "Version {0} is not available, the index was created or rebuilt in version {1}",
+                    version, createVersion);
+        }
+        return map.openVersion(version);
+    }
+
+    /**
+     * Get the committed value of an entry. The entries of transactions that
+     * were committing in the version are committed, but may still have an
+     * operation id.
+     *
+     * @param <T> the value type
+     * @param value the entry value, or null
+     * @param committingTransactions the transactions that were committing in
+     *            the version
+     * @return the committed value, or null
+     */
+    static <T> T getCommittedValue(VersionedValue<T> value, BitSet committingTransactions) {
+        if (value == null) {
+            return null;
+        }
+        long operationId = value.getOperationId();
+        return operationId == 0
+                || committingTransactions.get(TransactionStore.getTransactionId(operationId))
+                ? value.getCurrentValue() : value.getCommittedValue();
+    }
+
+    private static Row getVisibleRow(VersionedValue<SearchRow> value, long key, BitSet committingTransactions) {
+        Row row = (Row) getCommittedValue(value, committingTransactions);
+        if (row != null && row.getKey() == 0) {
+            row.setKey(key);
+        }
+        return row;
+    }
+
+    @Override
+    public double getCost(Session session, int[] masks, TableFilter[] filters, int filter, SortOrder sortOrder,
+            AllColumnsForPlan allColumnsSet) {
+        return 10 * getCostRangeIndex(masks, table.getRowCountApproximation(session), filters, filter, sortOrder,
+                !(index instanceof MVSecondaryIndex), allColumnsSet);
+    }
+
+    @Override
+    public boolean isRowIdIndex() {
+        return !(index instanceof MVSecondaryIndex);
+    }
+
+    @Override
+    public int getColumnIndex(Column col) {
+        // like the primary index, the scan index can not be used for columns
+        return index == primaryIndex ? SearchRow.ROWID_INDEX : super.getColumnIndex(col);
+    }
+
+    @Override
+    public boolean isFirstColumn(Column column) {
+        return index != primaryIndex && super.isFirstColumn(column);
+    }
+
+    @Override
+    public String getPlanSQL() {
+        return index.getPlanSQL();
+    }
+
+    /**
+     * A cursor over an old version of the primary index.
+     */
+    private static final class PrimaryCursor implements Cursor {
+
+        private final org.h2.mvstore.Cursor<Long, VersionedValue<SearchRow>> cursor;
+
+        private final BitSet committingTransactions;
+
+        private Row row;
+
+        PrimaryCursor(org.h2.mvstore.Cursor<Long, VersionedValue<SearchRow>> cursor,
+                BitSet committingTransactions) {
+            this.cursor = cursor;
+            this.committingTransactions = committingTransactions;
+        }
+
+        @Override
+        public Row get() {
+            return row;
+        }
+
+        @Override
+        public SearchRow getSearchRow() {
+            return row;
+        }
+
+        @Override
+        public boolean next() {
+            while (cursor.hasNext()) {
+                Long key = cursor.next();
+                row = getVisibleRow(cursor.getValue(), key, committingTransactions);
+                if (row != null) {
+                    return true;
+                }
+            }
+            row = null;
+            return false;
+        }
+
+        @Override
+        public boolean previous() {
+            throw DbException.getUnsupportedException("previous");
+        }
+    }
+
+    /**
+     * A cursor over an old version of a secondary index.
+     */
+    private static final class SecondaryCursor implements Cursor {
+
+        private final org.h2.mvstore.Cursor<SearchRow, VersionedValue<Value>> cursor;
+
+        private final MVMap<Long, VersionedValue<SearchRow>> primaryMap;
+
+        private final BitSet committingTransactions;
+
+        private SearchRow current;
+
+        private Row row;
+
+        SecondaryCursor(org.h2.mvstore.Cursor<SearchRow, VersionedValue<Value>> cursor,
+                MVMap<Long, VersionedValue<SearchRow>> primaryMap, BitSet committingTransactions) {
+            this.cursor = cursor;
+            this.primaryMap = primaryMap;
+            this.committingTransactions = committingTransactions;
+        }
+
+        @Override
+        public Row get() {
+            return row;
+        }
+
+        @Override
+        public SearchRow getSearchRow() {
+            return current;
+        }
+
+        @Override
+        public boolean next() {
+            while (cursor.hasNext()) {
+                current = cursor.next();
+                if (getCommittedValue(cursor.getValue(), committingTransactions) != null) {
+                    long key = current.getKey();
+                    row = getVisibleRow(primaryMap.get(key), key, committingTransactions);
+                    if (row != null) {
+                        return true;
+                    }
+                }
+            }
+            current = null;
+            row = null;
+            return false;
+        }
+
+        @Override
+        public boolean previous() {
+            throw DbException.getUnsupportedException("previous");
+        }
+    }
+
+}
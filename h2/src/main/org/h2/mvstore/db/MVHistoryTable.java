@@ -0,0 +1,186 @@
+/*
+ * Copyright 2004-2020 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.db;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import org.h2.api.ErrorCode;
+import org.h2.engine.DbObject;
+import org.h2.engine.Session;
+import org.h2.expression.Expression;
+import org.h2.expression.ExpressionVisitor;
+import org.h2.index.Index;
+import org.h2.message.DbException;
+import org.h2.mvstore.MVStore;
+import org.h2.table.Column;
+import org.h2.table.VirtualTable;
+import org.h2.util.DateTimeUtils;
+import org.h2.value.TypeInfo;
+import org.h2.value.Value;
+import org.h2.value.ValueNull;
+import org.h2.value.ValueTimestampTimeZone;
+
+/**
+ * A table as it was at an older version of the store, for
+ * <code>FOR SYSTEM_TIME AS OF</code> queries. Rows are read from the retained
+ * old versions of the maps of the primary and the secondary indexes of the
+ * table, only committed rows are visible.
+ */
+public class MVHistoryTable extends VirtualTable {
+
+    private final MVTable table;
+
+    private final MVPrimaryIndex primaryIndex;
+
+    private Expression asOf;
+
+    private final boolean version;
+
+    private boolean optimized;
+
+    private final ArrayList<Index> indexes;
+
+    private Value lastValue;
+
+    private long lastVersion;
+
+    /**
+     * Create a new history table.
+     *
+     * @param table the table
+     * @param asOf the point in time, or the version of the store
+     * @param version whether the expression is a version of the store
+     */
+    public MVHistoryTable(MVTable table, Expression asOf, boolean version) {
+        super(table.getSchema(), 0, table.getName());
+        this.table = table;
+        this.asOf = asOf;
+        this.version = version;
+        Column[] tableColumns = table.getColumns();
+        int columnCount = tableColumns.length;
+        Column[] c = new Column[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            c[i] = tableColumns[i].getClone();
+        }
+        setColumns(c);
+        ArrayList<Index> tableIndexes = table.getIndexes();
+        primaryIndex = (MVPrimaryIndex) tableIndexes.get(0);
+        indexes = new ArrayList<>(tableIndexes.size());
+        indexes.add(new MVHistoryIndex(this, primaryIndex, primaryIndex));
+        for (int i = 1, size = tableIndexes.size(); i < size; i++) {
+            Index index = tableIndexes.get(i);
+            if (index instanceof MVSecondaryIndex || index instanceof MVDelegateIndex) {
+                indexes.add(new MVHistoryIndex(this, primaryIndex, index));
+            }
+        }
+    }
+
+    /**
+     * Get the version of the store to read.
+     *
+     * @param session the session
+     * @return the version
+     */
+    long getVersion(Session session) {
+        if (!optimized) {
+            asOf = asOf.optimize(session);
+            optimized = true;
+        }
+        Value v = asOf.getValue(session);
+        if (v == ValueNull.INSTANCE) {
+            throw DbException.getInvalidValueException("AS OF", v.getTraceSQL());
+        }
+        if (v.equals(lastValue)) {
+            return lastVersion;
+        }
+        MVStore store = primaryIndex.getMVMap().getStore();
+        long result;
+        boolean stable = true;
+        if (version) {
+            result = v.getLong();
+            if (result < 0 || result > store.getCurrentVersion()) {
+                throw DbException.getInvalidValueException("AS OF VERSION", result);
+            }
+            if (!store.isVersionRetained(result)) {
+                throw DbException.get(ErrorCode.SNAPSHOT_TOO_OLD);
+            }
+        } else {
+            ValueTimestampTimeZone ts = (ValueTimestampTimeZone) v.convertTo(TypeInfo.TYPE_TIMESTAMP_TZ, session);
+            long timeNanos = ts.getTimeNanos();
+            long time = DateTimeUtils.getEpochSeconds(ts.getDateValue(), timeNanos, ts.getTimeZoneOffsetSeconds())
+                    * 1_000 + timeNanos / 1_000_000 % 1_000;
+            // versions that end later can change the result for times that
+            // are not yet in the past
+            stable = time < System.currentTimeMillis();
+            result = store.getVersionForTime(time);
+            if (result < 0) {
+                throw DbException.get(ErrorCode.SNAPSHOT_TOO_OLD);
+            }
+        }
+        if (stable) {
+            lastValue = v;
+            lastVersion = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean lock(Session session, boolean exclusive, boolean forceLockEvenInMvcc) {
+        return table.lock(session, false, false);
+    }
+
+    @Override
+    public Index getScanIndex(Session session) {
+        return indexes.get(0);
+    }
+
+    @Override
+    public ArrayList<Index> getIndexes() {
+        return indexes;
+    }
+
+    @Override
+    public long getMaxDataModificationId() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public boolean isDeterministic() {
+        return false;
+    }
+
+    @Override
+    public boolean canGetRowCount(Session session) {
+        return false;
+    }
+
+    @Override
+    public long getRowCount(Session session) {
+        return table.getRowCountApproximation(session);
+    }
+
+    @Override
+    public long getRowCountApproximation(Session session) {
+        return table.getRowCountApproximation(session);
+    }
+
+    @Override
+    public void addDependencies(HashSet<DbObject> dependencies) {
+        dependencies.add(table);
+        asOf.isEverything(ExpressionVisitor.getDependenciesVisitor(dependencies));
+    }
+
+    @Override
+    public StringBuilder getSQL(StringBuilder builder, int sqlFlags) {
+        table.getSQL(builder, sqlFlags).append(" FOR SYSTEM_TIME AS OF ");
+        if (version) {
+            builder.append("VERSION ");
+        }
+        return asOf.getUnenclosedSQL(builder, sqlFlags);
+    }
+
+}
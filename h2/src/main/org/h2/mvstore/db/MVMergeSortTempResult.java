@@ -0,0 +1,219 @@
+/*
+ * Copyright 2004-2020 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.PriorityQueue;
+
+import org.h2.engine.Database;
+import org.h2.expression.Expression;
+import org.h2.message.DbException;
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVMap.Builder;
+import org.h2.result.ResultExternal;
+import org.h2.result.SortOrder;
+import org.h2.value.Value;
+import org.h2.value.ValueRow;
+
+/**
+ * Sorted temporary result without distinct rows. Each group of added rows is
+ * sorted in memory and appended as a sorted run, the runs are merged when the
+ * rows are read.
+ */
+class MVMergeSortTempResult extends MVTempResult {
+
+    /**
+     * A cursor over one sorted run.
+     */
+    private final class RunCursor {
+
+        /**
+         * The number of the run.
+         */
+        final int run;
+
+        /**
+         * The identity of the first row after the run.
+         */
+        private final long end;
+
+        private final Cursor<Long, ValueRow> cursor;
+
+        /**
+         * The current row.
+         */
+        Value[] row;
+
+        RunCursor(int run, long start, long end) {
+            this.run = run;
+            this.end = end;
+            cursor = map.cursor(start);
+        }
+
+        /**
+         * Move to the next row of the run.
+         *
+         * @return whether there is a next row
+         */
+        boolean next() {
+            if (!cursor.hasNext() || cursor.next() >= end) {
+                row = null;
+                return false;
+            }
+            row = cursor.getValue().getList();
+            return true;
+        }
+
+    }
+
+    /**
+     * The sort order.
+     */
+    private final SortOrder sort;
+
+    /**
+     * Map with identities of rows as keys rows as values.
+     */
+    private final MVMap<Long, ValueRow> map;
+
+    /**
+     * The identities of the first rows of the runs.
+     */
+    private final ArrayList<Long> runs;
+
+    /**
+     * Counter for the identities of rows.
+     */
+    private long counter;
+
+    /**
+     * The cursors of runs for the {@link #next()} method, ordered by their
+     * current rows.
+     */
+    private PriorityQueue<RunCursor> queue;
+
+    /**
+     * Creates a shallow copy of the result.
+     *
+     * @param parent
+     *                   parent result
+     */
+    private MVMergeSortTempResult(MVMergeSortTempResult parent) {
+        super(parent);
+        this.sort = parent.sort;
+        this.map = parent.map;
+        this.runs = parent.runs;
+        this.counter = parent.counter;
+    }
+
+    /**
+     * Creates a new sorted temporary result.
+     *
+     * @param database
+     *            database
+     * @param expressions
+     *            column expressions
+     * @param visibleColumnCount
+     *            count of visible columns
+     * @param resultColumnCount
+     *            the number of columns including visible columns and additional
+     *            virtual columns for ORDER BY clause
+     * @param sort
+     *            sort order
+     */
+    MVMergeSortTempResult(Database database, Expression[] expressions, int visibleColumnCount,
+            int resultColumnCount, SortOrder sort) {
+        super(database, expressions, visibleColumnCount, resultColumnCount);
+        this.sort = sort;
+        ValueDataType valueType = new ValueDataType(database, new int[resultColumnCount]);
+        Builder<Long, ValueRow> builder = new MVMap.Builder<Long, ValueRow>()
+                                                .valueType(valueType).singleWriter();
+        map = store.openMap("tmp", builder);
+        runs = new ArrayList<>();
+    }
+
+    @Override
+    public int addRow(Value[] values) {
+        return addRows(Collections.singletonList(values));
+    }
+
+    @Override
+    public int addRows(Collection<Value[]> rows) {
+        assert parent == null && queue == null;
+        if (rows.isEmpty()) {
+            return rowCount;
+        }
+        ArrayList<Value[]> list = new ArrayList<>(rows);
+        sort.sort(list);
+        runs.add(counter);
+        for (Value[] row : list) {
+            map.append(counter++, ValueRow.get(row));
+        }
+        rowCount += list.size();
+        return rowCount;
+    }
+
+    @Override
+    public boolean contains(Value[] values) {
+        throw DbException.getUnsupportedException("contains()");
+    }
+
+    @Override
+    public synchronized ResultExternal createShallowCopy() {
+        if (parent != null) {
+            return parent.createShallowCopy();
+        }
+        if (closed) {
+            return null;
+        }
+        childCount++;
+        return new MVMergeSortTempResult(this);
+    }
+
+    @Override
+    public Value[] next() {
+        if (queue == null) {
+            int size = runs.size();
+            queue = new PriorityQueue<>(Math.max(size, 1), (a, b) -> {
+                int comp = sort.compare(a.row, b.row);
+                // rows of earlier runs first, as a stable sort would do
+                return comp != 0 ? comp : Integer.compare(a.run, b.run);
+            });
+            for (int i = 0; i < size; i++) {
+                RunCursor c = new RunCursor(i, runs.get(i), i + 1 < size ? runs.get(i + 1) : counter);
+                if (c.next()) {
+                    queue.add(c);
+                }
+            }
+        }
+        RunCursor c = queue.poll();
+        if (c == null) {
+            return null;
+        }
+        Value[] currentRow = c.row;
+        if (c.next()) {
+            queue.add(c);
+        }
+        if (hasEnum) {
+            fixEnum(currentRow);
+        }
+        return currentRow;
+    }
+
+    @Override
+    public int removeRow(Value[] values) {
+        throw DbException.getUnsupportedException("removeRow()");
+    }
+
+    @Override
+    public void reset() {
+        queue = null;
+    }
+
+}
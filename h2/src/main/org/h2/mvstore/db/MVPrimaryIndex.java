@@ -5,6 +5,7 @@
  */
 package org.h2.mvstore.db;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
@@ -219,6 +220,25 @@ Row lockRow(Session session, Row row) {
         return lockRow(map, key);
     }
 
+    /**
+     * Get the current version of a row, including the changes of other
+     * transactions that were committed after the statement started.
+     *
+     * @param session database session
+     * @param key the row key
+     * @return the row, or null if it does not exist
+     */
+    Row getCurrentRow(Session session, long key) {
+        TransactionMap<Long,SearchRow> map = getMap(session);
+        try {
+            Row row = (Row) map.getImmediate(key);
+            ensureRowKey(row, key);
+            return row;
+        } catch (MVStoreException ex) {
+            throw mvTable.convertException(ex);
+        }
+    }
+
     private Row lockRow(TransactionMap<Long,SearchRow> map, long key) {
         try {
             Row row = (Row) map.lock(key);
@@ -236,7 +256,14 @@ public Cursor find(Session session, SearchRow first, SearchRow last) {
         return find(session, min, max);
     }
 
-    private long extractPKFromRow(SearchRow row, long defaultValue) {
+    /**
+     * Get the key of a row, or the value of the main index column.
+     *
+     * @param row the search row, or null
+     * @param defaultValue the value to use if the row is null
+     * @return the key
+     */
+    long extractPKFromRow(SearchRow row, long defaultValue) {
         long result;
         if (row == null) {
             result = defaultValue;
@@ -334,7 +361,11 @@ public boolean needRebuild() {
 
     @Override
     public long getRowCount(Session session) {
-        return getMap(session).sizeAsLong();
+        try {
+            return getMap(session).sizeAsLong();
+        } catch (MVStoreException e) {
+            throw mvTable.convertException(e);
+        }
     }
 
     /**
@@ -356,6 +387,31 @@ public long getDiskSpaceUsed() {
         return dataMap.map.getRootPage().getDiskSpaceUsed();
     }
 
+    /**
+     * Get keys that split the rows of this index into ranges of approximately
+     * the same size. Uncommitted rows of other sessions are counted too.
+     *
+     * @param session the session
+     * @param count the number of ranges
+     * @return the ascending keys where the second and following ranges start,
+     *         may contain less than {@code count - 1} keys
+     */
+    public long[] getSplitKeys(Session session, int count) {
+        getMap(session);
+        MVMap<Long, VersionedValue<SearchRow>> map = dataMap.map;
+        long size = map.sizeAsLong();
+        long[] keys = new long[Math.max(count - 1, 0)];
+        int n = 0;
+        long last = Long.MIN_VALUE;
+        for (int i = 1; i < count; i++) {
+            Long key = map.getKey(size * i / count);
+            if (key != null && key > last) {
+                keys[n++] = last = key;
+            }
+        }
+        return Arrays.copyOf(keys, n);
+    }
+
     public String getMapName() {
         return mapName;
     }
@@ -384,6 +440,20 @@ Cursor find(Session session, Value first, Value last) {
         return find(session, from, to);
     }
 
+    /**
+     * Opens a cursor over the rows with the keys in the specified range. The
+     * transactional map is opened and the snapshot is taken by this method,
+     * the returned cursor only reads, so it can be used by another thread.
+     *
+     * @param session the session
+     * @param first the key of the first row
+     * @param last the key of the last row
+     * @return the cursor
+     */
+    public Cursor findRange(Session session, long first, long last) {
+        return find(session, Long.valueOf(first), Long.valueOf(last));
+    }
+
     private Cursor find(Session session, Long first, Long last) {
         TransactionMap<Long,SearchRow> map = getMap(session);
         if (first != null && last != null && first.longValue() == last.longValue()) {
@@ -391,7 +461,7 @@ private Cursor find(Session session, Long first, Long last) {
             ensureRowKey(row, first);
             return new SingleRowCursor(row);
         }
-        return new MVStoreCursor(map.entryIterator(first, last));
+        return new MVStoreCursor(map.entryIterator(first, last), mvTable);
     }
 
     @Override
@@ -432,11 +502,13 @@ private void ensureRowKey(Row row, long key) {
     static final class MVStoreCursor implements Cursor {
 
         private final Iterator<Entry<Long,SearchRow>> it;
+        private final MVTable mvTable;
         private Entry<Long,SearchRow> current;
         private Row row;
 
-        public MVStoreCursor(Iterator<Entry<Long,SearchRow>> it) {
+        public MVStoreCursor(Iterator<Entry<Long,SearchRow>> it, MVTable mvTable) {
             this.it = it;
+            this.mvTable = mvTable;
         }
 
         @Override
@@ -459,7 +531,11 @@ public SearchRow getSearchRow() {
 
         @Override
         public boolean next() {
-            current = it.hasNext() ? it.next() : null;
+            try {
+                current = it.hasNext() ? it.next() : null;
+            } catch (MVStoreException e) {
+                throw mvTable.convertException(e);
+            }
             row = null;
             return current != null;
         }
@@ -5,8 +5,10 @@
  */
 package org.h2.mvstore.db;
 
+import java.util.AbstractMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.PriorityQueue;
 import java.util.Queue;
@@ -131,18 +133,23 @@ public void addBufferedRows(List<String> bufferNames) {
         }
 
         try {
-            while (!queue.isEmpty()) {
-                Source s = queue.poll();
-                SearchRow row = s.next();
-
-                if (indexType.isUnique() && !mayHaveNullDuplicates(row)) {
-                    checkUnique(true, dataMap, row, Long.MIN_VALUE);
-                }
-
-                dataMap.putCommitted(row, ValueNull.INSTANCE);
-
-                if (s.hasNext()) {
-                    queue.offer(s);
+            if (dataMap.map.isEmpty()) {
+                // build the pages directly from the merged rows
+                dataMap.bulkLoadCommitted(mergeSorted(queue));
+            } else {
+                while (!queue.isEmpty()) {
+                    Source s = queue.poll();
+                    SearchRow row = s.next();
+
+                    if (indexType.isUnique() && !mayHaveNullDuplicates(row)) {
+                        checkUnique(true, dataMap, row, Long.MIN_VALUE);
+                    }
+
+                    dataMap.putCommitted(row, ValueNull.INSTANCE);
+
+                    if (s.hasNext()) {
+                        queue.offer(s);
+                    }
                 }
             }
         } finally {
@@ -153,6 +160,41 @@ public void addBufferedRows(List<String> bufferNames) {
         }
     }
 
+    /**
+     * Merge the sorted buffers. As the result is sorted, rows that violate a
+     * unique constraint are adjacent.
+     *
+     * @param queue the buffers
+     * @return the merged entries
+     */
+    private Iterator<Map.Entry<SearchRow,Value>> mergeSorted(Queue<Source> queue) {
+        return new Iterator<Map.Entry<SearchRow,Value>>() {
+
+            private SearchRow last;
+
+            @Override
+            public boolean hasNext() {
+                return !queue.isEmpty();
+            }
+
+            @Override
+            public Map.Entry<SearchRow,Value> next() {
+                Source s = queue.poll();
+                SearchRow row = s.next();
+                if (indexType.isUnique() && !mayHaveNullDuplicates(row)) {
+                    if (last != null && compareRows(last, row) == 0) {
+                        throw getDuplicateKeyException(last.toString());
+                    }
+                }
+                last = row;
+                if (s.hasNext()) {
+                    queue.offer(s);
+                }
+                return new AbstractMap.SimpleImmutableEntry<SearchRow,Value>(row, ValueNull.INSTANCE);
+            }
+        };
+    }
+
     private MVMap<SearchRow,Value> openMap(String mapName) {
         RowDataType keyType = getRowFactory().getRowDataType();
         ValueDataType valueType = new ValueDataType();
@@ -278,7 +320,15 @@ private Cursor find(Session session, SearchRow first, boolean bigger, SearchRow
         return new MVStoreCursor(session, map.keyIterator(min, max), mvTable);
     }
 
-    private SearchRow convertToKey(SearchRow r, Boolean minMax) {
+    /**
+     * Convert a search row to a key of this index.
+     *
+     * @param r the search row, or null
+     * @param minMax null to keep the key of the row, FALSE to use the lowest
+     *            possible key, TRUE to use the highest possible key
+     * @return the key, or null if the row is null
+     */
+    SearchRow convertToKey(SearchRow r, Boolean minMax) {
         if (r == null) {
             return null;
         }
@@ -355,7 +405,11 @@ public boolean needRebuild() {
     @Override
     public long getRowCount(Session session) {
         TransactionMap<SearchRow,Value> map = getMap(session);
-        return map.sizeAsLong();
+        try {
+            return map.sizeAsLong();
+        } catch (MVStoreException e) {
+            throw mvTable.convertException(e);
+        }
     }
 
     @Override
@@ -437,7 +491,11 @@ public SearchRow getSearchRow() {
 
         @Override
         public boolean next() {
-            current = it.hasNext() ? it.next() : null;
+            try {
+                current = it.hasNext() ? it.next() : null;
+            } catch (MVStoreException e) {
+                throw mvTable.convertException(e);
+            }
             row = null;
             return current != null;
         }
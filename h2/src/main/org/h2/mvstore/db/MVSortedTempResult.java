@@ -23,7 +23,7 @@
  * Sorted temporary result.
  *
  * <p>
- * This result is used for distinct and/or sorted results.
+ * This result is used for distinct results, they may be sorted too.
  * </p>
  */
 class MVSortedTempResult extends MVTempResult {
@@ -335,7 +335,11 @@ public boolean needRebuild() {
     @Override
     public long getRowCount(Session session) {
         TransactionMap<SpatialKey, Value> map = getMap(session);
-        return map.sizeAsLong();
+        try {
+            return map.sizeAsLong();
+        } catch (MVStoreException e) {
+            throw mvTable.convertException(e);
+        }
     }
 
     @Override
@@ -7,6 +7,7 @@
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import org.h2.api.DatabaseEventListener;
@@ -62,7 +63,8 @@ public class MVTable extends RegularTable {
         TRACE_LOCK_TIMEOUT_AFTER("timeout after "),
         TRACE_LOCK_UNLOCK("unlock"),
         TRACE_LOCK_ADDED_FOR("added for"),
-        TRACE_LOCK_ADD_UPGRADED_FOR("add (upgraded) for ");
+        TRACE_LOCK_ADD_UPGRADED_FOR("add (upgraded) for "),
+        TRACE_LOCK_ESCALATED_FOR("escalated for ");
 
         private final String eventText;
 
@@ -104,6 +106,26 @@ public String getEventText() {
     private final Store store;
     private final TransactionStore transactionStore;
 
+    private final TableLockStatistics lockStatistics = new TableLockStatistics();
+
+    /**
+     * The number of row locks after which a session tries to lock the whole
+     * table instead, or 0 if row locks are never escalated.
+     */
+    private final int lockEscalationThreshold;
+
+    /**
+     * The number of row locks taken by each session holding a lock on this
+     * table, if row locks can be escalated.
+     */
+    private final ConcurrentHashMap<Session, AtomicInteger> rowLockCounts;
+
+    /**
+     * Whether the exclusive lock was taken by escalating row locks. Such a
+     * lock does not block reads.
+     */
+    private volatile boolean lockEscalated;
+
     public MVTable(CreateTableData data, Store store) {
         super(data);
         nextAnalyze = database.getSettings().analyzeAuto;
@@ -111,6 +133,8 @@ public MVTable(CreateTableData data, Store store) {
         this.store = store;
         this.transactionStore = store.getTransactionStore();
         traceLock = database.getTrace(Trace.LOCK);
+        lockEscalationThreshold = database.getSettings().lockEscalationThreshold;
+        rowLockCounts = lockEscalationThreshold > 0 ? new ConcurrentHashMap<>() : null;
 
         primaryIndex = new MVPrimaryIndex(database, this, getId(),
                 IndexColumn.wrap(getColumns()), IndexType.createScan(true));
@@ -137,7 +161,7 @@ public boolean lock(Session session, boolean exclusive,
             if (exclusive) {
                 exclusive = false;
             } else {
-                if (lockExclusiveSession == null) {
+                if (lockExclusiveSession == null || lockEscalated) {
                     return false;
                 }
             }
@@ -174,17 +198,23 @@ private void doLock1(Session session, boolean exclusive) {
         traceLock(session, exclusive, TraceLockEvent.TRACE_LOCK_REQUESTING_FOR, NO_EXTRA_INFO);
         // don't get the current time unless necessary
         long max = 0L;
+        long start = 0L;
         boolean checkDeadlock = false;
         while (true) {
             // if I'm the next one in the queue
             if (waitingSessions.getFirst() == session) {
                 if (doLock2(session, exclusive)) {
+                    if (start != 0L) {
+                        lockStatistics.recordWait(System.nanoTime() - start);
+                    }
+                    lockStatistics.recordLock(exclusive);
                     return;
                 }
             }
             if (checkDeadlock) {
                 ArrayList<Session> sessions = checkDeadlock(session, null, null);
                 if (sessions != null) {
+                    lockStatistics.recordDeadlock();
                     throw DbException.get(ErrorCode.DEADLOCK_1,
                             getDeadlockDetails(sessions, exclusive));
                 }
@@ -196,9 +226,11 @@ private void doLock1(Session session, boolean exclusive) {
             if (max == 0L) {
                 // try at least one more time
                 max = Utils.nanoTimePlusMillis(now, session.getLockTimeout());
+                start = now;
             } else if (now - max >= 0L) {
                 traceLock(session, exclusive,
                         TraceLockEvent.TRACE_LOCK_TIMEOUT_AFTER, NO_EXTRA_INFO+session.getLockTimeout());
+                lockStatistics.recordTimeout();
                 throw DbException.get(ErrorCode.LOCK_TIMEOUT_1, getName());
             }
             try {
@@ -275,6 +307,7 @@ public void unlock(Session s) {
             traceLock(s, wasLocked, TraceLockEvent.TRACE_LOCK_UNLOCK, NO_EXTRA_INFO);
             if (wasLocked) {
                 lockSharedSessions.remove(s);
+                lockEscalated = false;
                 lockExclusiveSession = null;
                 if (SysProperties.THREAD_DEADLOCK_DETECTOR) {
                     if (EXCLUSIVE_LOCKS.get() != null) {
@@ -289,6 +322,9 @@ public void unlock(Session s) {
                     }
                 }
             }
+            if (rowLockCounts != null) {
+                rowLockCounts.remove(s);
+            }
             if (wasLocked && !waitingSessions.isEmpty()) {
                 synchronized (this) {
                     notifyAll();
@@ -297,6 +333,38 @@ public void unlock(Session s) {
         }
     }
 
+    /**
+     * Try to replace the row locks of a session by an exclusive lock on this
+     * table, without waiting. This is only possible if no other session
+     * holds or waits for a lock on this table. The lock is released at the
+     * end of the transaction, as other locks.
+     *
+     * @param session the session
+     * @return whether the table is now locked exclusively by the session
+     */
+    private boolean tryEscalateLock(Session session) {
+        synchronized (this) {
+            if (lockExclusiveSession == null && waitingSessions.isEmpty()
+                    && lockSharedSessions.containsKey(session) && doLock2(session, true)) {
+                lockEscalated = true;
+                traceLock(session, true, TraceLockEvent.TRACE_LOCK_ESCALATED_FOR, NO_EXTRA_INFO);
+                lockStatistics.recordLock(true);
+                lockStatistics.recordEscalation();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the lock counters of this table.
+     *
+     * @return the lock statistics
+     */
+    public TableLockStatistics getLockStatistics() {
+        return lockStatistics;
+    }
+
     @Override
     public void close(Session session) {
         // ignore
@@ -537,7 +605,21 @@ public void updateRow(Session session, Row oldRow, Row newRow) {
 
     @Override
     public Row lockRow(Session session, Row row) {
-        Row lockedRow = primaryIndex.lockRow(session, row);
+        Row lockedRow;
+        if (lockExclusiveSession == session && session.getIsolationLevel().allowNonRepeatableRead()) {
+            // no other session can change rows of this table
+            lockedRow = primaryIndex.getCurrentRow(session, row.getKey());
+            lockStatistics.recordRowLock(true);
+        } else {
+            lockedRow = primaryIndex.lockRow(session, row);
+            lockStatistics.recordRowLock(false);
+            if (rowLockCounts != null && lockSharedSessions.containsKey(session)) {
+                int count = rowLockCounts.computeIfAbsent(session, s -> new AtomicInteger()).incrementAndGet();
+                if (count % lockEscalationThreshold == 0) {
+                    tryEscalateLock(session);
+                }
+            }
+        }
         if (lockedRow == null || !row.hasSharedData(lockedRow)) {
             syncLastModificationIdWithDatabase();
         }
@@ -617,6 +699,15 @@ public long getDiskSpaceUsed() {
         return primaryIndex.getDiskSpaceUsed();
     }
 
+    /**
+     * Get the transaction store.
+     *
+     * @return the transaction store
+     */
+    TransactionStore getTransactionStore() {
+        return transactionStore;
+    }
+
     /**
      * Get a new transaction.
      *
@@ -107,6 +107,30 @@ public Store(Database db) {
                 if (autoCompactFillRate <= 100) {
                     builder.autoCompactFillRate(autoCompactFillRate);
                 }
+                int autoCompactRateLimit = db.getSettings().autoCompactRateLimit;
+                if (autoCompactRateLimit > 0) {
+                    builder.autoCompactRateLimit(autoCompactRateLimit);
+                }
+                int groupCommitDelay = db.getSettings().groupCommitDelay;
+                if (groupCommitDelay > 0) {
+                    builder.groupCommitDelay(groupCommitDelay);
+                    int groupCommitMaxSize = db.getSettings().groupCommitMaxSize;
+                    if (groupCommitMaxSize > 0) {
+                        builder.groupCommitMaxSize(groupCommitMaxSize);
+                    }
+                }
+            }
+            int offHeapCacheSize = db.getSettings().offHeapCacheSize;
+            if (offHeapCacheSize > 0) {
+                builder.offHeapCacheSize(offHeapCacheSize);
+            }
+            int readAheadPages = db.getSettings().readAheadPages;
+            if (readAheadPages > 0) {
+                builder.readAhead(readAheadPages);
+            }
+            int redoLogSize = db.getSettings().redoLogSize;
+            if (redoLogSize > 0) {
+                builder.redoLogSize(redoLogSize);
             }
             if (key != null) {
                 encrypted = true;
@@ -133,6 +157,8 @@ public Store(Database db) {
                 mvStore.setReuseSpace(false);
             }
             mvStore.setVersionsToKeep(0);
+            mvStore.setSnapshotRetentionTime(db.getSettings().snapshotRetentionTime);
+            mvStore.setHistoryRetentionTime(db.getSettings().historyRetentionTime);
             this.transactionStore = new TransactionStore(mvStore,
                     new MetaType<>(db, mvStore.backgroundExceptionHandler), new ValueDataType(db, null),
                     db.getLockTimeout());
@@ -162,6 +188,10 @@ DbException convertMVStoreException(MVStoreException e) {
         case DataUtils.ERROR_READING_FAILED:
         case DataUtils.ERROR_WRITING_FAILED:
             throw DbException.get(ErrorCode.IO_EXCEPTION_1, e, fileName);
+        case DataUtils.ERROR_TRANSACTION_READ_ONLY:
+            throw DbException.get(ErrorCode.DATABASE_IS_READ_ONLY, e);
+        case DataUtils.ERROR_SNAPSHOT_TOO_OLD:
+            throw DbException.get(ErrorCode.SNAPSHOT_TOO_OLD, e);
         default:
             throw DbException.get(ErrorCode.GENERAL_ERROR_1, e, e.getMessage());
         }
@@ -227,6 +257,20 @@ public void flush() {
         }
     }
 
+    /**
+     * Store all changes in the file, so that it contains all committed data,
+     * even if commits are written to the redo log. All maps of the database
+     * are opened with the database, so the redo log is empty afterwards.
+     */
+    public void checkpoint() {
+        FileStore s = mvStore.getFileStore();
+        if (s == null || s.isReadOnly()) {
+            return;
+        }
+        mvStore.compact(50, 4 * 1024 * 1024);
+        mvStore.checkpoint();
+    }
+
     /**
      * Close the store, without persisting changes.
      */
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2004-2020 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.db;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock counters of a table: granted table locks, waits for a table lock and
+ * their duration, row locks, and escalations of row locks to a table lock.
+ */
+public final class TableLockStatistics {
+
+    /**
+     * The upper bounds, in milliseconds, of the lock wait time histogram
+     * buckets. The last bucket counts all longer waits.
+     */
+    public static final long[] WAIT_TIME_BUCKET_LIMITS = { 1, 10, 100, 1_000 };
+
+    private final AtomicLong sharedLocks = new AtomicLong();
+    private final AtomicLong exclusiveLocks = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong waitTimeNanos = new AtomicLong();
+    private final AtomicLong maxWaitTimeNanos = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong deadlocks = new AtomicLong();
+    private final AtomicLong rowLocks = new AtomicLong();
+    private final AtomicLong escalatedRowLocks = new AtomicLong();
+    private final AtomicLong escalations = new AtomicLong();
+    private final AtomicLongArray waitTimeHistogram = new AtomicLongArray(WAIT_TIME_BUCKET_LIMITS.length + 1);
+
+    /**
+     * Count a granted table lock.
+     *
+     * @param exclusive whether the lock is exclusive
+     */
+    void recordLock(boolean exclusive) {
+        (exclusive ? exclusiveLocks : sharedLocks).incrementAndGet();
+    }
+
+    /**
+     * Count a wait for a table lock.
+     *
+     * @param nanos the time waited, in nanoseconds
+     */
+    void recordWait(long nanos) {
+        waits.incrementAndGet();
+        waitTimeNanos.addAndGet(nanos);
+        maxWaitTimeNanos.accumulateAndGet(nanos, Math::max);
+        long millis = nanos / 1_000_000L;
+        int bucket = 0;
+        while (bucket < WAIT_TIME_BUCKET_LIMITS.length && millis >= WAIT_TIME_BUCKET_LIMITS[bucket]) {
+            bucket++;
+        }
+        waitTimeHistogram.incrementAndGet(bucket);
+    }
+
+    /**
+     * Count a lock request that timed out.
+     */
+    void recordTimeout() {
+        timeouts.incrementAndGet();
+    }
+
+    /**
+     * Count a lock request that failed because of a deadlock.
+     */
+    void recordDeadlock() {
+        deadlocks.incrementAndGet();
+    }
+
+    /**
+     * Count a row lock.
+     *
+     * @param escalated whether the row is covered by an escalated table lock,
+     *            so that no row lock was needed
+     */
+    void recordRowLock(boolean escalated) {
+        (escalated ? escalatedRowLocks : rowLocks).incrementAndGet();
+    }
+
+    /**
+     * Count an escalation of row locks to a table lock.
+     */
+    void recordEscalation() {
+        escalations.incrementAndGet();
+    }
+
+    public long getSharedLocks() {
+        return sharedLocks.get();
+    }
+
+    public long getExclusiveLocks() {
+        return exclusiveLocks.get();
+    }
+
+    public long getWaits() {
+        return waits.get();
+    }
+
+    public long getWaitTimeNanos() {
+        return waitTimeNanos.get();
+    }
+
+    public long getMaxWaitTimeNanos() {
+        return maxWaitTimeNanos.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public long getDeadlocks() {
+        return deadlocks.get();
+    }
+
+    public long getRowLocks() {
+        return rowLocks.get();
+    }
+
+    public long getEscalatedRowLocks() {
+        return escalatedRowLocks.get();
+    }
+
+    public long getEscalations() {
+        return escalations.get();
+    }
+
+    /**
+     * Get the number of waits per wait time bucket, see
+     * {@link #WAIT_TIME_BUCKET_LIMITS}.
+     *
+     * @return the counts, one more than there are limits
+     */
+    public long[] getWaitTimeHistogram() {
+        long[] result = new long[waitTimeHistogram.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = waitTimeHistogram.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Whether any lock was requested.
+     *
+     * @return true if at least one counter is not zero
+     */
+    public boolean isUsed() {
+        return sharedLocks.get() != 0 || exclusiveLocks.get() != 0 || rowLocks.get() != 0
+                || escalatedRowLocks.get() != 0 || timeouts.get() != 0 || deadlocks.get() != 0;
+    }
+
+}
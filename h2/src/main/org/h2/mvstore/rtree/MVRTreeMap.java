@@ -121,6 +121,8 @@ public V operate(SpatialKey key, V value, DecisionMaker<? super V> decisionMaker
             RootReference<SpatialKey,V> rootReference = flushAndGetRoot();
             if (attempt++ == 0 && !rootReference.isLockedByCurrentThread()) {
                 beforeWrite();
+                // spatial keys are not written to the redo log
+                requestCheckpoint();
             }
             Page<SpatialKey,V> p = rootReference.root;
             if (removedPages != null && p.getTotalCount() > 0) {
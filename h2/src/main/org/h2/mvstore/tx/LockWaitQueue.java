@@ -0,0 +1,55 @@
+/*
+ * Copyright 2004-2020 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.tx;
+
+import java.util.ArrayDeque;
+
+/**
+ * Transactions waiting for a row lock, that is, for a map entry modified by
+ * another open transaction, in the order they started to wait. Only the first
+ * waiter is woken up when the lock is released. If it gets the lock, the
+ * remaining waiters are handed over to it without being woken up.
+ * <p>
+ * Queues are only changed while holding the monitor of
+ * {@link TransactionStore#lockWaitQueues}.
+ */
+final class LockWaitQueue {
+
+    /**
+     * The operation id of the locked entry.
+     */
+    long operationId;
+
+    /**
+     * The transaction holding the lock.
+     */
+    volatile Transaction owner;
+
+    /**
+     * The waiting transactions.
+     */
+    final ArrayDeque<Transaction> waiters = new ArrayDeque<>();
+
+    LockWaitQueue(long operationId, Transaction owner) {
+        this.operationId = operationId;
+        this.owner = owner;
+    }
+
+    /**
+     * Wake up the first waiter, if any.
+     */
+    void releaseFirst() {
+        Transaction first = waiters.peekFirst();
+        if (first != null) {
+            first.releaseLockWait();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "lockWaitQueue " + operationId + " owner " + owner + " waiters " + waiters.size();
+    }
+}
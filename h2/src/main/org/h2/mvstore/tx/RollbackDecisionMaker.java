@@ -15,17 +15,18 @@
  */
 final class RollbackDecisionMaker extends MVMap.DecisionMaker<Record<?,?>> {
     private final TransactionStore store;
+    private final Transaction transaction;
     private final long transactionId;
     private final long toLogId;
     private final TransactionStore.RollbackListener listener;
     private MVMap.Decision decision;
 
-    RollbackDecisionMaker(TransactionStore store, long transactionId, long toLogId,
-                            TransactionStore.RollbackListener listener) {
+    RollbackDecisionMaker(TransactionStore store, Transaction transaction, long toLogId) {
         this.store = store;
-        this.transactionId = transactionId;
+        this.transaction = transaction;
+        this.transactionId = transaction.transactionId;
         this.toLogId = toLogId;
-        this.listener = listener;
+        this.listener = transaction.listener;
     }
 
     @SuppressWarnings({"unchecked","rawtypes"})
@@ -50,6 +51,7 @@ public MVMap.Decision decide(Record existingValue, Record providedValue) {
                     VersionedValue<Object> previousValue = map.operate(key, valueToRestore,
                             MVMap.DecisionMaker.DEFAULT);
                     listener.onRollback(map, key, previousValue, valueToRestore);
+                    transaction.addRowCountDelta(mapId, countOf(valueToRestore) - countOf(previousValue));
                 }
             }
             decision = MVMap.Decision.REMOVE;
@@ -57,6 +59,10 @@ public MVMap.Decision decide(Record existingValue, Record providedValue) {
         return decision;
     }
 
+    private static int countOf(VersionedValue<Object> value) {
+        return value == null || value.getCurrentValue() == null ? 0 : 1;
+    }
+
     @Override
     public void reset() {
         decision = null;
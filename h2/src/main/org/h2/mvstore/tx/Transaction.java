@@ -5,12 +5,16 @@
  */
 package org.h2.mvstore.tx;
 
+import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import org.h2.engine.IsolationLevel;
 import org.h2.mvstore.DataUtils;
 import org.h2.mvstore.MVMap;
@@ -81,6 +85,11 @@ public final class Transaction {
     private static final int STATUS_BITS = 4;
     private static final int STATUS_MASK = (1 << STATUS_BITS) - 1;
 
+    /**
+     * How often a waiting transaction checks for deadlocks, in nanoseconds.
+     */
+    private static final long DEADLOCK_CHECK_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
 
     /**
      * The transaction store.
@@ -119,6 +128,17 @@ public final class Transaction {
      */
     private MVStore.TxCounter txCounter;
 
+    /**
+     * The bounded usage of the store version used by this transaction, if it
+     * uses a bounded snapshot, see {@link #setBoundedSnapshot(boolean)}.
+     */
+    private MVStore.BoundedVersionUsage boundedVersionUsage;
+
+    /**
+     * Whether new snapshots of this transaction are bounded.
+     */
+    private boolean boundedSnapshot;
+
     /**
      * Transaction name.
      */
@@ -129,11 +149,22 @@ public final class Transaction {
      */
     boolean wasStored;
 
+    /**
+     * Indicates whether a durable commit of this transaction is counted in
+     * pending group commits of the transaction store.
+     */
+    boolean groupCommitPending;
+
     /**
      * How long to wait for blocking transaction to commit or rollback.
      */
     int timeoutMillis;
 
+    /**
+     * Whether this transaction fails on a conflict instead of waiting.
+     */
+    private volatile boolean optimistic;
+
     /**
      * Identification of the owner of this transaction,
      * usually the owner is a database session.
@@ -160,6 +191,35 @@ public final class Transaction {
      */
     private volatile boolean notificationRequested;
 
+    /**
+     * Queue of waiters for an entry locked by another transaction, which this
+     * transaction is part of, if any. Guarded by
+     * {@link TransactionStore#lockWaitQueues}.
+     */
+    volatile LockWaitQueue lockWaitQueue;
+
+    /**
+     * Queues of waiters for entries locked by this transaction. Guarded by
+     * {@link TransactionStore#lockWaitQueues}.
+     */
+    private ArrayList<LockWaitQueue> ownedLockWaitQueues;
+
+    /**
+     * The thread waiting for a lock within this transaction, if any.
+     */
+    private volatile Thread waitingThread;
+
+    /**
+     * Whether the lock this transaction waits for may have been released.
+     */
+    private volatile boolean lockWaitReleased;
+
+    /**
+     * Description of the deadlock, if this transaction has been chosen by
+     * another transaction as a deadlock victim.
+     */
+    private volatile String deadlockDetails;
+
     /**
      * RootReferences for undo log snapshots
      */
@@ -170,6 +230,12 @@ public final class Transaction {
      */
     private final Map<Integer, TransactionMap<?,?>> transactionMaps = new HashMap<>();
 
+    /**
+     * Net number of entries added by this transaction, by map id, or null if
+     * unknown (the transaction was restored after a restart)
+     */
+    private HashMap<Integer, long[]> rowCountDeltas = new HashMap<>();
+
     /**
      * The current isolation level.
      */
@@ -194,6 +260,26 @@ public int getId() {
         return transactionId;
     }
 
+    /**
+     * Whether this transaction was started as a read-only transaction, see
+     * {@link TransactionStore#beginReadOnly(int, IsolationLevel)}.
+     *
+     * @return true if this transaction can not change data
+     */
+    public boolean isReadOnly() {
+        return transactionId == 0;
+    }
+
+    /**
+     * Check that this transaction may change data.
+     */
+    void checkWritable() {
+        if (isReadOnly()) {
+            throw DataUtils.newMVStoreException(
+                    DataUtils.ERROR_TRANSACTION_READ_ONLY, "Transaction is read-only");
+        }
+    }
+
     public long getSequenceNum() {
         return sequenceNum;
     }
@@ -206,6 +292,66 @@ RootReference<Long,Record<?,?>>[] getUndoLogRootReferences() {
         return undoLogRootReferences;
     }
 
+    /**
+     * Record a change of the number of entries in a map made by this
+     * transaction. A delta of 0 only marks the map as changed.
+     *
+     * @param mapId the map id
+     * @param delta the number of added (positive) or removed (negative) entries
+     */
+    void addRowCountDelta(int mapId, long delta) {
+        HashMap<Integer, long[]> deltas = rowCountDeltas;
+        if (deltas != null) {
+            long[] d = deltas.get(mapId);
+            if (d == null) {
+                deltas.put(mapId, new long[] { delta });
+            } else {
+                d[0] += delta;
+            }
+        }
+    }
+
+    /**
+     * Get the net number of entries this transaction added to the given map.
+     *
+     * @param mapId the map id
+     * @return the number of entries, or 0 if the map was not changed
+     */
+    long getRowCountDelta(int mapId) {
+        HashMap<Integer, long[]> deltas = rowCountDeltas;
+        long[] d = deltas == null ? null : deltas.get(mapId);
+        return d == null ? 0 : d[0];
+    }
+
+    /**
+     * Check whether this transaction changed the given map, or whether this
+     * is unknown.
+     *
+     * @param mapId the map id
+     * @return true if the map may have been changed
+     */
+    boolean hasRowCountDelta(int mapId) {
+        HashMap<Integer, long[]> deltas = rowCountDeltas;
+        return deltas == null || deltas.containsKey(mapId);
+    }
+
+    /**
+     * Get the row count changes of this transaction.
+     *
+     * @return the map id to delta map, or null if unknown
+     */
+    HashMap<Integer, long[]> getRowCountDeltas() {
+        return rowCountDeltas;
+    }
+
+    /**
+     * Mark the row count changes of this transaction as unknown. This is the
+     * case for transactions restored from the undo log.
+     */
+    void markRowCountDeltasUnknown() {
+        rowCountDeltas = null;
+    }
+
     /**
      * Changes transaction status to a specified value
      * @param status to be set
@@ -277,7 +423,7 @@ public String getName() {
     }
 
     public int getBlockerId() {
-        Transaction blocker = this.blockingTransaction;
+        Transaction blocker = getLockOwner();
         return blocker == null ? 0 : blocker.ownerId;
     }
 
@@ -329,8 +475,12 @@ public boolean allowNonRepeatableRead() {
     @SuppressWarnings({"unchecked","rawtypes"})
     public void markStatementStart(HashSet<MVMap<Object,VersionedValue<Object>>> maps) {
         markStatementEnd();
-        if (txCounter == null) {
-            txCounter = store.store.registerVersionUsage();
+        if (txCounter == null && boundedVersionUsage == null) {
+            if (boundedSnapshot) {
+                boundedVersionUsage = store.store.registerBoundedVersionUsage();
+            } else {
+                txCounter = store.store.registerVersionUsage();
+            }
         }
 
         if (maps != null && !maps.isEmpty()) {
@@ -338,13 +488,16 @@ public void markStatementStart(HashSet<MVMap<Object,VersionedValue<Object>>> map
             // In order to get such a "snapshot", we wait for a moment of silence,
             // when no new transaction were committed / closed.
             BitSet committingTransactions;
+            long rowCountChanges;
             do {
                 committingTransactions = store.committingTransactions.get();
+                rowCountChanges = store.getRowCountChanges();
                 for (MVMap<Object,VersionedValue<Object>> map : maps) {
                     TransactionMap<?,?> txMap = openMapX(map);
-                    txMap.setStatementSnapshot(new Snapshot(map.flushAndGetRoot(), committingTransactions));
+                    txMap.setStatementSnapshot(new Snapshot(map.flushAndGetRoot(), committingTransactions),
+                            rowCountChanges < 0 ? -1 : store.getCommittedRowCount(map.getId()));
                 }
-                if (isReadCommitted()) {
+                if (isReadCommitted() && !isReadOnly()) {
                     undoLogRootReferences = store.collectUndoLogRootReferences();
                 }
             } while (committingTransactions != store.committingTransactions.get());
@@ -353,9 +506,11 @@ public void markStatementStart(HashSet<MVMap<Object,VersionedValue<Object>>> map
             // and committingTransactions mask tells us which of seemingly uncommitted changes
             // should be considered as committed.
             // Subsequent processing uses this snapshot info only.
+            // Committed row counts are only usable if no commit was in progress.
+            boolean rowCountsValid = rowCountChanges >= 0 && rowCountChanges == store.getRowCountChanges();
             for (MVMap<Object,VersionedValue<Object>> map : maps) {
                 TransactionMap<?,?> txMap = openMapX(map);
-                txMap.promoteSnapshot();
+                txMap.promoteSnapshot(rowCountsValid);
             }
         }
     }
@@ -386,6 +541,11 @@ private void releaseSnapshot() {
             txCounter = null;
             store.store.deregisterVersionUsage(counter);
         }
+        MVStore.BoundedVersionUsage usage = boundedVersionUsage;
+        if (usage != null) {
+            boundedVersionUsage = null;
+            store.store.deregisterBoundedVersionUsage(usage);
+        }
     }
 
     /**
@@ -489,8 +649,45 @@ public void prepare() {
      * Commit the transaction. Afterwards, this transaction is closed.
      */
     public void commit() {
+        commit(true);
+    }
+
+    /**
+     * Commit the transaction without storing the changes and without waiting
+     * until they are durable, even if group commit is enabled. The changes are
+     * visible to other transactions when this method returns. Afterwards, this
+     * transaction is closed.
+     */
+    public void commitNoWait() {
+        commit(false);
+    }
+
+    /**
+     * Commit the transaction as {@link #commitNoWait()} does, and return a
+     * future for the durability of the changes.
+     *
+     * @return a future, completed with the store version after the changes are
+     *         persisted and synced
+     * @see MVStore#commitAsync()
+     */
+    public CompletableFuture<Long> commitAsync() {
+        commit(false);
+        return store.store.commitAsync();
+    }
+
+    private void commit(boolean durable) {
+        if (isReadOnly()) {
+            markTransactionEnd();
+            setStatus(STATUS_COMMITTED);
+            closeIt();
+            return;
+        }
         assert store.openTransactions.get().get(transactionId);
         markTransactionEnd();
+        if (durable && store.store.isGroupCommitEnabled()) {
+            groupCommitPending = true;
+            store.pendingGroupCommits.incrementAndGet();
+        }
         Throwable ex = null;
         boolean hasChanges = false;
         int previousStatus = STATUS_OPEN;
@@ -505,16 +702,24 @@ public void commit() {
             ex = e;
             throw e;
         } finally {
-            if (isActive(previousStatus)) {
-                try {
-                    store.endTransaction(this, hasChanges);
-                } catch (Throwable e) {
-                    if (ex == null) {
-                        throw e;
-                    } else {
-                        ex.addSuppressed(e);
+            try {
+                if (isActive(previousStatus)) {
+                    try {
+                        store.endTransaction(this, hasChanges, durable);
+                    } catch (Throwable e) {
+                        if (ex == null) {
+                            throw e;
+                        } else {
+                            ex.addSuppressed(e);
+                        }
                     }
                 }
+            } finally {
+                if (groupCommitPending) {
+                    // this commit hasn't joined a group
+                    groupCommitPending = false;
+                    store.pendingGroupCommits.decrementAndGet();
+                }
             }
         }
     }
@@ -526,6 +731,9 @@ public void commit() {
      * @param savepointId the savepoint id
      */
     public void rollbackToSavepoint(long savepointId) {
+        if (isReadOnly()) {
+            return;
+        }
         long lastState = setStatus(STATUS_ROLLING_BACK);
         long logId = getLogId(lastState);
         boolean success;
@@ -533,7 +741,7 @@ public void rollbackToSavepoint(long savepointId) {
             store.rollbackTo(this, logId, savepointId);
         } finally {
             if (notificationRequested) {
-                notifyAllWaitingTransactions();
+                store.releaseLockWaiters(this, false);
             }
             long expectedState = composeState(STATUS_ROLLING_BACK, logId, hasRollback(lastState));
             long newState = composeState(STATUS_OPEN, savepointId, true);
@@ -554,6 +762,12 @@ public void rollbackToSavepoint(long savepointId) {
      * Roll the transaction back. Afterwards, this transaction is closed.
      */
     public void rollback() {
+        if (isReadOnly()) {
+            markTransactionEnd();
+            setStatus(STATUS_ROLLED_BACK);
+            closeIt();
+            return;
+        }
         markTransactionEnd();
         Throwable ex = null;
         int status = STATUS_OPEN;
@@ -573,7 +787,7 @@ public void rollback() {
         } finally {
             try {
                 if (isActive(status)) {
-                    store.endTransaction(this, true);
+                    store.endTransaction(this, true, true);
                 }
             } catch (Throwable e) {
                 if (ex == null) {
@@ -613,6 +827,61 @@ public void setTimeoutMillis(int timeoutMillis) {
         this.timeoutMillis = timeoutMillis > 0 ? timeoutMillis : store.timeoutMillis;
     }
 
+    /**
+     * Whether this transaction is optimistic, see {@link #setOptimistic(boolean)}.
+     *
+     * @return true if this transaction is optimistic
+     */
+    public boolean isOptimistic() {
+        return optimistic;
+    }
+
+    /**
+     * Sets whether this transaction is optimistic. An optimistic transaction
+     * never waits for a lock. A change of an entry which is changed by
+     * another open transaction fails immediately. With isolation levels above
+     * READ_COMMITTED, a change of an entry, which was changed and committed by
+     * another transaction after the snapshot of this transaction was taken,
+     * fails too. These conflicts throw an exception with the error code
+     * {@link DataUtils#ERROR_TRANSACTION_CONFLICT}, and the transaction should
+     * be rolled back and retried.
+     *
+     * @param optimistic whether this transaction is optimistic
+     */
+    public void setOptimistic(boolean optimistic) {
+        this.optimistic = optimistic;
+    }
+
+    public boolean isBoundedSnapshot() {
+        return boundedSnapshot;
+    }
+
+    /**
+     * Sets whether snapshots taken by this transaction from now on are
+     * bounded. A bounded snapshot does not keep old chunks of the store longer
+     * than the snapshot retention time of the store, so that a long running
+     * read does not make the file grow. Once the snapshot is older than that,
+     * reads through it throw an exception with the error code
+     * {@link DataUtils#ERROR_SNAPSHOT_TOO_OLD}.
+     *
+     * @param boundedSnapshot whether new snapshots are bounded
+     */
+    public void setBoundedSnapshot(boolean boundedSnapshot) {
+        this.boundedSnapshot = boundedSnapshot;
+    }
+
+    /**
+     * Check that the data read through the snapshot of this transaction may
+     * still be used. Fails if the bounded snapshot has expired.
+     */
+    void checkSnapshot() {
+        MVStore.BoundedVersionUsage usage = boundedVersionUsage;
+        if (usage != null && usage.isExpired()) {
+            throw DataUtils.newMVStoreException(DataUtils.ERROR_SNAPSHOT_TOO_OLD,
+                    "Snapshot of version {0} used by transaction {1} is too old", usage.version, transactionId);
+        }
+    }
+
     private long getLogId() {
         return getLogId(statusAndLogId.get());
     }
@@ -645,86 +914,179 @@ void closeIt() {
         transactionMaps.clear();
         long lastState = setStatus(STATUS_CLOSED);
         store.store.deregisterVersionUsage(txCounter);
-        if((hasChanges(lastState) || hasRollback(lastState)) && notificationRequested) {
-            notifyAllWaitingTransactions();
+        store.store.deregisterBoundedVersionUsage(boundedVersionUsage);
+        if (notificationRequested) {
+            store.releaseLockWaiters(this, true);
+        }
+    }
+
+    /**
+     * Register a queue of waiters for an entry locked by this transaction.
+     * Must be called while holding the monitor of
+     * {@link TransactionStore#lockWaitQueues}.
+     *
+     * @param queue the queue
+     */
+    void addLockWaitQueue(LockWaitQueue queue) {
+        ArrayList<LockWaitQueue> queues = ownedLockWaitQueues;
+        if (queues == null) {
+            ownedLockWaitQueues = queues = new ArrayList<>();
+        }
+        queues.add(queue);
+        notificationRequested = true;
+    }
+
+    /**
+     * Get and optionally forget the queues of waiters for entries locked by
+     * this transaction. Must be called while holding the monitor of
+     * {@link TransactionStore#lockWaitQueues}.
+     *
+     * @param clear whether to forget the queues
+     * @return the queues, or null
+     */
+    ArrayList<LockWaitQueue> getLockWaitQueues(boolean clear) {
+        ArrayList<LockWaitQueue> queues = ownedLockWaitQueues;
+        if (clear) {
+            ownedLockWaitQueues = null;
         }
+        return queues;
     }
 
-    private synchronized void notifyAllWaitingTransactions() {
-        notifyAll();
+    /**
+     * Wake up this transaction, if it waits for a lock, because the lock may
+     * have been released.
+     */
+    void releaseLockWait() {
+        lockWaitReleased = true;
+        LockSupport.unpark(waitingThread);
     }
 
     /**
      * Make this transaction to wait for the specified transaction to be closed,
-     * because both of them try to modify the same map entry.
+     * because both of them try to modify the same map entry. Transactions
+     * waiting for the same entry are queued, and only the first one is woken
+     * up when the entry is released.
      *
      * @param toWaitFor transaction to wait for
      * @param mapName name of the map containing blocking entry
      * @param key of the blocking entry
+     * @param operationId the operation id of the blocking entry
      * @return true if other transaction was closed and this one can proceed, false if timed out
      */
-    public boolean waitFor(Transaction toWaitFor, String mapName, Object key) {
-        blockingTransaction = toWaitFor;
+    public boolean waitFor(Transaction toWaitFor, String mapName, Object key, long operationId) {
         blockingMapName = mapName;
         blockingKey = key;
-        if (isDeadlocked(toWaitFor)) {
-            StringBuilder details = new StringBuilder(
-                    String.format("Transaction %d has been chosen as a deadlock victim. Details:%n", transactionId));
-            for (Transaction tx = toWaitFor, nextTx; (nextTx = tx.blockingTransaction) != null; tx = nextTx) {
-                details.append(String.format(
-                        "Transaction %d attempts to update map <%s> entry with key <%s> modified by transaction %s%n",
-                        tx.transactionId, tx.blockingMapName, tx.blockingKey, tx.blockingTransaction));
-                if (nextTx == this) {
-                    details.append(String.format(
-                            "Transaction %d attempts to update map <%s> entry with key <%s>"
-                                    + " modified by transaction %s%n",
-                            transactionId, blockingMapName, blockingKey, toWaitFor));
-                    if (isDeadlocked(toWaitFor)) {
-                        throw DataUtils.newMVStoreException(DataUtils.ERROR_TRANSACTIONS_DEADLOCK, "{0}",
-                                details.toString());
-                    }
+        deadlockDetails = null;
+        waitingThread = Thread.currentThread();
+        store.enqueueLockWaiter(this, operationId, toWaitFor);
+        blockingTransaction = toWaitFor;
+        try {
+            long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (true) {
+                checkDeadlock();
+                if (lockWaitReleased) {
+                    lockWaitReleased = false;
+                    return true;
+                }
+                if (store.isLockWaitOver(this)) {
+                    return true;
+                }
+                long nanos = until - System.nanoTime();
+                if (nanos <= 0) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, Math.min(nanos, DEADLOCK_CHECK_INTERVAL));
+                if (Thread.interrupted()) {
+                    return false;
                 }
             }
-        }
-
-        try {
-            return toWaitFor.waitForThisToEnd(timeoutMillis);
         } finally {
             blockingMapName = null;
             blockingKey = null;
             blockingTransaction = null;
+            waitingThread = null;
         }
     }
 
-    private boolean isDeadlocked(Transaction toWaitFor) {
-        for(Transaction tx = toWaitFor, nextTx;
-            (nextTx = tx.blockingTransaction) != null && tx.getStatus() == Transaction.STATUS_OPEN;
-            tx = nextTx) {
-            if (nextTx == this) {
-                return true;
+    /**
+     * Get the transaction holding the lock this transaction waits for.
+     *
+     * @return the transaction, or null if this transaction does not wait
+     */
+    private Transaction getLockOwner() {
+        Transaction blocker = blockingTransaction;
+        if (blocker != null) {
+            LockWaitQueue queue = lockWaitQueue;
+            if (queue != null) {
+                // the queue may have been handed over to another transaction
+                blocker = queue.owner;
             }
         }
-        return false;
+        return blocker;
     }
 
-    private synchronized boolean waitForThisToEnd(int millis) {
-        long until = System.currentTimeMillis() + millis;
-        notificationRequested = true;
-        long state;
-        int status;
-        while((status = getStatus(state = statusAndLogId.get())) != STATUS_CLOSED
-                && status != STATUS_ROLLED_BACK && !hasRollback(state)) {
-            long dur = until - System.currentTimeMillis();
-            if(dur <= 0) {
-                return false;
+    /**
+     * Check whether this transaction is part of a cycle of waiting
+     * transactions. If so, the transaction which has done the least work is
+     * chosen as the victim and its wait fails.
+     *
+     * @throws MVStoreException if this transaction is the victim
+     */
+    private void checkDeadlock() {
+        String details = deadlockDetails;
+        if (details == null) {
+            Transaction victim = findDeadlockVictim();
+            if (victim == null) {
+                return;
             }
-            try {
-                wait(dur);
-            } catch (InterruptedException ex) {
-                return false;
+            StringBuilder builder = new StringBuilder(String.format(
+                    "Transaction %d has been chosen as a deadlock victim. Details:%n", victim.transactionId));
+            Transaction tx = this;
+            do {
+                Transaction nextTx = tx.getLockOwner();
+                builder.append(String.format(
+                        "Transaction %d attempts to update map <%s> entry with key <%s> modified by transaction %s%n",
+                        tx.transactionId, tx.blockingMapName, tx.blockingKey, nextTx));
+                tx = nextTx;
+            } while (tx != this && tx != null);
+            // make sure the cycle still exists
+            if (findDeadlockVictim() != victim) {
+                return;
+            }
+            details = builder.toString();
+            if (victim != this) {
+                Thread thread = victim.waitingThread;
+                if (thread != null && victim.deadlockDetails == null) {
+                    victim.deadlockDetails = details;
+                    LockSupport.unpark(thread);
+                }
+                return;
+            }
+        }
+        deadlockDetails = null;
+        throw DataUtils.newMVStoreException(DataUtils.ERROR_TRANSACTIONS_DEADLOCK, "{0}", details);
+    }
+
+    private Transaction findDeadlockVictim() {
+        Transaction victim = this;
+        int limit = store.openTransactions.get().cardinality();
+        Transaction tx = this;
+        for (int i = 0; i < limit; i++) {
+            Transaction nextTx = tx.getLockOwner();
+            if (nextTx == null || nextTx.getStatus() != STATUS_OPEN) {
+                return null;
+            }
+            if (nextTx == this) {
+                return victim;
+            }
+            long cost = getLogId(nextTx.statusAndLogId.get());
+            long victimCost = getLogId(victim.statusAndLogId.get());
+            if (cost < victimCost || cost == victimCost && nextTx.sequenceNum > victim.sequenceNum) {
+                victim = nextTx;
             }
+            tx = nextTx;
         }
-        return true;
+        return null;
     }
 
     /**
@@ -62,6 +62,16 @@
      */
     private Snapshot<K,VersionedValue<V>> statementSnapshot;
 
+    /**
+     * Number of entries visible in the snapshot, or -1 if unknown
+     */
+    private long rowCount = -1;
+
+    /**
+     * Number of entries visible in the statement snapshot, or -1 if unknown
+     */
+    private long statementRowCount = -1;
+
     /**
      * Indicates whether underlying map was modified from within related transaction
      */
@@ -75,7 +85,9 @@
     TransactionMap(Transaction transaction, MVMap<K, VersionedValue<V>> map) {
         this.transaction = transaction;
         this.map = map;
-        this.txDecisionMaker = new TxDecisionMaker<>(map.getId(), transaction);
+        this.txDecisionMaker = transaction.allowNonRepeatableRead()
+                ? new TxDecisionMaker<>(map.getId(), transaction)
+                : new TxDecisionMaker<>(map.getId(), transaction, map.getValueType(), this::getFromSnapshot);
         this.ifAbsentDecisionMaker = new TxDecisionMaker.PutIfAbsentDecisionMaker<>(map.getId(),
                 transaction, this::getFromSnapshot);
         this.lockDecisionMaker = transaction.allowNonRepeatableRead()
@@ -124,6 +136,22 @@ public long sizeAsLongMax() {
      * @return the size
      */
     public long sizeAsLong() {
+        try {
+            long size = sizeAsLongUnchecked();
+            transaction.checkSnapshot();
+            return size;
+        } catch (RuntimeException e) {
+            // a page of an expired snapshot may have been overwritten
+            transaction.checkSnapshot();
+            throw e;
+        }
+    }
+
+    private long sizeAsLongUnchecked() {
+        long rowCount = getRowCount();
+        if (rowCount >= 0) {
+            return rowCount;
+        }
         // getting coherent picture of the map, committing transactions, and undo logs
         // either from values stored in transaction (never loops in that case),
         // or current values from the transaction store (loops until moment of silence)
@@ -153,6 +181,68 @@ public long sizeAsLong() {
         }
     }
 
+    /**
+     * Get the size of the map as seen by this transaction from the committed
+     * row count of the map and the row count changes of this transaction,
+     * without looking at the entries.
+     *
+     * @return the size, or -1 if it can not be determined this way
+     */
+    private long getRowCount() {
+        int mapId = map.getId();
+        switch (transaction.getIsolationLevel()) {
+        case READ_UNCOMMITTED:
+            // changes of other open transactions are visible
+            return -1;
+        case READ_COMMITTED:
+            if (transaction.getRowCountDeltas() == null) {
+                return -1;
+            }
+            break;
+        default:
+            // own changes are merged into the snapshot by key,
+            // so only a map not changed by this transaction can be counted
+            if (transaction.hasRowCountDelta(mapId)) {
+                return -1;
+            }
+        }
+        TransactionStore store = transaction.store;
+        if (snapshot != null) {
+            if (rowCount < 0) {
+                // make the committed row count available to later statements
+                store.initCommittedRowCount(this);
+            }
+            return rowCount;
+        }
+        long count = store.initCommittedRowCount(this);
+        return count < 0 ? -1 : count + transaction.getRowCountDelta(mapId);
+    }
+
+    /**
+     * Count the entries of this map, which are committed or belong to a
+     * committing transaction, ignoring changes of this transaction.
+     *
+     * @return the number of entries
+     */
+    long sizeAsLongCommitted() {
+        Snapshot<K,VersionedValue<V>> snapshot;
+        RootReference<Long,Record<?,?>>[] undoLogRootReferences;
+        do {
+            snapshot = createSnapshot();
+            undoLogRootReferences = transaction.store.collectUndoLogRootReferences();
+        } while (!snapshot.equals(createSnapshot()));
+
+        RootReference<K,VersionedValue<V>> mapRootReference = snapshot.root;
+        long size = mapRootReference.getTotalCount();
+        long undoLogsTotalSize = undoLogRootReferences == null ? size
+                : TransactionStore.calculateUndoLogsTotalSize(undoLogRootReferences);
+        if (undoLogsTotalSize != 0) {
+            size = adjustSize(undoLogRootReferences, mapRootReference, snapshot.committingTransactions, size,
+                    undoLogsTotalSize);
+        }
+        return size - transaction.getRowCountDelta(map.getId());
+    }
+
     private long adjustSize(RootReference<Long, Record<?, ?>>[] undoLogRootReferences,
             RootReference<K, VersionedValue<V>> mapRootReference, BitSet committingTransactions, long size,
             long undoLogsTotalSize) {
@@ -293,8 +383,10 @@ public V putIfAbsent(K key, V value) {
      * @param value to be appended
      */
     public void append(K key, V value) {
+        transaction.checkWritable();
         map.append(key, VersionedValueUncommitted.getInstance(
                                         transaction.log(new Record<>(map.getId(), key, null)), value, null));
+        transaction.addRowCountDelta(map.getId(), 1);
         hasChanges = true;
     }
 
@@ -323,47 +415,115 @@ public V lock(K key) {
     @SuppressWarnings("UnusedReturnValue")
     public V putCommitted(K key, V value) {
         DataUtils.checkArgument(value != null, "The value may not be null");
+        transaction.checkWritable();
         VersionedValue<V> newValue = VersionedValueCommitted.getInstance(value);
-        VersionedValue<V> oldValue = map.put(key, newValue);
+        VersionedValue<V> oldValue;
+        TransactionStore store = transaction.store;
+        store.startRowCountChange();
+        try {
+            oldValue = map.put(key, newValue);
+        } finally {
+            store.finishRowCountChange(map.getId());
+        }
         V result = oldValue == null ? null : oldValue.getCurrentValue();
         return result;
     }
 
+    /**
+     * Load entries into this empty map, without adding undo log entries. The
+     * pages are built directly from the sorted input, see
+     * {@link MVMap#bulkLoad(Iterator)}.
+     *
+     * @param entries the entries, in ascending key order
+     */
+    public void bulkLoadCommitted(Iterator<? extends Map.Entry<K,V>> entries) {
+        transaction.checkWritable();
+        TransactionStore store = transaction.store;
+        store.startRowCountChange();
+        try {
+            bulkLoad(entries);
+        } finally {
+            store.finishRowCountChange(map.getId());
+        }
+    }
+
+    private void bulkLoad(Iterator<? extends Map.Entry<K,V>> entries) {
+        map.bulkLoad(new Iterator<Map.Entry<K,VersionedValue<V>>>() {
+
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public Map.Entry<K,VersionedValue<V>> next() {
+                Map.Entry<K,V> entry = entries.next();
+                V value = entry.getValue();
+                DataUtils.checkArgument(value != null, "The value may not be null");
+                return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(),
+                        VersionedValueCommitted.getInstance(value));
+            }
+        });
+    }
+
     private V set(K key, V value) {
         txDecisionMaker.initialize(key, value);
         return set(key, txDecisionMaker);
     }
 
     private V set(Object key, TxDecisionMaker<K,V> decisionMaker) {
+        transaction.checkWritable();
         TransactionStore store = transaction.store;
         Transaction blockingTransaction;
         long sequenceNumWhenStarted;
         VersionedValue<V> result;
         String mapName = null;
-        do {
-            sequenceNumWhenStarted = store.openTransactions.get().getVersion();
-            assert transaction.getBlockerId() == 0;
-            @SuppressWarnings("unchecked")
-            K k = (K) key;
-            // second parameter (value) is not really used,
-            // since TxDecisionMaker has it embedded
-            result = map.operate(k, null, decisionMaker);
-
-            MVMap.Decision decision = decisionMaker.getDecision();
-            assert decision != null;
-            assert decision != MVMap.Decision.REPEAT;
-            blockingTransaction = decisionMaker.getBlockingTransaction();
-            if (decision != MVMap.Decision.ABORT || blockingTransaction == null) {
-                hasChanges |= decision != MVMap.Decision.ABORT;
-                V res = result == null ? null : result.getCurrentValue();
-                return res;
-            }
-            decisionMaker.reset();
-            if (mapName == null) {
-                mapName = map.getName();
+        long blockingOperationId;
+        long acquiredOperationId = 0;
+        try {
+            do {
+                sequenceNumWhenStarted = store.openTransactions.get().getVersion();
+                assert transaction.getBlockerId() == 0;
+                @SuppressWarnings("unchecked")
+                K k = (K) key;
+                // second parameter (value) is not really used,
+                // since TxDecisionMaker has it embedded
+                result = map.operate(k, null, decisionMaker);
+
+                MVMap.Decision decision = decisionMaker.getDecision();
+                assert decision != null;
+                assert decision != MVMap.Decision.REPEAT;
+                blockingTransaction = decisionMaker.getBlockingTransaction();
+                if (decision != MVMap.Decision.ABORT || blockingTransaction == null) {
+                    hasChanges |= decision != MVMap.Decision.ABORT;
+                    V res = result == null ? null : result.getCurrentValue();
+                    if (decision == MVMap.Decision.PUT) {
+                        transaction.addRowCountDelta(map.getId(),
+                                (decisionMaker.getNewValue(result) == null ? 0 : 1) - (res == null ? 0 : 1));
+                        acquiredOperationId = decisionMaker.getUndoKey();
+                    }
+                    return res;
+                }
+                blockingOperationId = decisionMaker.getBlockingOperationId();
+                decisionMaker.reset();
+                if (mapName == null) {
+                    mapName = map.getName();
+                }
+            } while (blockingTransaction.sequenceNum > sequenceNumWhenStarted
+                    || !transaction.isOptimistic()
+                            && transaction.waitFor(blockingTransaction, mapName, key, blockingOperationId));
+        } finally {
+            if (transaction.lockWaitQueue != null) {
+                store.dequeueLockWaiter(transaction, acquiredOperationId);
             }
-        } while (blockingTransaction.sequenceNum > sequenceNumWhenStarted
-                || transaction.waitFor(blockingTransaction, mapName, key));
+        }
+
+        if (transaction.isOptimistic()) {
+            throw DataUtils.newMVStoreException(DataUtils.ERROR_TRANSACTION_CONFLICT,
+                    "Map entry <{0}> with key <{1}> and value {2} is changed by tx {3} and can not be updated"
+                            + " by optimistic tx {4}",
+                    mapName, key, result, blockingTransaction.transactionId, transaction.transactionId);
+        }
 
         throw DataUtils.newMVStoreException(DataUtils.ERROR_TRANSACTION_LOCKED,
                 "Map entry <{0}> with key <{1}> and value {2} is locked by tx {3} and can not be updated by tx {4}"
@@ -442,6 +602,18 @@ public V get(Object key) {
      * @return the value, or null if not found
      */
     public V getFromSnapshot(K key) {
+        try {
+            V value = getFromSnapshotUnchecked(key);
+            transaction.checkSnapshot();
+            return value;
+        } catch (RuntimeException e) {
+            // a page of an expired snapshot may have been overwritten
+            transaction.checkSnapshot();
+            throw e;
+        }
+    }
+
+    private V getFromSnapshotUnchecked(K key) {
         switch (transaction.isolationLevel) {
         case READ_UNCOMMITTED: {
             Snapshot<K,VersionedValue<V>> snapshot = getStatementSnapshot();
@@ -511,11 +683,31 @@ Snapshot<K,VersionedValue<V>> getStatementSnapshot() {
 
     void setStatementSnapshot(Snapshot<K,VersionedValue<V>> snapshot) {
         statementSnapshot = snapshot;
+        statementRowCount = -1;
+    }
+
+    /**
+     * Set the statement snapshot along with the committed row count of the
+     * map at the same moment.
+     *
+     * @param snapshot the snapshot
+     * @param committedRowCount the committed row count, or -1 if unknown
+     */
+    void setStatementSnapshot(Snapshot<K,VersionedValue<V>> snapshot, long committedRowCount) {
+        statementSnapshot = snapshot;
+        statementRowCount = committedRowCount < 0 || transaction.getRowCountDeltas() == null ? -1
+                : committedRowCount + transaction.getRowCountDelta(map.getId());
     }
 
-    void promoteSnapshot() {
+    /**
+     * Use the statement snapshot as the snapshot, if there is none yet.
+     *
+     * @param rowCountValid whether the statement row count may be used
+     */
+    void promoteSnapshot(boolean rowCountValid) {
         if (snapshot == null) {
             snapshot = statementSnapshot;
+            rowCount = rowCountValid ? statementRowCount : -1;
         }
     }
 
@@ -613,7 +805,15 @@ public boolean isClosed() {
     @Override
     public void clear() {
         // TODO truncate transactionally?
-        map.clear();
+        transaction.checkWritable();
+        TransactionStore store = transaction.store;
+        store.startRowCountChange();
+        try {
+            map.clear();
+            transaction.addRowCountDelta(map.getId(), -transaction.getRowCountDelta(map.getId()));
+        } finally {
+            store.finishRowCountChange(map.getId());
+        }
         hasChanges = true;
     }
 
@@ -996,6 +1196,8 @@ private void fetchUncommitted() {
     }
 
     private abstract static class TMIterator<K,V,X> implements Iterator<X> {
+        private final Transaction transaction;
+
         final int transactionId;
 
         final BitSet committingTransactions;
@@ -1009,6 +1211,7 @@ private void fetchUncommitted() {
         TMIterator(TransactionMap<K, V> transactionMap, K from, K to, Snapshot<K, VersionedValue<V>> snapshot,
                 boolean reverse, boolean forEntries) {
             Transaction transaction = transactionMap.getTransaction();
+            this.transaction = transaction;
             this.transactionId = transaction.transactionId;
             this.forEntries = forEntries;
             this.cursor = transactionMap.map.cursor(snapshot.root, from, to, reverse);
@@ -1024,6 +1227,7 @@ final void registerCurrent(K key, Object value) {
 
         @Override
         public final boolean hasNext() {
+            transaction.checkSnapshot();
             return current != null;
         }
 
@@ -1032,8 +1236,15 @@ public final X next() {
             if (current == null) {
                 throw new NoSuchElementException();
             }
+            transaction.checkSnapshot();
             X result = current;
-            fetchNext();
+            try {
+                fetchNext();
+            } catch (RuntimeException e) {
+                // a page of an expired snapshot may have been overwritten
+                transaction.checkSnapshot();
+                throw e;
+            }
             return result;
         }
     }
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2004-2020 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.tx;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An array of references indexed by transaction id, which grows as needed.
+ * The elements are kept in segments of fixed size. Segments are allocated on
+ * first use and never moved, so elements can be read and written without
+ * locking. Only the allocation of a segment is synchronized.
+ *
+ * @param <T> the element type
+ */
+final class TransactionSlots<T> {
+
+    private static final int SEGMENT_BITS = 10;
+
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    /**
+     * The segments. The array is replaced, and never changed, when a segment
+     * is added.
+     */
+    private volatile AtomicReferenceArray<T>[] segments;
+
+    @SuppressWarnings({"unchecked","rawtypes"})
+    TransactionSlots() {
+        segments = new AtomicReferenceArray[] { new AtomicReferenceArray<>(SEGMENT_SIZE) };
+    }
+
+    /**
+     * Get the element with the given index.
+     *
+     * @param index the index
+     * @return the element, or null if not set
+     */
+    T get(int index) {
+        AtomicReferenceArray<T>[] s = segments;
+        int i = index >>> SEGMENT_BITS;
+        if (i >= s.length) {
+            return null;
+        }
+        AtomicReferenceArray<T> segment = s[i];
+        return segment == null ? null : segment.get(index & SEGMENT_MASK);
+    }
+
+    /**
+     * Set the element with the given index, allocating a segment if needed.
+     *
+     * @param index the index
+     * @param value the new value
+     */
+    void set(int index, T value) {
+        AtomicReferenceArray<T>[] s = segments;
+        int i = index >>> SEGMENT_BITS;
+        AtomicReferenceArray<T> segment = i < s.length ? s[i] : null;
+        if (segment == null) {
+            if (value == null) {
+                return;
+            }
+            segment = addSegment(i);
+        }
+        segment.set(index & SEGMENT_MASK, value);
+    }
+
+    private synchronized AtomicReferenceArray<T> addSegment(int i) {
+        AtomicReferenceArray<T>[] s = segments;
+        if (i < s.length && s[i] != null) {
+            return s[i];
+        }
+        s = Arrays.copyOf(s, Math.max(i + 1, s.length));
+        AtomicReferenceArray<T> segment = new AtomicReferenceArray<>(SEGMENT_SIZE);
+        s[i] = segment;
+        segments = s;
+        return segment;
+    }
+}
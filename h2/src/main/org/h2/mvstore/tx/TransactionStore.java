@@ -7,12 +7,16 @@
 
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.atomic.AtomicReferenceArray;
 import org.h2.engine.IsolationLevel;
 import org.h2.mvstore.Cursor;
 import org.h2.mvstore.DataUtils;
@@ -61,9 +65,10 @@ public class TransactionStore {
      * (write-ahead).
      * <p>
      * Key: opId, value: [ mapId, key, oldValue ].
+     * <p>
+     * Indexed by transaction id.
      */
-    @SuppressWarnings("unchecked")
-    final MVMap<Long,Record<?,?>>[] undoLogs = new MVMap[MAX_OPEN_TRANSACTIONS];
+    final TransactionSlots<MVMap<Long,Record<?,?>>> undoLogs = new TransactionSlots<>();
     private final MVMap.Builder<Long, Record<?,?>> undoLogBuilder;
 
     private final DataType<?> dataType;
@@ -84,21 +89,61 @@ public class TransactionStore {
      */
     final AtomicReference<BitSet> committingTransactions = new AtomicReference<>(new BitSet());
 
+    /**
+     * The commits that may be visible in retained old versions of the store,
+     * in the order they started. See
+     * {@link #getCommittingTransactions(long)}.
+     */
+    private final ConcurrentLinkedQueue<CommitRange> commitRanges = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The number of entries of the maps, as seen by a transaction without own
+     * changes, by map id. A count is created on first use and dropped when
+     * the map is changed outside of transactions.
+     */
+    private final ConcurrentHashMap<Integer, RowCount> rowCounts = new ConcurrentHashMap<>();
+
+    /**
+     * The number of started and finished changes of the committed row counts.
+     * While they differ, row counts and maps may not match.
+     */
+    private final AtomicLong rowCountChangesStarted = new AtomicLong();
+    private final AtomicLong rowCountChangesFinished = new AtomicLong();
+
+    /**
+     * The number of durable commits in progress, which haven't joined a group
+     * of MVStore.groupCommit() yet. The first commit of a group doesn't wait
+     * for other commits if there are no such commits.
+     */
+    final AtomicInteger pendingGroupCommits = new AtomicInteger();
+
+    /**
+     * Queues of transactions waiting for locked entries, by operation id of
+     * the locked entry. All lock wait queues are guarded by the monitor of
+     * this map.
+     */
+    final HashMap<Long, LockWaitQueue> lockWaitQueues = new HashMap<>();
+
     private boolean init;
 
     /**
      * Soft limit on the number of concurrently opened transactions.
      * Not really needed but used by some test.
      */
-    private int maxTransactionId = MAX_OPEN_TRANSACTIONS;
+    private int maxTransactionId = MAX_TRANSACTION_ID;
 
     /**
-     * Array holding all open transaction objects.
-     * Position in array is "transaction id".
-     * VolatileReferenceArray would do the job here, but there is no such thing in Java yet
+     * The number of undo log records of a transaction that are only kept in
+     * memory. The undo log is made persistent when it grows larger, or when
+     * the changes are stored while the transaction is open. 0 means undo logs
+     * are always persistent.
      */
-    private final AtomicReferenceArray<Transaction> transactions =
-                                                        new AtomicReferenceArray<>(MAX_OPEN_TRANSACTIONS + 1);
+    private volatile int undoLogBufferSize = DEFAULT_UNDO_LOG_BUFFER_SIZE;
+
+    /**
+     * All open transaction objects, indexed by transaction id.
+     */
+    private final TransactionSlots<Transaction> transactions = new TransactionSlots<>();
 
     private static final String TYPE_REGISTRY_NAME = "_";
 
@@ -113,10 +158,14 @@ public class TransactionStore {
     private static final char UNDO_LOG_OPEN = '.';
 
     /**
-     * Hard limit on the number of concurrently opened transactions
+     * The largest transaction id, limited by the number of bits of a
+     * transaction id in an operation id. Ids are allocated from the lowest
+     * free one, so the structures indexed by transaction id only grow with
+     * the number of concurrently open transactions.
      */
-    // TODO: introduce constructor parameter instead of a static field, driven by URL parameter
-    private static final int MAX_OPEN_TRANSACTIONS = 65535;
+    private static final int MAX_TRANSACTION_ID = (1 << (64 - Transaction.LOG_ID_BITS)) - 1;
+
+    private static final int DEFAULT_UNDO_LOG_BUFFER_SIZE = 1024;
 
     /**
      * Generate a string used to name undo log map for a specific transaction.
@@ -157,6 +206,7 @@ public TransactionStore(MVStore store, MetaType<?> metaDataType, DataType<?> dat
         this.typeRegistry = openTypeRegistry(store, metaDataType);
         this.preparedTransactions = store.openMap("openTransactions", new MVMap.Builder<>());
         this.undoLogBuilder = createUndoLogBuilder();
+        store.setBeforeStoreListener(this::spillUndoLogs);
     }
 
     @SuppressWarnings({"unchecked","rawtypes"})
@@ -194,7 +244,7 @@ public void init() {
                             int transactionId = StringUtils.parseUInt31(mapName, UNDO_LOG_NAME_PREFIX.length() + 1,
                                     mapName.length());
                             VersionedBitSet openTxBitSet = openTransactions.get();
-                            if (!openTxBitSet.get(transactionId)) {
+                            if (!openTxBitSet.get(transactionId) && !isUndoLogEmpty(mapName)) {
                                 Object[] data = preparedTransactions.get(transactionId);
                                 int status;
                                 String name;
@@ -206,7 +256,7 @@ public void init() {
                                     name = (String) data[1];
                                 }
                                 MVMap<Long, Record<?,?>> undoLog = store.openMap(mapName, undoLogBuilder);
-                                undoLogs[transactionId] = undoLog;
+                                undoLogs.set(transactionId, undoLog);
                                 Long lastUndoKey = undoLog.lastKey();
                                 assert lastUndoKey != null;
                                 assert getTransactionId(lastUndoKey) == transactionId;
@@ -224,8 +274,9 @@ public void init() {
                                     assert lastUndoKey == null || getTransactionId(lastUndoKey) == transactionId;
                                     logId = lastUndoKey == null ? 0 : getLogId(lastUndoKey) + 1;
                                 }
-                                registerTransaction(transactionId, status, name, logId, timeoutMillis, 0,
-                                        IsolationLevel.READ_COMMITTED, ROLLBACK_LISTENER_NONE);
+                                Transaction t = registerTransaction(transactionId, status, name, logId,
+                                        timeoutMillis, 0, IsolationLevel.READ_COMMITTED, ROLLBACK_LISTENER_NONE);
+                                t.markRowCountDeltasUnknown();
                                 continue;
                             }
                         }
@@ -240,6 +291,17 @@ public void init() {
         }
     }
 
+    /**
+     * Check whether an undo log is empty. This is possible if its entries are
+     * replayed from the redo log of the store.
+     *
+     * @param mapName the name of the undo log
+     * @return true if it is empty
+     */
+    private boolean isUndoLogEmpty(String mapName) {
+        return store.openMap(mapName, undoLogBuilder).isEmpty();
+    }
+
     private void markUndoLogAsCommitted(int transactionId) {
         addUndoLogRecord(transactionId, LOG_ID_MASK, Record.COMMIT_MARKER);
     }
@@ -268,11 +330,23 @@ public void endLeftoverTransactions() {
      * @param max the maximum id
      */
     public void setMaxTransactionId(int max) {
-        DataUtils.checkArgument(max <= MAX_OPEN_TRANSACTIONS,
+        DataUtils.checkArgument(max <= MAX_TRANSACTION_ID,
                 "Concurrent transactions limit is too high: {0}", max);
         this.maxTransactionId = max;
     }
 
+    /**
+     * Set the number of undo log records of a transaction that are kept in
+     * memory only, until the changes are stored while the transaction is still
+     * open. Short transactions then write no undo log pages at all.
+     *
+     * @param size the number of records, 0 to always persist undo logs
+     */
+    public void setUndoLogBufferSize(int size) {
+        DataUtils.checkArgument(size >= 0, "Undo log buffer size is negative: {0}", size);
+        this.undoLogBufferSize = size;
+    }
+
     /**
      * Check whether a given map exists.
      *
@@ -307,7 +381,7 @@ static long getOperationId(int transactionId, long logId) {
      * @param operationId the operation id
      * @return the transaction id
      */
-    static int getTransactionId(long operationId) {
+    public static int getTransactionId(long operationId) {
         return (int) (operationId >>> LOG_ID_BITS);
     }
 
@@ -375,6 +449,21 @@ public Transaction begin(RollbackListener listener, int timeoutMillis, int owner
         return transaction;
     }
 
+    /**
+     * Begin a new read-only transaction. It does not use a transaction id and
+     * is not registered as an open transaction, so its maps only take snapshots
+     * of the map roots and keep the needed versions of the store. Any attempt
+     * to change data throws an exception.
+     *
+     * @param ownerId of the owner (Session?)
+     * @param isolationLevel of new transaction
+     * @return the transaction
+     */
+    public Transaction beginReadOnly(int ownerId, IsolationLevel isolationLevel) {
+        return new Transaction(this, 0, openTransactions.get().getVersion(), Transaction.STATUS_OPEN, null, 0,
+                timeoutMillis, ownerId, isolationLevel, ROLLBACK_LISTENER_NONE);
+    }
+
     private Transaction registerTransaction(int txId, int status, String name, long logId,
                                             int timeoutMillis, int ownerId,
                                             IsolationLevel isolationLevel, RollbackListener listener) {
@@ -408,22 +497,44 @@ private Transaction registerTransaction(int txId, int status, String name, long
         assert transactions.get(transactionId) == null;
         transactions.set(transactionId, transaction);
 
-        if (undoLogs[transactionId] == null) {
+        MVMap<Long,Record<?,?>> undoLog = undoLogs.get(transactionId);
+        if (undoLog == null) {
             String undoName = getUndoLogName(transactionId);
-            MVMap<Long,Record<?,?>> undoLog = store.openMap(undoName, undoLogBuilder);
-            undoLogs[transactionId] = undoLog;
+            undoLog = store.openMap(undoName, undoLogBuilder);
+            undoLogs.set(transactionId, undoLog);
+        }
+        if (status == Transaction.STATUS_OPEN && !undoLog.isStoreDeferred() && undoLogBufferSize > 0
+                && store.getFileStore() != null && !store.isReadOnly() && undoLog.isEmpty()
+                && !store.hasData(undoLog.getName())) {
+            // the undo log is empty in the file as well, keep it in memory
+            undoLog.setStoreDeferred(true);
         }
         return transaction;
     }
 
+    /**
+     * Make the in-memory undo logs of open transactions persistent, because
+     * their changes are about to be stored. Called by the store before the
+     * changes are written.
+     */
+    private void spillUndoLogs() {
+        VersionedBitSet openTxBitSet = openTransactions.get();
+        for (int i = openTxBitSet.nextSetBit(0); i >= 0; i = openTxBitSet.nextSetBit(i + 1)) {
+            MVMap<Long,Record<?,?>> undoLog = undoLogs.get(i);
+            if (undoLog != null && undoLog.isStoreDeferred() && !undoLog.isEmpty()) {
+                undoLog.setStoreDeferred(false);
+            }
+        }
+    }
+
     /**
      * Store a transaction.
      *
      * @param t the transaction
      */
     void storeTransaction(Transaction t) {
-        if (t.getStatus() == Transaction.STATUS_PREPARED ||
-                t.getName() != null) {
+        if (!t.isReadOnly() && (t.getStatus() == Transaction.STATUS_PREPARED ||
+                t.getName() != null)) {
             Object[] v = { t.getStatus(), t.getName() };
             preparedTransactions.put(t.getId(), v);
             t.wasStored = true;
@@ -438,7 +549,7 @@ void storeTransaction(Transaction t) {
      * @param record Record(mapId, key, previousValue) to add
      */
     long addUndoLogRecord(int transactionId, long logId, Record<?,?> record) {
-        MVMap<Long, Record<?,?>> undoLog = undoLogs[transactionId];
+        MVMap<Long, Record<?,?>> undoLog = undoLogs.get(transactionId);
         long undoKey = getOperationId(transactionId, logId);
         if (logId == 0 && !undoLog.isEmpty()) {
             throw DataUtils.newMVStoreException(
@@ -448,6 +559,9 @@ long addUndoLogRecord(int transactionId, long logId, Record<?,?> record) {
                     transactionId);
         }
         undoLog.append(undoKey, record);
+        if (logId >= undoLogBufferSize && logId < LOG_ID_MASK && undoLog.isStoreDeferred()) {
+            undoLog.setStoreDeferred(false);
+        }
         return undoKey;
     }
 
@@ -456,7 +570,7 @@ long addUndoLogRecord(int transactionId, long logId, Record<?,?> record) {
      * @param transactionId id of the transaction
      */
     void removeUndoLogRecord(int transactionId) {
-        undoLogs[transactionId].trimLast();
+        undoLogs.get(transactionId).trimLast();
     }
 
     /**
@@ -466,6 +580,7 @@ void removeUndoLogRecord(int transactionId) {
      */
     void removeMap(TransactionMap<?,?> map) {
         store.removeMap(map.map);
+        rowCounts.remove(map.map.getId());
     }
 
     /**
@@ -480,7 +595,7 @@ void commit(Transaction t, boolean recovery) {
             // First, mark log as "committed".
             // It does not change the way this transaction is treated by others,
             // but preserves fact of commit in case of abrupt termination.
-            MVMap<Long,Record<?,?>> undoLog = undoLogs[transactionId];
+            MVMap<Long,Record<?,?>> undoLog = undoLogs.get(transactionId);
             Cursor<Long,Record<?,?>> cursor;
             if(recovery) {
                 removeUndoLogRecord(transactionId);
@@ -490,30 +605,176 @@ void commit(Transaction t, boolean recovery) {
                 markUndoLogAsCommitted(transactionId);
             }
 
-            // this is an atomic action that causes all changes
-            // made by this transaction, to be considered as "committed"
-            flipCommittingTransactionsBit(transactionId, true);
-
-            CommitDecisionMaker<Object> commitDecisionMaker = new CommitDecisionMaker<>();
+            startRowCountChange();
+            // entries of this transaction rewritten from now on belong to
+            // this version or to a newer one
+            CommitRange range = new CommitRange(transactionId, store.getWriteVersion());
+            commitRanges.add(range);
             try {
-                while (cursor.hasNext()) {
-                    Long undoKey = cursor.next();
-                    Record<?,?> op = cursor.getValue();
-                    int mapId = op.mapId;
-                    MVMap<Object, VersionedValue<Object>> map = openMap(mapId);
-                    if (map != null) { // might be null if map was removed later
-                        Object key = op.key;
-                        commitDecisionMaker.setUndoKey(undoKey);
-                        // second parameter (value) is not really
-                        // used by CommitDecisionMaker
-                        map.operate(key, null, commitDecisionMaker);
-                    }
-                }
-                undoLog.clear();
+                // this is an atomic action that causes all changes
+                // made by this transaction, to be considered as "committed"
+                flipCommittingTransactionsBit(transactionId, true);
+                applyRowCountDeltas(t);
+                commitChanges(undoLog, cursor, transactionId);
             } finally {
-                flipCommittingTransactionsBit(transactionId, false);
+                finishRowCountChange(-1);
+                // the transaction id may be reused after the commit, but only
+                // in this version or in a newer one
+                range.end = store.getWriteVersion();
+                removeOldCommitRanges();
+            }
+        }
+    }
+
+    private void removeOldCommitRanges() {
+        CommitRange range;
+        while ((range = commitRanges.peek()) != null && range.end != Long.MAX_VALUE
+                && !store.isVersionRetained(range.end - 1)) {
+            commitRanges.remove(range);
+        }
+    }
+
+    /**
+     * Get the transactions that were committing in the given version of the
+     * store. In that version, their entries are committed, even if they still
+     * have an operation id. This is like the committing transactions of a
+     * statement snapshot, but for an old version of the maps. The result may
+     * change while the given version is still the current version, so it
+     * should be checked again after the maps were opened.
+     *
+     * @param version the version
+     * @return the transaction ids
+     */
+    public BitSet getCommittingTransactions(long version) {
+        BitSet result = new BitSet();
+        for (CommitRange range : commitRanges) {
+            if (range.start <= version && version < range.end) {
+                result.set(range.transactionId);
+            }
+        }
+        return result;
+    }
+
+    private void commitChanges(MVMap<Long,Record<?,?>> undoLog, Cursor<Long,Record<?,?>> cursor,
+            int transactionId) {
+        CommitDecisionMaker<Object> commitDecisionMaker = new CommitDecisionMaker<>();
+        try {
+            while (cursor.hasNext()) {
+                Long undoKey = cursor.next();
+                Record<?,?> op = cursor.getValue();
+                int mapId = op.mapId;
+                MVMap<Object, VersionedValue<Object>> map = openMap(mapId);
+                if (map != null) { // might be null if map was removed later
+                    Object key = op.key;
+                    commitDecisionMaker.setUndoKey(undoKey);
+                    // second parameter (value) is not really
+                    // used by CommitDecisionMaker
+                    map.operate(key, null, commitDecisionMaker);
+                }
+            }
+            undoLog.clear();
+        } finally {
+            flipCommittingTransactionsBit(transactionId, false);
+        }
+    }
+
+    /**
+     * Add the row count changes of a committing transaction to the committed
+     * row counts, or drop all counts if the changes are unknown.
+     *
+     * @param t the committing transaction
+     */
+    private void applyRowCountDeltas(Transaction t) {
+        HashMap<Integer, long[]> deltas = t.getRowCountDeltas();
+        if (deltas == null) {
+            rowCounts.clear();
+            return;
+        }
+        for (Map.Entry<Integer, long[]> entry : deltas.entrySet()) {
+            long delta = entry.getValue()[0];
+            if (delta != 0) {
+                RowCount rowCount = rowCounts.get(entry.getKey());
+                if (rowCount != null) {
+                    rowCount.delta.addAndGet(delta);
+                }
+            }
+        }
+    }
+
+    /**
+     * Start a change which may make the committed row counts inconsistent
+     * with the maps.
+     */
+    void startRowCountChange() {
+        rowCountChangesStarted.incrementAndGet();
+    }
+
+    /**
+     * Finish a change started with {@link #startRowCountChange()}.
+     *
+     * @param mapId the id of the map changed outside of transactions, whose
+     *            row count has to be dropped, or -1
+     */
+    void finishRowCountChange(int mapId) {
+        if (mapId >= 0) {
+            rowCounts.remove(mapId);
+        }
+        rowCountChangesFinished.incrementAndGet();
+    }
+
+    /**
+     * Get the number of started row count changes, if none is in progress.
+     *
+     * @return the number of changes, or -1 if a change is in progress
+     */
+    long getRowCountChanges() {
+        long started = rowCountChangesStarted.get();
+        return rowCountChangesFinished.get() == started ? started : -1;
+    }
+
+    /**
+     * Get the committed row count of a map, if it is known. The result is only
+     * meaningful if no row count change is in progress.
+     *
+     * @param mapId the map id
+     * @return the number of entries, or -1 if unknown
+     */
+    long getCommittedRowCount(int mapId) {
+        RowCount rowCount = rowCounts.get(mapId);
+        return rowCount == null ? -1 : rowCount.get();
+    }
+
+    /**
+     * Get the committed row count of a map, counting the entries if it is not
+     * known yet.
+     *
+     * @param map the map
+     * @return the number of entries, or -1 if it could not be counted
+     *         because of concurrent commits
+     */
+    long initCommittedRowCount(TransactionMap<?,?> map) {
+        int mapId = map.map.getId();
+        RowCount rowCount = rowCounts.get(mapId);
+        if (rowCount == null) {
+            RowCount newRowCount = new RowCount();
+            rowCount = rowCounts.putIfAbsent(mapId, newRowCount);
+            if (rowCount == null) {
+                rowCount = newRowCount;
             }
         }
+        long count = rowCount.get();
+        if (count < 0) {
+            long changes = getRowCountChanges();
+            if (changes >= 0) {
+                long delta = rowCount.delta.get();
+                count = map.sizeAsLongCommitted();
+                if (changes != rowCountChangesStarted.get()) {
+                    return -1;
+                }
+                rowCount.init(count - delta);
+            }
+        }
+        return count;
     }
 
     private void flipCommittingTransactionsBit(int transactionId, boolean flag) {
@@ -577,14 +838,19 @@ <K,V> MVMap<K,VersionedValue<V>> getMap(int mapId) {
     /**
      * End this transaction. Change status to CLOSED and vacate transaction slot.
      * Will try to commit MVStore if autocommitDelay is 0 or if database is idle
-     * and amount of unsaved changes is sizable.
+     * and amount of unsaved changes is sizable. If group commit is enabled,
+     * committed changes are made durable before this method returns. An
+     * asynchronous commit does not wait here, its changes are stored by
+     * MVStore.commitAsync().
      *
      * @param t the transaction
      * @param hasChanges true if transaction has done any updates
      *                  (even if they are fully rolled back),
      *                   false if it just performed a data access
+     * @param durable false if the caller does not wait for durability
      */
-    void endTransaction(Transaction t, boolean hasChanges) {
+    void endTransaction(Transaction t, boolean hasChanges, boolean durable) {
+        boolean committed = t.getStatus() == Transaction.STATUS_COMMITTED;
         t.closeIt();
         int txId = t.transactionId;
         transactions.set(txId, null);
@@ -604,7 +870,12 @@ void endTransaction(Transaction t, boolean hasChanges) {
                 preparedTransactions.remove(txId);
             }
 
-            if (wasStored || store.getAutoCommitDelay() == 0) {
+            if (committed && durable && t.groupCommitPending) {
+                // durable commit, store and sync are shared
+                // with other concurrently committing transactions
+                t.groupCommitPending = false;
+                store.groupCommit(pendingGroupCommits);
+            } else if (wasStored || durable && store.getAutoCommitDelay() == 0) {
                 store.commit();
             } else {
                 if (isUndoEmpty()) {
@@ -622,6 +893,110 @@ void endTransaction(Transaction t, boolean hasChanges) {
         }
     }
 
+    /**
+     * Add a transaction to the queue of waiters for an entry locked by another
+     * transaction. A transaction which is already queued, and was woken up as
+     * the first waiter, keeps its position, and the queue moves to the entry
+     * it waits for now.
+     *
+     * @param t the waiting transaction
+     * @param operationId the operation id of the locked entry
+     * @param owner the transaction holding the lock
+     */
+    void enqueueLockWaiter(Transaction t, long operationId, Transaction owner) {
+        synchronized (lockWaitQueues) {
+            LockWaitQueue queue = t.lockWaitQueue;
+            if (queue == null) {
+                queue = lockWaitQueues.get(operationId);
+                if (queue == null) {
+                    queue = new LockWaitQueue(operationId, owner);
+                    lockWaitQueues.put(operationId, queue);
+                    owner.addLockWaitQueue(queue);
+                }
+                queue.waiters.addLast(t);
+                t.lockWaitQueue = queue;
+            } else if (queue.operationId != operationId) {
+                moveLockWaitQueue(queue, operationId, owner);
+            }
+        }
+    }
+
+    /**
+     * Remove a transaction from its lock wait queue, if any. If the
+     * transaction has locked the entry, the remaining waiters now wait for
+     * it, otherwise the next waiter is woken up.
+     *
+     * @param t the transaction
+     * @param acquiredOperationId the operation id of the entry locked by the
+     *            transaction, or 0 if it did not lock the entry
+     */
+    void dequeueLockWaiter(Transaction t, long acquiredOperationId) {
+        synchronized (lockWaitQueues) {
+            LockWaitQueue queue = t.lockWaitQueue;
+            if (queue != null) {
+                t.lockWaitQueue = null;
+                boolean first = queue.waiters.peekFirst() == t;
+                queue.waiters.remove(t);
+                if (queue.waiters.isEmpty()) {
+                    lockWaitQueues.remove(queue.operationId, queue);
+                } else if (acquiredOperationId != 0) {
+                    moveLockWaitQueue(queue, acquiredOperationId, t);
+                } else if (first) {
+                    queue.releaseFirst();
+                }
+            }
+        }
+    }
+
+    private void moveLockWaitQueue(LockWaitQueue queue, long operationId, Transaction owner) {
+        lockWaitQueues.remove(queue.operationId, queue);
+        queue.operationId = operationId;
+        queue.owner = owner;
+        LockWaitQueue existing = lockWaitQueues.put(operationId, queue);
+        if (existing != null) {
+            // waiters which joined later are queued behind
+            for (Transaction waiter : existing.waiters) {
+                queue.waiters.addLast(waiter);
+                waiter.lockWaitQueue = queue;
+            }
+        }
+        owner.addLockWaitQueue(queue);
+    }
+
+    /**
+     * Check whether a waiting transaction should retry, because it is the
+     * first waiter and the transaction holding the lock is closed.
+     *
+     * @param t the waiting transaction
+     * @return true if the transaction should retry
+     */
+    boolean isLockWaitOver(Transaction t) {
+        synchronized (lockWaitQueues) {
+            LockWaitQueue queue = t.lockWaitQueue;
+            return queue == null
+                    || queue.waiters.peekFirst() == t && queue.owner.getStatus() == Transaction.STATUS_CLOSED;
+        }
+    }
+
+    /**
+     * Wake up the first waiter of each entry locked by a transaction.
+     *
+     * @param owner the transaction
+     * @param closed whether the transaction is closed
+     */
+    void releaseLockWaiters(Transaction owner, boolean closed) {
+        synchronized (lockWaitQueues) {
+            List<LockWaitQueue> queues = owner.getLockWaitQueues(closed);
+            if (queues != null) {
+                for (LockWaitQueue queue : queues) {
+                    if (queue.owner == owner) {
+                        queue.releaseFirst();
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Get the root references (snapshots) for undo-log maps.
      * Those snapshots can potentially be used to optimize TransactionMap.size().
@@ -633,7 +1008,7 @@ RootReference<Long,Record<?,?>>[] collectUndoLogRootReferences() {
         @SuppressWarnings("unchecked")
         RootReference<Long,Record<?,?>>[] undoLogRootReferences = new RootReference[opentransactions.length()];
         for (int i = opentransactions.nextSetBit(0); i >= 0; i = opentransactions.nextSetBit(i+1)) {
-            MVMap<Long,Record<?,?>> undoLog = undoLogs[i];
+            MVMap<Long,Record<?,?>> undoLog = undoLogs.get(i);
             if (undoLog != null) {
                 RootReference<Long,Record<?,?>> rootReference = undoLog.getRoot();
                 if (rootReference.needFlush()) {
@@ -666,7 +1041,7 @@ static long calculateUndoLogsTotalSize(RootReference<Long,Record<?,?>>[] undoLog
     private boolean isUndoEmpty() {
         BitSet openTrans = openTransactions.get();
         for (int i = openTrans.nextSetBit(0); i >= 0; i = openTrans.nextSetBit(i + 1)) {
-            MVMap<Long,Record<?,?>> undoLog = undoLogs[i];
+            MVMap<Long,Record<?,?>> undoLog = undoLogs.get(i);
             if (undoLog != null && !undoLog.isEmpty()) {
                 return false;
             }
@@ -693,8 +1068,8 @@ Transaction getTransaction(int transactionId) {
      */
     void rollbackTo(Transaction t, long maxLogId, long toLogId) {
         int transactionId = t.getId();
-        MVMap<Long,Record<?,?>> undoLog = undoLogs[transactionId];
-        RollbackDecisionMaker decisionMaker = new RollbackDecisionMaker(this, transactionId, toLogId, t.listener);
+        MVMap<Long,Record<?,?>> undoLog = undoLogs.get(transactionId);
+        RollbackDecisionMaker decisionMaker = new RollbackDecisionMaker(this, t, toLogId);
         for (long logId = maxLogId - 1; logId >= toLogId; logId--) {
             Long undoKey = getOperationId(transactionId, logId);
             undoLog.operate(undoKey, null, decisionMaker);
@@ -714,7 +1089,7 @@ void rollbackTo(Transaction t, long maxLogId, long toLogId) {
     Iterator<Change> getChanges(final Transaction t, final long maxLogId,
             final long toLogId) {
 
-        final MVMap<Long,Record<?,?>> undoLog = undoLogs[t.getId()];
+        final MVMap<Long,Record<?,?>> undoLog = undoLogs.get(t.getId());
         return new Iterator<Change>() {
 
             private long logId = maxLogId - 1;
@@ -932,4 +1307,66 @@ protected String asString(String name) {
             }
         }
     }
+
+    /**
+     * The versions of the store in which the entries of a committing
+     * transaction may be partially rewritten.
+     */
+    private static final class CommitRange {
+
+        /**
+         * The transaction id.
+         */
+        final int transactionId;
+
+        /**
+         * The first version that may contain rewritten entries.
+         */
+        final long start;
+
+        /**
+         * The first version that contains all rewritten entries, or
+         * Long.MAX_VALUE while the commit is in progress.
+         */
+        volatile long end = Long.MAX_VALUE;
+
+        CommitRange(int transactionId, long start) {
+            this.transactionId = transactionId;
+            this.start = start;
+        }
+    }
+
+    /**
+     * The committed row count of a map.
+     */
+    private static final class RowCount {
+
+        /**
+         * The sum of changes applied after the count was created.
+         */
+        final AtomicLong delta = new AtomicLong();
+
+        private long base;
+
+        private volatile boolean initialized;
+
+        /**
+         * Set the number of entries the map had when this count was created.
+         *
+         * @param base the number of entries
+         */
+        void init(long base) {
+            this.base = base;
+            initialized = true;
+        }
+
+        /**
+         * Get the number of entries.
+         *
+         * @return the number of entries, or -1 if not initialized
+         */
+        long get() {
+            return initialized ? base + delta.get() : -1;
+        }
+    }
 }
@@ -51,12 +51,35 @@
     private       long           lastOperationId;
 
     private       Transaction    blockingTransaction;
+
+    /**
+     * Operation id of the entry locked by the blocking transaction
+     */
+    private       long           blockingOperationId;
     private       MVMap.Decision decision;
     private       V              lastValue;
 
+    /**
+     * Value type of the map, used to compare values with the snapshot, or null
+     */
+    final DataType<VersionedValue<V>> valueType;
+
+    /**
+     * Supplier of values from the snapshot of the transaction, or null if the
+     * transaction doesn't use a snapshot
+     */
+    final Function<K,V> snapshotValueSupplier;
+
     TxDecisionMaker(int mapId, Transaction transaction) {
+        this(mapId, transaction, null, null);
+    }
+
+    TxDecisionMaker(int mapId, Transaction transaction,
+            DataType<VersionedValue<V>> valueType, Function<K,V> snapshotValueSupplier) {
         this.mapId = mapId;
         this.transaction = transaction;
+        this.valueType = valueType;
+        this.snapshotValueSupplier = snapshotValueSupplier;
     }
 
     void initialize(K key, V value) {
@@ -77,6 +100,9 @@ public MVMap.Decision decide(VersionedValue<V> existingValue, VersionedValue<V>
                 (id = existingValue.getOperationId()) == 0 ||
                 // or it came from the same transaction
                 isThisTransaction(blockingId = TransactionStore.getTransactionId(id))) {
+            if (existingValue == null || existingValue.getOperationId() == 0) {
+                checkSnapshotValue(existingValue == null ? null : existingValue.getCurrentValue());
+            }
             logAndDecideToPut(existingValue, existingValue == null ? null : existingValue.getCommittedValue());
         } else if (isCommitted(blockingId)) {
             // Condition above means that entry belongs to a committing transaction.
@@ -84,14 +110,14 @@ public MVMap.Decision decide(VersionedValue<V> existingValue, VersionedValue<V>
             // and if it's not the case, then it will fail later,
             // because a tree root has definitely been changed.
             V currentValue = existingValue.getCurrentValue();
+            checkSnapshotValue(currentValue);
             logAndDecideToPut(currentValue == null ? null : VersionedValueCommitted.getInstance(currentValue),
                                 currentValue);
         } else if (getBlockingTransaction() != null) {
             // this entry comes from a different transaction, and this
             // transaction is not committed yet
             // should wait on blockingTransaction that was determined earlier
-            lastValue = existingValue.getCurrentValue();
-            decision = MVMap.Decision.ABORT;
+            decideToWait(id, existingValue.getCurrentValue());
         } else if (isRepeatedOperation(id)) {
             // There is no transaction with that id, and we've tried it just
             // before, but map root has not changed (which must be the case if
@@ -160,11 +186,43 @@ MVMap.Decision logAndDecideToPut(VersionedValue<V> valueToLog, V lastValue) {
         return setDecision(MVMap.Decision.PUT);
     }
 
+    /**
+     * Check, for an optimistic transaction, that the committed value of the
+     * entry is the same as the value in the snapshot of the transaction.
+     *
+     * @param committedValue the committed value of the entry
+     * @throws org.h2.mvstore.MVStoreException if the entry was changed after
+     *             the snapshot was taken
+     */
+    final void checkSnapshotValue(V committedValue) {
+        if (snapshotValueSupplier != null && transaction.isOptimistic()) {
+            V snapshotValue = snapshotValueSupplier.apply(key);
+            if (snapshotValue == null ? committedValue != null
+                    : committedValue == null || valueType.compare(VersionedValueCommitted.getInstance(snapshotValue),
+                            VersionedValueCommitted.getInstance(committedValue)) != 0) {
+                throw DataUtils.newMVStoreException(DataUtils.ERROR_TRANSACTION_CONFLICT,
+                        "Entry with key <{0}> was changed by a concurrent transaction", key);
+            }
+        }
+    }
+
     final MVMap.Decision decideToAbort(V lastValue) {
         this.lastValue = lastValue;
         return setDecision(Decision.ABORT);
     }
 
+    /**
+     * Decide to abort, because the entry is locked by the blocking transaction.
+     *
+     * @param operationId the operation id of the locked entry
+     * @param lastValue the current value of the entry
+     * @return {@link org.h2.mvstore.MVMap.Decision#ABORT}
+     */
+    final MVMap.Decision decideToWait(long operationId, V lastValue) {
+        blockingOperationId = operationId;
+        return decideToAbort(lastValue);
+    }
+
     final boolean allowNonRepeatableRead() {
         return transaction.allowNonRepeatableRead();
     }
@@ -177,6 +235,14 @@ final Transaction getBlockingTransaction() {
         return blockingTransaction;
     }
 
+    final long getBlockingOperationId() {
+        return blockingOperationId;
+    }
+
+    final long getUndoKey() {
+        return undoKey;
+    }
+
     final V getLastValue() {
         return lastValue;
     }
@@ -305,7 +371,7 @@ public MVMap.Decision decide(VersionedValue<V> existingValue, VersionedValue<V>
                     // transaction is not committed yet
                     // should wait on blockingTransaction that was determined
                     // earlier and then try again
-                    return decideToAbort(existingValue.getCurrentValue());
+                    return decideToWait(id, existingValue.getCurrentValue());
                 } else if (isRepeatedOperation(id)) {
                     // There is no transaction with that id, and we've tried it
                     // just before, but map root has not changed (which must be
@@ -341,6 +407,11 @@ private V getValueInSnapshot() {
             super(mapId, transaction);
         }
 
+        LockDecisionMaker(int mapId, Transaction transaction,
+                DataType<VersionedValue<V>> valueType, Function<K,V> snapshotValueSupplier) {
+            super(mapId, transaction, valueType, snapshotValueSupplier);
+        }
+
         @Override
         public MVMap.Decision decide(VersionedValue<V> existingValue, VersionedValue<V> providedValue) {
             MVMap.Decision decision = super.decide(existingValue, providedValue);
@@ -359,15 +430,9 @@ V getNewValue(VersionedValue<V> existingValue) {
 
     public static final class RepeatableReadLockDecisionMaker<K,V> extends LockDecisionMaker<K,V> {
 
-        private final DataType<VersionedValue<V>> valueType;
-
-        private final Function<K,V> snapshotValueSupplier;
-
         RepeatableReadLockDecisionMaker(int mapId, Transaction transaction,
                 DataType<VersionedValue<V>> valueType, Function<K,V> snapshotValueSupplier) {
-            super(mapId, transaction);
-            this.valueType = valueType;
-            this.snapshotValueSupplier = snapshotValueSupplier;
+            super(mapId, transaction, valueType, snapshotValueSupplier);
         }
 
         @Override
@@ -7,6 +7,10 @@
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.TreeMap;
 
 import org.h2.engine.Database;
@@ -17,9 +21,11 @@
 import org.h2.message.DbException;
 import org.h2.mvstore.db.MVTempResult;
 import org.h2.util.Utils;
+import org.h2.value.DataType;
 import org.h2.value.TypeInfo;
 import org.h2.value.Value;
 import org.h2.value.ValueLob;
+import org.h2.value.ValueNull;
 import org.h2.value.ValueRow;
 
 /**
@@ -30,6 +36,12 @@
  */
 public class LocalResult implements ResultInterface, ResultTarget {
 
+    /**
+     * The number of hash partitions of distinct rows, they are written to the
+     * external result one by one.
+     */
+    private static final int DISTINCT_PARTITIONS = 8;
+
     private int maxMemoryRows;
     private Session session;
     private int visibleColumnCount;
@@ -38,9 +50,19 @@ public class LocalResult implements ResultInterface, ResultTarget {
     private int rowId, rowCount;
     private ArrayList<Value[]> rows;
     private SortOrder sort;
-    // HashSet cannot be used here, because we need to compare values of
-    // different type or scale properly.
-    private TreeMap<Value, Value[]> distinctRows;
+    // A hash map is used only if all distinct columns have total ordering and
+    // the values have the data types of the columns, otherwise values of
+    // different type or scale need to be compared properly.
+    private Map<Value, Value[]> distinctRows;
+    private boolean hashDistinct;
+    private int spilledPartitions;
+    private int externalRowCount;
+    private int topRowCount;
+    private boolean topRowsWithTies;
+    // The first rows in the sort order with the last row on top, and the
+    // rows that are equal to the last row.
+    private PriorityQueue<Value[]> topRows;
+    private ArrayList<Value[]> topRowTies;
     private Value[] currentRow;
     private int offset;
     private int limit = -1;
@@ -142,6 +164,7 @@ public LocalResult createShallowCopy(SessionInterface targetSession) {
         copy.rows = this.rows;
         copy.sort = this.sort;
         copy.distinctRows = this.distinctRows;
+        copy.hashDistinct = this.hashDistinct;
         copy.distinct = distinct;
         copy.distinctIndexes = distinctIndexes;
         copy.currentRow = null;
@@ -162,13 +185,31 @@ public void setSortOrder(SortOrder sort) {
         this.sort = sort;
     }
 
+    /**
+     * Keep only the specified number of first rows in the sort order while the
+     * rows are added. OFFSET and FETCH are applied as usual in
+     * {@link #done()}. This method has no effect on distinct results and if
+     * the rows do not fit in memory.
+     *
+     * @param count the number of rows to keep, including the offset
+     * @param withTies whether rows that are equal to the last kept row should
+     *            be kept too
+     */
+    public void setTopRows(int count, boolean withTies) {
+        assert sort != null && rowCount == 0;
+        if (count <= maxMemoryRows) {
+            topRowCount = count;
+            topRowsWithTies = withTies;
+        }
+    }
+
     /**
      * Remove duplicate rows.
      */
     public void setDistinct() {
         assert distinctIndexes == null;
         distinct = true;
-        distinctRows = new TreeMap<>(session.getDatabase().getCompareMode());
+        distinctRows = createDistinctRows();
     }
 
     /**
@@ -179,7 +220,56 @@ public void setDistinct() {
     public void setDistinct(int[] distinctIndexes) {
         assert !distinct;
         this.distinctIndexes = distinctIndexes;
-        distinctRows = new TreeMap<>(session.getDatabase().getCompareMode());
+        distinctRows = createDistinctRows();
+    }
+
+    private Map<Value, Value[]> createDistinctRows() {
+        hashDistinct = true;
+        for (int i = 0, l = distinctIndexes != null ? distinctIndexes.length : visibleColumnCount; i < l; i++) {
+            if (!DataType.hasTotalOrdering(getDistinctColumnType(i))) {
+                hashDistinct = false;
+                break;
+            }
+        }
+        return hashDistinct ? new HashMap<>() : new TreeMap<>(session.getDatabase().getCompareMode());
+    }
+
+    private int getDistinctColumnType(int i) {
+        return expressions[distinctIndexes != null ? distinctIndexes[i] : i].getType().getValueType();
+    }
+
+    /**
+     * Check the data types of a distinct row, and stop using the hash map if
+     * a value has another data type than its column.
+     *
+     * @param array the distinct row
+     */
+    private void checkDistinctTypes(ValueRow array) {
+        if (hashDistinct) {
+            Value[] values = array.getList();
+            for (int i = 0; i < values.length; i++) {
+                Value v = values[i];
+                if (v != ValueNull.INSTANCE && v.getValueType() != getDistinctColumnType(i)) {
+                    hashDistinct = false;
+                    if (external != null) {
+                        // the spilled partitions depend on the hash codes
+                        externalRowCount = external.addRows(distinctRows.values());
+                        rowCount = externalRowCount;
+                        distinctRows = null;
+                    } else {
+                        TreeMap<Value, Value[]> map = new TreeMap<>(session.getDatabase().getCompareMode());
+                        map.putAll(distinctRows);
+                        distinctRows = map;
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    private boolean isSpilled(ValueRow array) {
+        return spilledPartitions != 0
+                && (spilledPartitions & 1 << (array.hashCode() & DISTINCT_PARTITIONS - 1)) != 0;
     }
 
     /**
@@ -197,17 +287,22 @@ private boolean isAnyDistinct() {
      */
     public boolean containsDistinct(Value[] values) {
         assert values.length == visibleColumnCount;
-        if (external != null) {
-            return external.contains(values);
-        }
         if (distinctRows == null) {
-            distinctRows = new TreeMap<>(session.getDatabase().getCompareMode());
+            if (external != null) {
+                return external.contains(values);
+            }
+            distinctRows = createDistinctRows();
             for (Value[] row : rows) {
                 ValueRow array = getDistinctRow(row);
+                checkDistinctTypes(array);
                 distinctRows.put(array, array.getList());
             }
         }
         ValueRow array = ValueRow.get(values);
+        checkDistinctTypes(array);
+        if (distinctRows == null || isSpilled(array)) {
+            return external.contains(values);
+        }
         return distinctRows.get(array) != null;
     }
 
@@ -249,11 +344,18 @@ public void removeDistinct(Value[] values) {
         assert values.length == visibleColumnCount;
         if (distinctRows != null) {
             ValueRow array = ValueRow.get(values);
-            distinctRows.remove(array);
-            rowCount = distinctRows.size();
-        } else {
-            rowCount = external.removeRow(values);
+            checkDistinctTypes(array);
+            if (distinctRows != null) {
+                if (isSpilled(array)) {
+                    externalRowCount = external.removeRow(values);
+                } else {
+                    distinctRows.remove(array);
+                }
+                rowCount = externalRowCount + distinctRows.size();
+                return;
+            }
         }
+        rowCount = external.removeRow(values);
     }
 
     @Override
@@ -341,19 +443,26 @@ public void addRow(Value... values) {
         if (isAnyDistinct()) {
             if (distinctRows != null) {
                 ValueRow array = getDistinctRow(values);
-                Value[] previous = distinctRows.get(array);
-                if (previous == null || sort != null && sort.compare(previous, values) > 0) {
-                    distinctRows.put(array, values);
-                }
-                rowCount = distinctRows.size();
-                if (rowCount > maxMemoryRows) {
-                    createExternalResult();
-                    rowCount = external.addRows(distinctRows.values());
-                    distinctRows = null;
+                checkDistinctTypes(array);
+                if (distinctRows != null) {
+                    if (isSpilled(array)) {
+                        externalRowCount = external.addRow(values);
+                    } else {
+                        Value[] previous = distinctRows.get(array);
+                        if (previous == null || sort != null && sort.compare(previous, values) > 0) {
+                            distinctRows.put(array, values);
+                        }
+                    }
+                    rowCount = externalRowCount + distinctRows.size();
+                    if (distinctRows.size() > maxMemoryRows) {
+                        spillDistinctRows();
+                    }
+                    return;
                 }
-            } else {
-                rowCount = external.addRow(values);
             }
+            rowCount = external.addRow(values);
+        } else if (topRowCount > 0) {
+            addTopRow(values);
         } else {
             rows.add(values);
             rowCount++;
@@ -363,6 +472,79 @@ public void addRow(Value... values) {
         }
     }
 
+    private void addTopRow(Value[] values) {
+        if (topRows == null) {
+            topRows = new PriorityQueue<>(sort.reversed());
+            topRowTies = new ArrayList<>();
+        }
+        if (topRows.size() < topRowCount) {
+            topRows.add(values);
+        } else {
+            int comp = sort.compare(values, topRows.peek());
+            if (comp < 0) {
+                Value[] last = topRows.poll();
+                topRows.add(values);
+                if (topRowsWithTies) {
+                    if (sort.compare(last, topRows.peek()) == 0) {
+                        topRowTies.add(last);
+                    } else {
+                        topRowTies.clear();
+                    }
+                }
+            } else if (comp == 0 && topRowsWithTies) {
+                topRowTies.add(values);
+                if (topRowTies.size() > maxMemoryRows) {
+                    // too many ties, add all rows as usual
+                    topRowCount = 0;
+                    moveTopRows();
+                    rowCount = rows.size();
+                    addRowsToDisk();
+                    return;
+                }
+            } else {
+                return;
+            }
+        }
+        rowCount = topRows.size() + topRowTies.size();
+    }
+
+    private void moveTopRows() {
+        if (topRows != null) {
+            rows.addAll(topRows);
+            rows.addAll(topRowTies);
+            topRows = null;
+            topRowTies = null;
+        }
+    }
+
+    /**
+     * Write distinct rows to the external result. Rows in a hash map are
+     * written out one partition at a time, later rows of the written
+     * partitions are added to the external result directly.
+     */
+    private void spillDistinctRows() {
+        if (external == null) {
+            createExternalResult();
+        }
+        int partition = Integer.numberOfTrailingZeros(~spilledPartitions);
+        if (!hashDistinct || partition == DISTINCT_PARTITIONS - 1) {
+            rowCount = externalRowCount = external.addRows(distinctRows.values());
+            distinctRows = null;
+            return;
+        }
+        spilledPartitions |= 1 << partition;
+        ArrayList<Value[]> list = new ArrayList<>();
+        for (Iterator<Map.Entry<Value, Value[]>> i = distinctRows.entrySet().iterator(); i.hasNext();) {
+            Map.Entry<Value, Value[]> entry = i.next();
+            if ((entry.getKey().hashCode() & DISTINCT_PARTITIONS - 1) == partition) {
+                list.add(entry.getValue());
+                i.remove();
+            }
+        }
+        externalRowCount = external.addRows(list);
+        rowCount = externalRowCount + distinctRows.size();
+    }
+
     private void addRowsToDisk() {
         if (external == null) {
             createExternalResult();
@@ -381,10 +563,16 @@ public int getVisibleColumnCount() {
      */
     public void done() {
         if (external != null) {
+            if (distinctRows != null) {
+                external.addRows(distinctRows.values());
+                distinctRows = null;
+            }
             addRowsToDisk();
         } else {
             if (isAnyDistinct()) {
                 rows = new ArrayList<>(distinctRows.values());
+            } else {
+                moveTopRows();
             }
             if (sort != null && limit != 0 && !limitsWereApplied) {
                 boolean withLimit = limit > 0 && withTiesSortOrder == null;
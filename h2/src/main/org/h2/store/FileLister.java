@@ -101,6 +101,8 @@ public static ArrayList<String> getDatabaseFiles(String dir, String db,
                 ok = true;
             } else if (f.endsWith(Constants.SUFFIX_MV_FILE)) {
                 ok = true;
+            } else if (f.endsWith(Constants.SUFFIX_MV_FILE + Constants.SUFFIX_MV_REDO_LOG)) {
+                ok = true;
             } else if (all) {
                 if (f.endsWith(Constants.SUFFIX_LOCK_FILE)) {
                     ok = true;
@@ -40,7 +40,9 @@
 import org.h2.message.DbException;
 import org.h2.mvstore.FileStore;
 import org.h2.mvstore.MVStore;
+import org.h2.mvstore.db.MVTable;
 import org.h2.mvstore.db.Store;
+import org.h2.mvstore.db.TableLockStatistics;
 import org.h2.pagestore.PageStore;
 import org.h2.result.Row;
 import org.h2.result.SearchRow;
@@ -141,7 +143,9 @@ public final class InformationSchemaTable extends MetaTable {
 
     private static final int LOCKS = IN_DOUBT + 1;
 
-    private static final int QUERY_STATISTICS = LOCKS + 1;
+    private static final int LOCK_STATISTICS = LOCKS + 1;
+
+    private static final int QUERY_STATISTICS = LOCK_STATISTICS + 1;
 
     private static final int RIGHTS = QUERY_STATISTICS + 1;
 
@@ -764,6 +768,30 @@ public InformationSchemaTable(Schema schema, int id, int type) {
                     "LOCK_TYPE"
             );
             break;
+        case LOCK_STATISTICS:
+            setMetaTableName("LOCK_STATISTICS");
+            isView = false;
+            cols = createColumns(
+                    "TABLE_SCHEMA",
+                    "TABLE_NAME",
+                    "SHARED_LOCKS BIGINT",
+                    "EXCLUSIVE_LOCKS BIGINT",
+                    "ROW_LOCKS BIGINT",
+                    "ESCALATIONS BIGINT",
+                    "ESCALATED_ROW_LOCKS BIGINT",
+                    "LOCK_WAITS BIGINT",
+                    "LOCK_WAIT_TIME DOUBLE",
+                    "MAX_LOCK_WAIT_TIME DOUBLE",
+                    "WAITS_UNDER_ONE_MS BIGINT",
+                    "WAITS_UNDER_TEN_MS BIGINT",
+                    "WAITS_UNDER_HUNDRED_MS BIGINT",
+                    "WAITS_UNDER_ONE_S BIGINT",
+                    "WAITS_OVER_ONE_S BIGINT",
+                    "LOCK_TIMEOUTS BIGINT",
+                    "DEADLOCKS BIGINT"
+            );
+            indexColumnName = "TABLE_NAME";
+            break;
         case QUERY_STATISTICS:
             setMetaTableName("QUERY_STATISTICS");
             isView = false;
@@ -821,7 +849,8 @@ public InformationSchemaTable(Schema schema, int id, int type) {
                     "CONTAINS_UNCOMMITTED BIT",
                     "STATE",
                     "BLOCKER_ID INT",
-                    "SLEEP_SINCE TIMESTAMP WITH TIME ZONE"
+                    "SLEEP_SINCE TIMESTAMP WITH TIME ZONE",
+                    "TRANSACTION_READ_ONLY BIT"
             );
             break;
         case SESSION_STATE:
@@ -977,6 +1006,9 @@ public ArrayList<Row> generateRows(Session session, SearchRow first, SearchRow l
         case LOCKS:
             locks(session, rows);
             break;
+        case LOCK_STATISTICS:
+            lockStatistics(session, indexFrom, indexTo, rows);
+            break;
         case QUERY_STATISTICS:
             queryStatistics(session, rows);
             break;
@@ -2720,6 +2752,58 @@ private void locks(Session session, ArrayList<Row> rows, Session sessionWithLock
         }
     }
 
+    private void lockStatistics(Session session, Value indexFrom, Value indexTo, ArrayList<Row> rows) {
+        for (Schema schema : database.getAllSchemas()) {
+            for (Table table : schema.getAllTablesAndViews()) {
+                if (table instanceof MVTable && checkIndex(session, table.getName(), indexFrom, indexTo)
+                        && !hideTable(table, session)) {
+                    lockStatistics(session, rows, (MVTable) table);
+                }
+            }
+        }
+    }
+
+    private void lockStatistics(Session session, ArrayList<Row> rows, MVTable table) {
+        TableLockStatistics statistics = table.getLockStatistics();
+        long[] histogram = statistics.getWaitTimeHistogram();
+        add(session, rows,
+                // TABLE_SCHEMA
+                table.getSchema().getName(),
+                // TABLE_NAME
+                table.getName(),
+                // SHARED_LOCKS
+                ValueBigint.get(statistics.getSharedLocks()),
+                // EXCLUSIVE_LOCKS
+                ValueBigint.get(statistics.getExclusiveLocks()),
+                // ROW_LOCKS
+                ValueBigint.get(statistics.getRowLocks()),
+                // ESCALATIONS
+                ValueBigint.get(statistics.getEscalations()),
+                // ESCALATED_ROW_LOCKS
+                ValueBigint.get(statistics.getEscalatedRowLocks()),
+                // LOCK_WAITS
+                ValueBigint.get(statistics.getWaits()),
+                // LOCK_WAIT_TIME
+                ValueDouble.get(statistics.getWaitTimeNanos() / 1_000_000d),
+                // MAX_LOCK_WAIT_TIME
+                ValueDouble.get(statistics.getMaxWaitTimeNanos() / 1_000_000d),
+                // WAITS_UNDER_ONE_MS
+                ValueBigint.get(histogram[0]),
+                // WAITS_UNDER_TEN_MS
+                ValueBigint.get(histogram[1]),
+                // WAITS_UNDER_HUNDRED_MS
+                ValueBigint.get(histogram[2]),
+                // WAITS_UNDER_ONE_S
+                ValueBigint.get(histogram[3]),
+                // WAITS_OVER_ONE_S
+                ValueBigint.get(histogram[4]),
+                // LOCK_TIMEOUTS
+                ValueBigint.get(statistics.getTimeouts()),
+                // DEADLOCKS
+                ValueBigint.get(statistics.getDeadlocks())
+        );
+    }
+
     private void queryStatistics(Session session, ArrayList<Row> rows) {
         QueryStatisticsData control = database.getQueryStatisticsData();
         if (control != null) {
@@ -2872,7 +2956,9 @@ private void sessions(Session session, ArrayList<Row> rows, Session s) {
                 // BLOCKER_ID
                 blockingSessionId == 0 ? null : ValueInteger.get(blockingSessionId),
                 // SLEEP_SINCE
-                s.getState() == State.SLEEP ? s.getCommandStartOrEnd() : null
+                s.getState() == State.SLEEP ? s.getCommandStartOrEnd() : null,
+                // TRANSACTION_READ_ONLY
+                ValueBoolean.get(s.isTransactionReadOnly())
         );
     }
 
@@ -2993,6 +3079,8 @@ private void settings(Session session, ArrayList<Row> rows) {
             Store store = database.getStore();
             if (store != null) {
                 MVStore mvStore = store.getMvStore();
+                add(session, rows,
+                        "info.STORE_VERSION", Long.toString(mvStore.getCurrentVersion()));
                 FileStore fs = mvStore.getFileStore();
                 if (fs != null) {
                     add(session, rows,
@@ -3184,6 +3272,7 @@ public long getMaxDataModificationId() {
         case IN_DOUBT:
         case SESSIONS:
         case LOCKS:
+        case LOCK_STATISTICS:
         case SESSION_STATE:
             return Long.MAX_VALUE;
         }
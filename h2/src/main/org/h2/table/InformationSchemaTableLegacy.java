@@ -1125,6 +1125,8 @@ public ArrayList<Row> generateRows(Session session, SearchRow first, SearchRow l
                 Store store = database.getStore();
                 if (store != null) {
                     MVStore mvStore = store.getMvStore();
+                    add(session, rows,
+                            "info.STORE_VERSION", Long.toString(mvStore.getCurrentVersion()));
                     FileStore fs = mvStore.getFileStore();
                     if (fs != null) {
                         add(session, rows,
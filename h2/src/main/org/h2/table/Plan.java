@@ -105,20 +105,21 @@ public double calculateCost(Session session, AllColumnsForPlan allColumnsSet) {
         if (t.isDebugEnabled()) {
             t.debug("Plan       : calculate cost for plan {0}", Arrays.toString(allFilters));
         }
-        double cost = 1;
+        double cost = 1, rows = 1;
         boolean invalidPlan = false;
         for (int i = 0; i < allFilters.length; i++) {
             TableFilter tableFilter = allFilters[i];
             if (t.isDebugEnabled()) {
                 t.debug("Plan       :   for table filter {0}", tableFilter);
             }
-            PlanItem item = tableFilter.getBestPlanItem(session, allFilters, i, allColumnsSet);
+            PlanItem item = tableFilter.getBestPlanItem(session, allFilters, i, allColumnsSet, rows);
             planItems.put(tableFilter, item);
             if (t.isDebugEnabled()) {
                 t.debug("Plan       :   best plan item cost {0} index {1}",
                         item.cost, item.getIndex().getPlanSQL());
             }
             cost += cost * item.cost;
+            rows *= Math.max(item.rows, 1d);
             setEvaluatable(tableFilter, true);
             Expression on = tableFilter.getJoinCondition();
             if (on != null) {
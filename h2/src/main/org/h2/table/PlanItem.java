@@ -18,6 +18,12 @@ public class PlanItem {
      */
     double cost;
 
+    /**
+     * The estimated number of rows for each row of the preceding table
+     * filters.
+     */
+    double rows;
+
     private int[] masks;
     private Index index;
     private PlanItem joinPlan;
@@ -20,6 +20,7 @@
 import org.h2.expression.Expression;
 import org.h2.expression.condition.Comparison;
 import org.h2.expression.condition.ConditionAndOr;
+import org.h2.index.HashJoinIndex;
 import org.h2.index.Index;
 import org.h2.index.IndexCondition;
 import org.h2.index.IndexCursor;
@@ -216,6 +217,23 @@ public void lock(Session s, boolean exclusive, boolean forceLockEvenInMvcc) {
      */
     public PlanItem getBestPlanItem(Session s, TableFilter[] filters, int filter,
             AllColumnsForPlan allColumnsSet) {
+        return getBestPlanItem(s, filters, filter, allColumnsSet, 1d);
+    }
+
+    /**
+     * Get the best plan item (index, cost) to use for the current join
+     * order.
+     *
+     * @param s the session
+     * @param filters all joined table filters
+     * @param filter the current table filter index
+     * @param allColumnsSet the set of all columns
+     * @param outerRows the estimated number of rows of the preceding table
+     *            filters, the number of times this table filter is evaluated
+     * @return the best plan item
+     */
+    public PlanItem getBestPlanItem(Session s, TableFilter[] filters, int filter,
+            AllColumnsForPlan allColumnsSet, double outerRows) {
         PlanItem item1 = null;
         SortOrder sortOrder = null;
         if (select != null) {
@@ -243,6 +261,18 @@ public PlanItem getBestPlanItem(Session s, TableFilter[] filters, int filter,
             }
         }
         PlanItem item = table.getBestPlanItem(s, masks, filters, filter, sortOrder, allColumnsSet);
+        if (item.getIndex() == table.getScanIndex(s) && indexHints == null
+                && s.getDatabase().getOptimizeHashJoin()) {
+            // no index can be used for the join conditions
+            HashJoinIndex hashIndex = HashJoinIndex.create(s, this, filter == 0, masks);
+            if (hashIndex != null) {
+                double cost = hashIndex.getCost(s, masks, filters, filter, allColumnsSet, outerRows);
+                if (cost < item.cost) {
+                    item.setIndex(hashIndex);
+                    item.cost = cost;
+                }
+            }
+        }
         item.setMasks(masks);
         // The more index conditions, the earlier the table.
         // This is to ensure joins without indexes run quickly:
@@ -252,10 +282,11 @@ public PlanItem getBestPlanItem(Session s, TableFilter[] filters, int filter,
         if (item1 != null && item1.cost < item.cost) {
             item = item1;
         }
+        item.rows = getRowCountEstimate(s, masks);
 
         if (nestedJoin != null) {
             setEvaluatable(true);
-            item.setNestedJoinPlan(nestedJoin.getBestPlanItem(s, filters, filter, allColumnsSet));
+            item.setNestedJoinPlan(nestedJoin.getBestPlanItem(s, filters, filter, allColumnsSet, outerRows));
             // TODO optimizer: calculate cost of a join: should use separate
             // expected row number and lookup cost
             item.cost += item.cost * item.getNestedJoinPlan().cost;
@@ -265,7 +296,8 @@ public PlanItem getBestPlanItem(Session s, TableFilter[] filters, int filter,
             do {
                 filter++;
             } while (filters[filter] != join);
-            item.setJoinPlan(join.getBestPlanItem(s, filters, filter, allColumnsSet));
+            item.setJoinPlan(join.getBestPlanItem(s, filters, filter, allColumnsSet,
+                    outerRows * Math.max(item.rows, 1d)));
             // TODO optimizer: calculate cost of a join: should use separate
             // expected row number and lookup cost
             item.cost += item.cost * item.getJoinPlan().cost;
@@ -273,6 +305,61 @@ public PlanItem getBestPlanItem(Session s, TableFilter[] filters, int filter,
         return item;
     }
 
+    /**
+     * Estimates the number of rows of this table filter for each row of the
+     * preceding table filters from the conditions that can be evaluated. A
+     * table without a known row count, such as a view, is counted as one row,
+     * so the cost of a hash join is not shared by its rows.
+     *
+     * @param s the session
+     * @param masks the IndexCondition search masks, or null if a condition is
+     *            always false
+     * @return the estimated number of rows
+     */
+    private double getRowCountEstimate(Session s, int[] masks) {
+        if (masks == null) {
+            return 0d;
+        } else if (!table.canGetRowCount(s)) {
+            return 1d;
+        }
+        double rows = table.getRowCountApproximation(s);
+        ArrayList<Index> indexes = table.getIndexes();
+        if (indexes != null) {
+            for (Index index : indexes) {
+                if (index.getIndexType().isUnique() && isEqualityOnAll(index.getColumns(), masks)) {
+                    return Math.min(rows, 1d);
+                }
+            }
+        }
+        int totalSelectivity = 0;
+        boolean range = false;
+        for (Column column : table.getColumns()) {
+            int mask = masks[column.getColumnId()];
+            if ((mask & IndexCondition.EQUALITY) == IndexCondition.EQUALITY) {
+                totalSelectivity = 100 - ((100 - totalSelectivity) * (100 - column.getSelectivity()) / 100);
+            } else if (mask != 0) {
+                range = true;
+            }
+        }
+        if (totalSelectivity > 0) {
+            rows /= Math.max(rows * totalSelectivity / 100, 1d);
+        }
+        return range ? rows / 3 : rows;
+    }
+
+    private static boolean isEqualityOnAll(Column[] columns, int[] masks) {
+        if (columns.length == 0) {
+            return false;
+        }
+        for (Column column : columns) {
+            int id = column.getColumnId();
+            if (id < 0 || (masks[id] & IndexCondition.EQUALITY) != IndexCondition.EQUALITY) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Set what plan item (index, cost, masks) to use.
      *
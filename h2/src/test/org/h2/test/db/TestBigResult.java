@@ -54,6 +54,8 @@ public void test() throws SQLException {
         testCloseConnectionDelete();
         testOrderGroup();
         testLimitBufferedResult();
+        testDistinctPartitions();
+        testSortingLimit();
         deleteDb("bigResult");
     }
 
@@ -424,6 +426,80 @@ private void testLimitBufferedResult() throws SQLException {
         conn.close();
     }
 
+    private void testDistinctPartitions() throws SQLException {
+        deleteDb("bigResult");
+        Connection conn = getConnection("bigResult");
+        Statement stat = conn.createStatement();
+        stat.execute("CREATE TABLE TEST(A INT, B BIGINT) AS SELECT MOD(X, 300), MOD(X, 7) FROM SYSTEM_RANGE(1, 1000)");
+        stat.execute("SET MAX_MEMORY_ROWS 20");
+        // distinct rows are written to disk one hash partition at a time
+        assertSingleValue(stat, "SELECT COUNT(*) FROM (SELECT DISTINCT A FROM TEST)", 300);
+        assertSingleValue(stat, "SELECT COUNT(*) FROM (SELECT DISTINCT A, A * 2 FROM TEST)", 300);
+        assertSingleValue(stat, "SELECT SUM(A) FROM (SELECT DISTINCT ON(A) A, B FROM TEST ORDER BY A, B)", 44850);
+        assertSingleValue(stat, "SELECT COUNT(*) FROM (SELECT A FROM TEST UNION SELECT B + 300 FROM TEST)", 307);
+        assertSingleValue(stat, "SELECT COUNT(*) FROM (SELECT A FROM TEST EXCEPT SELECT B * 2 FROM TEST)", 293);
+        assertSingleValue(stat, "SELECT COUNT(*) FROM (SELECT A FROM TEST INTERSECT SELECT B * 3 FROM TEST)", 7);
+        // values of other data types are compared properly
+        assertSingleValue(stat, "SELECT COUNT(*) FROM (SELECT DISTINCT CASE WHEN A < 150 THEN A "
+                + "ELSE CAST(A AS DECIMAL(10, 1)) END FROM TEST)", 300);
+        assertSingleValue(stat, "SELECT COUNT(*) FROM TEST WHERE (A, B) IN (SELECT CAST(A AS BIGINT), "
+                + "CAST(B AS INT) FROM TEST WHERE A < 100)", 399);
+        ResultSet rs = stat.executeQuery("SELECT DISTINCT A FROM TEST ORDER BY A");
+        for (int i = 0; i < 300; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+        }
+        assertFalse(rs.next());
+        conn.close();
+    }
+
+    private void testSortingLimit() throws SQLException {
+        deleteDb("bigResult");
+        Connection conn = getConnection("bigResult");
+        Statement stat = conn.createStatement();
+        stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, V INT) AS SELECT X, MOD(X * 7919, 1000) "
+                + "FROM SYSTEM_RANGE(1, 10000)");
+        stat.execute("SET MAX_MEMORY_ROWS 100");
+        // only the first rows are kept in memory
+        ResultSet rs = stat.executeQuery("SELECT V FROM TEST ORDER BY V OFFSET 5 ROWS FETCH FIRST 15 ROWS ONLY");
+        for (int i = 5; i < 20; i++) {
+            assertTrue(rs.next());
+            assertEquals(i / 10, rs.getInt(1));
+        }
+        assertFalse(rs.next());
+        assertSingleValue(stat, "SELECT COUNT(*) FROM (SELECT V FROM TEST ORDER BY V "
+                + "OFFSET 5 ROWS FETCH FIRST 12 ROWS WITH TIES)", 15);
+        assertSingleValue(stat, "SELECT COUNT(*) FROM (SELECT V FROM TEST ORDER BY V / 100 "
+                + "FETCH FIRST 2 ROWS WITH TIES)", 1000);
+        rs = stat.executeQuery("SELECT V, ID FROM TEST ORDER BY V DESC, ID FETCH FIRST 3 ROWS ONLY");
+        int previous = 0;
+        for (int i = 0; i < 3; i++) {
+            assertTrue(rs.next());
+            assertEquals(999, rs.getInt(1));
+            assertTrue(rs.getInt(2) > previous);
+            previous = rs.getInt(2);
+        }
+        assertFalse(rs.next());
+        rs = stat.executeQuery("SELECT V FROM TEST UNION ALL SELECT V FROM TEST ORDER BY V DESC LIMIT 25");
+        for (int i = 0; i < 25; i++) {
+            assertTrue(rs.next());
+            assertEquals(999 - i / 20, rs.getInt(1));
+        }
+        assertFalse(rs.next());
+        // sorted runs are written to disk and merged
+        rs = stat.executeQuery("SELECT V, ID FROM TEST ORDER BY V");
+        int count = 0;
+        long sum = 0;
+        for (int v = 0; rs.next(); count++) {
+            assertTrue(rs.getInt(1) >= v);
+            v = rs.getInt(1);
+            sum += rs.getInt(2);
+        }
+        assertEquals(10000, count);
+        assertEquals(50005000, sum);
+        conn.close();
+    }
+
     private void testOrderGroup() throws SQLException {
         deleteDb("bigResult");
         Connection conn = getConnection("bigResult");
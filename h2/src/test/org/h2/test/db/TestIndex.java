@@ -18,6 +18,7 @@
 import java.util.concurrent.atomic.AtomicInteger;
 import org.h2.api.ErrorCode;
 import org.h2.command.query.Select;
+import org.h2.engine.SysProperties;
 import org.h2.test.TestBase;
 import org.h2.test.TestDb;
 import org.h2.tools.SimpleResultSet;
@@ -51,6 +52,7 @@ public void test() throws SQLException {
         testHashIndexOnMemoryTable();
         testErrorMessage();
         testDuplicateKeyException();
+        testCreateIndexBuffered();
         int to = config.lockTimeout;
         config.lockTimeout = 50000;
         try {
@@ -206,6 +208,26 @@ private void testDuplicateKeyException() throws SQLException {
         stat.execute("drop table test");
     }
 
+    private void testCreateIndexBuffered() throws SQLException {
+        reconnect();
+        // rows are sorted in buffers of 50 rows and then merged
+        stat.execute("set max_memory_rows 100");
+        stat.execute("create table test(id int primary key, name varchar(255))");
+        stat.execute("insert into test select x, 'Hello ' || mod(x * 7, 2000) "
+                + "from system_range(1, 2000)");
+        stat.execute("create unique index idx_test_name on test(name)");
+        assertEquals(2000, getValue("select count(*) from test where name >= 'Hello '"));
+        assertEquals(1, getValue("select count(*) from test where name = 'Hello 1234'"));
+        stat.execute("drop index idx_test_name");
+        stat.execute("insert into test values(2001, 'Hello 1234')");
+        assertThrows(ErrorCode.DUPLICATE_KEY_1, stat).
+                execute("create unique index idx_test_name on test(name)");
+        stat.execute("create index idx_test_name on test(name)");
+        assertEquals(2, getValue("select count(*) from test where name = 'Hello 1234'"));
+        stat.execute("drop table test");
+        stat.execute("set max_memory_rows " + SysProperties.MAX_MEMORY_ROWS);
+    }
+
     private class ConcurrentUpdateThread extends Thread {
         private final AtomicInteger concurrentUpdateId, concurrentUpdateValue;
 
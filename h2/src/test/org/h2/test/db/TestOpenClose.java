@@ -50,6 +50,7 @@ public void test() throws Exception {
         testErrorMessageWrongSplit();
         testCloseDelay();
         testBackup();
+        testBackupRedoLog();
         testCase();
         testReconnectFast();
         test1_1();
@@ -140,6 +141,39 @@ private void testBackup() throws SQLException {
         FileUtils.delete(getBaseDir() + "/test.zip");
     }
 
+    private void testBackupRedoLog() throws SQLException {
+        if (config.memory || !config.mvStore) {
+            return;
+        }
+        deleteDb("openClose");
+        String url = getURL("openClose;REDO_LOG_SIZE=10;WRITE_DELAY=0", true);
+        String redoLog = getBaseDir() + "/openClose" + Constants.SUFFIX_MV_FILE + Constants.SUFFIX_MV_REDO_LOG;
+        Connection conn = DriverManager.getConnection(url, "sa", "abc def");
+        Statement stat = conn.createStatement();
+        stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR)");
+        stat.execute("CHECKPOINT");
+        long size = FileUtils.size(redoLog);
+        PreparedStatement prep = conn.prepareStatement("INSERT INTO TEST VALUES(?, 'Hello')");
+        for (int i = 0; i < 200; i++) {
+            prep.setInt(1, i);
+            prep.execute();
+        }
+        // the rows are only in the redo log
+        assertTrue(FileUtils.size(redoLog) > size);
+        stat.execute("BACKUP TO '" + getBaseDir() + "/test.zip'");
+        conn.close();
+        deleteDb("openClose");
+        Restore.execute(getBaseDir() + "/test.zip", getBaseDir(), null);
+        assertFalse(FileUtils.exists(redoLog));
+        conn = DriverManager.getConnection(getURL("openClose", true), "sa", "abc def");
+        stat = conn.createStatement();
+        ResultSet rs = stat.executeQuery("SELECT COUNT(*) FROM TEST");
+        rs.next();
+        assertEquals(200, rs.getInt(1));
+        conn.close();
+        FileUtils.delete(getBaseDir() + "/test.zip");
+    }
+
     private void testReconnectFast() throws SQLException {
         if (config.memory) {
             return;
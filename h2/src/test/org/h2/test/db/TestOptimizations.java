@@ -5,6 +5,10 @@
  */
 package org.h2.test.db;
 
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -17,6 +21,8 @@
 import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 import org.h2.api.ErrorCode;
+import org.h2.engine.Constants;
+import org.h2.engine.SysProperties;
 import org.h2.test.TestBase;
 import org.h2.test.TestDb;
 import org.h2.tools.SimpleResultSet;
@@ -49,6 +55,9 @@ public void test() throws Exception {
         testAnalyzeLob();
         testLike();
         testExistsSubquery();
+        testHashJoin();
+        testGroupBySpill();
+        testParallelAggregation();
         testQueryCacheConcurrentUse();
         testQueryCacheResetParams();
         testRowId();
@@ -208,6 +217,211 @@ private void testLike() throws Exception {
         conn.close();
     }
 
+    private void testHashJoin() throws Exception {
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table a(id int primary key, b int)");
+        stat.execute("create table b(id int primary key, v varchar)");
+        stat.execute("insert into a select x, mod(x, 20) from system_range(1, 1000)");
+        stat.execute("insert into b select x, 'v' || x from system_range(1, 10)");
+        stat.execute("insert into a values (1001, null)");
+        stat.execute("insert into b values (21, null)");
+        stat.execute("analyze");
+        ResultSet rs = stat.executeQuery("explain select * from a, b where a.id = b.id");
+        rs.next();
+        assertFalse(rs.getString(1).contains("hashJoin"));
+        rs = stat.executeQuery("explain select * from a, b where b.v = 'v' || a.b");
+        rs.next();
+        assertContains(rs.getString(1), "PUBLIC.B.hashJoin");
+        rs = stat.executeQuery("select count(*), sum(a.id) from a, b where b.v = 'v' || a.b");
+        rs.next();
+        assertEquals(500, rs.getInt(1));
+        assertEquals(247750, rs.getLong(2));
+        rs = stat.executeQuery("explain select count(*) from a left join b on b.v = 'v' || a.b");
+        rs.next();
+        assertContains(rs.getString(1), "hashJoin");
+        rs = stat.executeQuery("select count(*), count(b.id) from a left join b on b.v = 'v' || a.b");
+        rs.next();
+        assertEquals(1001, rs.getInt(1));
+        assertEquals(500, rs.getInt(2));
+        rs = stat.executeQuery("explain select count(*) from b where exists(select * from a where a.b = b.id)");
+        rs.next();
+        assertContains(rs.getString(1), "PUBLIC.A.hashJoin");
+        rs = stat.executeQuery("select count(*) from b where exists(select * from a where a.b = b.id)");
+        rs.next();
+        assertEquals(10, rs.getInt(1));
+        rs = stat.executeQuery("select count(*) from b where not exists(select * from a where a.b = b.id)");
+        rs.next();
+        assertEquals(1, rs.getInt(1));
+        // the hash table is built again after a change
+        PreparedStatement prep = conn.prepareStatement(
+                "select count(*) from b where not exists(select * from a where a.b = b.id)");
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(1, rs.getInt(1));
+        stat.execute("delete from a where b = 3");
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(2, rs.getInt(1));
+        stat.execute("insert into a values (1002, 3)");
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(1, rs.getInt(1));
+        // tables with more rows than MAX_MEMORY_ROWS are not hashed
+        stat.execute("set max_memory_rows 5");
+        rs = stat.executeQuery("explain select * from a, b where b.v = 'v' || a.b");
+        rs.next();
+        assertFalse(rs.getString(1).contains("hashJoin"));
+        rs = stat.executeQuery("select count(*) from a, b where b.v = 'v' || a.b");
+        rs.next();
+        assertEquals(451, rs.getInt(1));
+        stat.execute("set max_memory_rows " + SysProperties.MAX_MEMORY_ROWS);
+        stat.execute("drop table a, b");
+        conn.close();
+    }
+
+    private void testGroupBySpill() throws Exception {
+        if (config.memory) {
+            // groups of in-memory databases are never spilled
+            return;
+        }
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, g int, s varchar, b boolean)");
+        stat.execute("insert into test select x, case when mod(x, 13) = 0 then null else mod(x * 7, 503) end, "
+                + "'s' || mod(x, 211), mod(x, 3) = 0 from system_range(1, 3000)");
+        String[] queries = {
+                "select g, count(*), count(b), sum(id), avg(id), min(s), max(id), round(stddev_pop(id), 6), "
+                        + "round(var_samp(id), 6), bit_or(id), bit_xor(id), every(b), any(b) "
+                        + "from test group by g order by g",
+                "select s, g is null, count(*), sum(g) from test group by s, g is null "
+                        + "having count(*) > 1 order by 1, 2",
+                "select g, count(*), listagg(s) within group (order by id) from test group by g order by g",
+                "select mod(id, 97), sum(g) filter (where b), count(*) from test group by mod(id, 97) order by 1" };
+        String[] expected = new String[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            expected[i] = getResult(stat.executeQuery(queries[i]));
+        }
+        // groups are written to a temporary result and merged later
+        stat.execute("set optimize_reuse_results 0");
+        stat.execute("set max_memory_rows 20");
+        for (int i = 0; i < queries.length; i++) {
+            assertEquals(expected[i], getResult(stat.executeQuery(queries[i])));
+        }
+        // the temporary file of the spilled groups exists while they are read
+        stat.execute("create alias count_temp_files for \"" + getClass().getName() + ".countTempFiles\"");
+        int before = countTempFiles();
+        ResultSet rs = stat.executeQuery("select g, count(*), count_temp_files() from test group by g");
+        int maxDuring = 0;
+        while (rs.next()) {
+            maxDuring = Math.max(maxDuring, rs.getInt(3));
+        }
+        assertTrue(maxDuring > before);
+        stat.execute("drop alias count_temp_files");
+        stat.execute("set max_memory_rows " + SysProperties.MAX_MEMORY_ROWS);
+        stat.execute("set optimize_reuse_results 1");
+        stat.execute("drop table test");
+        conn.close();
+    }
+
+    /**
+     * This method is called via reflection from the database.
+     *
+     * @return the number of temporary files in the temporary directory
+     */
+    public static int countTempFiles() throws IOException {
+        // the directory of Files.createTempFile() may differ from java.io.tmpdir
+        Path probe = Files.createTempFile("h2test", null);
+        Path dir = probe.getParent();
+        Files.delete(probe);
+        int count = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "h2tmp*" + Constants.SUFFIX_TEMP_FILE)) {
+            for (Path ignored : files) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void testParallelAggregation() throws Exception {
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, g int, v int, s varchar)");
+        stat.execute("insert into test select x, case when mod(x, 11) = 0 then null else mod(x * 7, 503) end, "
+                + "mod(x * 31, 1009), 's' || mod(x, 13) from system_range(1, 50000)");
+        String[] queries = {
+                "select count(*), count(g), sum(v), avg(v), min(s), max(v), round(stddev_pop(v), 6) from test",
+                "select g, count(*), sum(v), avg(v), min(s), max(v), round(var_samp(v), 6), bit_xor(id) "
+                        + "from test where v > 100 group by g order by g",
+                "select mod(id, 97), s, sum(g) filter (where v > 500), count(*) from test "
+                        + "group by mod(id, 97), s having count(*) > 30 order by 1, 2",
+                "select count(distinct g), listagg(distinct s) within group (order by s) from test",
+                "select g, sum(v + @a) from test group by g order by g" };
+        stat.execute("set @a = 5");
+        String[] expected = new String[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            expected[i] = getResult(stat.executeQuery(queries[i]));
+        }
+        PreparedStatement prep = conn.prepareStatement(
+                "select g, count(*), sum(v) from test where v < ? group by g order by g");
+        prep.setInt(1, 300);
+        String expectedPrepared = getResult(prep.executeQuery());
+        stat.execute("set optimize_reuse_results 0");
+        stat.execute("set query_parallelism 4");
+        for (int i = 0; i < queries.length; i++) {
+            assertEquals(expected[i], getResult(stat.executeQuery(queries[i])));
+        }
+        assertEquals(expectedPrepared, getResult(prep.executeQuery()));
+        boolean workers = false;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            workers |= thread.getName().startsWith("H2 Query Worker");
+        }
+        assertTrue(workers);
+        // the number of workers is limited, the statement thread reads the
+        // remaining ranges
+        int processors = Runtime.getRuntime().availableProcessors();
+        stat.execute("set query_parallelism " + processors * 4);
+        for (int i = 0; i < queries.length; i++) {
+            assertEquals(expected[i], getResult(stat.executeQuery(queries[i])));
+        }
+        int workerCount = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("H2 Query Worker")) {
+                workerCount++;
+            }
+        }
+        assertTrue(workerCount <= processors);
+        stat.execute("set query_parallelism 4");
+        // workers read the snapshot of the statement with own changes
+        conn.setAutoCommit(false);
+        stat.execute("delete from test where id > 49000");
+        assertEquals("49000\n", getResult(stat.executeQuery("select count(v) from test")));
+        conn.rollback();
+        conn.setAutoCommit(true);
+        // groups merged from workers are written to temporary results
+        stat.execute("set max_memory_rows 20");
+        for (int i = 0; i < queries.length; i++) {
+            assertEquals(expected[i], getResult(stat.executeQuery(queries[i])));
+        }
+        stat.execute("set max_memory_rows " + SysProperties.MAX_MEMORY_ROWS);
+        assertThrows(ErrorCode.INVALID_VALUE_2, stat).execute("set query_parallelism 0");
+        stat.execute("set query_parallelism 1");
+        stat.execute("set optimize_reuse_results 1");
+        stat.execute("drop table test");
+        conn.close();
+    }
+
+    private static String getResult(ResultSet rs) throws SQLException {
+        StringBuilder builder = new StringBuilder();
+        int columnCount = rs.getMetaData().getColumnCount();
+        while (rs.next()) {
+            for (int i = 1; i <= columnCount; i++) {
+                builder.append(rs.getString(i)).append(i < columnCount ? ", " : "\n");
+            }
+        }
+        return builder.toString();
+    }
+
     private void testExistsSubquery() throws Exception {
         Connection conn = getConnection("optimizations");
         Statement stat = conn.createStatement();
@@ -40,6 +40,7 @@ public boolean isEnabled() {
     public void test() throws Exception {
         testCancelStatement();
         testLocks();
+        testLockEscalation();
         testAbortStatement();
         deleteDb("sessionsLocks");
     }
@@ -90,6 +91,42 @@ private void testLocks() throws SQLException {
         conn2.close();
     }
 
+    private void testLockEscalation() throws SQLException {
+        deleteDb("sessionsLocks");
+        Connection conn = getConnection("sessionsLocks;LOCK_ESCALATION_THRESHOLD=10");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, v int) as select x, 0 from system_range(1, 100)");
+        Connection conn2 = getConnection("sessionsLocks");
+        Statement stat2 = conn2.createStatement();
+        conn.setAutoCommit(false);
+        stat.execute("update test set v = 1");
+        ResultSet rs = stat2.executeQuery("select * from information_schema.locks");
+        assertTrue(rs.next());
+        assertEquals("WRITE", rs.getString("LOCK_TYPE"));
+        assertFalse(rs.next());
+        rs = stat2.executeQuery("select * from information_schema.lock_statistics where table_name = 'TEST'");
+        assertTrue(rs.next());
+        assertEquals(10, rs.getLong("ROW_LOCKS"));
+        assertEquals(1, rs.getLong("ESCALATIONS"));
+        assertEquals(90, rs.getLong("ESCALATED_ROW_LOCKS"));
+        assertEquals(0, rs.getLong("LOCK_TIMEOUTS"));
+        assertFalse(rs.next());
+        // reads are not blocked by an escalated lock
+        assertSingleValue(stat2, "select sum(v) from test", 0);
+        stat2.execute("set lock_timeout 10");
+        assertThrows(ErrorCode.LOCK_TIMEOUT_1, stat2).execute("update test set v = 2 where id = 1");
+        conn.commit();
+        stat2.execute("update test set v = 2 where id = 1");
+        assertSingleValue(stat2, "select sum(v) from test", 101);
+        rs = stat2.executeQuery("select lock_timeouts, shared_locks from information_schema.lock_statistics "
+                + "where table_name = 'TEST'");
+        assertTrue(rs.next());
+        assertEquals(1, rs.getLong(1));
+        assertTrue(rs.getLong(2) >= 2);
+        conn2.close();
+        conn.close();
+    }
+
     private void testCancelStatement() throws Exception {
         deleteDb("sessionsLocks");
         Connection conn = getConnection("sessionsLocks");
@@ -12,11 +12,14 @@
 import java.sql.SQLException;
 import java.sql.Savepoint;
 import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 import org.h2.api.ErrorCode;
 import org.h2.engine.Constants;
+import org.h2.jdbc.JdbcConnection;
 import org.h2.test.TestBase;
 import org.h2.test.TestDb;
 
@@ -53,6 +56,10 @@ public void test() throws Exception {
         testMergeUsing();
         testDelete();
         testSetTransaction();
+        testReadOnlyTransaction();
+        testCommitNoWait();
+        testBoundedSnapshot();
+        testHistoryQuery();
         testReferential();
         testSavepoint();
         testIsolation();
@@ -640,6 +647,202 @@ private void testSetTransaction() throws SQLException {
         conn.close();
     }
 
+    private void testReadOnlyTransaction() throws SQLException {
+        deleteDb("transaction");
+        Connection conn = getConnection("transaction");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, v int)");
+        stat.execute("insert into test values(1, 1)");
+        conn.setReadOnly(true);
+        assertTrue(conn.isReadOnly());
+        assertSingleValue(stat, "select v from test", 1);
+        if (config.mvStore) {
+            assertThrows(ErrorCode.DATABASE_IS_READ_ONLY, stat).execute("insert into test values(2, 2)");
+            assertThrows(ErrorCode.DATABASE_IS_READ_ONLY, stat).execute("update test set v = 2");
+            assertThrows(ErrorCode.DATABASE_IS_READ_ONLY, stat).execute("select * from test for update");
+            conn.setAutoCommit(false);
+            assertSingleValue(stat, "select count(*) from test", 1);
+            conn.commit();
+            conn.setAutoCommit(true);
+        }
+        conn.setReadOnly(false);
+        assertFalse(conn.isReadOnly());
+        stat.execute("update test set v = 2");
+        stat.execute("set transaction read only, isolation level repeatable read");
+        assertTrue(conn.isReadOnly());
+        assertSingleValue(stat, "select v from test", 2);
+        if (config.mvStore) {
+            assertThrows(ErrorCode.DATABASE_IS_READ_ONLY, stat).execute("delete from test");
+        }
+        stat.execute("set session characteristics as transaction read write");
+        assertFalse(conn.isReadOnly());
+        conn.setAutoCommit(false);
+        stat.execute("delete from test");
+        // an unchanged setting doesn't commit the transaction
+        conn.setReadOnly(false);
+        conn.rollback();
+        assertSingleValue(stat, "select count(*) from test", 1);
+        conn.setAutoCommit(true);
+        stat.execute("delete from test");
+        assertSingleValue(stat, "select count(*) from test", 0);
+        conn.close();
+    }
+
+    private void testBoundedSnapshot() throws Exception {
+        if (!config.mvStore) {
+            return;
+        }
+        deleteDb("transaction");
+        Connection conn = getConnection("transaction;SNAPSHOT_RETENTION_TIME=0");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, v int) as select x, 0 from system_range(1, 100)");
+        Connection conn2 = getConnection("transaction");
+        Statement stat2 = conn2.createStatement();
+        stat.execute("set bounded_snapshot true");
+        conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        conn.setAutoCommit(false);
+        assertSingleValue(stat, "select sum(v) from test", 0);
+        Thread.sleep(5);
+        stat2.execute("update test set v = 1");
+        stat2.execute("checkpoint");
+        assertThrows(ErrorCode.SNAPSHOT_TOO_OLD, stat).executeQuery("select count(*) from test");
+        assertThrows(ErrorCode.SNAPSHOT_TOO_OLD, stat).executeQuery("select sum(v) from test");
+        conn.rollback();
+        assertSingleValue(stat, "select sum(v) from test", 100);
+        conn.commit();
+
+        // snapshots are kept as usual without the setting
+        stat.execute("set bounded_snapshot false");
+        // the snapshot of a repeatable read transaction is taken by its first statement
+        conn.commit();
+        assertSingleValue(stat, "select sum(v) from test", 100);
+        Thread.sleep(5);
+        stat2.execute("update test set v = 2");
+        stat2.execute("checkpoint");
+        assertSingleValue(stat, "select sum(v) from test", 100);
+        conn.commit();
+        conn2.close();
+        conn.close();
+    }
+
+    private void testHistoryQuery() throws Exception {
+        if (!config.mvStore || config.memory) {
+            return;
+        }
+        deleteDb("transaction");
+        Connection conn = getConnection("transaction;HISTORY_RETENTION_TIME=60000");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, v int) as select x, x from system_range(1, 10)");
+        stat.execute("create index idx_v on test(v)");
+        stat.execute("checkpoint");
+        long version = getStoreVersion(stat);
+        Thread.sleep(5);
+        Timestamp time = new Timestamp(System.currentTimeMillis());
+        Thread.sleep(5);
+        stat.execute("update test set v = v * 10");
+        stat.execute("delete from test where id = 10");
+        stat.execute("checkpoint");
+        conn.setAutoCommit(false);
+        stat.execute("insert into test values (11, 11)");
+        stat.execute("checkpoint");
+
+        assertSingleValue(stat, "select sum(v) from test", 461);
+        assertSingleValue(stat, "select sum(v) from test for system_time as of version " + version, 55);
+        PreparedStatement prep = conn.prepareStatement(
+                "select sum(v), count(*) from test for system_time as of ? where v > 4");
+        prep.setTimestamp(1, time);
+        ResultSet rs = prep.executeQuery();
+        rs.next();
+        assertEquals(45, rs.getInt(1));
+        assertEquals(6, rs.getInt(2));
+        // uncommitted rows are not visible
+        prep.setTimestamp(1, new Timestamp(System.currentTimeMillis() + 1_000));
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(450, rs.getInt(1));
+        assertEquals(9, rs.getInt(2));
+        conn.commit();
+
+        rs = stat.executeQuery("explain select id from test for system_time as of version " + version
+                + " where v = 3");
+        rs.next();
+        assertContains(rs.getString(1), "/* PUBLIC.IDX_V: V = 3 */");
+        assertSingleValue(stat, "select id from test for system_time as of version " + version + " where v = 3", 3);
+        assertSingleValue(stat, "select id from test for system_time as of version " + version + " where id = 10",
+                10);
+        assertSingleValue(stat, "select count(*) from test for system_time as of version " + version
+                + " t join test on t.id = test.id where t.v * 10 = test.v", 9);
+        stat.execute("create view v as select * from test for system_time as of version " + version);
+        assertSingleValue(stat, "select sum(v) from v", 55);
+        assertThrows(ErrorCode.SNAPSHOT_TOO_OLD, stat).executeQuery(
+                "select * from test for system_time as of timestamp '2000-01-01 00:00:00'");
+        assertThrows(ErrorCode.INVALID_VALUE_2, stat).executeQuery(
+                "select * from test for system_time as of version -1");
+        // the data of the table is copied to new maps
+        stat.execute("alter table test add column w int");
+        stat.execute("checkpoint");
+        long altered = getStoreVersion(stat);
+        assertThrows(ErrorCode.SNAPSHOT_TOO_OLD, stat).executeQuery(
+                "select sum(v) from test for system_time as of version " + version);
+        assertThrows(ErrorCode.SNAPSHOT_TOO_OLD, stat).executeQuery(
+                "select id from test for system_time as of version " + version + " where v = 3");
+        assertSingleValue(stat, "select sum(v) from test for system_time as of version " + altered, 461);
+        conn.close();
+
+        // no history is kept without the setting
+        deleteDb("transaction");
+        conn = getConnection("transaction");
+        stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, v int)");
+        stat.execute("checkpoint");
+        version = getStoreVersion(stat);
+        stat.execute("insert into test values (1, 1)");
+        stat.execute("checkpoint");
+        stat.execute("insert into test values (2, 2)");
+        stat.execute("checkpoint");
+        assertThrows(ErrorCode.SNAPSHOT_TOO_OLD, stat).executeQuery(
+                "select * from test for system_time as of version " + version);
+        conn.close();
+    }
+
+    private long getStoreVersion(Statement stat) throws SQLException {
+        ResultSet rs = stat.executeQuery(
+                "select \"VALUE\" from information_schema.settings where name = 'info.STORE_VERSION'");
+        rs.next();
+        // the last complete version
+        return rs.getLong(1) - 1;
+    }
+
+    private void testCommitNoWait() throws Exception {
+        deleteDb("transaction");
+        Connection conn = getConnection("transaction");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key)");
+        conn.setAutoCommit(false);
+        stat.execute("insert into test values(1)");
+        stat.execute("commit nowait");
+        stat.execute("insert into test values(2)");
+        if (config.networked) {
+            try {
+                conn.unwrap(JdbcConnection.class).commitAsync();
+                fail();
+            } catch (SQLException e) {
+                assertEquals(ErrorCode.FEATURE_NOT_SUPPORTED_1, e.getErrorCode());
+            }
+            conn.commit();
+        } else {
+            conn.unwrap(JdbcConnection.class).commitAsync().get(10, TimeUnit.SECONDS);
+            // without the background writer, the future is completed as well
+            stat.execute("set write_delay 0");
+            stat.execute("insert into test values(3)");
+            conn.unwrap(JdbcConnection.class).commitAsync().get(10, TimeUnit.SECONDS);
+        }
+        Connection conn2 = getConnection("transaction");
+        assertSingleValue(conn2.createStatement(), "select count(*) from test", config.networked ? 2 : 3);
+        conn2.close();
+        conn.close();
+    }
+
     private void testReferential() throws SQLException {
         deleteDb("transaction");
         Connection c1 = getConnection("transaction");
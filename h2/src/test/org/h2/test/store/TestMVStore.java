@@ -14,9 +14,12 @@
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import org.h2.compress.CompressDeflate;
+import org.h2.compress.Compressor;
 import org.h2.mvstore.Chunk;
 import org.h2.mvstore.Cursor;
 import org.h2.mvstore.DataUtils;
@@ -25,6 +28,7 @@
 import org.h2.mvstore.MVStore;
 import org.h2.mvstore.MVStoreException;
 import org.h2.mvstore.OffHeapStore;
+import org.h2.mvstore.cache.CacheLongKeyOffHeap;
 import org.h2.mvstore.type.DataType;
 import org.h2.mvstore.type.ObjectDataType;
 import org.h2.mvstore.type.StringDataType;
@@ -56,20 +60,30 @@ public void test() throws Exception {
         testRemoveMapRollback();
         testProvidedFileStoreNotOpenedAndClosed();
         testVolatileMap();
+        testMemoryMappedReads();
         testEntrySet();
         testCompressEmptyPage();
         testCompressed();
+        testParallelSerialization();
+        testCompressionAlgorithm();
         testFileFormatExample();
         testMaxChunkLength();
         testCacheInfo();
+        testOffHeapCache();
+        testReadAhead();
+        testRedoLog();
+        testCommitAsync();
         testRollback();
         testVersionsToKeep();
         testVersionsToKeep2();
+        testHistoryRetention();
         testRemoveMap();
         testIsEmpty();
         testOffHeapStorage();
         testNewerWriteVersion();
         testCompactFully();
+        testAutoCompactRateLimit();
+        testBulkLoad();
         testBackgroundExceptionListener();
         testOldVersion();
         testAtomicOperations();
@@ -193,6 +207,61 @@ private void testVolatileMap() {
         }
     }
 
+    private void testMemoryMappedReads() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            for (int i = 0; i < 1000; i++) {
+                map.put(i, "Hello " + i);
+            }
+            map.put(1000, new String(new char[2 * 1024 * 1024]));
+        }
+        try (MVStore s = new MVStore.Builder().fileName(fileName).
+                memoryMappedReads().open()) {
+            FileStore fs = s.getFileStore();
+            assertTrue(fs.isMemoryMappedReads());
+            MVMap<Integer, String> map = s.openMap("data");
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("Hello " + i, map.get(i));
+            }
+            assertEquals(2 * 1024 * 1024, map.get(1000).length());
+            assertTrue(fs.getMappedReadCount() > 0);
+            for (int i = 0; i < 1000; i += 2) {
+                map.remove(i);
+            }
+            s.commit();
+            s.compactMoveChunks();
+            for (int i = 1; i < 1000; i += 2) {
+                assertEquals("Hello " + i, map.get(i));
+            }
+            // moved chunks are mapped again, freed ones are unmapped
+            s.setRetentionTime(0);
+            map.remove(1000);
+            s.commit();
+            s.compact(100, 1024 * 1024);
+            s.compactMoveChunks();
+            long mappedReadCount = fs.getMappedReadCount();
+            s.getCache().clear();
+            for (int i = 1; i < 1000; i += 2) {
+                assertEquals("Hello " + i, map.get(i));
+            }
+            assertTrue(fs.getMappedReadCount() > mappedReadCount);
+        }
+        // encrypted files can not be mapped, regular reads are used
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).
+                encryptionKey("007".toCharArray()).memoryMappedReads().open()) {
+            s.openMap("data").put(1, "Hello");
+        }
+        try (MVStore s = new MVStore.Builder().fileName(fileName).
+                encryptionKey("007".toCharArray()).memoryMappedReads().open()) {
+            assertEquals("Hello", s.openMap("data").get(1));
+            assertFalse(s.getFileStore().isMemoryMappedReads());
+            assertEquals(0, s.getFileStore().getMappedReadCount());
+        }
+    }
+
     private void testEntrySet() {
         try (MVStore s = new MVStore.Builder().open()) {
             MVMap<Integer, Integer> map = s.openMap("data");
@@ -259,6 +328,131 @@ private void testCompressed() {
         }
     }
 
+    private void testCompressionAlgorithm() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        AtomicInteger compressed = new AtomicInteger();
+        AtomicInteger expanded = new AtomicInteger();
+        Compressor custom = new CompressDeflate() {
+            @Override
+            public int getAlgorithm() {
+                return 10;
+            }
+
+            @Override
+            public int compress(byte[] in, int inLen, byte[] out, int outPos) {
+                compressed.incrementAndGet();
+                return super.compress(in, inLen, out, outPos);
+            }
+
+            @Override
+            public void expand(byte[] in, int inPos, int inLen, byte[] out, int outPos, int outLen) {
+                expanded.incrementAndGet();
+                super.expand(in, inPos, inLen, out, outPos, outLen);
+            }
+        };
+        String data = new String(new char[1000]).replace((char) 0, 'x');
+        try (MVStore s = new MVStore.Builder().fileName(fileName).compress().compressor(custom).open()) {
+            MVMap<Integer, String> fast = s.openMap("fast");
+            MVMap<Integer, String> high = s.openMap("high");
+            MVMap<Integer, String> none = s.openMap("none");
+            assertEquals(Compressor.LZF, fast.getCompressionAlgorithm());
+            high.setCompressionAlgorithm(10);
+            none.setCompressionAlgorithm(Compressor.NO);
+            try {
+                fast.setCompressionAlgorithm(11);
+                fail();
+            } catch (MVStoreException e) {
+                assertEquals(DataUtils.ERROR_UNSUPPORTED_FORMAT, e.getErrorCode());
+            }
+            for (int i = 0; i < 100; i++) {
+                fast.put(i, data);
+                high.put(i, data);
+                none.put(i, data);
+            }
+        }
+        assertTrue(compressed.get() > 0);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).compressor(custom).open()) {
+            // older versions can not read the file
+            Map<String, Object> header = s.getStoreHeader();
+            assertEquals("2", header.get("format").toString());
+            assertEquals("2", header.get("formatRead").toString());
+            assertEquals("a", header.get("compressors").toString());
+            for (String name : new String[] { "fast", "high", "none" }) {
+                MVMap<Integer, String> map = s.openMap(name);
+                for (int i = 0; i < 100; i++) {
+                    assertEquals(data, map.get(i));
+                }
+            }
+            // the algorithms of the maps are persisted, the store default is not
+            assertEquals(Compressor.NO, s.openMap("fast").getCompressionAlgorithm());
+            assertEquals(10, s.openMap("high").getCompressionAlgorithm());
+            assertEquals(Compressor.NO, s.openMap("none").getCompressionAlgorithm());
+            s.openMap("high").put(100, data);
+        }
+        assertTrue(expanded.get() > 0);
+        // the compressor needs to be registered to open the store
+        try {
+            new MVStore.Builder().fileName(fileName).open().close();
+            fail();
+        } catch (MVStoreException e) {
+            assertEquals(DataUtils.ERROR_UNSUPPORTED_FORMAT, e.getErrorCode());
+        }
+        // the format is not changed if no page of a registered compressor is written
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).compress().compressor(custom).open()) {
+            MVMap<Integer, String> fast = s.openMap("fast");
+            for (int i = 0; i < 100; i++) {
+                fast.put(i, data);
+            }
+        }
+        try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+            assertEquals("1", s.getStoreHeader().get("format").toString());
+            assertNull(s.getStoreHeader().get("compressors"));
+            assertEquals(data, s.openMap("fast").get(1));
+        }
+        FileUtils.delete(fileName);
+    }
+
+    private void testParallelSerialization() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        for (int level = 0; level <= 2; level++) {
+            long[] sizes = new long[2];
+            for (int threads = 0; threads <= 4; threads += 4) {
+                FileUtils.delete(fileName);
+                MVStore.Builder builder = new MVStore.Builder().fileName(fileName).
+                        autoCommitDisabled().serializationThreads(threads);
+                if (level == 1) {
+                    builder.compress();
+                } else if (level == 2) {
+                    builder.compressHigh();
+                }
+                try (MVStore s = builder.open()) {
+                    for (int m = 0; m < 3; m++) {
+                        MVMap<Integer, String> map = s.openMap("data" + m);
+                        for (int i = 0; i < 10000; i++) {
+                            map.put(i, "Hello " + (i % 100) + " " + m);
+                        }
+                    }
+                    s.commit();
+                    sizes[threads / 4] = s.getFileStore().getWriteBytes();
+                }
+                try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+                    for (int m = 0; m < 3; m++) {
+                        MVMap<Integer, String> map = s.openMap("data" + m);
+                        assertEquals(10000, map.size());
+                        for (int i = 0; i < 10000; i++) {
+                            assertEquals("Hello " + (i % 100) + " " + m, map.get(i));
+                        }
+                    }
+                }
+            }
+            // the chunk layout does not depend on the number of threads
+            assertEquals(sizes[0], sizes[1]);
+        }
+        FileUtils.delete(fileName);
+    }
+
     private void testFileFormatExample() {
         String fileName = getBaseDir() + "/" + getTestName();
         FileUtils.delete(fileName);
@@ -316,6 +510,208 @@ private void testCacheInfo() {
         }
     }
 
+    private void testOffHeapCache() {
+        CacheLongKeyOffHeap cache = new CacheLongKeyOffHeap(1024 * 1024);
+        ByteBuffer data = ByteBuffer.allocate(4096);
+        for (int i = 0; i < 1000; i++) {
+            data.putInt(0, i);
+            cache.put(i, 1, data);
+            assertEquals(0, data.position());
+        }
+        assertTrue(cache.getUsedMemory() <= 1024 * 1024);
+        assertTrue(cache.size() > 0 && cache.size() < 1000);
+        assertNull(cache.get(0, 1));
+        assertEquals(999, cache.get(999, 1).getInt());
+        assertNull(cache.get(999, 2));
+        assertNull(cache.get(999, 1));
+        cache.clear();
+        assertEquals(0, cache.size());
+
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        // more data than fits in the read cache
+        String prefix = new String(new char[200]).replace((char) 0, 'x');
+        try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            for (int i = 0; i < 20000; i++) {
+                map.put(i, prefix + i);
+            }
+        }
+        try (MVStore s = new MVStore.Builder().fileName(fileName).
+                cacheSize(1).offHeapCacheSize(16).open()) {
+            assertEquals(0, s.getOffHeapCacheHitRatio());
+            MVMap<Integer, String> map = s.openMap("data");
+            for (int i = 0; i < 20000; i++) {
+                assertEquals(prefix + i, map.get(i));
+            }
+            long readCount = s.getFileStore().getReadCount();
+            for (int i = 0; i < 20000; i++) {
+                assertEquals(prefix + i, map.get(i));
+            }
+            // pages evicted from the read cache are not read from the file again
+            assertEquals(readCount, s.getFileStore().getReadCount());
+            assertTrue(s.getOffHeapCacheHitRatio() > 0);
+        }
+        FileUtils.delete(fileName);
+    }
+
+    private void testReadAhead() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        int count = 100000;
+        try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            for (int i = 0; i < count; i++) {
+                map.put(i, "Hello " + i);
+            }
+        }
+        try (MVStore s = new MVStore.Builder().fileName(fileName).readAhead(16).open()) {
+            assertEquals(16, s.getReadAheadPages());
+            MVMap<Integer, String> map = s.openMap("data");
+            // a short range does not read ahead
+            Cursor<Integer, String> c = map.cursor(10, 20, false);
+            while (c.hasNext()) {
+                c.next();
+            }
+            assertEquals(0, s.getReadAheadPageCount());
+            int i = 0;
+            for (c = map.cursor(null); c.hasNext(); i++) {
+                assertEquals(i, c.next().intValue());
+                assertEquals("Hello " + i, c.getValue());
+            }
+            assertEquals(count, i);
+            for (c = map.cursor(null, 5000, true); c.hasNext();) {
+                i--;
+                assertEquals(i, c.next().intValue());
+                assertEquals("Hello " + i, c.getValue());
+            }
+            assertEquals(5000, i);
+            for (int j = 0; j < 100 && s.getReadAheadPageCount() == 0; j++) {
+                sleep(10);
+            }
+            assertTrue(s.getReadAheadPageCount() > 0);
+        }
+        FileUtils.delete(fileName);
+    }
+
+    private void testRedoLog() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        String redoLogName = fileName + ".redo";
+        FileUtils.delete(fileName);
+        FileUtils.delete(redoLogName);
+        long chunkWrites;
+        try (MVStore s = new MVStore.Builder().fileName(fileName).autoCommitDisabled().open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            long writeBytes = s.getFileStore().getWriteBytes();
+            for (int i = 0; i < 100; i++) {
+                map.put(i, "Hello " + i);
+                s.commit();
+            }
+            chunkWrites = s.getFileStore().getWriteBytes() - writeBytes;
+        }
+        FileUtils.delete(fileName);
+
+        MVStore s = new MVStore.Builder().fileName(fileName).autoCommitDisabled().redoLogSize(1).open();
+        MVMap<Integer, String> map = s.openMap("data");
+        MVMap<Integer, String> other = s.openMap("other");
+        MVMap<Integer, String> cleared = s.openMap("cleared");
+        for (int i = 0; i < 10; i++) {
+            cleared.put(i, "Hello " + i);
+        }
+        // the new maps are stored in a chunk
+        s.commit();
+        assertTrue(FileUtils.exists(redoLogName));
+        long writeBytes = s.getFileStore().getWriteBytes();
+        for (int i = 0; i < 100; i++) {
+            map.put(i, "Hello " + i);
+            other.put(i, "World " + i);
+            s.commit();
+        }
+        assertEquals(writeBytes, s.getFileStore().getWriteBytes());
+        long redoWrites = s.getRedoLogWrittenBytes();
+        assertTrue(redoWrites > 0);
+        assertTrue(redoWrites * 10 < chunkWrites);
+        map.remove(0);
+        map.put(1, "Hi");
+        cleared.clear();
+        cleared.put(100, "Hi");
+        s.commit();
+        // not committed
+        map.put(2, "Lost");
+        s.closeImmediately();
+
+        s = new MVStore.Builder().fileName(fileName).autoCommitDisabled().redoLogSize(1).open();
+        map = s.openMap("data");
+        assertEquals(99, map.size());
+        assertNull(map.get(0));
+        assertEquals("Hi", map.get(1));
+        assertEquals("Hello 2", map.get(2));
+        assertEquals("Hello 99", map.get(99));
+        cleared = s.openMap("cleared");
+        assertEquals(1, cleared.size());
+        assertEquals("Hi", cleared.get(100));
+        // a checkpoint keeps the log of the map that was not opened
+        writeBytes = s.getFileStore().getWriteBytes();
+        s.removeMap(cleared);
+        s.commit();
+        assertTrue(s.getFileStore().getWriteBytes() > writeBytes);
+        assertTrue(s.getRedoLogSize() > 16);
+        s.closeImmediately();
+
+        s = new MVStore.Builder().fileName(fileName).autoCommitDisabled().redoLogSize(1).open();
+        assertFalse(s.hasMap("cleared"));
+        map = s.openMap("data");
+        assertEquals(99, map.size());
+        other = s.openMap("other");
+        assertEquals(100, other.size());
+        assertEquals("World 99", other.get(99));
+        s.close();
+        assertFalse(FileUtils.exists(redoLogName));
+
+        s = new MVStore.Builder().fileName(fileName).autoCommitDisabled().redoLogSize(1).open();
+        map = s.openMap("data");
+        map.put(0, "Hello 0");
+        s.commit();
+        s.closeImmediately();
+        // the log is replayed even if no redo log is requested
+        s = new MVStore.Builder().fileName(fileName).autoCommitDisabled().open();
+        map = s.openMap("data");
+        assertEquals(100, map.size());
+        s.close();
+        assertFalse(FileUtils.exists(redoLogName));
+        FileUtils.delete(fileName);
+    }
+
+    private void testCommitAsync() throws Exception {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        MVStore s = new MVStore.Builder().fileName(fileName).open();
+        s.setAutoCommitDelay(60_000);
+        MVMap<Integer, String> map = s.openMap("data");
+        map.put(1, "Hello");
+        CompletableFuture<Long> future = s.commitAsync();
+        long version = future.get(10, TimeUnit.SECONDS);
+        assertTrue(version > 0);
+        assertFalse(s.hasUnsavedChanges());
+        map.put(2, "World");
+        future = s.commitAsync();
+        s.close();
+        assertTrue(future.isDone());
+        assertFalse(future.isCompletedExceptionally());
+        s = new MVStore.Builder().fileName(fileName).open();
+        map = s.openMap("data");
+        assertEquals("World", map.get(2));
+        s.setAutoCommitDelay(0);
+        map.put(3, "Hi");
+        // without the background thread, the changes are stored right away
+        future = s.commitAsync();
+        assertTrue(future.isDone());
+        assertFalse(future.isCompletedExceptionally());
+        assertFalse(s.hasUnsavedChanges());
+        s.close();
+        FileUtils.delete(fileName);
+    }
+
     private void testVersionsToKeep() {
         try (MVStore s = new MVStore.Builder().open()) {
             assertEquals(5, s.getVersionsToKeep());
@@ -337,6 +733,35 @@ private void testVersionsToKeep() {
         }
     }
 
+    private void testHistoryRetention() throws InterruptedException {
+        try (MVStore s = new MVStore.Builder().autoCommitDisabled().open()) {
+            s.setVersionsToKeep(0);
+            s.setHistoryRetentionTime(60_000);
+            MVMap<Integer, Integer> map = s.openMap("data");
+            long[] times = new long[10];
+            for (int i = 0; i < 10; i++) {
+                map.put(i, i);
+                s.commit();
+                Thread.sleep(2);
+                times[i] = System.currentTimeMillis();
+                Thread.sleep(2);
+            }
+            for (int i = 0; i < 10; i++) {
+                long version = s.getVersionForTime(times[i]);
+                assertEquals(i + 1, map.openVersion(version).size());
+            }
+            assertEquals(-1, s.getVersionForTime(times[0] - 10_000));
+            assertEquals(s.getCurrentVersion(), s.getVersionForTime(System.currentTimeMillis() + 1_000));
+
+            // old versions are dropped when the retention time is over
+            s.setHistoryRetentionTime(0);
+            map.put(10, 10);
+            s.commit();
+            assertEquals(-1, s.getVersionForTime(times[0]));
+            assertFalse(s.isVersionRetained(1));
+        }
+    }
+
     private void testVersionsToKeep2() {
         try (MVStore s = new MVStore.Builder().autoCommitDisabled().open()) {
             s.setVersionsToKeep(2);
@@ -435,7 +860,7 @@ private void testNewerWriteVersion() {
         Map<String, Object> header = s.getStoreHeader();
         assertEquals("1", header.get("format").toString());
         header.put("formatRead", "1");
-        header.put("format", "2");
+        header.put("format", "3");
         forceWriteStoreHeader(s);
         MVMap<Integer, String> m = s.openMap("data");
         forceWriteStoreHeader(s);
@@ -501,6 +926,146 @@ private void testCompactFully() {
         assertTrue("old: " + sizeOld + " new: " + sizeNew, sizeNew < sizeOld);
     }
 
+    private void testAutoCompactRateLimit() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        int limit = 64 * 1024;
+        try (MVStore s = new MVStore.Builder().
+                fileName(fileName).
+                autoCommitDisabled().
+                autoCompactRateLimit(limit / 1024).
+                open()) {
+            assertEquals(limit, s.getAutoCompactRate());
+            s.setRetentionTime(0);
+            s.setVersionsToKeep(0);
+            MVMap<Integer, String> m = s.openMap("data");
+            String data = new String(new char[100]).replace((char) 0, 'x');
+            for (int i = 0; i < 20000; i++) {
+                m.put(i, data);
+            }
+            s.commit();
+            // remove whole leaves, so that the first chunk stays partially live
+            for (int i = 0; i < 20000; i++) {
+                if ((i / 500) % 4 != 0) {
+                    m.remove(i);
+                }
+            }
+            s.commit();
+            s.setAutoCommitDelay(10);
+            sleep(500);
+            s.setAutoCommitDelay(0);
+            long written = s.getAutoCompactWrittenBytes();
+            assertTrue(written > 0);
+            // the first step exceeds the budget, so the following ones wait
+            assertTrue(s.getAutoCompactDeferredCount() > 0);
+            assertTrue(s.getAutoCompactRate() <= limit);
+        }
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().
+                fileName(fileName).
+                autoCommitDisabled().
+                autoCompactRateLimit(limit / 1024).
+                open()) {
+            s.setRetentionTime(0);
+            s.setVersionsToKeep(0);
+            MVMap<Integer, String> m = s.openMap("data");
+            String data = new String(new char[100]).replace((char) 0, 'x');
+            // chunks that are smaller than the budget
+            for (int i = 0; i < 20000; i++) {
+                m.put(i, data);
+                if (i % 1000 == 999) {
+                    s.commit();
+                }
+            }
+            for (int i = 0; i < 20000; i++) {
+                if ((i / 50) % 4 != 0) {
+                    m.remove(i);
+                }
+            }
+            s.commit();
+            s.setAutoCommitDelay(10);
+            sleep(300);
+            s.setAutoCommitDelay(0);
+            long written = s.getAutoCompactWrittenBytes();
+            assertTrue(written > 0);
+            // a step writes the available budget or one chunk, not all
+            // chunks at once
+            assertTrue(written + " > " + limit, written <= limit);
+        }
+        FileUtils.delete(fileName);
+    }
+
+    private void testBulkLoad() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        int count = 100000;
+        TreeMap<Integer, String> data = new TreeMap<>();
+        for (int i = 0; i < count; i++) {
+            data.put(i * 2, "Hello " + i);
+        }
+        try (MVStore s = new MVStore.Builder().
+                fileName(fileName).
+                autoCommitBufferSize(64).
+                open()) {
+            MVMap<Integer, String> m = s.openMap("data");
+            m.bulkLoad(data.entrySet().iterator());
+            assertEquals(count, m.size());
+            assertEquals(count * 2 - 2, m.lastKey().intValue());
+            assertEquals(500, m.getKeyIndex(1000));
+            // the partially loaded tree was saved in between
+            assertTrue(s.getFileStore().getWriteCount() > 0);
+            m.put(1, "x");
+            m.remove(1000);
+            assertEquals(count, m.size());
+            try {
+                m.bulkLoad(data.entrySet().iterator());
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            MVMap<Integer, String> m2 = s.openMap("unsorted");
+            try {
+                m2.bulkLoad(data.descendingMap().entrySet().iterator());
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        try (MVStore s = new MVStore.Builder().
+                fileName(fileName).
+                open()) {
+            s.compactFile(1000);
+            MVMap<Integer, String> m = s.openMap("data");
+            assertEquals(count, m.size());
+            assertEquals("x", m.get(1));
+            assertNull(m.get(1000));
+            int i = 0;
+            for (Map.Entry<Integer, String> e : m.entrySet()) {
+                if (i == 1000) {
+                    i += 2;
+                }
+                if (e.getKey() == 1) {
+                    continue;
+                }
+                assertEquals(i, e.getKey().intValue());
+                assertEquals("Hello " + i / 2, e.getValue());
+                i += 2;
+            }
+            assertEquals(count * 2, i);
+        }
+        FileUtils.delete(fileName);
+
+        try (MVStore s = new MVStore.Builder().open()) {
+            MVMap<Integer, String> m = s.openMap("data");
+            m.bulkLoad(data.entrySet().iterator());
+            assertEquals(count, m.size());
+            assertEquals(data, new TreeMap<>(m));
+            MVMap<Integer, String> m2 = s.openMap("empty");
+            m2.bulkLoad(new TreeMap<Integer, String>().entrySet().iterator());
+            assertTrue(m2.isEmpty());
+        }
+    }
+
     private void testBackgroundExceptionListener() throws Exception {
         String fileName = getBaseDir() + "/" + getTestName();
         FileUtils.delete(fileName);
@@ -742,7 +1307,8 @@ private void testFileFormatChange() {
             Map<String, Object> header = s.getStoreHeader();
             int format = Integer.parseInt(header.get("format").toString());
             assertEquals(1, format);
-            header.put("format", Integer.toString(format + 1));
+            // format 2 is supported, it is used with registered compressors
+            header.put("format", Integer.toString(format + 2));
             forceWriteStoreHeader(s);
         }
         try {
@@ -63,6 +63,7 @@ public void test() throws Exception {
         testConcurrentMap();
         testConcurrentIterate();
         testConcurrentWrite();
+        testConcurrentAppend();
         testConcurrentRead();
     }
 
@@ -688,6 +689,46 @@ public void call() {
     }
 
 
+    /**
+     * Test concurrent appends at the end of a map, which are combined in the
+     * append lane.
+     */
+    private void testConcurrentAppend() {
+        try (MVStore s = openStore(null)) {
+            final MVMap<Integer, Integer> m = s.openMap("data");
+            final int count = 100_000;
+            final AtomicInteger next = new AtomicInteger();
+            Task[] tasks = new Task[16];
+            for (int i = 0; i < tasks.length; i++) {
+                final boolean putIfAbsent = (i & 1) == 0;
+                tasks[i] = new Task() {
+                    @Override
+                    public void call() {
+                        int key;
+                        while ((key = next.getAndIncrement()) < count) {
+                            if (putIfAbsent) {
+                                assertNull(m.putIfAbsent(key, key));
+                            } else {
+                                assertNull(m.put(key, key));
+                            }
+                        }
+                    }
+                }.execute();
+            }
+            for (Task t : tasks) {
+                t.get();
+            }
+            assertEquals(count, m.size());
+            int expected = 0;
+            for (Map.Entry<Integer, Integer> e : m.entrySet()) {
+                assertEquals(expected, e.getKey().intValue());
+                assertEquals(expected, e.getValue().intValue());
+                expected++;
+            }
+            assertEquals(count, expected);
+        }
+    }
+
     /**
      * Test what happens on concurrent write. Concurrent write may corrupt the
      * map, so that keys and values may become null.
@@ -11,12 +11,17 @@
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicInteger;
+import org.h2.engine.IsolationLevel;
 import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.MVMap;
 import org.h2.mvstore.MVStore;
 import org.h2.mvstore.MVStoreException;
 import org.h2.mvstore.tx.Transaction;
@@ -27,6 +32,7 @@
 import org.h2.store.fs.FileUtils;
 import org.h2.test.TestBase;
 import org.h2.util.Task;
+import org.h2.value.VersionedValue;
 
 /**
  * Test concurrent transactions.
@@ -48,10 +54,20 @@ public void test() throws Exception {
         testHCLFKey();
         testConcurrentAddRemove();
         testConcurrentAdd();
+        testGroupCommit();
         testCountWithOpenTransactions();
+        testCountWithRowCountDeltas();
         testConcurrentUpdate();
+        testLockWaitQueue();
+        testDeadlockVictim();
+        testReadOnlyTransaction();
+        testOptimisticTransaction();
         testRepeatedChange();
         testTransactionAge();
+        testManyOpenTransactions();
+        testUndoLogBuffer();
+        testBoundedSnapshot();
+        testCommittingTransactionsOfVersion();
         testGetModifiedMaps();
         testKeyIterator();
         testTwoPhaseCommit();
@@ -62,6 +78,61 @@ public void test() throws Exception {
         testStoreMultiThreadedReads();
     }
 
+    private void testCommittingTransactionsOfVersion() throws Exception {
+        try (MVStore s = new MVStore.Builder().autoCommitDisabled().open()) {
+            s.setVersionsToKeep(0);
+            s.setHistoryRetentionTime(60_000);
+            TransactionStore ts = new TransactionStore(s);
+            ts.init();
+            Transaction tx = ts.begin();
+            TransactionMap<Integer, Integer> map = tx.openMap("data");
+            for (int i = 0; i < 100; i++) {
+                map.put(i, 0);
+            }
+            tx.commit();
+            s.commit();
+            long firstVersion = s.getCurrentVersion();
+            Task task = new Task() {
+
+                @Override
+                public void call() {
+                    while (!stop) {
+                        s.commit();
+                    }
+                }
+
+            };
+            task.execute();
+            for (int j = 1; j <= 100; j++) {
+                tx = ts.begin();
+                map = tx.openMap("data");
+                for (int i = 0; i < 100; i++) {
+                    map.put(i, j);
+                }
+                tx.commit();
+            }
+            task.get();
+            // versions cut while a transaction was committing must show
+            // either all or none of its changes
+            for (long v = firstVersion, last = s.getCurrentVersion(); v <= last; v++) {
+                BitSet committingTransactions = ts.getCommittingTransactions(v);
+                MVMap<Integer, VersionedValue<Integer>> m = map.map.openVersion(v);
+                Integer expected = null;
+                for (int i = 0; i < 100; i++) {
+                    VersionedValue<Integer> value = m.get(i);
+                    long operationId = value.getOperationId();
+                    Integer committed = operationId == 0 || committingTransactions.get(
+                            TransactionStore.getTransactionId(operationId)) ? value.getCurrentValue()
+                                    : value.getCommittedValue();
+                    if (expected == null) {
+                        expected = committed;
+                    }
+                    assertEquals(expected, committed);
+                }
+            }
+        }
+    }
+
     private void testHCLFKey() {
         MVStore s = MVStore.open(null);
         final TransactionStore ts = new TransactionStore(s);
@@ -212,6 +283,92 @@ public void call() throws Exception {
         s.close();
     }
 
+    private void testGroupCommit() throws Exception {
+        String fileName = getBaseDir() + "/testGroupCommit.h3";
+        FileUtils.delete(fileName);
+        int threadCount = 4;
+        int commitCount = 25;
+        MVStore s = new MVStore.Builder().
+                fileName(fileName).
+                groupCommitDelay(50).
+                open();
+        assertTrue(s.isGroupCommitEnabled());
+        commitConcurrently(s, threadCount, commitCount, 0);
+        // concurrent commits within the delay were stored and synced together
+        assertTrue(s.getGroupCommitCount() < threadCount * commitCount);
+        assertTrue(String.valueOf(s.getGroupCommitAverageSize()), s.getGroupCommitAverageSize() > 1);
+        s.close();
+
+        s = new MVStore.Builder().
+                fileName(fileName).
+                groupCommitDelay(100).
+                groupCommitMaxSize(2).
+                open();
+        commitConcurrently(s, threadCount, commitCount, threadCount * commitCount);
+        // groups do not exceed the maximum size
+        double averageSize = s.getGroupCommitAverageSize();
+        assertTrue(String.valueOf(averageSize), averageSize > 1 && averageSize <= 2);
+        s.close();
+
+        s = new MVStore.Builder().
+                fileName(fileName).
+                groupCommitDelay(1000).
+                open();
+        // an interrupted caller stores the group without waiting for others
+        // and keeps the interrupt flag
+        Thread.currentThread().interrupt();
+        long time = System.nanoTime();
+        s.groupCommit();
+        assertTrue(Thread.interrupted());
+        assertTrue(System.nanoTime() - time < 500_000_000L);
+        // a commit without concurrent committers doesn't wait for others
+        TransactionStore ts = new TransactionStore(s);
+        ts.init();
+        Transaction tx = ts.begin();
+        tx.openMap("data").put(-1, -1);
+        time = System.nanoTime();
+        tx.commit();
+        assertTrue(System.nanoTime() - time < 500_000_000L);
+        assertFalse(s.hasUnsavedChanges());
+        s.close();
+
+        s = MVStore.open(fileName);
+        assertFalse(s.isGroupCommitEnabled());
+        assertEquals(2 * threadCount * commitCount + 1, s.openMap("data").size());
+        s.close();
+        FileUtils.delete(fileName);
+    }
+
+    private static void commitConcurrently(MVStore s, int threadCount, int commitCount, int offset)
+            throws Exception {
+        TransactionStore ts = new TransactionStore(s);
+        ts.init();
+        // create the map before concurrent transactions use it
+        Transaction t = ts.begin();
+        t.openMap("data");
+        t.commit();
+        Task[] tasks = new Task[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            int base = offset + i * commitCount;
+            tasks[i] = new Task() {
+
+                @Override
+                public void call() throws Exception {
+                    for (int j = 0; j < commitCount; j++) {
+                        Transaction tx = ts.begin();
+                        TransactionMap<Integer, Integer> map = tx.openMap("data");
+                        map.put(base + j, j);
+                        tx.commit();
+                    }
+                }
+
+            }.execute();
+        }
+        for (Task task : tasks) {
+            task.get();
+        }
+    }
+
     private void testCountWithOpenTransactions() {
         MVStore s;
         TransactionStore ts;
@@ -247,6 +404,86 @@ private void testCountWithOpenTransactions() {
         s.close();
     }
 
+    private void testCountWithRowCountDeltas() {
+        MVStore s = MVStore.open(null);
+        TransactionStore ts = new TransactionStore(s);
+        ts.init();
+
+        Transaction tx = ts.begin();
+        TransactionMap<Integer, Integer> map = tx.openMap("data");
+        for (int i = 0; i < 100; i++) {
+            map.put(i, i);
+        }
+        tx.commit();
+
+        Transaction reader = ts.begin((m, key, existingValue, restoredValue) -> {}, 0, 0,
+                IsolationLevel.REPEATABLE_READ);
+        TransactionMap<Integer, Integer> readerMap = reader.openMap("data");
+        assertEquals(100, readerMap.sizeAsLong());
+        HashSet<MVMap<Object, VersionedValue<Object>>> maps = new HashSet<>();
+        @SuppressWarnings("unchecked")
+        MVMap<Object, VersionedValue<Object>> rawMap = (MVMap<Object, VersionedValue<Object>>) (MVMap<?, ?>)
+                readerMap.map;
+        maps.add(rawMap);
+
+        Random r = new Random(1);
+        Transaction[] writers = new Transaction[3];
+        for (int i = 0; i < 1000; i++) {
+            int w = r.nextInt(writers.length);
+            if (writers[w] == null) {
+                writers[w] = ts.begin();
+            }
+            Transaction t = writers[w];
+            TransactionMap<Integer, Integer> m = t.openMap("data");
+            // each writer uses its own keys, so that writers do not block each other
+            int k = w + writers.length * r.nextInt(50);
+            switch (r.nextInt(10)) {
+            case 0:
+                t.commit();
+                writers[w] = null;
+                break;
+            case 1:
+                t.rollback();
+                writers[w] = null;
+                break;
+            case 2: {
+                long savepoint = t.setSavepoint();
+                m.trySet(k, i);
+                m.trySet(k + writers.length, null);
+                t.rollbackToSavepoint(savepoint);
+                break;
+            }
+            default:
+                m.trySet(k, r.nextBoolean() ? i : null);
+            }
+            if (writers[w] != null) {
+                assertEquals("op: " + i, count(m), (int) m.sizeAsLong());
+            }
+            reader.markStatementStart(maps);
+            assertEquals("op: " + i, 100, (int) readerMap.sizeAsLong());
+            reader.markStatementEnd();
+        }
+        for (Transaction t : writers) {
+            if (t != null) {
+                t.commit();
+            }
+        }
+        tx = ts.begin();
+        map = tx.openMap("data");
+        assertEquals(count(map), map.sizeAsLong());
+        map.clear();
+        assertEquals(0, map.sizeAsLong());
+        s.close();
+    }
+
+    private static int count(TransactionMap<Integer, Integer> map) {
+        int count = 0;
+        for (Iterator<Integer> it = map.keyIterator(null); it.hasNext(); it.next()) {
+            count++;
+        }
+        return count;
+    }
+
     private void testConcurrentUpdate() {
         MVStore s;
         TransactionStore ts;
@@ -275,6 +512,209 @@ private void testConcurrentUpdate() {
         s.close();
     }
 
+    private void testLockWaitQueue() throws Exception {
+        MVStore s = MVStore.open(null);
+        TransactionStore ts = new TransactionStore(s);
+        ts.init();
+
+        Transaction tx = ts.begin((m, key, existingValue, restoredValue) -> {}, 10000, 1,
+                IsolationLevel.READ_COMMITTED);
+        tx.openMap("data").put(0, 0);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        Task[] tasks = new Task[3];
+        for (int i = 0; i < tasks.length; i++) {
+            int id = i + 2;
+            Transaction waiter = ts.begin((m, key, existingValue, restoredValue) -> {}, 10000, id,
+                    IsolationLevel.READ_COMMITTED);
+            tasks[i] = new Task() {
+                @Override
+                public void call() {
+                    TransactionMap<Integer, Integer> map = waiter.openMap("data");
+                    map.put(0, id);
+                    order.add(id);
+                    waiter.commit();
+                }
+            }.execute();
+            // wait until the transaction is queued
+            while (waiter.getBlockerId() == 0) {
+                Thread.sleep(1);
+            }
+        }
+        tx.commit();
+        for (Task task : tasks) {
+            task.get();
+        }
+        // the waiters get the lock in the order they started to wait
+        assertEquals("[2, 3, 4]", order.toString());
+        tx = ts.begin();
+        assertEquals(4, tx.openMap("data").get(0));
+        s.close();
+    }
+
+    private void testDeadlockVictim() throws Exception {
+        MVStore s = MVStore.open(null);
+        TransactionStore ts = new TransactionStore(s);
+        ts.init();
+
+        Transaction tx1 = ts.begin((m, key, existingValue, restoredValue) -> {}, 10000, 1,
+                IsolationLevel.READ_COMMITTED);
+        TransactionMap<Integer, Integer> map1 = tx1.openMap("data");
+        for (int i = 0; i < 10; i++) {
+            map1.put(i, i);
+        }
+        Transaction tx2 = ts.begin((m, key, existingValue, restoredValue) -> {}, 10000, 2,
+                IsolationLevel.READ_COMMITTED);
+        TransactionMap<Integer, Integer> map2 = tx2.openMap("data");
+        map2.put(100, 100);
+        Task task = new Task() {
+            @Override
+            public void call() {
+                try {
+                    map2.put(0, 200);
+                } finally {
+                    tx2.rollback();
+                }
+            }
+        }.execute();
+        while (tx2.getBlockerId() == 0) {
+            Thread.sleep(1);
+        }
+        // tx1 closes the cycle, but tx2 has done less work and is the victim
+        map1.put(100, 10);
+        MVStoreException e = (MVStoreException) task.getException();
+        assertEquals(DataUtils.ERROR_TRANSACTIONS_DEADLOCK, e.getErrorCode());
+        tx1.commit();
+        Transaction tx = ts.begin();
+        assertEquals(10, tx.openMap("data").get(100));
+        s.close();
+    }
+
+    private void testReadOnlyTransaction() {
+        MVStore s = MVStore.open(null);
+        TransactionStore ts = new TransactionStore(s);
+        ts.init();
+
+        Transaction tx = ts.begin();
+        TransactionMap<Integer, Integer> map = tx.openMap("data");
+        map.put(1, 1);
+        map.put(2, 2);
+        tx.commit();
+
+        tx = ts.begin();
+        tx.openMap("data").put(3, 3);
+        Transaction ro = ts.beginReadOnly(0, IsolationLevel.REPEATABLE_READ);
+        assertTrue(ro.isReadOnly());
+        assertFalse(tx.isReadOnly());
+        assertEquals(0, ro.getId());
+        assertEquals(1, ts.getOpenTransactions().size());
+        map = ro.openMap("data");
+        HashSet<MVMap<Object, VersionedValue<Object>>> maps = new HashSet<>();
+        @SuppressWarnings("unchecked")
+        MVMap<Object, VersionedValue<Object>> rawMap = (MVMap<Object, VersionedValue<Object>>) (MVMap<?, ?>)
+                map.map;
+        maps.add(rawMap);
+        ro.markStatementStart(maps);
+        assertEquals(2, map.size());
+        assertNull(map.getFromSnapshot(3));
+        try {
+            map.put(4, 4);
+            fail();
+        } catch (MVStoreException e) {
+            assertEquals(DataUtils.ERROR_TRANSACTION_READ_ONLY, e.getErrorCode());
+        }
+        ro.markStatementEnd();
+        tx.commit();
+        // the snapshot of a repeatable read transaction is kept
+        ro.markStatementStart(maps);
+        assertEquals(2, map.size());
+        assertNull(map.getFromSnapshot(3));
+        ro.markStatementEnd();
+        ro.commit();
+        assertEquals(Transaction.STATUS_CLOSED, ro.getStatus());
+        assertEquals(0, ts.getOpenTransactions().size());
+
+        ro = ts.beginReadOnly(0, IsolationLevel.READ_COMMITTED);
+        map = ro.openMap("data");
+        ro.markStatementStart(maps);
+        assertEquals(3, map.size());
+        assertEquals(3, (int) map.getFromSnapshot(3));
+        ro.markStatementEnd();
+        ro.rollback();
+        s.close();
+    }
+
+    private void testOptimisticTransaction() {
+        MVStore s = MVStore.open(null);
+        TransactionStore ts = new TransactionStore(s);
+        ts.init();
+
+        Transaction tx = ts.begin();
+        TransactionMap<Integer, String> map = tx.openMap("data");
+        map.put(1, "a");
+        map.put(2, "b");
+        tx.commit();
+
+        Transaction t1 = ts.begin((m, key, e, r) -> {}, 10000, 1, IsolationLevel.READ_COMMITTED);
+        t1.setOptimistic(true);
+        Transaction t2 = ts.begin((m, key, e, r) -> {}, 10000, 2, IsolationLevel.READ_COMMITTED);
+        t2.setOptimistic(true);
+        t1.<Integer, String>openMap("data").put(1, "x");
+        TransactionMap<Integer, String> m2 = t2.openMap("data");
+        long start = System.nanoTime();
+        try {
+            m2.put(1, "y");
+            fail();
+        } catch (MVStoreException e) {
+            assertEquals(DataUtils.ERROR_TRANSACTION_CONFLICT, e.getErrorCode());
+        }
+        assertTrue(System.nanoTime() - start < 5_000_000_000L);
+        assertFalse(m2.tryPut(1, "y"));
+        m2.put(2, "y");
+        t2.rollback();
+        t1.commit();
+
+        Transaction t3 = ts.begin((m, key, e, r) -> {}, 10000, 3, IsolationLevel.REPEATABLE_READ);
+        t3.setOptimistic(true);
+        TransactionMap<Integer, String> m3 = t3.openMap("data");
+        HashSet<MVMap<Object, VersionedValue<Object>>> maps = new HashSet<>();
+        @SuppressWarnings("unchecked")
+        MVMap<Object, VersionedValue<Object>> rawMap = (MVMap<Object, VersionedValue<Object>>) (MVMap<?, ?>)
+                m3.map;
+        maps.add(rawMap);
+        t3.markStatementStart(maps);
+        assertEquals("x", m3.getFromSnapshot(1));
+        tx = ts.begin();
+        tx.<Integer, String>openMap("data").put(1, "z");
+        tx.<Integer, String>openMap("data").put(3, "c");
+        tx.commit();
+        try {
+            m3.put(1, "w");
+            fail();
+        } catch (MVStoreException e) {
+            assertEquals(DataUtils.ERROR_TRANSACTION_CONFLICT, e.getErrorCode());
+        }
+        try {
+            m3.put(3, "w");
+            fail();
+        } catch (MVStoreException e) {
+            assertEquals(DataUtils.ERROR_TRANSACTION_CONFLICT, e.getErrorCode());
+        }
+        m3.put(2, "w");
+        m3.put(2, "v");
+        m3.put(4, "d");
+        t3.markStatementEnd();
+        t3.commit();
+
+        tx = ts.begin();
+        map = tx.openMap("data");
+        assertEquals("z", map.get(1));
+        assertEquals("v", map.get(2));
+        assertEquals("c", map.get(3));
+        assertEquals("d", map.get(4));
+        tx.commit();
+        s.close();
+    }
+
     private void testRepeatedChange() {
         MVStore s;
         TransactionStore ts;
@@ -349,6 +789,204 @@ private void testTransactionAge() throws Exception {
         s.close();
     }
 
+    private void testManyOpenTransactions() {
+        MVStore s = MVStore.open(null);
+        TransactionStore ts = new TransactionStore(s);
+        ts.init();
+        ArrayList<Transaction> list = new ArrayList<>();
+        for (int i = 1; i <= 70_000; i++) {
+            Transaction t = ts.begin();
+            assertEquals(i, t.getId());
+            list.add(t);
+        }
+        Transaction last = list.get(list.size() - 1);
+        last.openMap("data").put(1, 1);
+        assertEquals(70_000, ts.getOpenTransactions().size());
+        for (Transaction t : list) {
+            if (t != last) {
+                t.commit();
+            }
+        }
+        assertEquals(1, ts.begin().getId());
+        last.commit();
+        assertEquals(1, (int) ts.begin().<Integer, Integer>openMap("data").get(1));
+        s.close();
+    }
+
+    private void testUndoLogBuffer() {
+        String fileName = getBaseDir() + "/testUndoLogBuffer.h3";
+        // the undo logs of short transactions are not written at all
+        assertTrue(getUndoLogRedoBytes(fileName, 10) < getUndoLogRedoBytes(fileName, 0));
+
+        FileUtils.delete(fileName);
+        MVStore s = new MVStore.Builder().fileName(fileName).autoCommitDisabled().open();
+        TransactionStore ts = new TransactionStore(s);
+        ts.init();
+        ts.setUndoLogBufferSize(10);
+        Transaction tx = ts.begin();
+        tx.openMap("test").put(1, "Hello");
+        tx.commit();
+        assertEquals(0, countStoredUndoLogs(s));
+
+        tx = ts.begin();
+        tx.openMap("test").put(2, "World");
+        // the undo log has to be stored with the changes
+        s.commit();
+        assertEquals(1, countStoredUndoLogs(s));
+        Transaction tx2 = ts.begin();
+        TransactionMap<Integer, String> m = tx2.openMap("test");
+        for (int i = 10; i < 30; i++) {
+            m.put(i, "Hi");
+        }
+        s.commit();
+        assertEquals(2, countStoredUndoLogs(s));
+        s.closeImmediately();
+
+        s = MVStore.open(fileName);
+        ts = new TransactionStore(s);
+        ts.init();
+        assertEquals(2, ts.getOpenTransactions().size());
+        ts.endLeftoverTransactions();
+        tx = ts.begin();
+        m = tx.openMap("test");
+        assertEquals(1, m.sizeAsLong());
+        assertEquals("Hello", m.get(1));
+        tx.commit();
+        s.close();
+        FileUtils.delete(fileName);
+    }
+
+    private static long getUndoLogRedoBytes(String fileName, int undoLogBufferSize) {
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).autoCommitDisabled().redoLogSize(1).open()) {
+            TransactionStore ts = new TransactionStore(s);
+            ts.init();
+            ts.setUndoLogBufferSize(undoLogBufferSize);
+            TransactionMap<Integer, String> m = ts.begin().openMap("test");
+            m.getTransaction().commit();
+            s.commit();
+            long redoBytes = s.getRedoLogWrittenBytes();
+            for (int i = 0; i < 10; i++) {
+                Transaction tx = ts.begin();
+                tx.openMap("test").put(i, "Hello");
+                tx.commit();
+            }
+            return s.getRedoLogWrittenBytes() - redoBytes;
+        } finally {
+            FileUtils.delete(fileName);
+        }
+    }
+
+    private static int countStoredUndoLogs(MVStore s) {
+        int count = 0;
+        for (String name : s.getMapNames()) {
+            if (name.startsWith(TransactionStore.UNDO_LOG_NAME_PREFIX) && s.hasData(name)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void testBoundedSnapshot() throws InterruptedException {
+        String fileName = getBaseDir() + "/testBoundedSnapshot.h3";
+        // an expired bounded snapshot does not prevent old chunks from being dropped
+        assertTrue(getChunkCountWithOpenReader(fileName, true) < getChunkCountWithOpenReader(fileName, false));
+
+        FileUtils.delete(fileName);
+        MVStore s = new MVStore.Builder().fileName(fileName).autoCommitDisabled().open();
+        s.setRetentionTime(0);
+        TransactionStore ts = new TransactionStore(s);
+        ts.init();
+        Transaction tx = ts.begin();
+        TransactionMap<Integer, Integer> map = tx.openMap("data");
+        for (int i = 0; i < 100; i++) {
+            map.put(i, i);
+        }
+        tx.commit();
+        s.commit();
+
+        Transaction reader = ts.begin();
+        reader.setBoundedSnapshot(true);
+        assertTrue(reader.isBoundedSnapshot());
+        TransactionMap<Integer, Integer> readerMap = reader.openMap("data");
+        HashSet<MVMap<Object, VersionedValue<Object>>> maps = new HashSet<>();
+        @SuppressWarnings("unchecked")
+        MVMap<Object, VersionedValue<Object>> rawMap = (MVMap<Object, VersionedValue<Object>>) (MVMap<?, ?>)
+                readerMap.map;
+        maps.add(rawMap);
+        reader.markStatementStart(maps);
+        Iterator<Integer> it = readerMap.keyIterator(null);
+        assertEquals(0, (int) it.next());
+        updateAll(ts, s, 1);
+        // still within the snapshot retention time
+        assertEquals(1, (int) it.next());
+        assertNotNull(readerMap.getFromSnapshot(50));
+
+        s.setSnapshotRetentionTime(0);
+        Thread.sleep(5);
+        updateAll(ts, s, 2);
+        try {
+            it.hasNext();
+            fail();
+        } catch (MVStoreException e) {
+            assertEquals(DataUtils.ERROR_SNAPSHOT_TOO_OLD, e.getErrorCode());
+        }
+        try {
+            readerMap.getFromSnapshot(50);
+            fail();
+        } catch (MVStoreException e) {
+            assertEquals(DataUtils.ERROR_SNAPSHOT_TOO_OLD, e.getErrorCode());
+        }
+        try {
+            readerMap.sizeAsLong();
+            fail();
+        } catch (MVStoreException e) {
+            assertEquals(DataUtils.ERROR_SNAPSHOT_TOO_OLD, e.getErrorCode());
+        }
+        reader.markStatementEnd();
+        // a new statement gets a new snapshot
+        reader.markStatementStart(maps);
+        assertEquals(52, (int) readerMap.getFromSnapshot(50));
+        reader.markStatementEnd();
+        reader.commit();
+        s.close();
+        FileUtils.delete(fileName);
+    }
+
+    private int getChunkCountWithOpenReader(String fileName, boolean boundedSnapshot) throws InterruptedException {
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).autoCommitDisabled().open()) {
+            s.setRetentionTime(0);
+            s.setSnapshotRetentionTime(0);
+            TransactionStore ts = new TransactionStore(s);
+            ts.init();
+            updateAll(ts, s, 0);
+            Transaction reader = ts.begin();
+            reader.setBoundedSnapshot(boundedSnapshot);
+            reader.markStatementStart(null);
+            Thread.sleep(5);
+            for (int i = 1; i <= 20; i++) {
+                updateAll(ts, s, i);
+            }
+            int chunkCount = s.getChunkCount();
+            reader.markStatementEnd();
+            reader.commit();
+            return chunkCount;
+        } finally {
+            FileUtils.delete(fileName);
+        }
+    }
+
+    private static void updateAll(TransactionStore ts, MVStore s, int offset) {
+        Transaction tx = ts.begin();
+        TransactionMap<Integer, Integer> map = tx.openMap("data");
+        for (int i = 0; i < 100; i++) {
+            map.put(i, i + offset);
+        }
+        tx.commit();
+        s.commit();
+    }
+
     private void testGetModifiedMaps() {
         MVStore s = MVStore.open(null);
         TransactionStore ts = new TransactionStore(s);
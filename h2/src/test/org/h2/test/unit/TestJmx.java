@@ -113,7 +113,13 @@ public void test() throws Exception {
             assertContains(result, "write lock");
         }
 
-        assertEquals(2, info.getOperations().length);
+        if (config.mvStore) {
+            result = mbeanServer.invoke(name, "listLockStatistics", null, null).toString();
+            assertContains(result, "PUBLIC.TEST");
+            assertContains(result, "shared locks: 1");
+        }
+
+        assertEquals(3, info.getOperations().length);
         assertContains(info.getDescription(), "database");
         attrMap = new HashMap<>();
         for (MBeanAttributeInfo a : info.getAttributes()) {